@@ -0,0 +1,141 @@
+package org.elasticsearch.client;
+
+import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.CheckedFunction;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.join.query.JoinQueryBuilders;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+
+/**
+ * 基准测试用的请求样本，覆盖内置filter改写的主要场景
+ *
+ * @author brezp
+ */
+public enum BenchmarkCorpus {
+
+    /**
+     * 带 bool、function_score、has_parent、nested、script_fields、_uid 排序的普通查询
+     */
+    SEARCH {
+        @Override
+        ActionRequest request() {
+            SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(QueryBuilders.boolQuery()
+                    .must(QueryBuilders.functionScoreQuery(QueryBuilders.matchQuery("title", "elasticsearch client"),
+                        ScoreFunctionBuilders.fieldValueFactorFunction("likes")))
+                    .should(JoinQueryBuilders.hasParentQuery("blog", QueryBuilders.termQuery("tag", "news"), true))
+                    .should(QueryBuilders.nestedQuery("comments", QueryBuilders.termQuery("comments.user", "brezp"),
+                        ScoreMode.Avg).ignoreUnmapped(true))
+                    .mustNot(QueryBuilders.boolQuery().should(QueryBuilders.rangeQuery("score").lt(1)))
+                    .filter(QueryBuilders.existsQuery("title"))
+                    .filter(QueryBuilders.termsQuery("site", "a.com", "b.com", "c.com")))
+                .scriptField("score2", new Script("doc['score'].value * 2"))
+                .sort("_uid", SortOrder.ASC)
+                .sort("post_time", SortOrder.DESC)
+                .from(0)
+                .size(50);
+            return new SearchRequest("index").types("type").source(source);
+        }
+    },
+
+    /**
+     * 多层 date_histogram、terms 嵌套的聚合查询
+     */
+    AGGREGATION {
+        @Override
+        ActionRequest request() {
+            SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(QueryBuilders.boolQuery()
+                    .must(QueryBuilders.termQuery("is_robot", "0"))
+                    .filter(QueryBuilders.rangeQuery("post_time").gte("now-30d"))
+                    .filter(QueryBuilders.existsQuery("author")))
+                .size(0);
+            for (int i = 0; i < 4; i++) {
+                source.aggregation(AggregationBuilders.dateHistogram("by_day_" + i).field("post_time")
+                    .dateHistogramInterval(DateHistogramInterval.DAY).offset("+8h")
+                    .subAggregation(AggregationBuilders.terms("by_site").field("site").size(20)
+                        .subAggregation(AggregationBuilders.dateHistogram("by_hour").field("post_time")
+                            .dateHistogramInterval(DateHistogramInterval.HOUR).offset("+8h")))
+                    .subAggregation(AggregationBuilders.avg("avg_score").field("score")));
+            }
+            return new SearchRequest("index").types("type").source(source);
+        }
+    },
+
+    SCROLL {
+        @Override
+        ActionRequest request() {
+            return new SearchScrollRequest("DnF1ZXJ5VGhlbkZldGNoBQAAAAAAAAAWFmJQM1pfc2dSUk1xd3FTNGJhN0dTV0EAAAAAAAAAFBZi"
+                + "UDNaX3NnUlJNcXdxUzRiYTdHU1dBAAAAAAAAABcWYlAzWl9zZ1JSTXF3cVM0YmE3R1NXQQ==").scroll(TimeValue.timeValueMinutes(2));
+        }
+    },
+
+    /**
+     * 200 条 index/update 混合的 bulk
+     */
+    BULK {
+        @Override
+        ActionRequest request() {
+            BulkRequest bulk = new BulkRequest();
+            for (int i = 0; i < 200; i++) {
+                String doc = "{\"title\":\"title " + i + "\",\"content\":\"" + "content of document " + i
+                    + " with some text to index\",\"site\":\"a.com\",\"score\":" + i + ",\"post_time\":1546272000000}";
+                if (i % 4 == 0) {
+                    bulk.add(new UpdateRequest("index", "type", String.valueOf(i)).doc(doc, XContentType.JSON)
+                        .retryOnConflict(3));
+                } else {
+                    bulk.add(new IndexRequest("index", "type", String.valueOf(i)).source(doc, XContentType.JSON)
+                        .routing("r" + (i % 8)));
+                }
+            }
+            return bulk;
+        }
+    };
+
+    abstract ActionRequest request();
+
+    /**
+     * @return 旧的转换方式：先按 5.6 构造，再由filter改写
+     */
+    CheckedFunction<ActionRequest, Request, IOException> legacyConverter() {
+        switch (this) {
+            case SEARCH:
+            case AGGREGATION:
+                return request -> Request.search((SearchRequest) request);
+            case SCROLL:
+                return request -> Request.searchScroll((SearchScrollRequest) request);
+            default:
+                return request -> Request.bulk((BulkRequest) request);
+        }
+    }
+
+    /**
+     * @return 按版本直接构造
+     */
+    CheckedFunction<ActionRequest, Request, IOException> versionedConverter(VersionedRequestConverters converters) {
+        switch (this) {
+            case SEARCH:
+            case AGGREGATION:
+                return request -> converters.search().apply((SearchRequest) request);
+            case SCROLL:
+                return request -> converters.searchScroll().apply((SearchScrollRequest) request);
+            default:
+                return request -> converters.bulk().apply((BulkRequest) request);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.elasticsearch.client;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.filter.AbstractRequestFilter;
+import com.github.brezp.es.client.filter.AggFilter;
+import com.github.brezp.es.client.filter.ScriptFilter;
+import com.github.brezp.es.client.filter.ScrollFilter;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.common.CheckedFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求经过 {@link RestClientProxy#addFilters(ActionRequest, Request)} 的改写开销，不发送请求。
+ * <p>
+ * converter=versioned 为 RestClientProxy 实际使用的按版本直接构造，converter=legacy 为按 5.6 构造后由filter改写。
+ * 单位为微秒；直接运行 main 会附带 gc profiler，输出中的 gc.alloc.rate.norm 即每次操作分配的字节数。
+ * <pre>
+ * cd benchmarks && mvn package && java -jar target/benchmarks.jar
+ * java -jar target/benchmarks.jar FilterChainBenchmark -p version=V7_9 -p corpus=AGGREGATION -prof gc
+ * </pre>
+ *
+ * @author brezp
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterChainBenchmark {
+
+    @Param({"V1_7", "V2_3", "V5_6", "V7_9"})
+    public EsVersion version;
+
+    @Param({"SEARCH", "AGGREGATION", "SCROLL", "BULK"})
+    public BenchmarkCorpus corpus;
+
+    @Param({"versioned", "legacy"})
+    public String converter;
+
+    private RestClient restClient;
+    private RestClientProxy proxy;
+    private ActionRequest request;
+    private CheckedFunction<ActionRequest, Request, IOException> requestConverter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        //不会建立连接，只用于构造proxy
+        restClient = RestClient.builder(new HttpHost("localhost", 9200)).build();
+        proxy = new RestClientProxy(restClient, version);
+        List<AbstractRequestFilter> filters = Arrays.asList(new AggFilter(), new ScrollFilter(), new ScriptFilter());
+        proxy.addFilters(filters);
+
+        request = corpus.request();
+        requestConverter = "legacy".equals(converter)
+            ? corpus.legacyConverter()
+            : corpus.versionedConverter(VersionedRequestConverters.of(version));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        restClient.close();
+    }
+
+    @Benchmark
+    public void rewrite(Blackhole blackhole) throws IOException {
+        Request filtered = proxy.addFilters(request, requestConverter.apply(request));
+        blackhole.consume(filtered);
+        //读取body，使惰性生成的 entity 也计入开销
+        if (filtered.getEntity() != null) {
+            blackhole.consume(filtered.getEntity().getContent());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(FilterChainBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
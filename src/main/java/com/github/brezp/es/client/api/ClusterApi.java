@@ -4,6 +4,8 @@ import com.github.brezp.es.client.base.EsClient;
 import org.apache.log4j.Logger;
 import org.elasticsearch.action.main.MainResponse;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Created by turner on 2018/7/11.
  */
@@ -52,5 +54,22 @@ public class ClusterApi {
         return null;
     }
 
+    /**
+     * 异步测试连通性，失败时为false
+     */
+    public CompletableFuture<Boolean> pingAsync() {
+        return this.client.getClient().pingAsync().exceptionally(e -> false);
+    }
+
+    /**
+     * 异步获取集群信息，失败时为null
+     */
+    public CompletableFuture<MainResponse> infoAsync() {
+        return this.client.getClient().infoAsync().exceptionally(e -> {
+            LOG.error(e.getMessage(), e);
+            return null;
+        });
+    }
+
 
 }
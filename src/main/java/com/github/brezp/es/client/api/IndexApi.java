@@ -9,6 +9,7 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import io.searchbox.action.Action;
 import io.searchbox.client.JestClientFactory;
+import io.searchbox.client.JestResultHandler;
 import io.searchbox.client.JestResult;
 import io.searchbox.client.config.HttpClientConfig;
 import io.searchbox.client.http.JestHttpClient;
@@ -18,6 +19,7 @@ import io.searchbox.indices.mapping.PutMapping;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -85,6 +87,63 @@ public class IndexApi {
         return jestResult.isSucceeded();
     }
 
+    //---------------------------以下 *Async 为异步版本，不阻塞调用线程----------------------------------
+    // future 不会异常完成，失败时与同步版本返回相同的结果；future 在 jest 的 IO 线程完成，后续处理不能阻塞
+
+    public CompletableFuture<Boolean> createIndexAsync(String indexName, String indexType, Object settings,
+        String source) {
+        return indexExistsAsync(indexName)
+            .thenCompose(exists -> exists
+                ? CompletableFuture.completedFuture(null)
+                : executeAsyncWrapper(new CreateIndex.Builder(indexName).settings(settings).build(), true))
+            .thenCompose(jestResult -> jestResult == null || jestResult.isSucceeded()
+                ? executeAsyncWrapper(new PutMapping.Builder(indexName, indexType, source).build(), true)
+                : CompletableFuture.completedFuture(jestResult))
+            .thenApply(JestResult::isSucceeded);
+    }
+
+    public CompletableFuture<Boolean> indexExistsAsync(String index) {
+        return executeAsyncWrapper(new IndicesExists.Builder(index).build(), false)
+            .thenApply(JestResult::isSucceeded);
+    }
+
+    public CompletableFuture<Boolean> openAsync(String index) {
+        return executeAsyncWrapper(new OpenIndex.Builder(index).build(), true)
+            .thenApply(JestResult::isSucceeded);
+    }
+
+    public CompletableFuture<Boolean> closeAsync(String index) {
+        return executeAsyncWrapper(new CloseIndex.Builder(index).build(), true)
+            .thenApply(JestResult::isSucceeded);
+    }
+
+    public CompletableFuture<Boolean> deleteIndexAsync(String index) {
+        return executeAsyncWrapper(new DeleteIndex.Builder(index).build(), true)
+            .thenApply(JestResult::isSucceeded);
+    }
+
+    public CompletableFuture<List<Object>> indexListAsync() {
+        return executeAsyncWrapper(new Stats.Builder().build(), true)
+            .thenApply(IndexApi::toIndexList);
+    }
+
+    public CompletableFuture<Set<String>> getIndexbyAliasesAsync(String aliases) {
+        return executeAsyncWrapper(new GetAliasesSpecificName.Builder().alias(aliases).build(), true)
+            .thenApply(IndexApi::toIndexSet);
+    }
+
+    public CompletableFuture<Map<String, Object>> getSchemaAsync(String index, String type) {
+        return getIndexbyAliasesAsync(index)
+            .thenApply(indexSet -> toRealName(index, indexSet))
+            .thenCompose(realName -> executeAsyncWrapper(new GetMapping.Builder().addIndex(realName).build(), true)
+                .thenApply(jestResult -> toSchema(jestResult, realName, type)));
+    }
+
+    public CompletableFuture<Map<String, Object>> statSizeAsync(String index) {
+        return executeAsyncWrapper(new Stats.Builder().addIndex(index).setParameter("human", "1").build(), true)
+            .thenApply(IndexApi::toStatSize);
+    }
+
     private void printError(String uri, JestResult jestResult, boolean logError) {
         if (!jestResult.isSucceeded() && logError) {
             LOG.warn(
@@ -122,7 +181,10 @@ public class IndexApi {
         JestResult jestResult = executeWrapper(
             new Stats.Builder().build(), true
         );
+        return toIndexList(jestResult);
+    }
 
+    private static List<Object> toIndexList(JestResult jestResult) {
         if (jestResult.isSucceeded()) {
             try {
                 return new ArrayList<>(
@@ -140,7 +202,10 @@ public class IndexApi {
         JestResult jestResult = executeWrapper(
             new GetAliasesSpecificName.Builder().alias(aliases).build(), true
         );
+        return toIndexSet(jestResult);
+    }
 
+    private static Set<String> toIndexSet(JestResult jestResult) {
         if (jestResult.isSucceeded()) {
             return jestResult.getJsonMap().keySet();
         }
@@ -149,15 +214,19 @@ public class IndexApi {
     }
 
     public Map<String, Object> getSchema(String index, String type) {
+        String realName = getRealName(index);
         JestResult jestResult = executeWrapper(
-            new GetMapping.Builder().addIndex(getRealName(index)).build(), true
+            new GetMapping.Builder().addIndex(realName).build(), true
         );
+        return toSchema(jestResult, realName, type);
+    }
 
+    private static Map<String, Object> toSchema(JestResult jestResult, String realName, String type) {
         Map<String, Object> map = new HashMap<>();
         if (jestResult.isSucceeded()) {
             try {
                 JsonObject indexMapping = jestResult.getJsonObject()
-                    .getAsJsonObject(getRealName(index))
+                    .getAsJsonObject(realName)
                     .getAsJsonObject("mappings");
                 JsonObject typeProperties;
                 if (!indexMapping.has(type)) {
@@ -188,7 +257,10 @@ public class IndexApi {
         JestResult jestResult = executeWrapper(
             new Stats.Builder().addIndex(index).setParameter("human", "1").build(), true
         );
+        return toStatSize(jestResult);
+    }
 
+    private static Map<String, Object> toStatSize(JestResult jestResult) {
         if (jestResult.isSucceeded()) {
             try {
                 String json = JsonPathUtil
@@ -208,7 +280,10 @@ public class IndexApi {
      * @return
      */
     private String getRealName(String index) {
-        Set<String> indexSet = getIndexbyAliases(index);
+        return toRealName(index, getIndexbyAliases(index));
+    }
+
+    private static String toRealName(String index, Set<String> indexSet) {
         if (indexSet != null && !indexSet.isEmpty()) {
             List<String> sortedIndex = new ArrayList<>(indexSet);
             sortedIndex.sort(Comparator.reverseOrder());
@@ -219,16 +294,46 @@ public class IndexApi {
 
     private <T extends JestResult> JestResult executeWrapper(Action<T> clientRequest,
         boolean logError) {
-        JestResult jestResult = new JestResult(new Gson()
-            .fromJson("{\"isSucceeded\":false,\"errorMessage\":\"\"}", JestResult.class));
+        JestResult jestResult;
         try {
             jestResult = client.execute(clientRequest);
             printError(clientRequest.getURI(), jestResult, logError);
         } catch (Exception e) {
             LOG.error(e.getMessage(), e);
-            jestResult.setErrorMessage(e.getMessage());
+            jestResult = failedResult(e);
+        }
+
+        return jestResult;
+    }
+
+    private <T extends JestResult> CompletableFuture<JestResult> executeAsyncWrapper(Action<T> clientRequest,
+        boolean logError) {
+        CompletableFuture<JestResult> future = new CompletableFuture<>();
+        try {
+            client.executeAsync(clientRequest, new JestResultHandler<T>() {
+                @Override
+                public void completed(T jestResult) {
+                    printError(clientRequest.getURI(), jestResult, logError);
+                    future.complete(jestResult);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    LOG.error(e.getMessage(), e);
+                    future.complete(failedResult(e));
+                }
+            });
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+            future.complete(failedResult(e));
         }
+        return future;
+    }
 
+    private static JestResult failedResult(Exception e) {
+        JestResult jestResult = new JestResult(new Gson()
+            .fromJson("{\"isSucceeded\":false,\"errorMessage\":\"\"}", JestResult.class));
+        jestResult.setErrorMessage(e.getMessage());
         return jestResult;
     }
 }
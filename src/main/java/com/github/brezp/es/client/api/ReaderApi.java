@@ -4,16 +4,28 @@ package com.github.brezp.es.client.api;
 import com.github.brezp.es.client.base.DocScanner;
 import com.github.brezp.es.client.base.EsClient;
 import com.github.brezp.es.client.entity.EsDoc;
+import com.github.brezp.es.client.entity.EsHit;
+import com.github.brezp.es.client.entity.EsHits;
 import com.github.brezp.es.client.entity.EsReaderResult;
 import com.github.brezp.es.client.entity.EsSort;
 import com.github.brezp.es.client.entity.EsSuggest;
+import com.github.brezp.es.client.entity.EsTypedHits;
 import org.apache.log4j.Logger;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.client.Request;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
@@ -25,12 +37,12 @@ import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryParseContext;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.search.SearchHit;
-import org.elasticsearch.search.SearchHitField;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.SearchModule;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.search.suggest.Suggest;
@@ -38,6 +50,8 @@ import org.elasticsearch.search.suggest.SuggestBuilder;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static com.github.brezp.es.client.entity.EsVersion.V7_9;
 
@@ -45,12 +59,16 @@ public class ReaderApi {
 
     private static final Logger LOG = Logger.getLogger(ReaderApi.class);
 
-    private final SearchModule searchModule = new SearchModule(Settings.EMPTY, false,
-        Collections.emptyList());
+    /**
+     * 解析 query 字符串使用，SearchModule 构建开销较大，所有实例共享
+     */
+    private static final NamedXContentRegistry SEARCH_REGISTRY = new NamedXContentRegistry(
+        new SearchModule(Settings.EMPTY, false, Collections.emptyList()).getNamedXContents());
 
     private final EsClient client;
 
     private static final int DEFAULT_SCROLL_SIZE = 1000;
+    private static final int DEFAULT_MGET_CHUNK_SIZE = 1000;
     private static final long DEFAULT_TIMEOUT_MILLS = 120 * 1000;
 
     private final long timeoutMills;
@@ -102,6 +120,10 @@ public class ReaderApi {
         EsReaderResult rst = search(null, 0, queryBuilder, null, null, null);
         return rst.getTotalHit();
     }
+
+    public CompletableFuture<Long> countAsync(QueryBuilder queryBuilder) {
+        return searchAsync(null, 0, queryBuilder, null, null, null).thenApply(EsReaderResult::getTotalHit);
+    }
     //---------------------------------------------------------------------------------------
 
 
@@ -121,6 +143,11 @@ public class ReaderApi {
         String[] includeSource,
         EsSort esSort,
         Map<String, String> scriptFields, HighlightBuilder highlightBuilder) throws Exception {
+        return search(getSearchSource(from, size, builder, includeSource, esSort, scriptFields, highlightBuilder));
+    }
+
+    private SearchSourceBuilder getSearchSource(Integer from, Integer size, QueryBuilder builder,
+        String[] includeSource, EsSort esSort, Map<String, String> scriptFields, HighlightBuilder highlightBuilder) {
         SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
         sourceBuilder.query(builder);
 
@@ -151,7 +178,7 @@ public class ReaderApi {
         if (highlightBuilder != null) {
             sourceBuilder.highlighter(highlightBuilder);
         }
-        return search(sourceBuilder);
+        return sourceBuilder;
     }
 
     private void fillSort(EsSort esSort, SearchSourceBuilder sourceBuilder) {
@@ -161,17 +188,22 @@ public class ReaderApi {
     }
 
     public EsReaderResult search(String query) throws Exception {
-        SearchSourceBuilder builder;
+        return search(parseSearchSource(query));
+    }
+
+    private SearchSourceBuilder parseSearchSource(String query) throws IOException {
         try (XContentParser parser = XContentFactory.xContent(XContentType.JSON)
-            .createParser(new NamedXContentRegistry(searchModule
-                .getNamedXContents()), query)) {
-            builder = SearchSourceBuilder.fromXContent(new QueryParseContext(parser));
+            .createParser(SEARCH_REGISTRY, query)) {
+            return SearchSourceBuilder.fromXContent(new QueryParseContext(parser));
         }
-
-        return search(builder);
     }
 
     private EsReaderResult search(SearchSourceBuilder sourceBuilder) throws IOException {
+        SearchResponse response = client.getClient().batchSearch(getSearchRequest(sourceBuilder));
+        return toReaderResult(response);
+    }
+
+    private SearchRequest getSearchRequest(SearchSourceBuilder sourceBuilder) {
         if (timeoutMills != 0) {
             sourceBuilder.timeout(new TimeValue(timeoutMills));
         }
@@ -179,9 +211,10 @@ public class ReaderApi {
         SearchRequest request = getSearchRequest(sourceBuilder, null);
 
         LOG.debug(request.source().toString());
+        return request;
+    }
 
-        SearchResponse response = client.getClient().search(request);
-
+    private static EsReaderResult toReaderResult(SearchResponse response) {
         SearchHits hits = response.getHits();
         SearchHit[] searchHits = hits.getHits();
         EsReaderResult esReaderResult = new EsReaderResult(null, response.getHits(), true);
@@ -195,39 +228,14 @@ public class ReaderApi {
         if (searchHits.length > 0) {
             List<EsDoc> docs = new ArrayList<>(searchHits.length);
             for (SearchHit searchHit : searchHits) {
-                if (searchHit.getSource() != null) {
-                    EsDoc newDoc = new EsDoc(searchHit.getId(), searchHit.getSource());
-                    //有source的情况也可能有field
-                    if (sourceBuilder.scriptFields() != null
-                        && sourceBuilder.scriptFields().size() > 0) {
-                        fetchScriptField(searchHit, newDoc);
-                    }
-                    docs.add(newDoc);
-                } else {
-                    Map<String, SearchHitField> name2field = searchHit.getFields();
-                    Map<String, Object> name2value = new HashMap<>();
-                    for (String name : name2field.keySet()) {
-                        SearchHitField hitField = name2field.get(name);
-                        name2value.put(name, hitField.getValue());
-                    }
-                    docs.add(new EsDoc(searchHit.getId(), name2value));
-                }
+                //_source 与 field 在首次访问时才合并成 Map
+                docs.add(new EsDoc(EsHit.of(searchHit)));
             }
             esReaderResult.setEsDocLists(docs);
         }
         return esReaderResult;
     }
 
-    private void fetchScriptField(SearchHit searchHit, EsDoc newDoc) {
-        Map<String, SearchHitField> name2field = searchHit.getFields();
-        if (name2field != null && !name2field.isEmpty()) {
-            for (String name : name2field.keySet()) {
-                SearchHitField hitField = name2field.get(name);
-                newDoc.put(name, hitField.getValue());
-            }
-        }
-    }
-
     public EsReaderResult search(QueryBuilder builder) throws Exception {
         return search(null, null, builder, null, null, null);
     }
@@ -236,6 +244,50 @@ public class ReaderApi {
         return search(from, size, builder, null, null, null);
     }
 
+    //---------------------------search 的异步版本，不阻塞调用线程----------------------------------
+    // future 在 http client 的 IO 线程完成，后续 thenApply 等不能阻塞，耗时的处理使用 thenApplyAsync 等指定线程池；
+    // 超时由 es 端的 timeout 和 RestClient 的 socket timeout 控制，不需要线程等待
+
+    public CompletableFuture<EsReaderResult> searchAsync(Integer from, Integer size, QueryBuilder builder,
+        String[] includeSource, EsSort esSort, Map<String, String> scriptFields) {
+        return searchAsync(from, size, builder, includeSource, esSort, scriptFields, null);
+    }
+
+    public CompletableFuture<EsReaderResult> searchAsync(Integer from, Integer size, QueryBuilder builder,
+        String[] includeSource, EsSort esSort, Map<String, String> scriptFields, HighlightBuilder highlightBuilder) {
+        return searchAsync(getSearchSource(from, size, builder, includeSource, esSort, scriptFields,
+            highlightBuilder));
+    }
+
+    public CompletableFuture<EsReaderResult> searchAsync(QueryBuilder builder) {
+        return searchAsync(null, null, builder, null, null, null);
+    }
+
+    public CompletableFuture<EsReaderResult> searchAsync(int from, int size, QueryBuilder builder) {
+        return searchAsync(from, size, builder, null, null, null);
+    }
+
+    public CompletableFuture<EsReaderResult> searchAsync(String query) {
+        SearchSourceBuilder sourceBuilder;
+        try {
+            sourceBuilder = parseSearchSource(query);
+        } catch (Exception e) {
+            return failed(e);
+        }
+        return searchAsync(sourceBuilder);
+    }
+
+    private CompletableFuture<EsReaderResult> searchAsync(SearchSourceBuilder sourceBuilder) {
+        return client.getClient().batchSearchAsync(getSearchRequest(sourceBuilder))
+            .thenApply(ReaderApi::toReaderResult);
+    }
+
+    private static <T> CompletableFuture<T> failed(Exception e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
     //---------------------------------------------------------------------------------------
 
 
@@ -251,7 +303,10 @@ public class ReaderApi {
         SearchRequest request = getScrollRequest(builder, scrollSize, esSort, isFetchSource,
             includeSources, highlightBuilder, scriptFields);
         SearchResponse scrollResp = client.getClient().search(request);
+        return toFirstPage(scrollResp);
+    }
 
+    private static EsReaderResult toFirstPage(SearchResponse scrollResp) {
         String scrollId = scrollResp.getScrollId();
         SearchHits searchHits = scrollResp.getHits();
         SearchHit[] searchHitData = searchHits.getHits();
@@ -262,6 +317,22 @@ public class ReaderApi {
         return new EsReaderResult(scrollId, searchHits, isEnd);
     }
 
+    /**
+     * scroll 的第一页，后续页使用 {@link #scrollAsync(String)} 获取
+     */
+    public CompletableFuture<EsReaderResult> scrollAsync(QueryBuilder builder, int scrollSize,
+        boolean isFetchSource, String[] includeSources) {
+        return scrollAsync(builder, scrollSize, null, isFetchSource, includeSources, null, null);
+    }
+
+    public CompletableFuture<EsReaderResult> scrollAsync(QueryBuilder builder, int scrollSize, EsSort esSort,
+        boolean isFetchSource, String[] includeSources, HighlightBuilder highlightBuilder,
+        Map<String, String> scriptFields) {
+        SearchRequest request = getScrollRequest(builder, scrollSize, esSort, isFetchSource,
+            includeSources, highlightBuilder, scriptFields);
+        return client.getClient().searchAsync(request).thenApply(ReaderApi::toFirstPage);
+    }
+
     public SearchRequest getScrollRequest(QueryBuilder builder, int scrollSize,
         boolean isFetchSource, String[] includeSources) {
         return getScrollRequest(builder, scrollSize, isFetchSource, includeSources, null);
@@ -336,19 +407,17 @@ public class ReaderApi {
         }
 
         //支持script field
-        boolean hasScriptField = false;
         if (scriptFields != null && !scriptFields.isEmpty()) {
             sourceBuilder.fetchSource(true);
             for (String field : scriptFields.keySet()) {
                 sourceBuilder.scriptField(field, new Script(scriptFields.get(field)));
             }
-            hasScriptField = true;
         }
 
         SearchRequest request = getSearchRequest(sourceBuilder, null)
             .scroll(new TimeValue(timeoutMills)).searchType(SearchType.DEFAULT);
         LOG.debug(request.source().toString());
-        SearchResponse scrollResp = client.getClient().search(request);
+        EsHits scrollResp = client.getClient().searchHits(request);
 
         int i = 0;
         while (true) {
@@ -356,24 +425,18 @@ public class ReaderApi {
                 return;
             }
             try {
-                scrollResp = client.getClient().searchScroll(
+                //只解析命中结果，_source 在 scanner 访问字段时才解析，script field 已包含在 EsHit 中
+                scrollResp = client.getClient().searchScrollHits(
                     new SearchScrollRequest(scrollResp.getScrollId())
                         .scroll(new TimeValue(timeoutMills)));
-                SearchHit[] hits = scrollResp.getHits().getHits();
-                if (hits.length == 0) {
+                List<EsHit> hits = scrollResp.getHits();
+                if (hits.isEmpty()) {
                     LOG.info("0 hits, exit");
                     return;
                 } else {
-                    for (SearchHit hit : hits) {
+                    for (EsHit hit : hits) {
                         try {
-                            EsDoc esDoc = new EsDoc(hit.getId(), hit.getSource());
-
-                            //有source的情况也可能有field
-                            if (hasScriptField) {
-                                fetchScriptField(hit, esDoc);
-                            }
-
-                            scanner.scanDoc(esDoc);
+                            scanner.scanHit(hit);
                         } catch (Exception e) {
                             LOG.error(e.getMessage(), e);
                         }
@@ -407,7 +470,6 @@ public class ReaderApi {
         if (scrollId == null) {
             throw new NullPointerException("scrollid can not be null");
         }
-        boolean isEnd = false;
         TimeValue timeValue = new TimeValue(timeoutMills);
 
         SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
@@ -415,7 +477,29 @@ public class ReaderApi {
 
         LOG.debug(scrollRequest.toString());
         SearchResponse response = client.getClient().searchScroll(scrollRequest);
+        return toNextPage(scrollId, response);
+    }
+
+    /**
+     * 获取 scroll 的下一页
+     */
+    public CompletableFuture<EsReaderResult> scrollAsync(String scrollId) {
+        if (scrollId == null) {
+            return failed(new NullPointerException("scrollid can not be null"));
+        }
+        SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
+        scrollRequest.scroll(new TimeValue(timeoutMills));
 
+        LOG.debug(scrollRequest.toString());
+        return client.getClient().searchScrollAsync(scrollRequest)
+            .thenApply(response -> toNextPage(scrollId, response));
+    }
+
+    /**
+     * 没有命中时结束，scrollId 保持不变
+     */
+    private static EsReaderResult toNextPage(String scrollId, SearchResponse response) {
+        boolean isEnd = false;
         SearchHits searchHits = response.getHits();
         SearchHit[] searchHitsData = searchHits.getHits();
         if (searchHitsData.length == 0) {
@@ -427,6 +511,108 @@ public class ReaderApi {
         return new EsReaderResult(scrollId, searchHits, isEnd);
     }
 
+    //---------------------------_source 直接绑定为 POJO（不创建 SearchHit、EsDoc）----------------------
+    public <T> EsTypedHits<T> search(QueryBuilder builder, Integer from, Integer size, String[] includeSource,
+        EsSort esSort, Class<T> type) throws Exception {
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
+        sourceBuilder.query(builder);
+        if (from != null) {
+            sourceBuilder.from(from);
+        }
+        if (size != null) {
+            sourceBuilder.size(size);
+        }
+        if (includeSource != null) {
+            sourceBuilder.fetchSource(includeSource, new String[0]);
+        }
+        if (esSort != null) {
+            fillSort(esSort, sourceBuilder);
+        }
+        if (timeoutMills != 0) {
+            sourceBuilder.timeout(new TimeValue(timeoutMills));
+        }
+
+        SearchRequest request = getSearchRequest(sourceBuilder, null);
+        LOG.debug(request.source().toString());
+        EsTypedHits<T> hits = client.getClient().search(request, type);
+        if (hits.getFailedShards() != 0) {
+            LOG.error("fail shards " + hits.getFailedShards());
+        }
+        return hits;
+    }
+
+    public <T> EsTypedHits<T> search(QueryBuilder builder, int from, int size, Class<T> type) throws Exception {
+        return search(builder, from, size, null, null, type);
+    }
+
+    /**
+     * 遍历所有结果，每条 _source 绑定为 type 后交给 consumer；包括第一页，结束后清理 scroll
+     *
+     * @param range 最多处理的条数，-1 表示不限制
+     */
+    public <T> void scroll(QueryBuilder builder, int scrollSize, EsSort esSort, String[] includeSources,
+        Class<T> type, Consumer<T> consumer, long range) throws Exception {
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
+        sourceBuilder.query(builder)
+            .size(scrollSize)
+            .timeout(new TimeValue(timeoutMills));
+        if (esSort != null) {
+            fillSort(esSort, sourceBuilder);
+        }
+        if (includeSources != null) {
+            sourceBuilder.fetchSource(includeSources, new String[0]);
+        }
+
+        SearchRequest request = getSearchRequest(sourceBuilder, null)
+            .scroll(new TimeValue(timeoutMills)).searchType(SearchType.DEFAULT);
+        LOG.debug(request.source().toString());
+        EsTypedHits<T> page = client.getClient().search(request, type);
+
+        long i = 0;
+        try {
+            while (page.size() > 0) {
+                for (T source : page.getSources()) {
+                    consumer.accept(source);
+                    if (range != -1 && ++i >= range) {
+                        LOG.info("match range: " + i + ", exit");
+                        return;
+                    }
+                }
+                page = client.getClient().searchScroll(new SearchScrollRequest(page.getScrollId())
+                    .scroll(new TimeValue(timeoutMills)), type);
+            }
+            LOG.info("0 hits, exit");
+        } finally {
+            clearScroll(page.getScrollId());
+        }
+    }
+
+    public <T> void scroll(QueryBuilder builder, Class<T> type, Consumer<T> consumer) throws Exception {
+        scroll(builder, DEFAULT_SCROLL_SIZE, null, null, type, consumer, -1);
+    }
+
+    /**
+     * 清理不再使用的 scroll
+     */
+    public CompletableFuture<Boolean> clearScrollAsync(String scrollId) {
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollId);
+        return client.getClient().clearScrollAsync(clearScrollRequest).thenApply(ClearScrollResponse::isSucceeded);
+    }
+
+    private void clearScroll(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        try {
+            ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+            clearScrollRequest.addScrollId(scrollId);
+            client.getClient().clearScroll(clearScrollRequest);
+        } catch (Exception e) {
+            LOG.warn("clear scroll failed: " + e.getMessage());
+        }
+    }
+
     //---------------------------------------------------------------------------------------
 
 
@@ -435,7 +621,10 @@ public class ReaderApi {
         AggregationBuilder aggregationBuilder, boolean isCache) throws Exception {
 
         SearchResponse response = getAggSearchResponse(queryBuilder, aggregationBuilder, isCache);
+        return toAggregations(response);
+    }
 
+    private static Map<String, Aggregation> toAggregations(SearchResponse response) {
         if (response.getFailedShards() != 0) { //只要有一个fail，就返回空list
             LOG.error("fail shards " + response.getFailedShards());
             return null;
@@ -458,14 +647,19 @@ public class ReaderApi {
         List<AggregationBuilder> aggregationBuilderList, boolean isCache) throws Exception {
         SearchRequest request = getSearchRequest(queryBuilder, aggregationBuilderList, isCache);
 
-        SearchResponse response = client.getClient().search(request);
+        SearchResponse response = client.getClient().batchSearch(request);
+        return toAggregations(response);
+    }
 
-        if (response.getFailedShards() != 0) { //只要有一个fail，就返回空list
-            LOG.error("fail shards " + response.getFailedShards());
-            return null;
-        }
+    public CompletableFuture<Map<String, Aggregation>> aggSearchAsync(QueryBuilder queryBuilder,
+        AggregationBuilder aggregationBuilder) {
+        return aggSearchAsync(queryBuilder, Collections.singletonList(aggregationBuilder), false);
+    }
 
-        return response.getAggregations().getAsMap();
+    public CompletableFuture<Map<String, Aggregation>> aggSearchAsync(QueryBuilder queryBuilder,
+        List<AggregationBuilder> aggregationBuilderList, boolean isCache) {
+        SearchRequest request = getSearchRequest(queryBuilder, aggregationBuilderList, isCache);
+        return client.getClient().batchSearchAsync(request).thenApply(ReaderApi::toAggregations);
     }
 
     //---------------------------------------------------------------------------------------
@@ -481,7 +675,59 @@ public class ReaderApi {
         List<AggregationBuilder> aggregationBuilderList, boolean isCache) throws Exception {
         SearchRequest request = getSearchRequest(queryBuilder, aggregationBuilderList, isCache);
 
-        return client.getClient().search(request);
+        return client.getClient().batchSearch(request);
+    }
+
+    //---------------------------按id批量获取（mget）-------------------------------------------
+    public Map<String, EsDoc> getByIds(Collection<String> ids) throws Exception {
+        return getByIds(ids, null);
+    }
+
+    /**
+     * 按id批量获取，id 较多时拆成多个 _mget 并行发送；开启 DocCache 时先查缓存。
+     * 有多个 index 时每个 id 在每个 index 中各查一次，取第一个找到的结果
+     *
+     * @return id 到 doc 的映射，按 ids 的顺序，不包含未找到的 id；_source 在访问字段时才解析
+     */
+    public Map<String, EsDoc> getByIds(Collection<String> ids, String[] includeSource) throws Exception {
+        String type = client.getClient().getEsVersion() == V7_9 ? null : indexType;
+        FetchSourceContext fetchSource = includeSource == null
+            ? null : new FetchSourceContext(true, includeSource, Strings.EMPTY_ARRAY);
+        MultiGetRequest request = new MultiGetRequest();
+        for (String id : ids) {
+            for (String index : indices) {
+                request.add(new MultiGetRequest.Item(index, type, id).fetchSourceContext(fetchSource));
+            }
+        }
+
+        MultiGetResponse response = client.getClient().mget(request, DEFAULT_MGET_CHUNK_SIZE);
+        Map<String, EsDoc> docs = new LinkedHashMap<>();
+        for (MultiGetItemResponse item : response.getResponses()) {
+            if (item.isFailed()) {
+                LOG.error("mget failed, id: " + item.getId() + ", " + item.getFailure().getMessage());
+                continue;
+            }
+            GetResponse doc = item.getResponse();
+            if (doc.isExists() && !docs.containsKey(doc.getId())) {
+                docs.put(doc.getId(), new EsDoc(EsHit.of(doc)));
+            }
+        }
+        return docs;
+    }
+
+    //---------------------------多个查询一次请求（msearch）------------------------------------
+    /**
+     * 多个查询合并为一个 _msearch 请求，返回结果与 sourceBuilders 顺序一致；单个查询失败时对应项为 failure
+     */
+    public MultiSearchResponse msearch(List<SearchSourceBuilder> sourceBuilders) throws Exception {
+        MultiSearchRequest request = new MultiSearchRequest();
+        for (SearchSourceBuilder sourceBuilder : sourceBuilders) {
+            if (timeoutMills != 0) {
+                sourceBuilder.timeout(new TimeValue(timeoutMills));
+            }
+            request.add(getSearchRequest(sourceBuilder, null));
+        }
+        return client.getClient().msearch(request);
     }
 
     public SearchRequest getSearchRequest(QueryBuilder queryBuilder,
@@ -568,6 +814,16 @@ public class ReaderApi {
      * @return 搜过结果
      */
     public Suggest suggestSearch(List<EsSuggest> esSuggests) throws Exception {
+        SearchResponse search = client.getClient().search(getSuggestRequest(esSuggests));
+
+        return search.getSuggest();
+    }
+
+    public CompletableFuture<Suggest> suggestSearchAsync(List<EsSuggest> esSuggests) {
+        return client.getClient().searchAsync(getSuggestRequest(esSuggests)).thenApply(SearchResponse::getSuggest);
+    }
+
+    private SearchRequest getSuggestRequest(List<EsSuggest> esSuggests) {
         SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
 
         if (timeoutMills != 0) {
@@ -580,10 +836,7 @@ public class ReaderApi {
         }
         sourceBuilder.suggest(suggestBuilder);
 
-        SearchRequest request = getSearchRequest(sourceBuilder, null);
-        SearchResponse search = client.getClient().search(request);
-
-        return search.getSuggest();
+        return getSearchRequest(sourceBuilder, null);
     }
 
 }
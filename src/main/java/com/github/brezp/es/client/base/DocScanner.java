@@ -2,6 +2,7 @@ package com.github.brezp.es.client.base;
 
 
 import com.github.brezp.es.client.entity.EsDoc;
+import com.github.brezp.es.client.entity.EsHit;
 
 public abstract class DocScanner  {
     public boolean stop = false;
@@ -9,4 +10,11 @@ public abstract class DocScanner  {
     public void scanDoc(EsDoc doc) {
 
     }
-}
\ No newline at end of file
+
+    /**
+     * scroll 时每条结果先经过这里，默认包装成惰性的 {@link EsDoc}；只需原始 _source 的场景可以覆盖此方法
+     */
+    public void scanHit(EsHit hit) {
+        scanDoc(new EsDoc(hit));
+    }
+}
@@ -6,7 +6,13 @@ import com.github.brezp.es.client.filter.AbstractRequestFilter;
 import com.github.brezp.es.client.filter.AggFilter;
 import com.github.brezp.es.client.filter.ScriptFilter;
 import com.github.brezp.es.client.filter.ScrollFilter;
+import com.github.brezp.es.client.metrics.FilterMetrics;
+import com.github.brezp.es.client.metrics.FilterMetricsRecorder;
+import com.github.brezp.es.client.metrics.MBeans;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -15,15 +21,25 @@ import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.log4j.Logger;
 import org.elasticsearch.client.RestClientProxy;
 import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.LatencyAwareRestClient;
 import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.breaker.CircuitBreakerPolicy;
+import org.elasticsearch.client.hedge.HedgePolicy;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.node.Node;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -42,6 +58,8 @@ public class EsClient {
     private boolean reuse;
     private Settings settings;
     private String cacheKey;
+    private List<ObjectName> mbeans = Collections.emptyList();
+    private Builder.CachedProxy shared;
 
     public RestClientProxy getClient() {
         if (reuse) {
@@ -52,7 +70,19 @@ public class EsClient {
     }
 
     public void close() {
-        if (client != null && !reuse) {
+        //复用时 MBean 属于缓存的 proxy，最后一个使用者关闭时才随 proxy 一起释放
+        if (shared != null) {
+            Builder.releaseProxy(shared);
+            shared = null;
+        }
+        if (!reuse) {
+            unregisterMBeans(mbeans);
+            mbeans = Collections.emptyList();
+        }
+        if (client != null && !reuse && lowclient != null) {
+            //非复用时 proxy 由本实例创建，与 CachedProxy.release 相同地停止后台线程
+            client.disableSearchBatching();
+            client.disableHedging();
             try {
                 lowclient.close();
             } catch (IOException e) {
@@ -65,6 +95,16 @@ public class EsClient {
         return settings;
     }
 
+    private static void unregisterMBeans(List<ObjectName> mbeans) {
+        for (ObjectName mbean : mbeans) {
+            try {
+                MBeans.unregister(mbean);
+            } catch (JMException e) {
+                LOG.warn("failed to unregister " + mbean, e);
+            }
+        }
+    }
+
     public static class Builder {
 
         private static CacheStrategy cacheStrategy = CacheStrategy.ALWAYS; //只记录缓存策略，不引用实际缓存，允许用户配置后再初始化（Lazy）
@@ -73,6 +113,31 @@ public class EsClient {
             Builder.cacheStrategy = cacheStrategy;
         }
 
+        /**
+         * 最多缓存的 RestClientProxy 数，超出后淘汰最久未使用的
+         */
+        public static final int MAX_CACHED_PROXIES = 64;
+
+        /**
+         * 配置完成的 RestClientProxy，按 低层client的缓存key + 配置 复用；被淘汰、替换后不再分配给新的 EsClient，
+         * 仍持有它的 EsClient 照常可用，最后一个关闭时才停止后台线程、注销 MBean
+         */
+        private static final Cache<ProxyKey, CachedProxy> cachedProxies = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumSize(MAX_CACHED_PROXIES)
+            .removalListener((RemovalListener<ProxyKey, CachedProxy>) notification -> {
+                CachedProxy removed = notification.getValue();
+                if (removed.refs == 0) {
+                    removed.release();
+                }
+            })
+            .build();
+
+        /**
+         * 本机名只解析一次，getLocalHost 可能触发 DNS 查询
+         */
+        private static volatile String localHostName;
+
         protected RestClientProxy client = null;
 
         private Settings settings = null;
@@ -90,6 +155,75 @@ public class EsClient {
          */
         private int clientSocketTimeoutMillis = 120 * 1000;
 
+        /**
+         * filter改写结果缓存的字节数上限，<=0 表示不开启（默认）
+         */
+        private long rewriteCacheMaxBytes = 0;
+
+        /**
+         * filter执行统计，null 表示不统计
+         */
+        private FilterMetrics filterMetrics = null;
+
+        /**
+         * 合并并发 search 的时间窗口和批大小，<=0 表示不合并（默认）
+         */
+        private long searchBatchWindowMillis = 0;
+        private int searchBatchMaxSize = 0;
+
+        /**
+         * mget 按id缓存的条目数和过期时间，<=0 表示不缓存（默认）
+         */
+        private long docCacheMaxEntries = 0;
+        private long docCacheTtlMillis = 0;
+
+        /**
+         * 合并相同的进行中只读请求，默认不开启
+         */
+        private boolean requestCoalescing = false;
+
+        /**
+         * 请求体超过该字节数时 gzip 压缩，<=0 表示不压缩（默认）；acceptGzip 时请求 es 压缩响应
+         */
+        private int gzipMinRequestBytes = 0;
+        private boolean acceptGzip = false;
+
+        /**
+         * 响应格式，null 表示 json（默认）；encodeRequests 时 search、bulk 的 body 也使用该格式
+         */
+        private XContentType responseFormat = null;
+        private boolean encodeRequests = false;
+
+        /**
+         * 对冲请求的参数，null 表示不对冲（默认）
+         */
+        private HedgePolicy hedgePolicy = null;
+
+        /**
+         * 按节点延迟和进行中的请求数选择节点，默认不开启（RestClient 轮询）
+         */
+        private boolean latencyAwareRouting = false;
+
+        /**
+         * 请求耗时统计，默认不开启；mbeanName 不为空时注册为 JMX MBean
+         */
+        private boolean requestMetrics = false;
+        private String requestMetricsMBeanName = null;
+
+        /**
+         * 熔断的参数，null 表示不开启（默认）；mbeanName 不为空时注册为 JMX MBean
+         */
+        private CircuitBreakerPolicy circuitBreakerPolicy = null;
+        private String circuitBreakerMBeanName = null;
+
+        /**
+         * 同时缓存、解析中的响应字节数上限，0 表示不限制（默认）；mbeanName 不为空时注册为 JMX MBean
+         */
+        private long responseBudgetMaxBytes = 0;
+        private long responseBudgetMaxResponseBytes = 0;
+        private long responseBudgetMaxWaitMillis = 0;
+        private String responseBudgetMBeanName = null;
+
         // SearchGuard 账号密码认证
         private String username = null;
         private String password = null;
@@ -146,6 +280,9 @@ public class EsClient {
 
         /**
          * 是否需要复用LowLevelClient，在需要复用LowLevelClient的情况下，close client不生效
+         * <p>
+         * 复用时配置相同的 RestClientProxy 也会复用：filter按类比较，HedgePolicy、CircuitBreakerPolicy按参数比较，
+         * FilterMetrics 需传入同一个实例才算相同
          *
          * @param reuseClient，默认false
          * @return
@@ -155,6 +292,165 @@ public class EsClient {
             return this;
         }
 
+        /**
+         * 开启filter改写结果缓存，需要引入 caffeine 依赖
+         *
+         * @param rewriteCacheMaxBytes 缓存的body总字节数上限，<=0 表示不开启
+         * @return
+         */
+        public Builder setRewriteCacheMaxBytes(long rewriteCacheMaxBytes) {
+            this.rewriteCacheMaxBytes = rewriteCacheMaxBytes;
+            return this;
+        }
+
+        /**
+         * 开启filter执行统计，可传入 {@link FilterMetricsRecorder} 或接入监控系统的自定义实现
+         *
+         * @param filterMetrics
+         * @return
+         */
+        public Builder setFilterMetrics(FilterMetrics filterMetrics) {
+            this.filterMetrics = filterMetrics;
+            return this;
+        }
+
+        /**
+         * 开启 ReaderApi 中 search、aggSearch 的合并：并发请求在 windowMillis 内或攒够 maxBatchSize 个时合并为一个 _msearch
+         *
+         * @param windowMillis 等待窗口，例如 2ms
+         * @param maxBatchSize 一批最多的请求数
+         * @return
+         */
+        public Builder setSearchBatching(long windowMillis, int maxBatchSize) {
+            this.searchBatchWindowMillis = windowMillis;
+            this.searchBatchMaxSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * 开启 ReaderApi.getByIds 的按id缓存，需要引入 caffeine 依赖
+         *
+         * @param maxEntries 最多缓存的条目数
+         * @param ttlMillis 写入后过期的时间
+         * @return
+         */
+        public Builder setDocCache(long maxEntries, long ttlMillis) {
+            this.docCacheMaxEntries = maxEntries;
+            this.docCacheTtlMillis = ttlMillis;
+            return this;
+        }
+
+        /**
+         * 开启相同只读请求的合并：看板刷新等场景下并发发出的相同 search、aggSearch 只发送一次
+         *
+         * @param requestCoalescing
+         * @return
+         */
+        public Builder setRequestCoalescing(boolean requestCoalescing) {
+            this.requestCoalescing = requestCoalescing;
+            return this;
+        }
+
+        /**
+         * 开启 gzip，适合跨机房带宽紧张的场景；响应压缩需要 es 开启 http.compression
+         *
+         * @param minRequestBytes 请求体（如 bulk）超过该字节数时压缩，<=0 不压缩请求
+         * @param acceptGzip 是否请求压缩响应
+         * @return
+         */
+        public Builder setGzip(int minRequestBytes, boolean acceptGzip) {
+            this.gzipMinRequestBytes = minRequestBytes;
+            this.acceptGzip = acceptGzip;
+            return this;
+        }
+
+        /**
+         * 请求 SMILE 或 CBOR 格式的响应，减少解析大结果的开销
+         *
+         * @param responseFormat SMILE 或 CBOR
+         * @param encodeRequests search、msearch、bulk 的 body 是否也使用该格式（bulk、msearch 只支持 SMILE）
+         * @return
+         */
+        public Builder setResponseFormat(XContentType responseFormat, boolean encodeRequests) {
+            this.responseFormat = responseFormat;
+            this.encodeRequests = encodeRequests;
+            return this;
+        }
+
+        /**
+         * 开启只读请求的对冲，减少个别慢节点造成的长尾延迟
+         *
+         * @param hedgePolicy 对冲延迟、副本数和比例上限
+         * @return
+         */
+        public Builder setHedging(HedgePolicy hedgePolicy) {
+            this.hedgePolicy = hedgePolicy;
+            return this;
+        }
+
+        /**
+         * 开启后请求优先发往延迟低、进行中请求少的节点，慢节点自动分到更少的请求
+         *
+         * @return
+         */
+        public Builder setLatencyAwareRouting(boolean latencyAwareRouting) {
+            this.latencyAwareRouting = latencyAwareRouting;
+            return this;
+        }
+
+        /**
+         * 开启请求耗时统计，通过 {@link RestClientProxy#getRequestMetrics()} 读取
+         *
+         * @param mbeanName 不为空时注册为 JMX MBean，close 时注销
+         * @return
+         */
+        public Builder setRequestMetrics(boolean requestMetrics, String mbeanName) {
+            this.requestMetrics = requestMetrics;
+            this.requestMetricsMBeanName = mbeanName;
+            return this;
+        }
+
+        /**
+         * 开启集群级熔断，集群拒绝请求（429）、不可用或超时的比例过高时，请求直接失败不再发送，
+         * 通过 {@link RestClientProxy#getCircuitBreaker()} 读取状态
+         *
+         * @param policy    失败率、慢请求阈值和恢复试探的参数
+         * @param mbeanName 不为空时注册为 JMX MBean，close 时注销
+         * @return
+         */
+        public Builder setCircuitBreaker(CircuitBreakerPolicy policy, String mbeanName) {
+            this.circuitBreakerPolicy = policy;
+            this.circuitBreakerMBeanName = mbeanName;
+            return this;
+        }
+
+        /**
+         * 限制同时缓存、解析中的响应字节数，每个请求预留的字节数与 RestClient 默认的 buffer 上限相同（不超过 maxBytes），
+         * 见 {@link #setResponseBudget(long, long, long, String)}
+         */
+        public Builder setResponseBudget(long maxBytes, long maxWaitMillis, String mbeanName) {
+            return setResponseBudget(maxBytes, 0, maxWaitMillis, mbeanName);
+        }
+
+        /**
+         * 限制同时缓存、解析中的响应字节数，避免大量大响应同时到达时 OOM：每个请求发送前预留 maxResponseBytes，
+         * 预留之和达到上限后同步请求排队，异步请求直接失败；超过预留的响应以 ContentTooLongException 失败。
+         * 通过 {@link RestClientProxy#getResponseBudget()} 读取使用情况
+         *
+         * @param maxBytes         上限，0 表示不限制
+         * @param maxResponseBytes 每个请求预留的字节数，即单个响应的上限，0 表示与 RestClient 默认的 buffer 上限相同
+         * @param maxWaitMillis    同步请求排队等待的最长时间，超时抛出 ResponseBudgetExceededException
+         * @param mbeanName        不为空时注册为 JMX MBean，close 时注销
+         * @return
+         */
+        public Builder setResponseBudget(long maxBytes, long maxResponseBytes, long maxWaitMillis, String mbeanName) {
+            this.responseBudgetMaxBytes = maxBytes;
+            this.responseBudgetMaxResponseBytes = maxResponseBytes;
+            this.responseBudgetMaxWaitMillis = maxWaitMillis;
+            this.responseBudgetMBeanName = mbeanName;
+            return this;
+        }
+
         public Builder setUsername(String username) {
             this.username = username;
             return this;
@@ -168,7 +464,8 @@ public class EsClient {
         private String clientKey(HttpHost[] httpHosts, String username, String password) {
             return Arrays.stream(httpHosts)
                 .map(HttpHost::toHostString)
-                .collect(Collectors.joining(",")) + "," + username + "," + password;
+                .collect(Collectors.joining(",")) + "," + username + "," + password
+                + (latencyAwareRouting ? ",latencyAware" : "");
         }
 
 
@@ -181,15 +478,15 @@ public class EsClient {
                     .put("client.transport.ping_timeout", "60s")
                     .build();
 
-                InetAddress IP = InetAddress.getLocalHost();
+                String hostName = localHostName();
 
-                LOG.info("nodeID : \t" + IP.getHostName());
+                LOG.info("nodeID : \t" + hostName);
 
                 /**
                  * 保证 nodeId 的字符串长度大于7，不然报错!
                  */
                 settings = Node
-                    .addNodeNameIfNeeded(settings, IP.getHostName() + UUID.randomUUID().toString());
+                    .addNodeNameIfNeeded(settings, hostName + UUID.randomUUID().toString());
             }
 
             client.setSettings(settings);
@@ -203,10 +500,14 @@ public class EsClient {
                 if (esHosts != null) {
                     client.lowclient = reuseClient
                         ? getCacheLowLevelClient(clientCacheKey, httpHosts, username, password)
-                        : getLowLevelClient(httpHosts, username, password);
-                    client.client = new RestClientProxy(client.lowclient, this.esVersion);
-                    client.client.addFilters(defaultFilters);
-                    client.client.addFilters(filters);
+                        : authEnabled() ? getLowLevelClient(httpHosts, username, password) : getLowLevelClient(httpHosts);
+                    if (reuseClient) {
+                        client.shared = getCacheProxy(clientCacheKey, client.lowclient, this);
+                        client.client = client.shared.proxy;
+                    } else {
+                        client.client = newProxy(client.lowclient);
+                        client.mbeans = registerMBeans(client.client);
+                    }
                     client.reuse = reuseClient;
                 } else {
                     throw new Exception("error esHosts");
@@ -215,6 +516,122 @@ public class EsClient {
             return client;
         }
 
+        /**
+         * 同一个低层client、相同配置的 proxy 只创建一次；低层client被缓存淘汰重建后，旧的 proxy 随之替换。
+         * 返回前引用计数加一，由 EsClient.close 归还
+         */
+        private static synchronized CachedProxy getCacheProxy(String clientCacheKey, RestClient lowclient,
+            Builder builder) {
+            ProxyKey key = new ProxyKey(clientCacheKey, builder);
+            CachedProxy cached = cachedProxies.getIfPresent(key);
+            if (cached == null || cached.proxy.getLowLevelClient() != lowclient) {
+                RestClientProxy proxy = builder.newProxy(lowclient);
+                cached = new CachedProxy(key, proxy, builder.registerMBeans(proxy));
+                cachedProxies.put(key, cached);
+            }
+            cached.refs++;
+            return cached;
+        }
+
+        /**
+         * 最后一个使用者关闭后移出缓存并释放；之后相同配置的 EsClient 会重建 proxy
+         */
+        private static synchronized void releaseProxy(CachedProxy cached) {
+            if (--cached.refs > 0) {
+                return;
+            }
+            cachedProxies.asMap().remove(cached.key, cached);
+            cached.release();
+        }
+
+        /**
+         * 低层client重建后，基于旧client的 proxy 都已不可用
+         */
+        private static synchronized void releaseProxies(String clientCacheKey) {
+            List<ProxyKey> stale = cachedProxies.asMap().keySet().stream()
+                .filter(key -> key.clientCacheKey.equals(clientCacheKey))
+                .collect(Collectors.toList());
+            cachedProxies.invalidateAll(stale);
+        }
+
+        private RestClientProxy newProxy(RestClient lowclient) {
+            RestClientProxy proxy = new RestClientProxy(lowclient, this.esVersion);
+            proxy.addFilters(defaultFilters);
+            proxy.addFilters(filters);
+            if (rewriteCacheMaxBytes > 0) {
+                proxy.enableRewriteCache(rewriteCacheMaxBytes);
+            }
+            if (filterMetrics != null) {
+                proxy.setFilterMetrics(filterMetrics);
+            }
+            if (searchBatchWindowMillis > 0 && searchBatchMaxSize > 0) {
+                proxy.enableSearchBatching(searchBatchWindowMillis, searchBatchMaxSize);
+            }
+            if (docCacheMaxEntries > 0 && docCacheTtlMillis > 0) {
+                proxy.enableDocCache(docCacheMaxEntries, docCacheTtlMillis);
+            }
+            if (requestCoalescing) {
+                proxy.enableRequestCoalescing();
+            }
+            if (gzipMinRequestBytes > 0 || acceptGzip) {
+                proxy.enableGzip(gzipMinRequestBytes, acceptGzip);
+            }
+            if (responseFormat != null) {
+                proxy.useResponseFormat(responseFormat, encodeRequests);
+            }
+            if (hedgePolicy != null) {
+                proxy.enableHedging(hedgePolicy);
+            }
+            if (requestMetrics) {
+                proxy.enableRequestMetrics();
+            }
+            if (circuitBreakerPolicy != null) {
+                proxy.enableCircuitBreaker(circuitBreakerPolicy);
+            }
+            if (responseBudgetMaxBytes > 0 && responseBudgetMaxResponseBytes > 0) {
+                proxy.enableResponseBudget(responseBudgetMaxBytes, responseBudgetMaxResponseBytes,
+                    responseBudgetMaxWaitMillis);
+            } else if (responseBudgetMaxBytes > 0) {
+                proxy.enableResponseBudget(responseBudgetMaxBytes, responseBudgetMaxWaitMillis);
+            }
+            return proxy;
+        }
+
+        private List<ObjectName> registerMBeans(RestClientProxy proxy) {
+            List<ObjectName> mbeans = new ArrayList<>(3);
+            if (proxy.getRequestMetrics() != null && !Strings.isNullOrEmpty(requestMetricsMBeanName)) {
+                try {
+                    mbeans.add(proxy.getRequestMetrics().registerMBean(requestMetricsMBeanName));
+                } catch (JMException e) {
+                    LOG.warn("failed to register request metrics mbean " + requestMetricsMBeanName, e);
+                }
+            }
+            if (proxy.getCircuitBreaker() != null && !Strings.isNullOrEmpty(circuitBreakerMBeanName)) {
+                try {
+                    mbeans.add(proxy.getCircuitBreaker().registerMBean(circuitBreakerMBeanName));
+                } catch (JMException e) {
+                    LOG.warn("failed to register circuit breaker mbean " + circuitBreakerMBeanName, e);
+                }
+            }
+            if (proxy.getResponseBudget() != null && !Strings.isNullOrEmpty(responseBudgetMBeanName)) {
+                try {
+                    mbeans.add(proxy.getResponseBudget().registerMBean(responseBudgetMBeanName));
+                } catch (JMException e) {
+                    LOG.warn("failed to register response budget mbean " + responseBudgetMBeanName, e);
+                }
+            }
+            return mbeans;
+        }
+
+        private static String localHostName() throws UnknownHostException {
+            String name = localHostName;
+            if (name == null) {
+                name = InetAddress.getLocalHost().getHostName();
+                localHostName = name;
+            }
+            return name;
+        }
+
         public static HttpHost[] initHosts(String[] esHosts, int port) {
             HttpHost[] httpHosts = new HttpHost[esHosts.length];
             for (int i = 0; i < esHosts.length; i++) {
@@ -239,10 +656,14 @@ public class EsClient {
             RestClient restClient = authEnabled() ? getLowLevelClient(httpHosts, username, password)
                 : getLowLevelClient(httpHosts);
             cachedClients.put(clientCacheKey, restClient);
+            releaseProxies(clientCacheKey);
             return restClient;
         }
 
         private RestClient getLowLevelClient(HttpHost[] httpHosts) {
+            if (latencyAwareRouting) {
+                return LatencyAwareRestClient.build(httpHosts, maxRetryTimeoutMillis, timeoutCallback(), null);
+            }
             RestClientBuilder builder = RestClient.builder(httpHosts);
             builder.setMaxRetryTimeoutMillis(maxRetryTimeoutMillis);
             addTimeout(builder);
@@ -258,12 +679,17 @@ public class EsClient {
             credentialsProvider
                 .setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
 
-            RestClientBuilder builder = RestClient.builder(httpHosts);
-            builder.setMaxRetryTimeoutMillis(maxRetryTimeoutMillis);
-            builder.setHttpClientConfigCallback(httpClientBuilder -> {
+            RestClientBuilder.HttpClientConfigCallback authCallback = httpClientBuilder -> {
                 httpClientBuilder.disableAuthCaching();
                 return httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-            });
+            };
+            if (latencyAwareRouting) {
+                return LatencyAwareRestClient.build(httpHosts, maxRetryTimeoutMillis, timeoutCallback(), authCallback);
+            }
+
+            RestClientBuilder builder = RestClient.builder(httpHosts);
+            builder.setMaxRetryTimeoutMillis(maxRetryTimeoutMillis);
+            builder.setHttpClientConfigCallback(authCallback);
             addTimeout(builder);
 
             return builder.build();
@@ -274,9 +700,143 @@ public class EsClient {
         }
 
         private void addTimeout(RestClientBuilder clientBuilder) {
-            clientBuilder.setRequestConfigCallback(requestConfigBuilder -> requestConfigBuilder
-                .setSocketTimeout(clientSocketTimeoutMillis)
-            );
+            clientBuilder.setRequestConfigCallback(timeoutCallback());
+        }
+
+        private RestClientBuilder.RequestConfigCallback timeoutCallback() {
+            return requestConfigBuilder -> requestConfigBuilder
+                .setSocketTimeout(clientSocketTimeoutMillis);
+        }
+
+        /**
+         * 低层client的缓存key + 影响 proxy 的配置；filter按 equals 比较（未覆写时即同一实例）；hedgePolicy、circuitBreakerPolicy 按参数比较；
+         * filterMetrics 是统计的接收方，按实例比较；默认filter每个Builder都相同，不参与比较
+         */
+        private static final class ProxyKey {
+            private final String clientCacheKey;
+            private final EsVersion esVersion;
+            private final List<AbstractRequestFilter> filters;
+            private final long rewriteCacheMaxBytes;
+            private final FilterMetrics filterMetrics;
+            private final long searchBatchWindowMillis;
+            private final int searchBatchMaxSize;
+            private final long docCacheMaxEntries;
+            private final long docCacheTtlMillis;
+            private final boolean requestCoalescing;
+            private final int gzipMinRequestBytes;
+            private final boolean acceptGzip;
+            private final XContentType responseFormat;
+            private final boolean encodeRequests;
+            private final HedgePolicy hedgePolicy;
+            private final boolean requestMetrics;
+            private final String requestMetricsMBeanName;
+            private final CircuitBreakerPolicy circuitBreakerPolicy;
+            private final String circuitBreakerMBeanName;
+            private final long responseBudgetMaxBytes;
+            private final long responseBudgetMaxResponseBytes;
+            private final long responseBudgetMaxWaitMillis;
+            private final String responseBudgetMBeanName;
+
+            private ProxyKey(String clientCacheKey, Builder builder) {
+                this.clientCacheKey = clientCacheKey;
+                this.esVersion = builder.esVersion;
+                this.filters = builder.filters == null ? Collections.emptyList() : new ArrayList<>(builder.filters);
+                this.rewriteCacheMaxBytes = builder.rewriteCacheMaxBytes;
+                this.filterMetrics = builder.filterMetrics;
+                this.searchBatchWindowMillis = builder.searchBatchWindowMillis;
+                this.searchBatchMaxSize = builder.searchBatchMaxSize;
+                this.docCacheMaxEntries = builder.docCacheMaxEntries;
+                this.docCacheTtlMillis = builder.docCacheTtlMillis;
+                this.requestCoalescing = builder.requestCoalescing;
+                this.gzipMinRequestBytes = builder.gzipMinRequestBytes;
+                this.acceptGzip = builder.acceptGzip;
+                this.responseFormat = builder.responseFormat;
+                this.encodeRequests = builder.encodeRequests;
+                this.hedgePolicy = builder.hedgePolicy;
+                this.requestMetrics = builder.requestMetrics;
+                this.requestMetricsMBeanName = builder.requestMetricsMBeanName;
+                this.circuitBreakerPolicy = builder.circuitBreakerPolicy;
+                this.circuitBreakerMBeanName = builder.circuitBreakerMBeanName;
+                this.responseBudgetMaxBytes = builder.responseBudgetMaxBytes;
+                this.responseBudgetMaxResponseBytes = builder.responseBudgetMaxResponseBytes;
+                this.responseBudgetMaxWaitMillis = builder.responseBudgetMaxWaitMillis;
+                this.responseBudgetMBeanName = builder.responseBudgetMBeanName;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) {
+                    return true;
+                }
+                if (!(o instanceof ProxyKey)) {
+                    return false;
+                }
+                ProxyKey other = (ProxyKey) o;
+                return clientCacheKey.equals(other.clientCacheKey)
+                    && esVersion == other.esVersion
+                    && filters.equals(other.filters)
+                    && rewriteCacheMaxBytes == other.rewriteCacheMaxBytes
+                    && filterMetrics == other.filterMetrics
+                    && searchBatchWindowMillis == other.searchBatchWindowMillis
+                    && searchBatchMaxSize == other.searchBatchMaxSize
+                    && docCacheMaxEntries == other.docCacheMaxEntries
+                    && docCacheTtlMillis == other.docCacheTtlMillis
+                    && requestCoalescing == other.requestCoalescing
+                    && gzipMinRequestBytes == other.gzipMinRequestBytes
+                    && acceptGzip == other.acceptGzip
+                    && responseFormat == other.responseFormat
+                    && encodeRequests == other.encodeRequests
+                    && Objects.equals(hedgePolicy, other.hedgePolicy)
+                    && requestMetrics == other.requestMetrics
+                    && Objects.equals(requestMetricsMBeanName, other.requestMetricsMBeanName)
+                    && Objects.equals(circuitBreakerPolicy, other.circuitBreakerPolicy)
+                    && Objects.equals(circuitBreakerMBeanName, other.circuitBreakerMBeanName)
+                    && responseBudgetMaxBytes == other.responseBudgetMaxBytes
+                    && responseBudgetMaxResponseBytes == other.responseBudgetMaxResponseBytes
+                    && responseBudgetMaxWaitMillis == other.responseBudgetMaxWaitMillis
+                    && Objects.equals(responseBudgetMBeanName, other.responseBudgetMBeanName);
+            }
+
+            @Override
+            public int hashCode() {
+                int hash = Objects.hash(clientCacheKey, esVersion, rewriteCacheMaxBytes, searchBatchWindowMillis,
+                    searchBatchMaxSize, docCacheMaxEntries, docCacheTtlMillis, requestCoalescing, gzipMinRequestBytes,
+                    acceptGzip, responseFormat, encodeRequests, hedgePolicy, requestMetrics, requestMetricsMBeanName,
+                    circuitBreakerPolicy, circuitBreakerMBeanName, responseBudgetMaxBytes, responseBudgetMaxResponseBytes,
+                    responseBudgetMaxWaitMillis, responseBudgetMBeanName);
+                hash = hash * 31 + filters.hashCode();
+                return hash * 31 + System.identityHashCode(filterMetrics);
+            }
+        }
+
+        /**
+         * 缓存的 proxy 及持有它的 EsClient 数；refs 只在 Builder 类锁内读写（缓存的淘汰回调也在锁内触发）
+         */
+        private static final class CachedProxy {
+            private final ProxyKey key;
+            private final RestClientProxy proxy;
+            private final List<ObjectName> mbeans;
+            private int refs;
+            private boolean released;
+
+            private CachedProxy(ProxyKey key, RestClientProxy proxy, List<ObjectName> mbeans) {
+                this.key = key;
+                this.proxy = proxy;
+                this.mbeans = mbeans;
+            }
+
+            /**
+             * 已无 EsClient 持有，停止后台线程、注销 MBean；移出缓存与引用归零都会调用，只执行一次
+             */
+            private void release() {
+                if (released) {
+                    return;
+                }
+                released = true;
+                proxy.disableHedging();
+                proxy.disableSearchBatching();
+                unregisterMBeans(mbeans);
+            }
         }
     }
 
@@ -0,0 +1,146 @@
+package com.github.brezp.es.client.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.index.get.GetField;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * mget 的按id缓存，key 为 {@link MultiGetRequest.Item} 中 index、type、id、routing、parent、stored_fields、version、
+ * _source 过滤的不可变拷贝，调用后修改 item 不影响缓存；value 为 get 结果，未找到的结果也会缓存。
+ * <p>
+ * 条目数有上限，写入 ttlMillis 后过期；写操作不会主动失效缓存，需要强一致的场景不要开启。
+ * <p>
+ * 写入和读取时都拷贝一份 {@link GetResponse}：_source 共享原始字节，由各调用方各自解析，修改 getSourceAsMap()
+ * 的结果不影响缓存和其他调用方。
+ * caffeine 依赖的scope为provided，需要使用方手动加入
+ *
+ * @author brezp
+ */
+public class DocCache {
+
+    private final Cache<Key, GetResponse> cache;
+
+    public DocCache(long maxEntries, long ttlMillis) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+            .recordStats()
+            .build();
+    }
+
+    public GetResponse get(MultiGetRequest.Item item) {
+        GetResponse cached = cache.getIfPresent(new Key(item));
+        return cached == null ? null : copy(cached);
+    }
+
+    public void put(MultiGetRequest.Item item, GetResponse response) {
+        cache.put(new Key(item), copy(response));
+    }
+
+    /**
+     * @return 共享 _source 字节、尚未解析的副本
+     */
+    private static GetResponse copy(GetResponse response) {
+        Map<String, GetField> fields = new HashMap<>();
+        if (response.getFields() != null) {
+            for (GetField field : response.getFields().values()) {
+                fields.put(field.getName(), new GetField(field.getName(), new ArrayList<>(field.getValues())));
+            }
+        }
+        return new GetResponse(new GetResult(response.getIndex(), response.getType(), response.getId(),
+            response.getVersion(), response.isExists(), response.getSourceInternal(), fields));
+    }
+
+    public void invalidate(MultiGetRequest.Item item) {
+        cache.invalidate(new Key(item));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 决定 get 结果的 item 字段的拷贝
+     */
+    private static final class Key {
+        private final String index;
+        private final String type;
+        private final String id;
+        private final String routing;
+        private final String parent;
+        private final List<String> storedFields;
+        private final long version;
+        private final VersionType versionType;
+        /**
+         * null 表示未指定 _source 过滤
+         */
+        private final Boolean fetchSource;
+        private final List<String> includes;
+        private final List<String> excludes;
+
+        private Key(MultiGetRequest.Item item) {
+            this.index = item.index();
+            this.type = item.type();
+            this.id = item.id();
+            this.routing = item.routing();
+            this.parent = item.parent();
+            this.storedFields = item.storedFields() == null ? null : Arrays.asList(item.storedFields().clone());
+            this.version = item.version();
+            this.versionType = item.versionType();
+            FetchSourceContext fetchSourceContext = item.fetchSourceContext();
+            this.fetchSource = fetchSourceContext == null ? null : fetchSourceContext.fetchSource();
+            this.includes = fetchSourceContext == null ? null : Arrays.asList(fetchSourceContext.includes().clone());
+            this.excludes = fetchSourceContext == null ? null : Arrays.asList(fetchSourceContext.excludes().clone());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return version == key.version
+                && Objects.equals(index, key.index)
+                && Objects.equals(type, key.type)
+                && Objects.equals(id, key.id)
+                && Objects.equals(routing, key.routing)
+                && Objects.equals(parent, key.parent)
+                && Objects.equals(storedFields, key.storedFields)
+                && versionType == key.versionType
+                && Objects.equals(fetchSource, key.fetchSource)
+                && Objects.equals(includes, key.includes)
+                && Objects.equals(excludes, key.excludes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, type, id, routing, parent, storedFields, version, versionType, fetchSource,
+                includes, excludes);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.github.brezp.es.client.entity;
 
 import org.apache.log4j.Logger;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 
@@ -16,6 +17,10 @@ public class EsDoc {
     private static Logger LOG = Logger.getLogger(EsDoc.class);
 
     private Map<String, Object> dataMap = new HashMap<>();
+    /**
+     * 由 {@link EsHit} 构造时，首次访问字段前 dataMap 为null，_source 只保留原始字节
+     */
+    private EsHit hit;
 
     public EsDoc(String id, Map<String, Object> dataMap) {
         this.dataMap = dataMap;
@@ -26,8 +31,16 @@ public class EsDoc {
         this.dataMap = dataMap;
     }
 
+    /**
+     * 惰性构造：首次访问字段时才解析 _source，只用 {@link #getId()}、{@link #getRawSource()} 时不会解析
+     */
+    public EsDoc(EsHit hit) {
+        this.hit = hit;
+        this.dataMap = null;
+    }
+
     public EsDoc(EsDoc esDoc) {
-        dataMap.putAll(esDoc.dataMap);
+        dataMap.putAll(esDoc.data());
         //深拷贝，不能把id也拷贝过来
         dataMap.remove("id");
     }
@@ -40,34 +53,60 @@ public class EsDoc {
     }
 
     public String getId() {
+        if (dataMap == null && hit != null) {
+            return hit.getId();
+        }
         return (String) dataMap.get("id");
     }
 
+    /**
+     * @return 尚未解析时为 _source 的原始字节，可直接转发；已解析或不是由 {@link EsHit} 构造时为null
+     */
+    public BytesReference getRawSource() {
+        return dataMap == null && hit != null ? hit.getSourceRef() : null;
+    }
+
+    public boolean isMaterialized() {
+        return hit == null || dataMap != null;
+    }
+
+    private Map<String, Object> data() {
+        if (dataMap == null && hit != null) {
+            //EsDoc 会写入 fields 和 id，不能修改 hit 缓存的 _source
+            Map<String, Object> source = hit.newSourceAsMap();
+            Map<String, Object> map = source == null ? new HashMap<>() : source;
+            map.putAll(hit.getFields());
+            map.put("id", hit.getId());
+            dataMap = map;
+        }
+        return dataMap;
+    }
+
     public boolean containsKey(String key) {
-        return dataMap.containsKey(key);
+        return data().containsKey(key);
     }
 
     public Object get(String key) {
-        return dataMap.get(key);
+        return data().get(key);
     }
 
     public void put(String key, Object value) {
-        dataMap.put(key, value);
+        data().put(key, value);
     }
 
     public Object remove(String key) {
-        return dataMap.remove(key);
+        return data().remove(key);
     }
 
     public int size() {
-        return dataMap.size();
+        return data().size();
     }
 
     public String toJson() {
         try {
             XContentBuilder jsonBuild = XContentFactory.jsonBuilder();
             jsonBuild.startObject();
-            for (Map.Entry<String, Object> e : dataMap.entrySet()) {
+            for (Map.Entry<String, Object> e : data().entrySet()) {
                 jsonBuild.field(e.getKey(), e.getValue());
             }
             jsonBuild.endObject();
@@ -83,6 +122,6 @@ public class EsDoc {
     }
 
     public Map<String, Object> getDataMap() {
-        return dataMap;
+        return data();
     }
 }
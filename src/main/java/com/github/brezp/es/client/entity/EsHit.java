@@ -0,0 +1,163 @@
+package com.github.brezp.es.client.entity;
+
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.get.GetField;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 惰性的搜索结果：_id、_score、sort 已解析，_source 只保留原始字节，首次访问时才解析成 Map。
+ * <p>
+ * 只需转发原始json（写文件、写 bulk）时使用 {@link #getSourceRef()} 或 {@link #writeSourceTo(OutputStream)}，
+ * 不会创建 Map。
+ *
+ * @author brezp
+ */
+public class EsHit {
+
+    private final String index;
+    private final String type;
+    private final String id;
+    private final float score;
+    private final Object[] sortValues;
+    private final Map<String, Object> fields;
+    private final BytesReference source;
+    private final XContentType sourceType;
+
+    private Map<String, Object> sourceAsMap;
+
+    public EsHit(String index, String type, String id, float score, Object[] sortValues, Map<String, Object> fields,
+        BytesReference source, XContentType sourceType) {
+        this.index = index;
+        this.type = type;
+        this.id = id;
+        this.score = score;
+        this.sortValues = sortValues == null ? new Object[0] : sortValues;
+        this.fields = fields == null ? Collections.emptyMap() : fields;
+        this.source = source;
+        this.sourceType = sourceType;
+    }
+
+    /**
+     * 由已解析的 SearchHit 构造，_source 仍为原始字节
+     */
+    public static EsHit of(SearchHit hit) {
+        Map<String, Object> fields = null;
+        Map<String, SearchHitField> hitFields = hit.getFields();
+        if (hitFields != null && !hitFields.isEmpty()) {
+            fields = new HashMap<>(hitFields.size());
+            for (Map.Entry<String, SearchHitField> e : hitFields.entrySet()) {
+                fields.put(e.getKey(), e.getValue().getValue());
+            }
+        }
+        return new EsHit(hit.getIndex(), hit.getType(), hit.getId(), hit.getScore(), hit.getSortValues(), fields,
+            hit.getSourceRef(), null);
+    }
+
+    /**
+     * 由 get 结果构造，_source 仍为原始字节
+     */
+    public static EsHit of(GetResponse response) {
+        Map<String, Object> fields = null;
+        Map<String, GetField> getFields = response.getFields();
+        if (getFields != null && !getFields.isEmpty()) {
+            fields = new HashMap<>(getFields.size());
+            for (Map.Entry<String, GetField> e : getFields.entrySet()) {
+                fields.put(e.getKey(), e.getValue().getValue());
+            }
+        }
+        return new EsHit(response.getIndex(), response.getType(), response.getId(), Float.NaN, null, fields,
+            response.getSourceAsBytesRef(), null);
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public Object[] getSortValues() {
+        return sortValues;
+    }
+
+    /**
+     * @return script field 等返回的字段，每个字段取第一个值，与 {@link SearchHitField#getValue()} 相同
+     */
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    public boolean hasSource() {
+        return source != null;
+    }
+
+    /**
+     * @return _source 的原始字节，没有 _source 时为null
+     */
+    public BytesReference getSourceRef() {
+        return source;
+    }
+
+    public String getSourceAsString() {
+        return source == null ? null : source.utf8ToString();
+    }
+
+    public void writeSourceTo(OutputStream out) throws IOException {
+        if (source != null) {
+            source.writeTo(out);
+        }
+    }
+
+    /**
+     * @return _source 解析出的 Map，首次调用时解析，之后返回同一个对象；没有 _source 时为null
+     */
+    public Map<String, Object> getSourceAsMap() {
+        if (source == null) {
+            return null;
+        }
+        if (sourceAsMap == null) {
+            sourceAsMap = parseSource();
+        }
+        return sourceAsMap;
+    }
+
+    /**
+     * @return 新解析的 _source，由调用方独占，修改不影响 {@link #getSourceAsMap()}；已解析过时为其浅拷贝
+     */
+    public Map<String, Object> newSourceAsMap() {
+        if (source == null) {
+            return null;
+        }
+        Map<String, Object> parsed = sourceAsMap;
+        return parsed == null ? parseSource() : new HashMap<>(parsed);
+    }
+
+    private Map<String, Object> parseSource() {
+        XContentType type = sourceType == null ? XContentFactory.xContentType(source) : sourceType;
+        return XContentHelper.convertToMap(source, false, type).v2();
+    }
+
+    public boolean isSourceParsed() {
+        return sourceAsMap != null;
+    }
+}
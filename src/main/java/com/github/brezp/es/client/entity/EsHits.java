@@ -0,0 +1,73 @@
+package com.github.brezp.es.client.entity;
+
+import java.util.List;
+
+/**
+ * search、scroll 响应中与命中结果相关的部分，hits 为惰性的 {@link EsHit}，聚合、suggest 等不解析
+ *
+ * @author brezp
+ */
+public class EsHits {
+
+    private final String scrollId;
+    private final long tookInMillis;
+    private final boolean timedOut;
+    private final int totalShards;
+    private final int failedShards;
+    private final long totalHits;
+    /**
+     * v7.9 的 total hit 关系（eq、gte），其他版本为null
+     */
+    private final String relation;
+    private final float maxScore;
+    private final List<EsHit> hits;
+
+    public EsHits(String scrollId, long tookInMillis, boolean timedOut, int totalShards, int failedShards,
+        long totalHits, String relation, float maxScore, List<EsHit> hits) {
+        this.scrollId = scrollId;
+        this.tookInMillis = tookInMillis;
+        this.timedOut = timedOut;
+        this.totalShards = totalShards;
+        this.failedShards = failedShards;
+        this.totalHits = totalHits;
+        this.relation = relation;
+        this.maxScore = maxScore;
+        this.hits = hits;
+    }
+
+    public String getScrollId() {
+        return scrollId;
+    }
+
+    public long getTookInMillis() {
+        return tookInMillis;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public int getTotalShards() {
+        return totalShards;
+    }
+
+    public int getFailedShards() {
+        return failedShards;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public EsRelation getRelation() {
+        return relation == null ? null : EsRelation.parseRelation(relation);
+    }
+
+    public float getMaxScore() {
+        return maxScore;
+    }
+
+    public List<EsHit> getHits() {
+        return hits;
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.brezp.es.client.entity;
+
+import java.util.List;
+
+/**
+ * search、scroll 响应中的命中结果，_source 已直接绑定为 T；ids 与 sources 一一对应，没有 _source 的 hit 对应null
+ *
+ * @author brezp
+ */
+public class EsTypedHits<T> {
+
+    private final String scrollId;
+    private final long tookInMillis;
+    private final boolean timedOut;
+    private final int failedShards;
+    private final long totalHits;
+    /**
+     * v7.9 的 total hit 关系（eq、gte），其他版本为null
+     */
+    private final String relation;
+    private final List<String> ids;
+    private final List<T> sources;
+
+    public EsTypedHits(String scrollId, long tookInMillis, boolean timedOut, int failedShards, long totalHits,
+        String relation, List<String> ids, List<T> sources) {
+        this.scrollId = scrollId;
+        this.tookInMillis = tookInMillis;
+        this.timedOut = timedOut;
+        this.failedShards = failedShards;
+        this.totalHits = totalHits;
+        this.relation = relation;
+        this.ids = ids;
+        this.sources = sources;
+    }
+
+    public String getScrollId() {
+        return scrollId;
+    }
+
+    public long getTookInMillis() {
+        return tookInMillis;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public int getFailedShards() {
+        return failedShards;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public EsRelation getRelation() {
+        return relation == null ? null : EsRelation.parseRelation(relation);
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public List<T> getSources() {
+        return sources;
+    }
+
+    public int size() {
+        return sources.size();
+    }
+}
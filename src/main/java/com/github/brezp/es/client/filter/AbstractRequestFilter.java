@@ -2,70 +2,72 @@ package com.github.brezp.es.client.filter;
 
 import com.github.brezp.es.client.entity.EsVersion;
 import com.google.common.base.Strings;
-import org.apache.http.HttpEntity;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author sugan
  * @since 2018-07-06.
  */
 public abstract class AbstractRequestFilter {
-    private static final Logger LOG = LoggerFactory.getLogger(AbstractRequestFilter.class);
 
     public Request filter(Request srcRequest, EsVersion version) throws IOException {
 
         //默认拦截request的 entity， 需要更多操作自行重载实现。
+        return new RequestFilterChain(Collections.singletonList(this)).filter(srcRequest, version);
+    }
 
-        if (skipEndpoint(srcRequest.getEndpoint())) {
-            LOG.debug("skip endpoint:" + srcRequest.getEndpoint());
-            return srcRequest;
-        }
-
-        HttpEntity entity = srcRequest.getEntity();
-        if (entity == null) {
-            return srcRequest;
-        }
-
-        String srcSource = EntityUtils.toString(entity, "utf-8");
-        LOG.debug("Src Source:{}", srcSource);
+    /**
+     * 在filter链共享的上下文上改写 body 和参数。
+     * <p>
+     * 默认实现桥接到 compatibleForXX 系列字符串接口；内置filter直接在 {@link RewriteContext#getDocument()}
+     * 上修改，避免每个filter各自解析、序列化一次。
+     */
+    protected void rewrite(RewriteContext context, EsVersion version) throws IOException {
+        String srcSource = context.getSource();
         String modifiedSource = srcSource;
-        Map<String, String> modifiedParameters = srcRequest.getParameters();
+        Map<String, String> modifiedParameters = context.getParameters();
         switch (version) {
             case V1_7:
                 modifiedSource = compatibleForV17(srcSource);
-                modifiedParameters = compatibleForV17Parameters(srcRequest);
+                modifiedParameters = compatibleForV17Parameters(context.toRequest());
                 break;
             case V2_3:
                 modifiedSource = compatibleForV23(srcSource);
-                modifiedParameters = compatibleForV23Parameters(srcRequest);
+                modifiedParameters = compatibleForV23Parameters(context.toRequest());
                 break;
             case V7_9:
                 modifiedSource = compatibleForV79(srcSource);
-                modifiedParameters = compatibleForV79Parameters(srcRequest);
+                modifiedParameters = compatibleForV79Parameters(context.toRequest());
             default:
                 break;
         }
         if (!Strings.isNullOrEmpty(srcSource) && Strings.isNullOrEmpty(modifiedSource)) {
             throw new RuntimeException(String.format("src source:%s, afert modified:%s", srcSource, modifiedSource));
         }
+        //未改动时保留已解析的document，避免后续filter重新解析
+        if (modifiedSource != srcSource) {
+            context.setSource(modifiedSource);
+        }
+        context.setParameters(modifiedParameters);
+    }
 
-        LOG.debug("Modified Source {}", modifiedSource);
-
-        StringEntity newEntity = new StringEntity(modifiedSource, ContentType
-            .parse(entity.getContentType().getValue())
-            .withCharset("utf-8")
-        );
-
-        return new Request(HttpPost.METHOD_NAME, srcRequest.getEndpoint(), modifiedParameters, newEntity);
+    /**
+     * 对单独的body执行本filter的 {@link #rewrite(RewriteContext, EsVersion)}，供重载了rewrite的filter实现字符串接口
+     */
+    protected String rewriteSource(String sourceJson, EsVersion version) {
+        RewriteContext context = new RewriteContext(null, Collections.emptyMap(), sourceJson);
+        try {
+            rewrite(context, version);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return context.getSource();
     }
 
     /**
@@ -78,6 +80,36 @@ public abstract class AbstractRequestFilter {
         return false;
     }
 
+    /**
+     * 本filter是否需要处理指定版本的请求，返回false的版本整个filter会被跳过（不读取、不重建request）
+     *
+     * @param version 目标集群版本
+     * @return 默认true，自定义filter如果只在部分版本做改写，应重载此方法
+     */
+    protected boolean appliesTo(EsVersion version) {
+        return true;
+    }
+
+    /**
+     * 本filter只在 body 中出现某些key（任意层级的字段名）时才需要改写，声明后由filter链先做一次字节扫描，
+     * 未命中时不解析 body、不执行本filter
+     *
+     * @return 需要的key，命中任意一个即执行；默认null，表示总是执行
+     */
+    protected Set<String> probeKeys(EsVersion version) {
+        return null;
+    }
+
+    /**
+     * request 已按目标版本直接构造时（见 {@link org.elasticsearch.client.VersionedRequestConverters}），
+     * 本filter的改写是否已被覆盖
+     *
+     * @return 默认false，自定义filter仍会执行
+     */
+    protected boolean coveredBySerializer(EsVersion version) {
+        return false;
+    }
+
     /**
      * 适配v2.3版本的json
      *
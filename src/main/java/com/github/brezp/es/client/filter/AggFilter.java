@@ -1,11 +1,16 @@
 package com.github.brezp.es.client.filter;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.brezp.es.client.entity.EsVersion;
 import com.github.brezp.es.client.util.JsonPathUtil;
-import com.google.gson.Gson;
+import com.google.common.collect.ImmutableSet;
 import org.apache.log4j.Logger;
 
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -18,77 +23,154 @@ public class AggFilter extends AbstractRequestFilter {
 
     private static Logger LOG = Logger.getLogger(AggFilter.class);
 
+    private static final String[] V23_DELETE_PATHS = new String[]{
+            "$.aggregations..date_histogram.offset",
+            "$.query..ignore_unmapped",
+            "$..exists.boost",
+    };
+
+    private static final String[] V79_DELETE_PATHS = new String[]{
+            "$..bool.disable_coord",
+    };
+
+    //1. 如果json包含agg, 则查找在v1.7有异常的字段，进行修正
+    private static final String[] V17_DELETE_PATHS = new String[]{
+            "$.aggregations..date_histogram.offset",
+            "$..bool..boost",
+            "$..bool..disable_coord",
+            "$..bool..adjust_pure_negative",
+            "$..ignore_unmapped",
+            "$..has_parent.score",
+    };
+
+    /**
+     * 上面各条规则涉及的key，body 中都不存在时无需解析
+     */
+    private static final Set<String> V17_PROBE_KEYS = ImmutableSet.of(
+            "date_histogram", "bool", "ignore_unmapped", "has_parent", "function_score");
+    private static final Set<String> V23_PROBE_KEYS = ImmutableSet.of("date_histogram", "ignore_unmapped", "exists");
+    private static final Set<String> V79_PROBE_KEYS = ImmutableSet.of("disable_coord", "_uid");
+
     @Override
-    protected String compatibleForV23(String sourceJson) {
-        String[] deletePaths = new String[]{
-                "$.aggregations..date_histogram.offset",
-                "$.query..ignore_unmapped",
-                "$..exists.boost",
-        };
-        sourceJson = JsonPathUtil.del(sourceJson, deletePaths);
-        return sourceJson;
+    protected boolean appliesTo(EsVersion version) {
+        return version == EsVersion.V1_7 || version == EsVersion.V2_3 || version == EsVersion.V7_9;
     }
 
+    /**
+     * bulk 的 body 是 NDJSON，不是查询语句
+     */
     @Override
-    protected String compatibleForV79(String sourceJson) {
-
-        try {
-            sourceJson = JsonPathUtil.del(sourceJson, new String[]{
-                    "$..bool.disable_coord",
-            });
+    protected boolean skipEndpoint(String endpoint) {
+        return endpoint.endsWith("/_bulk");
+    }
 
-            sourceJson = replaceUidById(sourceJson);
-        } catch (Exception e) {
-            LOG.error("sourceJson: " + sourceJson + ",method: " + "compatibleForV79" + ",exception class=" + e.getClass().getName() + ", exception message=" + e.getMessage(), e);
+    @Override
+    protected Set<String> probeKeys(EsVersion version) {
+        switch (version) {
+            case V1_7:
+                return V17_PROBE_KEYS;
+            case V2_3:
+                return V23_PROBE_KEYS;
+            case V7_9:
+                return V79_PROBE_KEYS;
+            default:
+                return null;
         }
-        return sourceJson;
     }
 
-    private String replaceUidById(String sourceJson) {
+    @Override
+    protected boolean coveredBySerializer(EsVersion version) {
+        return true;
+    }
 
-        Gson gson = new Gson();
-        Map map = gson.fromJson(sourceJson, Map.class);
-        List<Map> sortList = (List) map.get("sort");
-        if (sortList != null) {
-            for (Map sortItem : sortList) {
-                if (sortItem.containsKey("_uid")) {
-                    sortItem.put("_id", sortItem.get("_uid"));
-                    sortItem.remove("_uid");
+    @Override
+    protected void rewrite(RewriteContext context, EsVersion version) {
+        switch (version) {
+            case V1_7:
+                JsonPathUtil.del(context.getDocument(), V17_DELETE_PATHS);
+                replaceFunctionScoreQuery2Filter(context.getDocument().json());
+                break;
+            case V2_3:
+                JsonPathUtil.del(context.getDocument(), V23_DELETE_PATHS);
+                break;
+            case V7_9:
+                try {
+                    JsonPathUtil.del(context.getDocument(), V79_DELETE_PATHS);
+                    replaceUidById(context.getDocument().json());
+                } catch (Exception e) {
+                    LOG.error("sourceJson: " + context.getSource() + ",method: " + "compatibleForV79" + ",exception class=" + e.getClass().getName() + ", exception message=" + e.getMessage(), e);
                 }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected String compatibleForV23(String sourceJson) {
+        return rewriteSource(sourceJson, EsVersion.V2_3);
+    }
+
+    @Override
+    protected String compatibleForV79(String sourceJson) {
+        return rewriteSource(sourceJson, EsVersion.V7_9);
+    }
+
+    /**
+     * 把 sort 中的 _uid 替换为 _id，ES7 已不支持 _uid
+     */
+    static void replaceUidById(JsonNode root) {
+        JsonNode sortList = root.get("sort");
+        if (sortList == null || !sortList.isArray()) {
+            return;
+        }
+        for (JsonNode sortItem : sortList) {
+            if (sortItem.isObject() && sortItem.has("_uid")) {
+                ObjectNode item = (ObjectNode) sortItem;
+                item.set("_id", item.remove("_uid"));
             }
-            return gson.toJson(map);
-        } else {
-            return sourceJson;
         }
     }
 
     @Override
     protected String compatibleForV17(String sourceJson) {
-        //1. 如果json包含agg, 则查找在v1.7有异常的字段，进行修正
-        String[] deletePaths = new String[]{
-                "$.aggregations..date_histogram.offset",
-                "$..bool..boost",
-                "$..bool..disable_coord",
-                "$..bool..adjust_pure_negative",
-                "$..ignore_unmapped",
-                "$..has_parent.score",
-        };
-
-        sourceJson = JsonPathUtil.del(sourceJson, deletePaths);
-        sourceJson = replaceFunctionScoreQuery2Filter(sourceJson);
-        return sourceJson;
+        return rewriteSource(sourceJson, EsVersion.V1_7);
     }
 
-    private String replaceFunctionScoreQuery2Filter(String sourceJson) {
-        try {
-            if(sourceJson.contains("query") && sourceJson.contains("function_score")) {
-                sourceJson = sourceJson.replaceAll("query", "filter");
-                sourceJson = sourceJson.replaceFirst("filter", "query");
+    /**
+     * 把 function_score 下的 query 改为 filter，与 SerializeRules.V1_7 相同，只改这一个字段名
+     */
+    static void replaceFunctionScoreQuery2Filter(JsonNode node) {
+        if (node.isArray()) {
+            for (JsonNode item : node) {
+                replaceFunctionScoreQuery2Filter(item);
+            }
+            return;
+        }
+        if (!node.isObject()) {
+            return;
+        }
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if ("function_score".equals(field.getKey()) && field.getValue().has("query")) {
+                renameField((ObjectNode) field.getValue(), "query", "filter");
             }
-        } catch (Exception e) {
-            LOG.info("sourceJson:\t" + sourceJson + ",rule:" + "replace function_score's query to filter.");
-            e.printStackTrace();
+            replaceFunctionScoreQuery2Filter(field.getValue());
+        }
+    }
+
+    /**
+     * 保持字段顺序重命名
+     */
+    private static void renameField(ObjectNode node, String from, String to) {
+        Map<String, JsonNode> renamed = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            renamed.put(from.equals(field.getKey()) ? to : field.getKey(), field.getValue());
         }
-        return sourceJson;
+        node.removeAll();
+        node.setAll(renamed);
     }
 }
@@ -0,0 +1,113 @@
+package com.github.brezp.es.client.filter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 对 json body 做一次字节级扫描，找出其中出现过的指定key（任意层级的对象字段名），不解析json。
+ * <p>
+ * 只适用于 UTF-8 / ASCII 编码的 body：多字节字符中不会出现 '"' 和 '\\'，按字节扫描不会误判字符串边界。
+ * 最多支持64个key，结果以位图返回，第 i 位对应 {@link #keys()} 中的第 i 个key。
+ *
+ * @author brezp
+ */
+public final class KeyProbe {
+
+    public static final int MAX_KEYS = 64;
+
+    private final List<String> keys;
+    private final byte[][] keyBytes;
+
+    public KeyProbe(Collection<String> keys) {
+        if (keys.size() > MAX_KEYS) {
+            throw new IllegalArgumentException("too many probe keys: " + keys.size());
+        }
+        this.keys = new ArrayList<>(keys);
+        this.keyBytes = new byte[this.keys.size()][];
+        for (int i = 0; i < keyBytes.length; i++) {
+            keyBytes[i] = this.keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    public List<String> keys() {
+        return keys;
+    }
+
+    /**
+     * @return 第 i 个key对应的位
+     */
+    public long bit(String key) {
+        int i = keys.indexOf(key);
+        return i < 0 ? 0L : 1L << i;
+    }
+
+    public long scan(byte[] body) {
+        return scan(body, 0, body.length);
+    }
+
+    /**
+     * @return 出现过的key的位图；key中含有转义字符时无法按字节比较，视为全部命中
+     */
+    public long scan(byte[] body, int offset, int length) {
+        long all = keys.size() == MAX_KEYS ? -1L : (1L << keys.size()) - 1;
+        long found = 0L;
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (body[i] != '"') {
+                i++;
+                continue;
+            }
+            int start = ++i;
+            boolean escaped = false;
+            while (i < end && body[i] != '"') {
+                if (body[i] == '\\') {
+                    escaped = true;
+                    i++;
+                }
+                i++;
+            }
+            int stringEnd = Math.min(i, end);
+            i++;
+
+            int next = i;
+            while (next < end && isWhitespace(body[next])) {
+                next++;
+            }
+            if (next >= end || body[next] != ':') {
+                continue;
+            }
+            if (escaped) {
+                return all;
+            }
+            found |= match(body, start, stringEnd - start);
+            if (found == all) {
+                return found;
+            }
+        }
+        return found;
+    }
+
+    private long match(byte[] body, int start, int length) {
+        for (int k = 0; k < keyBytes.length; k++) {
+            byte[] key = keyBytes[k];
+            if (key.length != length) {
+                continue;
+            }
+            int j = 0;
+            while (j < length && key[j] == body[start + j]) {
+                j++;
+            }
+            if (j == length) {
+                return 1L << k;
+            }
+        }
+        return 0L;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
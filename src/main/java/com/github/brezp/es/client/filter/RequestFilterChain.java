@@ -0,0 +1,353 @@
+package com.github.brezp.es.client.filter;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.metrics.FilterMetrics;
+import com.github.brezp.es.client.util.EntityBytes;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.serializer.VersionedEntity;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 融合执行的filter链：body 只读取一次，所有 filter 在同一个 {@link RewriteContext} 上改写，最后只序列化一次，
+ * 结果与逐个执行 {@link AbstractRequestFilter#filter(Request, EsVersion)} 相同。
+ * <p>
+ * 每个 (EsVersion, endpoint) 需要执行哪些filter会被预先计算并缓存；没有filter需要执行时，原始 request
+ * （包括 entity 和 http method）原样返回，不做任何拷贝。
+ * <p>
+ * body 已按目标版本直接序列化（{@link VersionedEntity}）时，跳过 {@link AbstractRequestFilter#coveredBySerializer(EsVersion)}
+ * 的filter。
+ * <p>
+ * 声明了 {@link AbstractRequestFilter#probeKeys(EsVersion)} 的filter，先对 body 做一次字节扫描（{@link KeyProbe}），
+ * 没有命中的filter不执行；全部未命中时不解析 body，原始 request 原样返回。
+ * <p>
+ * body 全程以字节处理（{@link RewriteContext}），不转成字符串；filter执行后未修改 body 和参数时，原始 request 原样返回。
+ * <p>
+ * 设置 {@link RewriteCache} 后，相同 (EsVersion, endpoint, 参数, body) 的请求直接复用上次的改写结果；上次未修改的，
+ * 原始 request 原样返回。
+ * <p>
+ * SMILE、CBOR 等二进制 body 不经过filter。
+ * <p>
+ * 设置 {@link FilterMetrics} 后，按filter和endpoint记录执行、跳过次数和耗时；body 大小只按整条链记录。
+ *
+ * @author brezp
+ */
+public class RequestFilterChain {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestFilterChain.class);
+
+    /**
+     * 每个版本最多缓存的endpoint数，endpoint中带有索引名（如按天的索引），超过后淘汰最久未使用的
+     */
+    private static final int MAX_CACHED_ENDPOINTS = 1024;
+
+    private final List<AbstractRequestFilter> filters;
+    private final Map<EsVersion, Cache<String, Plan>> plans = new ConcurrentHashMap<>();
+    private final Map<EsVersion, Cache<String, Plan>> serializedPlans = new ConcurrentHashMap<>();
+    private volatile int plannedFilterCount = -1;
+    private volatile RewriteCache rewriteCache;
+    private volatile FilterMetrics metrics;
+
+    /**
+     * @param filters filter列表，链持有的是引用，列表增减后需调用 {@link #invalidate()}
+     */
+    public RequestFilterChain(List<AbstractRequestFilter> filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * filter列表变化后清空预计算结果
+     */
+    public void invalidate() {
+        plans.clear();
+        serializedPlans.clear();
+        RewriteCache cache = this.rewriteCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * @param rewriteCache 改写结果缓存，null 表示不缓存
+     */
+    public void setRewriteCache(RewriteCache rewriteCache) {
+        this.rewriteCache = rewriteCache;
+    }
+
+    public RewriteCache getRewriteCache() {
+        return rewriteCache;
+    }
+
+    /**
+     * @param metrics 每个filter的执行统计，null 表示不统计
+     */
+    public void setMetrics(FilterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public FilterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return 指定版本和endpoint下需要执行的filter，按链中顺序排列
+     */
+    public List<AbstractRequestFilter> applicableFilters(EsVersion version, String endpoint) {
+        return applicableFilters(version, endpoint, false);
+    }
+
+    /**
+     * @param serialized body 是否已按目标版本直接序列化
+     */
+    public List<AbstractRequestFilter> applicableFilters(EsVersion version, String endpoint, boolean serialized) {
+        return plan(version, endpoint, serialized).filters;
+    }
+
+    private Plan plan(EsVersion version, String endpoint, boolean serialized) {
+        if (plannedFilterCount != filters.size()) {
+            plans.clear();
+            serializedPlans.clear();
+            plannedFilterCount = filters.size();
+        }
+        Cache<String, Plan> versionPlans = (serialized ? serializedPlans : plans)
+            .computeIfAbsent(version, v -> CacheBuilder.newBuilder().maximumSize(MAX_CACHED_ENDPOINTS).build());
+        Plan plan = versionPlans.getIfPresent(endpoint);
+        if (plan == null) {
+            plan = computePlan(version, endpoint, serialized);
+            versionPlans.put(endpoint, plan);
+        }
+        return plan;
+    }
+
+    private Plan computePlan(EsVersion version, String endpoint, boolean serialized) {
+        List<AbstractRequestFilter> plan = new ArrayList<>(filters.size());
+        for (AbstractRequestFilter filter : filters) {
+            if (!filter.appliesTo(version)) {
+                LOG.debug("{} not applies to version:{}", filter.getName(), version);
+            } else if (serialized && filter.coveredBySerializer(version)) {
+                LOG.debug("{} covered by serializer for version:{}", filter.getName(), version);
+            } else if (filter.skipEndpoint(endpoint)) {
+                LOG.debug("{} skip endpoint:{}", filter.getName(), endpoint);
+            } else {
+                plan.add(filter);
+            }
+        }
+        return plan.isEmpty() ? Plan.EMPTY : new Plan(plan, version);
+    }
+
+    public Request filter(Request srcRequest, EsVersion version) throws IOException {
+        FilterMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return filter(srcRequest, version, null);
+        }
+
+        long start = System.nanoTime();
+        Trace trace = new Trace();
+        Request result = filter(srcRequest, version, trace);
+        long nanos = System.nanoTime() - start;
+
+        String endpoint = srcRequest.getEndpoint();
+        long inputBytes = contentLength(srcRequest);
+        long outputBytes = contentLength(result);
+        metrics.onInvoke(FilterMetrics.CHAIN, endpoint, nanos, inputBytes, outputBytes);
+        for (AbstractRequestFilter filter : filters) {
+            int i = trace.executed.indexOf(filter);
+            if (i < 0) {
+                metrics.onSkip(filter.getName(), endpoint);
+            } else {
+                //filter在同一个文档上融合执行，单个filter的输入、输出大小不可得，字节数只记在链上
+                metrics.onInvoke(filter.getName(), endpoint, trace.nanos[i], 0, 0);
+            }
+        }
+        return result;
+    }
+
+    private Request filter(Request srcRequest, EsVersion version, Trace trace) throws IOException {
+        HttpEntity entity = srcRequest.getEntity();
+        if (entity == null || isBinary(entity)) {
+            return srcRequest;
+        }
+
+        boolean serialized = entity instanceof VersionedEntity && ((VersionedEntity) entity).getVersion() == version;
+        Plan plan = plan(version, srcRequest.getEndpoint(), serialized);
+        if (plan.filters.isEmpty()) {
+            return srcRequest;
+        }
+
+        ByteBuffer body = EntityBytes.read(entity);
+        List<AbstractRequestFilter> hits = plan.probe(body, EntityBytes.charset(EntityBytes.contentType(entity)));
+        if (hits.isEmpty()) {
+            LOG.debug("no filter probe hit, endpoint:{}", srcRequest.getEndpoint());
+            return unchanged(srcRequest, body);
+        }
+
+        RewriteCache cache = this.rewriteCache;
+        if (cache == null) {
+            RewriteContext context = new RewriteContext(srcRequest, body);
+            rewrite(hits, context, version, trace);
+            return context.isModified() ? context.toRequest(HttpPost.METHOD_NAME) : unchanged(srcRequest, body);
+        }
+
+        RewriteCache.Key key = cache.key(version, srcRequest, body);
+        RewriteCache.Rewritten cached = cache.get(key);
+        if (cached != null) {
+            return cached.isUnchanged() ? unchanged(srcRequest, body) : cached.toRequest(srcRequest.getEndpoint());
+        }
+
+        RewriteContext context = new RewriteContext(srcRequest, body);
+        rewrite(hits, context, version, trace);
+        if (!context.isModified()) {
+            cache.putUnchanged(key);
+            return unchanged(srcRequest, body);
+        }
+        return cache.put(key, context.getBody(), context.getContentType(), context.getParameters());
+    }
+
+    /**
+     * filter 只处理 json，SMILE、CBOR 的 body 原样发送
+     */
+    private static boolean isBinary(HttpEntity entity) {
+        if (entity.getContentType() == null) {
+            return false;
+        }
+        XContentType type = XContentType.fromMediaTypeOrFormat(entity.getContentType().getValue());
+        return type == XContentType.SMILE || type == XContentType.CBOR;
+    }
+
+    /**
+     * 没有filter修改时原样返回；不可重复读的entity已被读取，需要换成读出的字节
+     */
+    private static Request unchanged(Request srcRequest, ByteBuffer body) {
+        HttpEntity entity = srcRequest.getEntity();
+        if (entity.isRepeatable()) {
+            return srcRequest;
+        }
+        return new Request(srcRequest.getMethod(), srcRequest.getEndpoint(), srcRequest.getParameters(),
+            new ByteArrayEntity(body.array(), body.arrayOffset() + body.position(), body.remaining(),
+                EntityBytes.contentType(entity)));
+    }
+
+    private void rewrite(List<AbstractRequestFilter> plan, RewriteContext context, EsVersion version, Trace trace)
+        throws IOException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Src Source:{}", context.getSrcSource());
+        }
+        if (trace == null) {
+            for (AbstractRequestFilter filter : plan) {
+                filter.rewrite(context, version);
+            }
+        } else {
+            trace.executed = plan;
+            trace.nanos = new long[plan.size()];
+            for (int i = 0; i < plan.size(); i++) {
+                long start = System.nanoTime();
+                plan.get(i).rewrite(context, version);
+                trace.nanos[i] = System.nanoTime() - start;
+            }
+        }
+
+        if (!context.isModified()) {
+            LOG.debug("Source not modified");
+            return;
+        }
+        if (context.getSrcBody().hasRemaining() && !context.getBody().hasRemaining()) {
+            throw new RuntimeException(String.format("src source:%s, afert modified:%s", context.getSrcSource(),
+                context.getSource()));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Modified Source {}", context.getSource());
+        }
+    }
+
+    private static long contentLength(Request request) {
+        HttpEntity entity = request.getEntity();
+        return entity == null ? 0 : Math.max(entity.getContentLength(), 0);
+    }
+
+    /**
+     * 开启统计时，记录一次请求实际执行的filter及各自耗时
+     */
+    private static final class Trace {
+        private List<AbstractRequestFilter> executed = Collections.emptyList();
+        private long[] nanos;
+    }
+
+    /**
+     * 某个 (EsVersion, endpoint) 下需要执行的filter，以及用于预判的 {@link KeyProbe}
+     */
+    private static final class Plan {
+        private static final Plan EMPTY = new Plan(Collections.emptyList(), null);
+
+        private final List<AbstractRequestFilter> filters;
+        /**
+         * 每个filter关心的key对应的位，-1 表示未声明key、总是执行
+         */
+        private final long[] masks;
+        /**
+         * null 表示所有filter都未声明key，不做预判
+         */
+        private final KeyProbe probe;
+
+        private Plan(List<AbstractRequestFilter> filters, EsVersion version) {
+            this.filters = Collections.unmodifiableList(filters);
+            this.masks = new long[filters.size()];
+
+            Set<String> keys = new LinkedHashSet<>();
+            for (AbstractRequestFilter filter : filters) {
+                Set<String> filterKeys = filter.probeKeys(version);
+                if (filterKeys != null) {
+                    keys.addAll(filterKeys);
+                }
+            }
+            this.probe = keys.isEmpty() || keys.size() > KeyProbe.MAX_KEYS ? null : new KeyProbe(keys);
+
+            for (int i = 0; i < masks.length; i++) {
+                Set<String> filterKeys = filters.get(i).probeKeys(version);
+                if (probe == null || filterKeys == null) {
+                    masks[i] = -1L;
+                    continue;
+                }
+                for (String key : filterKeys) {
+                    masks[i] |= probe.bit(key);
+                }
+            }
+        }
+
+        /**
+         * @return body 中命中了key的filter
+         */
+        private List<AbstractRequestFilter> probe(ByteBuffer body, Charset charset) {
+            //按字节扫描只对 UTF-8 / ASCII 可靠
+            if (probe == null || !EntityBytes.isUtf8Compatible(charset)) {
+                return filters;
+            }
+            long found = probe.scan(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            List<AbstractRequestFilter> hits = null;
+            for (int i = 0; i < masks.length; i++) {
+                boolean hit = masks[i] == -1L || (masks[i] & found) != 0;
+                if (hits == null && !hit) {
+                    hits = new ArrayList<>(filters.subList(0, i));
+                } else if (hits != null && hit) {
+                    hits.add(filters.get(i));
+                }
+            }
+            return hits == null ? filters : hits;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.brezp.es.client.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.util.EntityBytes;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * filter链改写结果的缓存，key为 (EsVersion, endpoint, 参数, body hash)，value为改写后的 body 和参数。
+ * 命中时直接构造request，不再执行filter链。filter执行后未修改的请求只记录一个标记，命中时原始request原样发送。
+ * <p>
+ * 容量按字节计算；只适用于改写结果只取决于版本、endpoint、参数和body的filter。
+ * caffeine 依赖的scope为provided，需要使用方手动加入
+ *
+ * @author brezp
+ */
+public class RewriteCache {
+
+    private static final HashFunction BODY_HASH = Hashing.murmur3_128();
+
+    /**
+     * 每个entry除body外的估算开销（key、参数、对象头）
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final Cache<Key, Rewritten> cache;
+
+    public RewriteCache(long maxBytes) {
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Key key, Rewritten value) -> value.weight(key))
+            .recordStats()
+            .build();
+    }
+
+    Key key(EsVersion version, Request srcRequest, ByteBuffer body) {
+        return new Key(version, srcRequest.getEndpoint(), srcRequest.getParameters(),
+            BODY_HASH.hashBytes(body.array(), body.arrayOffset() + body.position(), body.remaining()),
+            body.remaining());
+    }
+
+    /**
+     * @return 未缓存时为null
+     */
+    Rewritten get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * @return 以缓存内容构造的request
+     */
+    Request put(Key key, ByteBuffer body, ContentType contentType, Map<String, String> parameters) {
+        Rewritten rewritten = new Rewritten(EntityBytes.copy(body).array(), contentType,
+            Collections.unmodifiableMap(parameters));
+        cache.put(key, rewritten);
+        return rewritten.toRequest(key.endpoint);
+    }
+
+    /**
+     * 记录filter执行后没有修改，下次不再执行filter链
+     */
+    void putUnchanged(Key key) {
+        cache.put(key, Rewritten.UNCHANGED);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return 命中、未命中、淘汰等统计
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    static final class Key {
+        private final EsVersion version;
+        private final String endpoint;
+        private final Map<String, String> parameters;
+        private final HashCode bodyHash;
+        private final int bodyLength;
+
+        private Key(EsVersion version, String endpoint, Map<String, String> parameters, HashCode bodyHash,
+            int bodyLength) {
+            this.version = version;
+            this.endpoint = endpoint;
+            this.parameters = parameters;
+            this.bodyHash = bodyHash;
+            this.bodyLength = bodyLength;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return bodyLength == key.bodyLength
+                && version == key.version
+                && bodyHash.equals(key.bodyHash)
+                && endpoint.equals(key.endpoint)
+                && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return bodyHash.asInt();
+        }
+    }
+
+    static final class Rewritten {
+        private static final Rewritten UNCHANGED = new Rewritten(null, null, null);
+
+        private final byte[] body;
+        private final ContentType contentType;
+        private final Map<String, String> parameters;
+
+        private Rewritten(byte[] body, ContentType contentType, Map<String, String> parameters) {
+            this.body = body;
+            this.contentType = contentType;
+            this.parameters = parameters;
+        }
+
+        boolean isUnchanged() {
+            return this == UNCHANGED;
+        }
+
+        Request toRequest(String endpoint) {
+            return new Request(HttpPost.METHOD_NAME, endpoint, parameters, new ByteArrayEntity(body, contentType));
+        }
+
+        private int weight(Key key) {
+            return (body == null ? 0 : body.length) + key.endpoint.length() * 2 + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.github.brezp.es.client.filter;
+
+import com.github.brezp.es.client.util.EntityBytes;
+import com.github.brezp.es.client.util.JsonPathUtil;
+import com.jayway.jsonpath.DocumentContext;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 一次请求在filter链中的改写上下文。
+ * <p>
+ * body 以字节、字符串、JsonPath 文档三种形式惰性持有：filter 需要哪种就取哪种，只有在形式之间切换时才会
+ * 解析或序列化。UTF-8 body 直接从字节解析、序列化回字节，不经过字符串；字符集取自原 entity 的 content type，
+ * 构造的 entity 保留原 content type 和字符集。
+ *
+ * @author brezp
+ */
+public class RewriteContext {
+
+    private final String method;
+    private final String endpoint;
+    private final ContentType contentType;
+    private final Charset charset;
+    private final ByteBuffer srcBody;
+    private final Map<String, String> srcParameters;
+
+    private Map<String, String> parameters;
+    /**
+     * body、source 至少有一个不为null，除非 document 已被取出且尚未同步
+     */
+    private ByteBuffer body;
+    private String source;
+    private DocumentContext document;
+    /**
+     * document 被取出后可能已被修改，此时 body、source 需要重新序列化
+     */
+    private boolean documentDirty;
+    /**
+     * body 或参数可能已被修改
+     */
+    private boolean modified;
+
+    public RewriteContext(Request srcRequest) throws IOException {
+        this(srcRequest, srcRequest.getEntity() == null
+            ? ByteBuffer.allocate(0) : EntityBytes.read(srcRequest.getEntity()));
+    }
+
+    RewriteContext(Request srcRequest, ByteBuffer srcBody) {
+        HttpEntity entity = srcRequest.getEntity();
+        this.method = srcRequest.getMethod();
+        this.endpoint = srcRequest.getEndpoint();
+        this.parameters = srcRequest.getParameters();
+        this.srcParameters = parameters;
+        this.contentType = entity == null ? null : EntityBytes.contentType(entity);
+        this.charset = EntityBytes.charset(contentType);
+        this.srcBody = srcBody;
+        this.body = srcBody;
+    }
+
+    public RewriteContext(String endpoint, Map<String, String> parameters, String source) {
+        this.method = "POST";
+        this.endpoint = endpoint;
+        this.parameters = parameters;
+        this.srcParameters = parameters;
+        this.contentType = null;
+        this.charset = StandardCharsets.UTF_8;
+        this.source = source;
+        this.srcBody = ByteBuffer.wrap(source.getBytes(charset));
+        this.body = srcBody;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(Map<String, String> parameters) {
+        if (parameters != this.parameters) {
+            this.parameters = parameters;
+            this.modified = true;
+        }
+    }
+
+    /**
+     * @return 改写前的原始 body，只读
+     */
+    public ByteBuffer getSrcBody() {
+        return srcBody.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return 改写前的原始 body
+     */
+    public String getSrcSource() {
+        return EntityBytes.toString(srcBody, charset);
+    }
+
+    /**
+     * @return 当前 body 的字节形式（按原字符集编码），只读；如有需要会序列化 document
+     */
+    public ByteBuffer getBody() {
+        return currentBody().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer currentBody() {
+        syncDocument();
+        if (body == null) {
+            body = ByteBuffer.wrap(source.getBytes(charset));
+        }
+        return body;
+    }
+
+    /**
+     * 以字节形式替换 body（按原字符集编码），之前取出的 document 随之失效
+     */
+    public void setBody(ByteBuffer body) {
+        this.body = body.hasArray() ? body : EntityBytes.copy(body);
+        this.source = null;
+        this.document = null;
+        this.documentDirty = false;
+        this.modified = true;
+    }
+
+    /**
+     * @return 当前 body 的字符串形式，如有需要会解码 body 或序列化 document
+     */
+    public String getSource() {
+        syncDocument();
+        if (source == null) {
+            source = EntityBytes.toString(body, charset);
+        }
+        return source;
+    }
+
+    /**
+     * 以字符串形式替换 body，之前取出的 document 随之失效
+     */
+    public void setSource(String source) {
+        this.source = source;
+        this.body = null;
+        this.document = null;
+        this.documentDirty = false;
+        this.modified = true;
+    }
+
+    /**
+     * @return 当前 body 的 JsonPath 文档，可直接修改；如有需要会解析 body
+     */
+    public DocumentContext getDocument() {
+        if (document == null) {
+            document = parse();
+        }
+        documentDirty = true;
+        modified = true;
+        return document;
+    }
+
+    /**
+     * @return body 或参数是否已被filter修改；取出过 document 但序列化后与原始字节相同的不算修改
+     */
+    public boolean isModified() {
+        if (modified && Objects.equals(parameters, srcParameters) && currentBody().equals(srcBody)) {
+            modified = false;
+        }
+        return modified;
+    }
+
+    private DocumentContext parse() {
+        if (body != null && EntityBytes.isUtf8Compatible(charset)) {
+            try {
+                return JsonPathUtil.parseDoc(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return JsonPathUtil.parseDoc(getSource());
+    }
+
+    private void syncDocument() {
+        if (!documentDirty) {
+            return;
+        }
+        if (EntityBytes.isUtf8Compatible(charset)) {
+            try {
+                body = ByteBuffer.wrap(JsonPathUtil.toBytes(document));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            source = null;
+        } else {
+            source = document.jsonString();
+            body = null;
+        }
+        documentDirty = false;
+    }
+
+    /**
+     * @return 以当前 body 和参数构造的 request，供只接收 {@link Request} 的旧接口使用
+     */
+    public Request toRequest() {
+        return toRequest(method);
+    }
+
+    Request toRequest(String method) {
+        ByteBuffer current = currentBody();
+        ByteArrayEntity entity = new ByteArrayEntity(current.array(), current.arrayOffset() + current.position(),
+            current.remaining(), getContentType());
+        return new Request(method, endpoint, parameters, entity);
+    }
+
+    /**
+     * @return 原 entity 的 content type，未设置时为 application/json
+     */
+    ContentType getContentType() {
+        return contentType == null ? ContentType.APPLICATION_JSON : contentType;
+    }
+}
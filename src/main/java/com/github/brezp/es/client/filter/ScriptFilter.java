@@ -1,16 +1,18 @@
 package com.github.brezp.es.client.filter;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.brezp.es.client.entity.EsVersion;
 import com.github.brezp.es.client.util.JsonPathUtil;
-import com.google.common.collect.ImmutableMap;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.common.collect.ImmutableSet;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.PathNotFoundException;
 import org.apache.log4j.Logger;
 
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 
 /**
  *
@@ -19,61 +21,105 @@ import java.util.Objects;
 public class ScriptFilter extends AbstractRequestFilter {
 
     private static final Logger LOG = Logger.getLogger(ScriptFilter.class);
-    private static final ObjectMapper DEFAULT_OBJECT_MAPPER = new ObjectMapper();
 
+    private static final String[] V79_DELETE_PATHS = new String[]{
+            "$..bool.disable_coord",
+    };
+
+    private static final Set<String> LOW_VERSION_PROBE_KEYS = ImmutableSet.of("script_fields");
+    private static final Set<String> V79_PROBE_KEYS = ImmutableSet.of("disable_coord");
+
+    @Override
+    protected boolean appliesTo(EsVersion version) {
+        return version == EsVersion.V1_7 || version == EsVersion.V2_3 || version == EsVersion.V7_9;
+    }
+
+    /**
+     * scroll 不需要处理script_fields，bulk 的 body 是 NDJSON
+     */
     @Override
     protected boolean skipEndpoint(String endpoint) {
-        return endpoint.startsWith("/_search/scroll");
+        return endpoint.startsWith("/_search/scroll") || endpoint.endsWith("/_bulk");
     }
 
     @Override
-    protected String compatibleForV23(String sourceJson) {
-        return toLowVersionScriptField(sourceJson);
+    protected Set<String> probeKeys(EsVersion version) {
+        return version == EsVersion.V7_9 ? V79_PROBE_KEYS : LOW_VERSION_PROBE_KEYS;
     }
 
     @Override
-    protected String compatibleForV79(String sourceJson) {
+    protected boolean coveredBySerializer(EsVersion version) {
+        return true;
+    }
 
-        try {
-            sourceJson = JsonPathUtil.del(sourceJson, new String[]{
-                    "$..bool.disable_coord",
-            });
-        } catch (Exception e) {
-            LOG.error("sourceJson: " + sourceJson + ",method: " + "compatibleForV79" + ",exception class=" + e.getClass().getName() + ", exception message=" + e.getMessage(), e);
+    @Override
+    protected void rewrite(RewriteContext context, EsVersion version) {
+        switch (version) {
+            case V1_7:
+            case V2_3:
+                toLowVersionScriptField(context.getDocument());
+                break;
+            case V7_9:
+                try {
+                    JsonPathUtil.del(context.getDocument(), V79_DELETE_PATHS);
+                } catch (Exception e) {
+                    LOG.error("sourceJson: " + context.getSource() + ",method: " + "compatibleForV79" + ",exception class=" + e.getClass().getName() + ", exception message=" + e.getMessage(), e);
+                }
+                break;
+            default:
+                break;
         }
-        return sourceJson;
+    }
+
+    @Override
+    protected String compatibleForV23(String sourceJson) {
+        return rewriteSource(sourceJson, EsVersion.V2_3);
+    }
+
+    @Override
+    protected String compatibleForV79(String sourceJson) {
+        return rewriteSource(sourceJson, EsVersion.V7_9);
     }
 
     @Override
     protected String compatibleForV17(String sourceJson) {
-        return toLowVersionScriptField(sourceJson);
+        return rewriteSource(sourceJson, EsVersion.V1_7);
     }
 
     /**
      * replace "script_fields":{"test_script":{"script":{"source":"doc['2283_微博数'].value+doc['2283_粉丝数'].value","lang":"painless"},"ignore_failure":false}
      * with "script_fields":{"test_script":{"script":"doc['2283_微博数'].value+doc['2283_粉丝数'].value"}}
-     * @param sourceJson
-     * @return
+     * @param doc
      */
-    private String toLowVersionScriptField(String sourceJson) {
-        if (!hasScriptField(sourceJson))
-            return sourceJson;
-
-        Map<String, Object> scriptFields = new Gson().fromJson(
-            JsonPathUtil.read(sourceJson, "$.script_fields"),
-            new TypeToken<Map<String, Object>>(){}.getType());
-        Map<String, Map<String, String>> newScriptFields = new HashMap<>();
-        for (String filedName: scriptFields.keySet()) {
-            newScriptFields.put(filedName, ImmutableMap.of("script",
-                JsonPathUtil.read(sourceJson, String.format("$.script_fields.%s.script.source", filedName))
-            ));
+    private void toLowVersionScriptField(DocumentContext doc) {
+        JsonNode root = doc.json();
+        if (!hasScriptField(root))
+            return;
+
+        //直接在解析后的树上读取，script field 名由调用方决定，不为每个名字编译 JsonPath
+        ObjectNode newScriptFields = JsonNodeFactory.instance.objectNode();
+        for (Iterator<Map.Entry<String, JsonNode>> it = root.get("script_fields").fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            newScriptFields.putObject(field.getKey()).put("script", scriptSource(field.getKey(), field.getValue()));
         }
 
-        return JsonPathUtil.update(sourceJson, "$.script_fields", DEFAULT_OBJECT_MAPPER.convertValue(newScriptFields,
-            JsonNode.class));
+        ((ObjectNode) root).set("script_fields", newScriptFields);
+    }
+
+    /**
+     * 与 JsonPathUtil.read(doc, "$.script_fields.xxx.script.source") 相同：字符串取其值，其他类型取 json，不存在时抛出
+     */
+    private static String scriptSource(String fieldName, JsonNode scriptField) {
+        JsonNode script = scriptField.get("script");
+        JsonNode source = script == null || !script.isObject() ? null : script.get("source");
+        if (source == null) {
+            throw new PathNotFoundException("No results for path: $['script_fields']['" + fieldName
+                + "']['script']['source']");
+        }
+        return source.isTextual() ? source.textValue() : source.toString();
     }
 
-    private boolean hasScriptField(String sourceJson) {
-        return !Objects.equals(JsonPathUtil.read(sourceJson, "$[?(@.script_fields)]"), "[]");
+    private boolean hasScriptField(JsonNode root) {
+        return root.isObject() && root.has("script_fields");
     }
 }
@@ -1,17 +1,18 @@
 package com.github.brezp.es.client.filter;
 
 
+import com.github.brezp.es.client.entity.EsVersion;
 import com.github.brezp.es.client.util.JsonPathUtil;
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
-import org.apache.http.util.EntityUtils;
+import com.google.common.collect.ImmutableSet;
+import com.jayway.jsonpath.DocumentContext;
 import org.apache.log4j.Logger;
 import org.elasticsearch.client.Request;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -21,67 +22,92 @@ public class ScrollFilter extends AbstractRequestFilter {
 
     private static Logger LOG = Logger.getLogger(ScrollFilter.class);
 
+    private static final String[] V79_DELETE_PATHS = new String[]{
+            "$..bool.disable_coord",
+    };
+
+    private static final Set<String> V79_PROBE_KEYS = ImmutableSet.of("disable_coord", "_uid");
+
+    @Override
+    protected boolean appliesTo(EsVersion version) {
+        return version == EsVersion.V1_7 || version == EsVersion.V7_9;
+    }
+
     @Override
     protected boolean skipEndpoint(String endpoint) {
         return !endpoint.startsWith("/_search/scroll");
     }
 
+    /**
+     * v1.7 总是需要改写（缺少 scroll_id 时报错），不做预判
+     */
     @Override
-    protected String compatibleForV23(String sourceJson) {
-        return sourceJson;
+    protected Set<String> probeKeys(EsVersion version) {
+        return version == EsVersion.V1_7 ? null : V79_PROBE_KEYS;
     }
 
     @Override
-    protected String compatibleForV79(String sourceJson) {
-
-        try {
-            sourceJson = JsonPathUtil.del(sourceJson, new String[]{
-                    "$..bool.disable_coord",
-            });
-            sourceJson = replaceUidById(sourceJson);
-        } catch (Exception e) {
-            LOG.error("sourceJson: " + sourceJson + ",method: " + "compatibleForV79" + ",exception class=" + e.getClass().getName() + ", exception message=" + e.getMessage(), e);
-        }
-        return sourceJson;
+    protected boolean coveredBySerializer(EsVersion version) {
+        return true;
     }
 
-    private String replaceUidById(String sourceJson) {
-
-        Gson gson = new Gson();
-        Map map = gson.fromJson(sourceJson, Map.class);
-        List<Map> sortList = (List) map.get("sort");
-        if (sortList != null) {
-            for (Map sortItem : sortList) {
-                if (sortItem.containsKey("_uid")) {
-                    sortItem.put("_id", sortItem.get("_uid"));
-                    sortItem.remove("_uid");
+    @Override
+    protected void rewrite(RewriteContext context, EsVersion version) {
+        switch (version) {
+            case V1_7:
+                toV17ScrollRequest(context);
+                break;
+            case V7_9:
+                try {
+                    JsonPathUtil.del(context.getDocument(), V79_DELETE_PATHS);
+                    AggFilter.replaceUidById(context.getDocument().json());
+                } catch (Exception e) {
+                    LOG.error("sourceJson: " + context.getSource() + ",method: " + "compatibleForV79" + ",exception class=" + e.getClass().getName() + ", exception message=" + e.getMessage(), e);
                 }
-            }
-            return gson.toJson(map);
-        } else {
-            return sourceJson;
+                break;
+            default:
+                break;
         }
     }
 
+    @Override
+    protected String compatibleForV23(String sourceJson) {
+        return sourceJson;
+    }
+
+    @Override
+    protected String compatibleForV79(String sourceJson) {
+        return rewriteSource(sourceJson, EsVersion.V7_9);
+    }
 
     @Override
     protected String compatibleForV17(String sourceJson) {
-        String scrollId = JsonPathUtil.read(sourceJson, "$.scroll_id");
-        if (Strings.isNullOrEmpty(scrollId)) {
-            throw new RuntimeException("can not find scroll in request body: " + sourceJson);
-        }
-        return scrollId.replaceAll("\"", "");
+        return rewriteSource(sourceJson, EsVersion.V1_7);
     }
 
     @Override
     protected Map<String, String> compatibleForV17Parameters(Request srcRequest) throws IOException {
-        String srcSource = EntityUtils.toString(srcRequest.getEntity());
-        String scroll = JsonPathUtil.read(srcSource, "$.scroll");
+        RewriteContext context = new RewriteContext(srcRequest);
+        toV17ScrollRequest(context);
+        return context.getParameters();
+    }
+
+    /**
+     * v1.7 的 scroll 请求：body 为裸的 scroll_id，scroll 放到 url 参数中
+     */
+    private void toV17ScrollRequest(RewriteContext context) {
+        DocumentContext doc = context.getDocument();
+        String scrollId = JsonPathUtil.read(doc, "$.scroll_id");
+        if (Strings.isNullOrEmpty(scrollId)) {
+            throw new RuntimeException("can not find scroll in request body: " + context.getSource());
+        }
+        String scroll = JsonPathUtil.read(doc, "$.scroll");
         if (Strings.isNullOrEmpty(scroll)) {
-            throw new RuntimeException("can not find scroll in request body: " + srcSource);
+            throw new RuntimeException("can not find scroll in request body: " + context.getSource());
         }
-        Map<String, String> newParameters = new HashMap<>(srcRequest.getParameters());
+        Map<String, String> newParameters = new HashMap<>(context.getParameters());
         newParameters.put("scroll", scroll.replaceAll("\"", ""));
-        return newParameters;
+        context.setParameters(newParameters);
+        context.setSource(scrollId.replaceAll("\"", ""));
     }
 }
@@ -0,0 +1,81 @@
+package com.github.brezp.es.client.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * gzip 压缩的累计统计：请求体压缩前后的字节数、响应体解压前后的字节数
+ *
+ * @author brezp
+ */
+public class CompressionStats {
+
+    private final LongAdder compressedRequests = new LongAdder();
+    private final LongAdder requestRawBytes = new LongAdder();
+    private final LongAdder requestSentBytes = new LongAdder();
+    private final LongAdder decompressedResponses = new LongAdder();
+    private final LongAdder responseReceivedBytes = new LongAdder();
+    private final LongAdder responseRawBytes = new LongAdder();
+
+    public void onRequestCompressed(long rawBytes, long sentBytes) {
+        compressedRequests.increment();
+        requestRawBytes.add(rawBytes);
+        requestSentBytes.add(sentBytes);
+    }
+
+    public void onResponseDecompressed(long receivedBytes, long rawBytes) {
+        decompressedResponses.increment();
+        responseReceivedBytes.add(receivedBytes);
+        responseRawBytes.add(rawBytes);
+    }
+
+    public long getCompressedRequests() {
+        return compressedRequests.sum();
+    }
+
+    public long getRequestRawBytes() {
+        return requestRawBytes.sum();
+    }
+
+    public long getRequestSentBytes() {
+        return requestSentBytes.sum();
+    }
+
+    public long getDecompressedResponses() {
+        return decompressedResponses.sum();
+    }
+
+    public long getResponseReceivedBytes() {
+        return responseReceivedBytes.sum();
+    }
+
+    public long getResponseRawBytes() {
+        return responseRawBytes.sum();
+    }
+
+    /**
+     * @return 请求、响应合计节省的传输字节数
+     */
+    public long getBytesSaved() {
+        return requestRawBytes.sum() - requestSentBytes.sum() + responseRawBytes.sum() - responseReceivedBytes.sum();
+    }
+
+    public void reset() {
+        compressedRequests.reset();
+        requestRawBytes.reset();
+        requestSentBytes.reset();
+        decompressedResponses.reset();
+        responseReceivedBytes.reset();
+        responseRawBytes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{compressedRequests=" + getCompressedRequests()
+            + ", requestRawBytes=" + getRequestRawBytes()
+            + ", requestSentBytes=" + getRequestSentBytes()
+            + ", decompressedResponses=" + getDecompressedResponses()
+            + ", responseReceivedBytes=" + getResponseReceivedBytes()
+            + ", responseRawBytes=" + getResponseRawBytes()
+            + ", bytesSaved=" + getBytesSaved() + '}';
+    }
+}
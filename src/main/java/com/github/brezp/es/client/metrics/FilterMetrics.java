@@ -0,0 +1,31 @@
+package com.github.brezp.es.client.metrics;
+
+/**
+ * filter链的执行情况回调，可接入自有的监控系统；默认实现见 {@link FilterMetricsRecorder}。
+ * <p>
+ * 在请求线程上同步调用，实现需线程安全且足够轻量。
+ *
+ * @author brezp
+ */
+public interface FilterMetrics {
+
+    /**
+     * 整条filter链的汇总使用的filter名
+     */
+    String CHAIN = "_chain";
+
+    /**
+     * filter执行了一次改写
+     *
+     * @param filter      {@link com.github.brezp.es.client.filter.AbstractRequestFilter#getName()}，汇总时为 {@link #CHAIN}
+     * @param nanos       本filter改写耗时；首个filter包含解析 body 的耗时，序列化只计入 {@link #CHAIN}
+     * @param inputBytes  进入filter链时的 body 字节数；只对 {@link #CHAIN} 记录，单个filter为0
+     * @param outputBytes 离开filter链时的 body 字节数；filter在同一个文档上融合执行，单个filter的输出大小不可得，为0
+     */
+    void onInvoke(String filter, String endpoint, long nanos, long inputBytes, long outputBytes);
+
+    /**
+     * filter未执行：版本不适用、endpoint跳过、key预判未命中、body已按版本序列化或命中改写缓存
+     */
+    void onSkip(String filter, String endpoint);
+}
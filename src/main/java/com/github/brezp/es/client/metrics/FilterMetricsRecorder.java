@@ -0,0 +1,111 @@
+package com.github.brezp.es.client.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在内存中按 (filter, endpoint) 累计的 {@link FilterMetrics}，通过 {@link #snapshot()} 读取。
+ * <p>
+ * endpoint 与 {@link RequestMetricsRecorder} 相同地去掉索引名、type、id，如 /{}/_search；
+ * 超过 {@link #MAX_ENDPOINTS} 个后新出现的endpoint统一计入 {@link #OTHER_ENDPOINT}。
+ *
+ * @author brezp
+ */
+public class FilterMetricsRecorder implements FilterMetrics {
+
+    public static final int MAX_ENDPOINTS = 1024;
+    public static final String OTHER_ENDPOINT = "_other";
+
+    private final Map<Key, Counters> counters = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> endpoints = new ConcurrentHashMap<>();
+    /** endpoints 中已有及正在加入的个数，先占位再加入，个数不会超过上限 */
+    private final AtomicInteger endpointCount = new AtomicInteger();
+
+    @Override
+    public void onInvoke(String filter, String endpoint, long nanos, long inputBytes, long outputBytes) {
+        Counters c = counters(filter, endpoint);
+        c.invocations.increment();
+        c.nanos.add(nanos);
+        c.inputBytes.add(inputBytes);
+        c.outputBytes.add(outputBytes);
+    }
+
+    @Override
+    public void onSkip(String filter, String endpoint) {
+        counters(filter, endpoint).skips.increment();
+    }
+
+    /**
+     * @return 当前的累计值，按filter名、endpoint排序
+     */
+    public List<FilterStats> snapshot() {
+        List<FilterStats> stats = new ArrayList<>(counters.size());
+        counters.forEach((key, c) -> stats.add(new FilterStats(key.filter, key.endpoint, c.invocations.sum(),
+            c.skips.sum(), c.nanos.sum(), c.inputBytes.sum(), c.outputBytes.sum())));
+        stats.sort((a, b) -> {
+            int cmp = a.getFilter().compareTo(b.getFilter());
+            return cmp != 0 ? cmp : a.getEndpoint().compareTo(b.getEndpoint());
+        });
+        return Collections.unmodifiableList(stats);
+    }
+
+    public void reset() {
+        counters.clear();
+        endpoints.clear();
+        endpointCount.set(0);
+    }
+
+    private Counters counters(String filter, String endpoint) {
+        endpoint = RequestMetricsRecorder.endpointName(endpoint);
+        if (!endpoints.containsKey(endpoint)) {
+            if (endpointCount.incrementAndGet() > MAX_ENDPOINTS) {
+                endpointCount.decrementAndGet();
+                endpoint = OTHER_ENDPOINT;
+            } else if (endpoints.putIfAbsent(endpoint, Boolean.TRUE) != null) {
+                endpointCount.decrementAndGet();
+            }
+        }
+        return counters.computeIfAbsent(new Key(filter, endpoint), k -> new Counters());
+    }
+
+    private static final class Counters {
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder skips = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder inputBytes = new LongAdder();
+        private final LongAdder outputBytes = new LongAdder();
+    }
+
+    private static final class Key {
+        private final String filter;
+        private final String endpoint;
+
+        private Key(String filter, String endpoint) {
+            this.filter = filter;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return filter.equals(key.filter) && endpoint.equals(key.endpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filter, endpoint);
+        }
+    }
+}
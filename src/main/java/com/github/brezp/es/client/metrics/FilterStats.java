@@ -0,0 +1,82 @@
+package com.github.brezp.es.client.metrics;
+
+/**
+ * 某个 (filter, endpoint) 的累计统计快照
+ *
+ * @author brezp
+ */
+public final class FilterStats {
+
+    private final String filter;
+    private final String endpoint;
+    private final long invocations;
+    private final long skips;
+    private final long totalNanos;
+    private final long inputBytes;
+    private final long outputBytes;
+
+    FilterStats(String filter, String endpoint, long invocations, long skips, long totalNanos, long inputBytes,
+        long outputBytes) {
+        this.filter = filter;
+        this.endpoint = endpoint;
+        this.invocations = invocations;
+        this.skips = skips;
+        this.totalNanos = totalNanos;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getSkips() {
+        return skips;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return 每次执行的平均耗时，未执行过时为0
+     */
+    public long getAvgNanos() {
+        return invocations == 0 ? 0 : totalNanos / invocations;
+    }
+
+    /**
+     * @return 累计输入字节数，只有整条链（{@link FilterMetrics#CHAIN}）有值
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * @return 累计输出字节数，只有整条链（{@link FilterMetrics#CHAIN}）有值
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "FilterStats{" +
+            "filter='" + filter + '\'' +
+            ", endpoint='" + endpoint + '\'' +
+            ", invocations=" + invocations +
+            ", skips=" + skips +
+            ", totalNanos=" + totalNanos +
+            ", inputBytes=" + inputBytes +
+            ", outputBytes=" + outputBytes +
+            '}';
+    }
+}
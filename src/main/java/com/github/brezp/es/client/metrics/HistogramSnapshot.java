@@ -0,0 +1,78 @@
+package com.github.brezp.es.client.metrics;
+
+/**
+ * {@link LatencyHistogram} 的快照，单位为微秒
+ *
+ * @author brezp
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sumMicros;
+    private final long maxMicros;
+
+    HistogramSnapshot(long[] counts, long sumMicros, long maxMicros) {
+        this.counts = counts;
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        this.count = total;
+        this.sumMicros = sumMicros;
+        this.maxMicros = maxMicros;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMicros() {
+        return count == 0 ? 0 : (double) sumMicros / count;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public long getP50Micros() {
+        return percentileMicros(50);
+    }
+
+    public long getP90Micros() {
+        return percentileMicros(90);
+    }
+
+    public long getP99Micros() {
+        return percentileMicros(99);
+    }
+
+    public long getP999Micros() {
+        return percentileMicros(99.9);
+    }
+
+    /**
+     * @param percentile (0, 100]
+     * @return 所在桶的中点，不超过最大值；没有样本时为0
+     */
+    public long percentileMicros(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(maxMicros, LatencyHistogram.lowerBound(i) + LatencyHistogram.width(i) / 2);
+            }
+        }
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "{count=" + count + ", mean=" + Math.round(getMeanMicros()) + "us, p50=" + getP50Micros()
+            + "us, p99=" + getP99Micros() + "us, max=" + maxMicros + "us}";
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.brezp.es.client.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 注册、注销 platform MBeanServer 中的 MBean
+ *
+ * @author brezp
+ */
+public final class MBeans {
+
+    public static final String DOMAIN = "com.github.brezp.es.client";
+
+    private MBeans() {
+    }
+
+    /**
+     * ObjectName 为 com.github.brezp.es.client:type=type,name=name；同名已存在时在 name 后加序号
+     *
+     * @return 注册使用的 ObjectName
+     */
+    public static ObjectName register(Object mbean, String type, String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (int i = 0; ; i++) {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name="
+                + ObjectName.quote(i == 0 ? name : name + "-" + i));
+            try {
+                server.registerMBean(mbean, objectName);
+                return objectName;
+            } catch (InstanceAlreadyExistsException e) {
+                //换一个名字
+            }
+        }
+    }
+
+    public static void unregister(ObjectName objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+}
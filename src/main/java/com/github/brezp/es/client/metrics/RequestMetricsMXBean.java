@@ -0,0 +1,26 @@
+package com.github.brezp.es.client.metrics;
+
+import java.util.List;
+
+/**
+ * {@link RequestMetricsRecorder} 的 JMX 接口
+ *
+ * @author brezp
+ */
+public interface RequestMetricsMXBean {
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    /**
+     * @return 从创建或上次 reset 以来的平均每秒请求数
+     */
+    double getRequestsPerSecond();
+
+    List<RequestStats> getEndpointStats();
+
+    List<RequestStats> getHostStats();
+
+    void reset();
+}
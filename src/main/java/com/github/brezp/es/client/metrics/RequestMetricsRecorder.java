@@ -0,0 +1,222 @@
+package com.github.brezp.es.client.metrics;
+
+import org.apache.http.HttpHost;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按 endpoint 和节点在内存中累计请求耗时（各阶段的直方图）、状态码和错误数，通过 {@link #endpointStats()}、
+ * {@link #hostStats()} 读取，或 {@link #registerMBean(String)} 后通过 JMX 读取。
+ * <p>
+ * endpoint 去掉了索引名、type、id，超过 {@link #MAX_NAMES} 个后新出现的统一计入 {@link #OTHER}。
+ * 记录不加锁，快照只复制计数，不影响正在进行的请求。
+ *
+ * @author brezp
+ */
+public class RequestMetricsRecorder implements RequestMetricsMXBean {
+
+    public static final int MAX_NAMES = 256;
+    public static final String OTHER = "_other";
+    public static final String UNKNOWN = "_unknown";
+    public static final String MBEAN_DOMAIN = MBeans.DOMAIN;
+
+    private static final RequestPhase[] PHASES = RequestPhase.values();
+
+    private final ConcurrentMap<String, Counters> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counters> hosts = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private volatile long since = System.nanoTime();
+
+    /**
+     * @return 一次请求的计时
+     */
+    public RequestTiming start() {
+        return new RequestTiming(this);
+    }
+
+    void recordEndpoint(String endpoint, long convertNanos, long filterNanos, long networkNanos, long parseNanos,
+        long totalNanos, int status, boolean error) {
+        requests.increment();
+        if (error) {
+            errors.increment();
+        }
+        Counters c = counters(endpoints, endpoint, true);
+        c.record(status, error);
+        c.latencies[RequestPhase.CONVERT.ordinal()].recordNanos(convertNanos);
+        c.latencies[RequestPhase.FILTER.ordinal()].recordNanos(filterNanos);
+        c.latencies[RequestPhase.NETWORK.ordinal()].recordNanos(networkNanos);
+        c.latencies[RequestPhase.PARSE.ordinal()].recordNanos(parseNanos);
+        c.latencies[RequestPhase.TOTAL.ordinal()].recordNanos(totalNanos);
+    }
+
+    void recordHost(HttpHost host, long nanos, int status) {
+        Counters c = counters(hosts, host == null ? UNKNOWN : host.toHostString(), false);
+        c.record(status, status >= 500);
+        c.latencies[0].recordNanos(nanos);
+    }
+
+    /**
+     * @return 按 endpoint 排序
+     */
+    public List<RequestStats> endpointStats() {
+        return snapshot(endpoints, PHASES);
+    }
+
+    /**
+     * @return 按 host:port 排序
+     */
+    public List<RequestStats> hostStats() {
+        return snapshot(hosts, new RequestPhase[]{RequestPhase.NETWORK});
+    }
+
+    @Override
+    public List<RequestStats> getEndpointStats() {
+        return endpointStats();
+    }
+
+    @Override
+    public List<RequestStats> getHostStats() {
+        return hostStats();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getRequestsPerSecond() {
+        long elapsed = System.nanoTime() - since;
+        return elapsed <= 0 ? 0 : requests.sum() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    @Override
+    public void reset() {
+        endpoints.clear();
+        hosts.clear();
+        requests.reset();
+        errors.reset();
+        since = System.nanoTime();
+    }
+
+    /**
+     * 注册到 platform MBeanServer，ObjectName 为 com.github.brezp.es.client:type=RequestMetrics,name=name；
+     * 同名已存在时在 name 后加序号
+     *
+     * @return 注册使用的 ObjectName，用于 {@link #unregisterMBean(ObjectName)}
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        return MBeans.register(this, "RequestMetrics", name);
+    }
+
+    public static void unregisterMBean(ObjectName objectName) throws JMException {
+        MBeans.unregister(objectName);
+    }
+
+    /**
+     * @return 方法名加 {@link #endpointName(String)}，如 GET /{}/_search
+     */
+    static String endpointName(String method, String endpoint) {
+        return endpointName(new StringBuilder(method.length() + endpoint.length() + 1).append(method).append(' '),
+            endpoint);
+    }
+
+    /**
+     * 路径中以 _ 开头的段保留，其余替换为 {}；以 _ 开头的路径（如 /_search/scroll、/_cluster/health）保留第二段
+     */
+    static String endpointName(String endpoint) {
+        return endpointName(new StringBuilder(endpoint.length()), endpoint);
+    }
+
+    private static String endpointName(StringBuilder name, String endpoint) {
+        String[] parts = endpoint.split("/");
+        boolean api = false;
+        int segment = 0;
+        for (String part : parts) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            name.append('/');
+            if (part.charAt(0) == '_') {
+                name.append(part);
+                api |= segment == 0;
+            } else if (api && segment == 1) {
+                name.append(part);
+            } else {
+                name.append("{}");
+            }
+            segment++;
+        }
+        if (segment == 0) {
+            name.append('/');
+        }
+        return name.toString();
+    }
+
+    private static Counters counters(ConcurrentMap<String, Counters> map, String name, boolean phases) {
+        Counters c = map.get(name);
+        if (c != null) {
+            return c;
+        }
+        if (map.size() >= MAX_NAMES) {
+            name = OTHER;
+        }
+        return map.computeIfAbsent(name, k -> new Counters(phases ? PHASES.length : 1));
+    }
+
+    private static List<RequestStats> snapshot(Map<String, Counters> map, RequestPhase[] phases) {
+        List<RequestStats> stats = new ArrayList<>(map.size());
+        map.forEach((name, c) -> {
+            Map<Integer, Long> statusCounts = new TreeMap<>();
+            c.statuses.forEach((status, count) -> statusCounts.put(status, count.sum()));
+            Map<RequestPhase, HistogramSnapshot> latencies = new EnumMap<>(RequestPhase.class);
+            for (int i = 0; i < phases.length; i++) {
+                latencies.put(phases[i], c.latencies[i].snapshot());
+            }
+            stats.add(new RequestStats(name, c.requests.sum(), c.errors.sum(), statusCounts, latencies));
+        });
+        stats.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return Collections.unmodifiableList(stats);
+    }
+
+    private static final class Counters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LatencyHistogram[] latencies;
+
+        private Counters(int phases) {
+            latencies = new LatencyHistogram[phases];
+            for (int i = 0; i < phases; i++) {
+                latencies[i] = new LatencyHistogram();
+            }
+        }
+
+        private void record(int status, boolean error) {
+            requests.increment();
+            if (error) {
+                errors.increment();
+            }
+            if (status > 0) {
+                statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+            }
+        }
+    }
+}
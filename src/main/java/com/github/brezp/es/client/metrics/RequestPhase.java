@@ -0,0 +1,29 @@
+package com.github.brezp.es.client.metrics;
+
+/**
+ * 一次请求的耗时阶段
+ *
+ * @author brezp
+ */
+public enum RequestPhase {
+    /**
+     * ActionRequest 转为 http 请求
+     */
+    CONVERT,
+    /**
+     * 校验、filter 链改写、SMILE/CBOR 编码和 gzip 压缩
+     */
+    FILTER,
+    /**
+     * 发送到拿到响应：流式读取时为收到响应头，否则为收完响应 body；包括 RestClient 的重试和对冲
+     */
+    NETWORK,
+    /**
+     * 解析响应；流式读取时包括接收剩余的 body
+     */
+    PARSE,
+    /**
+     * 以上合计
+     */
+    TOTAL
+}
@@ -0,0 +1,68 @@
+package com.github.brezp.es.client.metrics;
+
+import java.util.Map;
+
+/**
+ * 某个 endpoint 或节点的累计统计快照
+ *
+ * @author brezp
+ */
+public final class RequestStats {
+
+    private final String name;
+    private final long requests;
+    private final long errors;
+    private final Map<Integer, Long> statusCounts;
+    private final Map<RequestPhase, HistogramSnapshot> latencies;
+
+    RequestStats(String name, long requests, long errors, Map<Integer, Long> statusCounts,
+        Map<RequestPhase, HistogramSnapshot> latencies) {
+        this.name = name;
+        this.requests = requests;
+        this.errors = errors;
+        this.statusCounts = statusCounts;
+        this.latencies = latencies;
+    }
+
+    /**
+     * @return endpoint 为 method 加去掉索引名、id 后的路径，如 "POST /{}/_search"；节点为 host:port
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return endpoint 为以异常结束的请求数；节点为 5xx 响应数
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return 按 http 状态码的响应数，没有响应（连接失败等）的不计入
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        return statusCounts;
+    }
+
+    /**
+     * @return endpoint 为各阶段的耗时；节点只有 {@link RequestPhase#NETWORK}，为发送到 RestClient 收完响应的耗时
+     */
+    public Map<RequestPhase, HistogramSnapshot> getLatencies() {
+        return latencies;
+    }
+
+    public HistogramSnapshot getLatency(RequestPhase phase) {
+        return latencies.get(phase);
+    }
+
+    @Override
+    public String toString() {
+        return name + "{requests=" + requests + ", errors=" + errors + ", status=" + statusCounts
+            + ", latencies=" + latencies + '}';
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.brezp.es.client.metrics;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+
+/**
+ * 一次请求的计时，按 转换、filter、发送、解析 的顺序调用（异步请求的后半段在 io 线程上），结束时写入
+ * {@link RequestMetricsRecorder}。
+ * <p>
+ * 未开启统计时使用 {@link #NOOP}，各方法不做任何事。
+ *
+ * @author brezp
+ */
+public class RequestTiming {
+
+    public static final RequestTiming NOOP = new RequestTiming(null);
+
+    private final RequestMetricsRecorder recorder;
+    private final long start;
+    private long converted;
+    private long filtered;
+    private long received;
+    private int status;
+    private boolean recorded;
+    private String endpoint = RequestMetricsRecorder.UNKNOWN;
+
+    RequestTiming(RequestMetricsRecorder recorder) {
+        this.recorder = recorder;
+        this.start = recorder == null ? 0 : System.nanoTime();
+    }
+
+    public void converted() {
+        if (recorder != null) {
+            converted = System.nanoTime();
+        }
+    }
+
+    /**
+     * filter、编码完成，即将发送
+     */
+    public void filtered(Request request) {
+        if (recorder != null) {
+            filtered = System.nanoTime();
+            endpoint = RequestMetricsRecorder.endpointName(request.getMethod(), request.getEndpoint());
+        }
+    }
+
+    /**
+     * 调用方拿到了响应，但状态码和节点未知（合并的请求）
+     */
+    public void received() {
+        if (recorder != null && received == 0) {
+            received = System.nanoTime();
+        }
+    }
+
+    /**
+     * 调用方拿到了响应，节点未知（流式读取）
+     */
+    public void received(int statusCode) {
+        if (recorder != null) {
+            received();
+            status = statusCode;
+        }
+    }
+
+    /**
+     * 调用方拿到了 RestClient 的响应，同时计入该节点的统计
+     */
+    public void received(Response response) {
+        if (recorder != null && received == 0) {
+            received(response.getStatusLine().getStatusCode());
+            responded(response);
+        }
+    }
+
+    /**
+     * RestClient 收完响应，只计入节点的统计；可以在 io 线程上调用
+     */
+    public void responded(Response response) {
+        if (recorder != null) {
+            recorder.recordHost(response.getHost(), System.nanoTime() - filtered,
+                response.getStatusLine().getStatusCode());
+        }
+    }
+
+    public void succeeded() {
+        if (recorder != null) {
+            record(false);
+        }
+    }
+
+    public void failed() {
+        if (recorder != null) {
+            record(true);
+        }
+    }
+
+    /**
+     * 只记录第一次结束，listener 抛出异常后的 onFailure 不重复计入
+     */
+    private void record(boolean error) {
+        if (recorded) {
+            return;
+        }
+        recorded = true;
+        long end = System.nanoTime();
+        long convertedAt = converted == 0 ? start : converted;
+        long filteredAt = filtered == 0 ? convertedAt : filtered;
+        long receivedAt = received == 0 ? (filtered == 0 ? filteredAt : end) : received;
+        recorder.recordEndpoint(endpoint, convertedAt - start, filteredAt - convertedAt, receivedAt - filteredAt,
+            end - receivedAt, end - start, status, error);
+    }
+}
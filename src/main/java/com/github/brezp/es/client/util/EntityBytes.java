@@ -0,0 +1,136 @@
+package com.github.brezp.es.client.util;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.client.serializer.VersionedEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 读取 HttpEntity 的字节内容。
+ * <p>
+ * ByteArrayEntity、StringEntity 等已知在 writeTo 中一次写出内部数组的entity，直接引用该数组，不做拷贝；
+ * 其他entity（如 FileEntity、包装类entity）可能复用同一个数组分块写出，一律拷贝。返回的 ByteBuffer 只能读，不能修改。
+ *
+ * @author brezp
+ */
+public class EntityBytes {
+
+    private EntityBytes() {
+    }
+
+    public static ByteBuffer read(HttpEntity entity) throws IOException {
+        if (writesBackingArray(entity)) {
+            CapturingOutputStream out = new CapturingOutputStream();
+            entity.writeTo(out);
+            return out.toByteBuffer();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+            entity.getContentLength() > 0 ? (int) entity.getContentLength() : 4096);
+        entity.writeTo(out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    /**
+     * writeTo 一次写出内部数组、且之后不会修改该数组的entity；子类可能重载 writeTo，按具体类判断
+     */
+    private static boolean writesBackingArray(HttpEntity entity) {
+        Class<?> type = entity.getClass();
+        return type == ByteArrayEntity.class || type == StringEntity.class || type == VersionedEntity.class
+            || type == NByteArrayEntity.class || type == NStringEntity.class;
+    }
+
+    /**
+     * @return entity 的 content type，未设置时返回null
+     */
+    public static ContentType contentType(HttpEntity entity) {
+        return entity.getContentType() == null ? null : ContentType.parse(entity.getContentType().getValue());
+    }
+
+    /**
+     * @return content type 中的字符集，未设置时为 UTF-8
+     */
+    public static Charset charset(ContentType contentType) {
+        return contentType == null || contentType.getCharset() == null
+            ? StandardCharsets.UTF_8 : contentType.getCharset();
+    }
+
+    /**
+     * 按字节扫描json是否安全（UTF-8 及其子集）
+     */
+    public static boolean isUtf8Compatible(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset) || StandardCharsets.US_ASCII.equals(charset);
+    }
+
+    public static String toString(ByteBuffer buffer, Charset charset) {
+        if (!buffer.hasArray()) {
+            buffer = copy(buffer);
+        }
+        return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), charset);
+    }
+
+    /**
+     * 只读或堆外的 buffer 拿不到数组，拷贝到新的堆内 buffer
+     */
+    public static ByteBuffer copy(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * 只有一次写入时直接引用写入的数组，多次写入时才拷贝
+     */
+    private static final class CapturingOutputStream extends OutputStream {
+        private byte[] captured;
+        private int offset;
+        private int length;
+        private ByteArrayOutputStream overflow;
+
+        @Override
+        public void write(int b) {
+            overflow().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (len == 0) {
+                return;
+            }
+            if (captured == null && overflow == null) {
+                captured = b;
+                offset = off;
+                length = len;
+                return;
+            }
+            overflow().write(b, off, len);
+        }
+
+        private ByteArrayOutputStream overflow() {
+            if (overflow == null) {
+                overflow = new ByteArrayOutputStream(Math.max(length * 2, 4096));
+                if (captured != null) {
+                    overflow.write(captured, offset, length);
+                    captured = null;
+                }
+            }
+            return overflow;
+        }
+
+        private ByteBuffer toByteBuffer() {
+            if (overflow != null) {
+                return ByteBuffer.wrap(overflow.toByteArray());
+            }
+            return captured == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(captured, offset, length);
+        }
+    }
+}
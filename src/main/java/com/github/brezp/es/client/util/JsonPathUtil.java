@@ -1,7 +1,11 @@
 package com.github.brezp.es.client.util;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.TextNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.jayway.jsonpath.*;
@@ -9,68 +13,119 @@ import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
 import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
 import org.apache.log4j.Logger;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
  * 语法和文档见：https://github.com/json-path/JsonPath
- *
+ * <p>
+ * Configuration 和 ParseContext 全局共享（均为线程安全），path 编译一次后缓存。
+ * 需要对同一个json做多次操作时，先 {@link #parseDoc(String)} 得到 DocumentContext，
+ * 再使用 DocumentContext 重载的 read/add/update/del，最后调用一次 {@link DocumentContext#jsonString()}。
  */
 public class JsonPathUtil {
     private static final Logger LOG = Logger.getLogger(JsonPathUtil.class);
     private static final Gson GSON = new Gson();
 
+    /**
+     * 缓存的path数上限，超过后按最近最少使用淘汰
+     */
+    private static final int MAX_CACHED_PATHS = 4096;
+
+    private static final JacksonJsonNodeJsonProvider JSON_PROVIDER = new JacksonJsonNodeJsonProvider();
+    private static final Configuration CONFIGURATION = Configuration.builder()
+            .jsonProvider(JSON_PROVIDER)
+            .mappingProvider(new JacksonMappingProvider())
+            .build();
+    private static final ParseContext PARSER = JsonPath.using(CONFIGURATION);
+    private static final Cache<String, JsonPath> COMPILED_PATHS = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_PATHS)
+            .build();
+
     public static ParseContext getParser() {
-        Configuration configuration;
-        ParseContext parser;
-        configuration = Configuration.builder()
-                .jsonProvider(new JacksonJsonNodeJsonProvider())
-                .mappingProvider(new JacksonMappingProvider())
-                .build();
-        parser = JsonPath.using(configuration);
-        return parser;
+        return PARSER;
+    }
+
+    /**
+     * @return 编译后的path，相同path只编译一次；缓存满后淘汰最久未使用的path
+     */
+    public static JsonPath compile(String path) {
+        JsonPath jsonPath = COMPILED_PATHS.getIfPresent(path);
+        if (jsonPath == null) {
+            jsonPath = JsonPath.compile(path);
+            COMPILED_PATHS.put(path, jsonPath);
+        }
+        return jsonPath;
     }
 
     public static DocumentContext parseDoc(String json) {
-        return getParser().parse(json);
+        return PARSER.parse(json);
+    }
+
+    /**
+     * 直接从 UTF-8 字节解析，不先转成字符串
+     */
+    public static DocumentContext parseDoc(byte[] json, int offset, int length) throws IOException {
+        ObjectMapper mapper = JSON_PROVIDER.getObjectMapper();
+        try (JsonParser parser = mapper.getFactory().createParser(json, offset, length)) {
+            return PARSER.parse((Object) mapper.readTree(parser));
+        }
+    }
+
+    /**
+     * @return 文档的 UTF-8 字节，与 {@link DocumentContext#jsonString()} 内容相同
+     */
+    public static byte[] toBytes(DocumentContext doc) throws IOException {
+        return JSON_PROVIDER.getObjectMapper().writeValueAsBytes(doc.json());
     }
 
     public static String read(String json, String path) {
-        JsonNode node = getParser().parse(json).read(path);
+        return read(parseDoc(json), path);
+    }
+
+    /**
+     * 在已解析的文档上读取，避免重复解析json
+     */
+    public static String read(DocumentContext doc, String path) {
+        JsonNode node = doc.read(compile(path));
 
         return node instanceof TextNode ? node.textValue() : node.toString();
     }
 
     public static String add(String originJson, String path, String key, Object value) {
-        DocumentContext doc = getParser().parse(originJson);
-        String targetStr = doc.put(path, key, value).jsonString();
+        DocumentContext doc = parseDoc(originJson);
+        String targetStr = add(doc, path, key, value).jsonString();
         LOG.debug(targetStr);
         return targetStr;
     }
 
-    public static String update(String json, String path, Object value) {
-        DocumentContext doc = getParser().parse(json);
-        Object node = doc.read(path);
-        LOG.debug(node);//origin  node value
+    public static DocumentContext add(DocumentContext doc, String path, String key, Object value) {
+        return doc.put(compile(path), key, value);
+    }
 
-        String targetStr = doc.set(path, value).jsonString();
+    public static String update(String json, String path, Object value) {
+        DocumentContext doc = parseDoc(json);
+        String targetStr = update(doc, path, value).jsonString();
         LOG.debug(targetStr);
         return targetStr;
     }
 
+    public static DocumentContext update(DocumentContext doc, String path, Object value) {
+        JsonPath jsonPath = compile(path);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(doc.read(jsonPath));//origin  node value
+        }
+        return doc.set(jsonPath, value);
+    }
+
     public static String del(String json, String[] paths) {
-        DocumentContext doc = getParser().parse(json);
+        DocumentContext doc = parseDoc(json);
         return delDocPaths(doc, paths);
     }
 
     private static String delDocPaths(DocumentContext doc, String[] paths) {
         if (paths.length > 0) {
-            for (String path : paths) {
-                try {
-                    doc.delete(path);
-                    LOG.debug("delete path:" + path);
-                } catch (PathNotFoundException ignored) {
-                }
-            }
+            del(doc, paths);
             String targetStr = doc.jsonString();
             LOG.debug(targetStr);
             return targetStr;
@@ -78,13 +133,30 @@ public class JsonPathUtil {
         return doc.jsonString();
     }
 
+    /**
+     * 在已解析的文档上删除，不存在的path直接忽略，不做序列化
+     */
+    public static void del(DocumentContext doc, String[] paths) {
+        for (String path : paths) {
+            try {
+                doc.delete(compile(path));
+                LOG.debug("delete path:" + path);
+            } catch (PathNotFoundException ignored) {
+            }
+        }
+    }
+
     public static String del(String json, String path) {
-        DocumentContext doc = getParser().parse(json);
-        String targetStr = doc.delete(path).jsonString();
+        DocumentContext doc = parseDoc(json);
+        String targetStr = del(doc, path).jsonString();
         LOG.debug(targetStr);
         return targetStr;
     }
 
+    public static DocumentContext del(DocumentContext doc, String path) {
+        return doc.delete(compile(path));
+    }
+
     public static Map<String, String> str2map(String mapStr) {
         return GSON.fromJson(mapStr, new TypeToken<Map<String, String>>() {
         }.getType());
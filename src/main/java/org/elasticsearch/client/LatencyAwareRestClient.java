@@ -0,0 +1,338 @@
+package org.elasticsearch.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按节点延迟选择节点的 RestClient：每个节点记录 peak EWMA 延迟和进行中的请求数，每次请求随机取两个节点，
+ * 发往 延迟 * (进行中 + 1) 较小的一个（power of two choices），慢或负载高的节点自动分到更少的请求。
+ * <p>
+ * EWMA 随空闲时间衰减，长时间没有请求的慢节点会重新得到少量请求，延迟恢复后流量随之恢复。
+ * <p>
+ * 连接失败或 502、503、504 时与 RestClient 相同，在 maxRetryTimeout 内换其他节点重试，失败的节点退避一段时间。
+ * 所有节点共用一个 http client（连接数上限与 RestClient 默认相同），每个节点一个只含该节点的 RestClient 负责实际发送。
+ * {@link #setHosts(HttpHost...)} 不支持。
+ *
+ * @author brezp
+ */
+public class LatencyAwareRestClient extends RestClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LatencyAwareRestClient.class);
+
+    /**
+     * EWMA 的衰减时间常数
+     */
+    public static final long DEFAULT_DECAY_MILLIS = 10_000;
+
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private final long maxRetryTimeoutMillis;
+    private final long decayNanos;
+    private final Node[] nodes;
+
+    LatencyAwareRestClient(CloseableHttpAsyncClient httpClient, long maxRetryTimeoutMillis, HttpHost[] hosts,
+        long decayMillis) {
+        super(httpClient, maxRetryTimeoutMillis, new Header[0], hosts, null, new FailureListener());
+        this.maxRetryTimeoutMillis = maxRetryTimeoutMillis;
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMillis);
+        this.nodes = new Node[hosts.length];
+        for (int i = 0; i < hosts.length; i++) {
+            RestClient client = new RestClient(httpClient, maxRetryTimeoutMillis, new Header[0], new HttpHost[]{hosts[i]},
+                null, new FailureListener());
+            nodes[i] = new Node(hosts[i], client);
+        }
+    }
+
+    /**
+     * 与 {@link RestClientBuilder#build()} 使用相同的默认配置创建
+     *
+     * @param requestConfigCallback    可以为null
+     * @param httpClientConfigCallback 可以为null
+     */
+    public static LatencyAwareRestClient build(HttpHost[] hosts, long maxRetryTimeoutMillis,
+        RestClientBuilder.RequestConfigCallback requestConfigCallback,
+        RestClientBuilder.HttpClientConfigCallback httpClientConfigCallback) {
+        if (hosts == null || hosts.length == 0) {
+            throw new IllegalArgumentException("no hosts provided");
+        }
+        RequestConfig.Builder requestConfigBuilder = RequestConfig.custom()
+            .setConnectTimeout(RestClientBuilder.DEFAULT_CONNECT_TIMEOUT_MILLIS)
+            .setSocketTimeout(RestClientBuilder.DEFAULT_SOCKET_TIMEOUT_MILLIS)
+            .setConnectionRequestTimeout(RestClientBuilder.DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS);
+        if (requestConfigCallback != null) {
+            requestConfigBuilder = requestConfigCallback.customizeRequestConfig(requestConfigBuilder);
+        }
+        HttpAsyncClientBuilder httpClientBuilder = HttpAsyncClientBuilder.create()
+            .setDefaultRequestConfig(requestConfigBuilder.build())
+            .setMaxConnPerRoute(RestClientBuilder.DEFAULT_MAX_CONN_PER_ROUTE)
+            .setMaxConnTotal(RestClientBuilder.DEFAULT_MAX_CONN_TOTAL);
+        if (httpClientConfigCallback != null) {
+            httpClientBuilder = httpClientConfigCallback.customizeHttpClient(httpClientBuilder);
+        }
+        CloseableHttpAsyncClient httpClient = httpClientBuilder.build();
+        httpClient.start();
+        return new LatencyAwareRestClient(httpClient, maxRetryTimeoutMillis, hosts, DEFAULT_DECAY_MILLIS);
+    }
+
+    @Override
+    public void performRequestAsync(String method, String endpoint, Map<String, String> params, HttpEntity entity,
+        HttpAsyncResponseConsumerFactory httpAsyncResponseConsumerFactory, ResponseListener responseListener,
+        Header... headers) {
+        Exchange exchange = new Exchange(method, endpoint, params, entity, httpAsyncResponseConsumerFactory,
+            responseListener, headers);
+        exchange.send(select(Collections.emptySet()));
+    }
+
+    @Override
+    public synchronized void setHosts(HttpHost... hosts) {
+        //父类构造时会调用，此时 nodes 还未初始化
+        if (nodes != null) {
+            throw new UnsupportedOperationException("hosts of a latency aware client can not be changed");
+        }
+        super.setHosts(hosts);
+    }
+
+    /**
+     * 在未尝试过的节点中选择：跳过退避中的节点（都在退避时选最早结束的），再从随机两个中取代价小的
+     *
+     * @return 没有可选节点时为null
+     */
+    Node select(Set<Node> tried) {
+        long now = System.nanoTime();
+        List<Node> candidates = new ArrayList<>(nodes.length);
+        Node soonest = null;
+        for (Node node : nodes) {
+            if (tried.contains(node)) {
+                continue;
+            }
+            if (node.backoffUntil - now <= 0) {
+                candidates.add(node);
+            } else if (soonest == null || node.backoffUntil - soonest.backoffUntil < 0) {
+                soonest = node;
+            }
+        }
+        if (candidates.isEmpty()) {
+            return soonest;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(candidates.size());
+        int b = random.nextInt(candidates.size() - 1);
+        if (b >= a) {
+            b++;
+        }
+        Node first = candidates.get(a);
+        Node second = candidates.get(b);
+        return first.cost(now) <= second.cost(now) ? first : second;
+    }
+
+    /**
+     * @return 各节点当前的延迟、进行中的请求数等
+     */
+    public List<NodeStats> getNodeStats() {
+        long now = System.nanoTime();
+        List<NodeStats> stats = new ArrayList<>(nodes.length);
+        for (Node node : nodes) {
+            stats.add(new NodeStats(node.host, node.ewmaMillis(now), node.inFlight.get(), node.requests.sum(),
+                node.failures.sum()));
+        }
+        return stats;
+    }
+
+    private static boolean isRetryStatus(int statusCode) {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    final class Node {
+        private final HttpHost host;
+        private final RestClient client;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        private double ewmaMillis;
+        private long lastUpdate;
+        private boolean measured;
+        private int consecutiveFailures;
+        private volatile long backoffUntil = System.nanoTime();
+
+        private Node(HttpHost host, RestClient client) {
+            this.host = host;
+            this.client = client;
+        }
+
+        /**
+         * 衰减到 now 的 EWMA；比当前值大的样本直接取样本值（peak EWMA），对变慢反应更快
+         */
+        synchronized void observe(long latencyNanos, long now) {
+            double sample = latencyNanos / 1_000_000.0;
+            double current = ewmaMillis(now);
+            ewmaMillis = !measured || sample > current ? sample : current + (sample - current) * weight(now);
+            lastUpdate = now;
+            measured = true;
+            consecutiveFailures = 0;
+        }
+
+        synchronized void fail(long now) {
+            failures.increment();
+            consecutiveFailures++;
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, 1000L << Math.min(consecutiveFailures - 1, 6));
+            backoffUntil = now + TimeUnit.MILLISECONDS.toNanos(backoff);
+        }
+
+        synchronized double ewmaMillis(long now) {
+            if (!measured) {
+                return 0;
+            }
+            return ewmaMillis * Math.exp(-(double) (now - lastUpdate) / decayNanos);
+        }
+
+        private double weight(long now) {
+            return 1 - Math.exp(-(double) Math.max(now - lastUpdate, 1) / decayNanos);
+        }
+
+        /**
+         * 未测得延迟的节点代价为0，会优先被选中
+         */
+        double cost(long now) {
+            return ewmaMillis(now) * (inFlight.get() + 1);
+        }
+    }
+
+    /**
+     * 一次请求，失败时换节点重试
+     */
+    private final class Exchange implements ResponseListener {
+        private final String method;
+        private final String endpoint;
+        private final Map<String, String> params;
+        private final HttpEntity entity;
+        private final HttpAsyncResponseConsumerFactory consumerFactory;
+        private final ResponseListener listener;
+        private final Header[] headers;
+        private final long start = System.nanoTime();
+        private final Set<Node> tried = new HashSet<>();
+        private Node current;
+        private long attemptStart;
+        private Exception previousFailure;
+
+        private Exchange(String method, String endpoint, Map<String, String> params, HttpEntity entity,
+            HttpAsyncResponseConsumerFactory consumerFactory, ResponseListener listener, Header[] headers) {
+            this.method = method;
+            this.endpoint = endpoint;
+            this.params = params;
+            this.entity = entity;
+            this.consumerFactory = consumerFactory;
+            this.listener = listener;
+            this.headers = headers;
+        }
+
+        private void send(Node node) {
+            current = node;
+            tried.add(node);
+            node.requests.increment();
+            node.inFlight.incrementAndGet();
+            attemptStart = System.nanoTime();
+            node.client.performRequestAsync(method, endpoint, params, entity, consumerFactory, this, headers);
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            Node node = current;
+            long now = System.nanoTime();
+            node.inFlight.decrementAndGet();
+            node.observe(now - attemptStart, now);
+            listener.onSuccess(response);
+        }
+
+        @Override
+        public void onFailure(Exception exception) {
+            Node node = current;
+            long now = System.nanoTime();
+            node.inFlight.decrementAndGet();
+            if (exception instanceof ResponseException
+                && !isRetryStatus(((ResponseException) exception).getResponse().getStatusLine().getStatusCode())) {
+                node.observe(now - attemptStart, now);
+                listener.onFailure(exception);
+                return;
+            }
+
+            node.fail(now);
+            if (previousFailure != null) {
+                exception.addSuppressed(previousFailure);
+            }
+            previousFailure = exception;
+            Node next = TimeUnit.NANOSECONDS.toMillis(now - start) < maxRetryTimeoutMillis ? select(tried) : null;
+            if (next == null) {
+                listener.onFailure(exception);
+                return;
+            }
+            LOG.debug("request to {} failed, retry on {}", node.host, next.host, exception);
+            send(next);
+        }
+    }
+
+    /**
+     * 某个节点的统计快照
+     */
+    public static final class NodeStats {
+        private final HttpHost host;
+        private final double ewmaMillis;
+        private final int inFlight;
+        private final long requests;
+        private final long failures;
+
+        NodeStats(HttpHost host, double ewmaMillis, int inFlight, long requests, long failures) {
+            this.host = host;
+            this.ewmaMillis = ewmaMillis;
+            this.inFlight = inFlight;
+            this.requests = requests;
+            this.failures = failures;
+        }
+
+        public HttpHost getHost() {
+            return host;
+        }
+
+        public double getEwmaMillis() {
+            return ewmaMillis;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return host + "{ewmaMillis=" + ewmaMillis + ", inFlight=" + inFlight + ", requests=" + requests
+                + ", failures=" + failures + '}';
+        }
+    }
+}
@@ -1,7 +1,20 @@
 package org.elasticsearch.client;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.brezp.es.client.cache.DocCache;
+import com.github.brezp.es.client.entity.EsHits;
+import com.github.brezp.es.client.entity.EsTypedHits;
 import com.github.brezp.es.client.entity.EsVersion;
 import com.github.brezp.es.client.filter.AbstractRequestFilter;
+import com.github.brezp.es.client.filter.RequestFilterChain;
+import com.github.brezp.es.client.filter.RewriteCache;
+import com.github.brezp.es.client.metrics.FilterMetrics;
+import com.github.brezp.es.client.metrics.FilterMetricsRecorder;
+import com.github.brezp.es.client.metrics.FilterStats;
+import com.github.brezp.es.client.metrics.RequestMetricsRecorder;
+import com.github.brezp.es.client.metrics.RequestTiming;
+import com.google.common.collect.Lists;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.elasticsearch.ElasticsearchException;
@@ -19,6 +32,9 @@ import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.main.MainRequest;
@@ -26,9 +42,27 @@ import org.elasticsearch.action.main.MainResponse;
 import org.elasticsearch.action.search.*;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.batch.RequestCoalescer;
+import org.elasticsearch.client.batch.SearchBatcher;
+import org.elasticsearch.client.breaker.CircuitBreaker;
+import org.elasticsearch.client.breaker.CircuitBreakerOpenException;
+import org.elasticsearch.client.breaker.CircuitBreakerPolicy;
+import org.elasticsearch.client.budget.ResponseBudget;
+import org.elasticsearch.client.budget.ResponseBudgetExceededException;
+import org.elasticsearch.client.compress.GzipCodec;
+import org.elasticsearch.client.hedge.HedgePolicy;
+import org.elasticsearch.client.hedge.Hedger;
+import org.elasticsearch.client.parser.EsHitsParser;
+import org.elasticsearch.client.parser.MultiGetResponseParser;
+import org.elasticsearch.client.parser.MultiSearchResponseParser;
+import org.elasticsearch.client.parser.TypedHitsParser;
 import org.elasticsearch.client.parser.SearchResponseParserV79;
+import org.elasticsearch.client.serializer.ContentNegotiation;
+import org.elasticsearch.client.streaming.BufferPool;
+import org.elasticsearch.client.streaming.StreamingExchange;
 import org.elasticsearch.common.CheckedConsumer;
 import org.elasticsearch.common.CheckedFunction;
+import org.elasticsearch.common.CheckedSupplier;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.xcontent.ContextParser;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
@@ -124,8 +158,15 @@ import org.elasticsearch.search.suggest.phrase.PhraseSuggestion;
 import org.elasticsearch.search.suggest.term.TermSuggestion;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -147,11 +188,46 @@ import static org.elasticsearch.common.xcontent.XContentParserUtils.*;
  */
 public class RestClientProxy {
 
+    public static final int DEFAULT_RESPONSE_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_RESPONSE_BUFFER_POOL_SIZE = 32;
+    /**
+     * 分批 mget 同时发送的批次数
+     */
+    public static final int DEFAULT_MGET_CONCURRENCY = 4;
+
     private final RestClient client;
+    /** 与 client 的 maxRetryTimeout 相同，异步发送、同步等待的请求最多等待这么久 */
+    private final long maxRetryTimeoutMillis;
     private final NamedXContentRegistry registry;
 
     private final List<AbstractRequestFilter> filters = new LinkedList<>();
+    /** 按 (EsVersion, endpoint) 预计算需要执行的filter，无需改写的请求原样发送 */
+    private final RequestFilterChain filterChain = new RequestFilterChain(filters);
     private EsVersion esVersion = EsVersion.DEFAULT;
+    /** search、scroll、clearScroll、bulk 按版本直接构造request */
+    private VersionedRequestConverters converters = VersionedRequestConverters.of(EsVersion.DEFAULT);
+    /** search、scroll 响应流式读取使用的buffer，null 表示不流式读取 */
+    private volatile BufferPool responseBufferPool = new BufferPool(DEFAULT_RESPONSE_BUFFER_SIZE, DEFAULT_RESPONSE_BUFFER_POOL_SIZE);
+    /** 合并并发 search 请求，null 表示不合并 */
+    private volatile SearchBatcher searchBatcher;
+    /** mget 的按id缓存，null 表示不缓存 */
+    private volatile DocCache docCache;
+
+    private volatile RequestCoalescer requestCoalescer;
+
+    private volatile GzipCodec gzipCodec;
+
+    private volatile ContentNegotiation contentNegotiation;
+
+    private volatile Hedger hedger;
+    /** 请求耗时统计，null 表示不统计 */
+    private volatile RequestMetricsRecorder requestMetrics;
+    /** 集群级熔断，null 表示不开启 */
+    private volatile CircuitBreaker circuitBreaker;
+    /** 缓存、解析中的响应字节数上限，null 表示不限制 */
+    private volatile ResponseBudget responseBudget;
+    /** _source 绑定为 POJO 时使用的 mapper */
+    private volatile ObjectMapper sourceMapper = TypedHitsParser.DEFAULT_MAPPER;
 
 
     /**
@@ -167,11 +243,25 @@ public class RestClientProxy {
      */
     protected RestClientProxy(RestClient restClient, List<NamedXContentRegistry.Entry> namedXContentEntries, EsVersion esVersion) {
         this.client = Objects.requireNonNull(restClient);
-        this.registry = new NamedXContentRegistry(
+        this.maxRetryTimeoutMillis = maxRetryTimeoutMillis(restClient);
+        this.registry = namedXContentEntries.isEmpty() ? DefaultRegistry.INSTANCE : new NamedXContentRegistry(
                 Stream.of(getDefaultNamedXContents().stream(), getProvidedNamedXContents().stream(), namedXContentEntries.stream())
                         .flatMap(Function.identity()).collect(toList()));
         if (esVersion != null)
-            this.esVersion = esVersion;
+            useVersion(esVersion);
+    }
+
+    /**
+     * es 5.6 的 RestClient 没有提供 maxRetryTimeout 的 getter，读取失败时使用 RestClientBuilder 的默认值
+     */
+    private static long maxRetryTimeoutMillis(RestClient restClient) {
+        try {
+            Field field = RestClient.class.getDeclaredField("maxRetryTimeoutMillis");
+            field.setAccessible(true);
+            return field.getLong(restClient);
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            return RestClientBuilder.DEFAULT_MAX_RETRY_TIMEOUT_MILLIS;
+        }
     }
 
     /**
@@ -180,7 +270,7 @@ public class RestClientProxy {
      * See <a href="https://www.elastic.co/guide/en/elasticsearch/reference/current/docs-bulk.html">Bulk API on elastic.co</a>
      */
     public BulkResponse bulk(BulkRequest bulkRequest, Header... headers) throws IOException {
-        return performRequestAndParseEntity(bulkRequest, Request::bulk, DsBulkResponse::fromXContent, emptySet(), headers);
+        return performRequestAndParseEntity(bulkRequest, converters.bulk(), DsBulkResponse::fromXContent, emptySet(), headers);
     }
 
     /**
@@ -189,7 +279,7 @@ public class RestClientProxy {
      * See <a href="https://www.elastic.co/guide/en/elasticsearch/reference/current/docs-bulk.html">Bulk API on elastic.co</a>
      */
     public void bulkAsync(BulkRequest bulkRequest, ActionListener<BulkResponse> listener, Header... headers) {
-        performRequestAsyncAndParseEntity(bulkRequest, Request::bulk, DsBulkResponse::fromXContent, listener, emptySet(), headers);
+        performRequestAsyncAndParseEntity(bulkRequest, converters.bulk(), DsBulkResponse::fromXContent, listener, emptySet(), headers);
     }
 
     /**
@@ -214,7 +304,8 @@ public class RestClientProxy {
      * See <a href="https://www.elastic.co/guide/en/elasticsearch/reference/current/docs-get.html">Get API on elastic.co</a>
      */
     public GetResponse get(GetRequest getRequest, Header... headers) throws IOException {
-        return performRequestAndParseEntity(getRequest, Request::get, GetResponse::fromXContent, singleton(404), headers);
+        return performIdempotentRequest(getRequest, Request::get,
+            response -> parseEntity(response.getEntity(), GetResponse::fromXContent), singleton(404), headers);
     }
 
     /**
@@ -226,6 +317,132 @@ public class RestClientProxy {
         performRequestAsyncAndParseEntity(getRequest, Request::get, GetResponse::fromXContent, listener, singleton(404), headers);
     }
 
+    /**
+     * Retrieves multiple documents by id using the Multi Get API
+     * <p>
+     * See <a href="https://www.elastic.co/guide/en/elasticsearch/reference/current/docs-multi-get.html">Multi Get API on elastic.co</a>
+     */
+    public MultiGetResponse mget(MultiGetRequest multiGetRequest, Header... headers) throws IOException {
+        return performReadRequest(multiGetRequest, converters.multiGet(),
+            entity -> parseEntity(entity, MultiGetResponseParser::fromXContent), headers);
+    }
+
+    /**
+     * Asynchronously retrieves multiple documents by id using the Multi Get API
+     * <p>
+     * See <a href="https://www.elastic.co/guide/en/elasticsearch/reference/current/docs-multi-get.html">Multi Get API on elastic.co</a>
+     */
+    public void mgetAsync(MultiGetRequest multiGetRequest, ActionListener<MultiGetResponse> listener, Header... headers) {
+        performRequestAsyncAndParseEntity(multiGetRequest, converters.multiGet(), MultiGetResponseParser::fromXContent,
+            listener, emptySet(), headers);
+    }
+
+    /**
+     * 与 {@link #mget(MultiGetRequest, int, int)} 相同，最多 {@link #DEFAULT_MGET_CONCURRENCY} 个 _mget 同时发送
+     */
+    public MultiGetResponse mget(MultiGetRequest multiGetRequest, int chunkSize, Header... headers)
+        throws IOException {
+        return mget(multiGetRequest, chunkSize, DEFAULT_MGET_CONCURRENCY, headers);
+    }
+
+    /**
+     * 与 {@link #mget(MultiGetRequest, Header...)} 相同，开启 {@link DocCache} 时先查缓存；未命中的 doc 按 chunkSize 拆成多个
+     * _mget，最多 maxConcurrentChunks 个同时发送，返回一个再发下一个，同时缓存在内存中的响应不会随 id 数增长。
+     * 结果按原顺序合并，成功的结果写入缓存；有一批失败时不再发送剩余的批次。
+     * 每批都带上 headers；整体最多等待 maxRetryTimeout
+     */
+    public MultiGetResponse mget(MultiGetRequest multiGetRequest, int chunkSize, int maxConcurrentChunks,
+                                 Header... headers) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive, got " + chunkSize);
+        }
+        if (maxConcurrentChunks <= 0) {
+            throw new IllegalArgumentException("maxConcurrentChunks must be positive, got " + maxConcurrentChunks);
+        }
+        List<MultiGetRequest.Item> items = multiGetRequest.getItems();
+        MultiGetItemResponse[] responses = new MultiGetItemResponse[items.size()];
+        DocCache cache = this.docCache;
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            GetResponse cached = cache == null ? null : cache.get(items.get(i));
+            if (cached != null) {
+                responses[i] = new MultiGetItemResponse(cached, null);
+            } else {
+                missing.add(i);
+            }
+        }
+        if (missing.isEmpty()) {
+            return new MultiGetResponse(responses);
+        }
+
+        ChunkedMget chunked = new ChunkedMget(multiGetRequest, Lists.partition(missing, chunkSize), responses, cache,
+            headers);
+        for (int i = 0; i < maxConcurrentChunks; i++) {
+            chunked.sendNext();
+        }
+        await(chunked.done, maxRetryTimeoutMillis);
+        return new MultiGetResponse(responses);
+    }
+
+    /**
+     * 分批 mget 的发送状态：每批返回后发送下一批，同时在途的批次数不超过初始发送的个数
+     */
+    private final class ChunkedMget {
+        private final MultiGetRequest request;
+        private final List<List<Integer>> chunks;
+        private final MultiGetItemResponse[] responses;
+        private final DocCache cache;
+        private final Header[] headers;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private ChunkedMget(MultiGetRequest request, List<List<Integer>> chunks, MultiGetItemResponse[] responses,
+                            DocCache cache, Header[] headers) {
+            this.request = request;
+            this.chunks = chunks;
+            this.responses = responses;
+            this.cache = cache;
+            this.headers = headers;
+            this.remaining = new AtomicInteger(chunks.size());
+        }
+
+        private void sendNext() {
+            int n = next.getAndIncrement();
+            if (n >= chunks.size() || done.isDone()) {
+                return;
+            }
+            List<Integer> chunk = chunks.get(n);
+            List<MultiGetRequest.Item> items = request.getItems();
+            MultiGetRequest chunkRequest = new MultiGetRequest()
+                .preference(request.preference())
+                .realtime(request.realtime())
+                .refresh(request.refresh());
+            for (int index : chunk) {
+                chunkRequest.add(items.get(index));
+            }
+            mgetAsync(chunkRequest, ActionListener.wrap(response -> {
+                MultiGetItemResponse[] chunkResponses = response.getResponses();
+                if (chunkResponses.length != chunk.size()) {
+                    throw new IllegalStateException("mget returned " + chunkResponses.length + " docs for "
+                        + chunk.size() + " ids");
+                }
+                for (int j = 0; j < chunkResponses.length; j++) {
+                    int index = chunk.get(j);
+                    responses[index] = chunkResponses[j];
+                    if (cache != null && !chunkResponses[j].isFailed()) {
+                        cache.put(items.get(index), chunkResponses[j].getResponse());
+                    }
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    done.complete(null);
+                } else {
+                    sendNext();
+                }
+            }, done::completeExceptionally), headers);
+        }
+    }
+
     /**
      * Checks for the existence of a document. Returns true if it exists, false otherwise
      * <p>
@@ -306,18 +523,42 @@ public class RestClientProxy {
      * See <a href="https://www.elastic.co/guide/en/elasticsearch/reference/current/search-search.html">Search API on elastic.co</a>
      */
     public SearchResponse search(SearchRequest searchRequest, Header... headers) throws IOException {
-        return performRequestAndParseEntity(
-            searchRequest,
-            Request::search,
-            esVersion == V7_9 ? SearchResponseParserV79::fromXContent : SearchResponse::fromXContent,
-            emptySet(),
-            headers
-        );
+        CheckedFunction<XContentParser, SearchResponse, IOException> parser = searchResponseParser();
+        return performSearchRequest(searchRequest, entity -> parseEntity(entity, parser), headers);
+    }
+
+    /**
+     * 与 {@link #search(SearchRequest, Header...)} 相同，但只解析命中结果：不创建 SearchHit，_source 保留原始字节，
+     * 聚合、suggest 不解析
+     */
+    public EsHits searchHits(SearchRequest searchRequest, Header... headers) throws IOException {
+        return performSearchRequest(searchRequest, entity -> parseEntity(entity, EsHitsParser::fromXContent), headers);
+    }
+
+    /**
+     * 与 {@link #search(SearchRequest, Header...)} 相同，但 _source 在解析响应时直接绑定为 sourceType，
+     * 不创建 SearchHit、Map；聚合等其余部分不解析
+     */
+    public <T> EsTypedHits<T> search(SearchRequest searchRequest, Class<T> sourceType, Header... headers)
+        throws IOException {
+        ObjectReader reader = sourceMapper.readerFor(sourceType);
+        return performSearchRequest(searchRequest, entity -> TypedHitsParser.fromEntity(entity, reader), headers);
+    }
+
+    /**
+     * 不带 scroll 的 search 开启合并时走 {@link #performReadRequest}；带 scroll 的每次都会创建新的 scroll 上下文，不能合并
+     */
+    private <Resp> Resp performSearchRequest(SearchRequest searchRequest,
+        CheckedFunction<HttpEntity, Resp, IOException> entityReader, Header... headers) throws IOException {
+        if (searchRequest.scroll() != null) {
+            return performStreamingRequest(searchRequest, converters.search(), entityReader, headers);
+        }
+        return performReadRequest(searchRequest, converters.search(), entityReader, headers);
     }
 
     /** 获取查询的真实语句 */
     public Request getSearchQueryRequest(SearchRequest searchRequest) throws IOException {
-        return getSearchQueryRequest(searchRequest, Request::search);
+        return getSearchQueryRequest(searchRequest, converters.search());
     }
 
     /**
@@ -328,7 +569,7 @@ public class RestClientProxy {
     public void searchAsync(SearchRequest searchRequest, ActionListener<SearchResponse> listener, Header... headers) {
         performRequestAsyncAndParseEntity(
             searchRequest,
-            Request::search,
+            converters.search(),
             esVersion == V7_9 ? SearchResponseParserV79::fromXContent : SearchResponse::fromXContent,
             listener,
             emptySet(),
@@ -336,6 +577,86 @@ public class RestClientProxy {
         );
     }
 
+    /**
+     * Executes a multi search using the Multi Search api，每个 search 的 body 按版本序列化
+     * <p>
+     * See <a href="https://www.elastic.co/guide/en/elasticsearch/reference/current/search-multi-search.html">Multi Search API on
+     * elastic.co</a>
+     */
+    public MultiSearchResponse msearch(MultiSearchRequest multiSearchRequest, Header... headers) throws IOException {
+        CheckedFunction<HttpEntity, MultiSearchResponse, IOException> entityReader = entity -> parseEntity(entity,
+            parser -> MultiSearchResponseParser.fromXContent(parser, searchResponseParser()));
+        for (SearchRequest searchRequest : multiSearchRequest.requests()) {
+            if (searchRequest.scroll() != null) {
+                return performRequest(multiSearchRequest, converters.multiSearch(),
+                    response -> entityReader.apply(response.getEntity()), emptySet(), headers);
+            }
+        }
+        return performReadRequest(multiSearchRequest, converters.multiSearch(), entityReader, headers);
+    }
+
+    /**
+     * Asynchronously executes a multi search using the Multi Search api
+     * <p>
+     * See <a href="https://www.elastic.co/guide/en/elasticsearch/reference/current/search-multi-search.html">Multi Search API on
+     * elastic.co</a>
+     */
+    public void msearchAsync(MultiSearchRequest multiSearchRequest, ActionListener<MultiSearchResponse> listener,
+        Header... headers) {
+        performRequestAsyncAndParseEntity(multiSearchRequest, converters.multiSearch(),
+            parser -> MultiSearchResponseParser.fromXContent(parser, searchResponseParser()), listener, emptySet(),
+            headers);
+    }
+
+    /**
+     * 开启合并时，与同一时间窗口内的其他请求合并为一个 _msearch 发送；未开启或为 scroll 请求时与
+     * {@link #search(SearchRequest, Header...)} 相同
+     */
+    public SearchResponse batchSearch(SearchRequest searchRequest) throws IOException {
+        SearchBatcher batcher = this.searchBatcher;
+        if (batcher == null || searchRequest.scroll() != null) {
+            return search(searchRequest);
+        }
+        ActionRequestValidationException validationException = searchRequest.validate();
+        if (validationException != null) {
+            throw validationException;
+        }
+        return await(batcher.submit(searchRequest), maxRetryTimeoutMillis);
+    }
+
+    /**
+     * 等待异步请求完成，IOException 和 RuntimeException 原样抛出；最多等待 timeoutMillis，超时后 future 以相同的异常失败
+     */
+    private static <T> T await(CompletableFuture<T> future, long timeoutMillis) throws IOException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            IOException timeout = new IOException("listener timeout after waiting for [" + timeoutMillis + "] ms");
+            future.completeExceptionally(timeout);
+            throw timeout;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for response");
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    private CheckedFunction<XContentParser, SearchResponse, IOException> searchResponseParser() {
+        return esVersion == V7_9 ? SearchResponseParserV79::fromXContent : SearchResponse::fromXContent;
+    }
+
     /**
      * Executes a search using the Search Scroll api
      * <p>
@@ -343,15 +664,33 @@ public class RestClientProxy {
      * API on elastic.co</a>
      */
     public SearchResponse searchScroll(SearchScrollRequest searchScrollRequest, Header... headers) throws IOException {
-        return performRequestAndParseEntity(
+        return performStreamingRequestAndParseEntity(
             searchScrollRequest,
-            Request::searchScroll,
+            converters.searchScroll(),
             esVersion == V7_9 ? SearchResponseParserV79::fromXContent : SearchResponse::fromXContent,
-            emptySet(),
             headers
         );
     }
 
+    /**
+     * 与 {@link #searchScroll(SearchScrollRequest, Header...)} 相同，但只解析命中结果，见 {@link #searchHits}
+     */
+    public EsHits searchScrollHits(SearchScrollRequest searchScrollRequest, Header... headers) throws IOException {
+        return performStreamingRequestAndParseEntity(searchScrollRequest, converters.searchScroll(),
+            EsHitsParser::fromXContent, headers);
+    }
+
+    /**
+     * 与 {@link #searchScroll(SearchScrollRequest, Header...)} 相同，_source 直接绑定为 sourceType，
+     * 见 {@link #search(SearchRequest, Class, Header...)}
+     */
+    public <T> EsTypedHits<T> searchScroll(SearchScrollRequest searchScrollRequest, Class<T> sourceType,
+        Header... headers) throws IOException {
+        ObjectReader reader = sourceMapper.readerFor(sourceType);
+        return performStreamingRequest(searchScrollRequest, converters.searchScroll(),
+            entity -> TypedHitsParser.fromEntity(entity, reader), headers);
+    }
+
     /**
      * Asynchronously executes a search using the Search Scroll api
      * <p>
@@ -361,7 +700,7 @@ public class RestClientProxy {
     public void searchScrollAsync(SearchScrollRequest searchScrollRequest, ActionListener<SearchResponse> listener, Header... headers) {
         performRequestAsyncAndParseEntity(
             searchScrollRequest,
-            Request::searchScroll,
+            converters.searchScroll(),
             esVersion == V7_9 ? SearchResponseParserV79::fromXContent : SearchResponse::fromXContent,
             listener,
             emptySet(),
@@ -376,7 +715,7 @@ public class RestClientProxy {
      * Clear Scroll API on elastic.co</a>
      */
     public ClearScrollResponse clearScroll(ClearScrollRequest clearScrollRequest, Header... headers) throws IOException {
-        return performRequestAndParseEntity(clearScrollRequest, Request::clearScroll, ClearScrollResponse::fromXContent,
+        return performRequestAndParseEntity(clearScrollRequest, converters.clearScroll(), ClearScrollResponse::fromXContent,
                 emptySet(), headers);
     }
 
@@ -387,10 +726,75 @@ public class RestClientProxy {
      * Clear Scroll API on elastic.co</a>
      */
     public void clearScrollAsync(ClearScrollRequest clearScrollRequest, ActionListener<ClearScrollResponse> listener, Header... headers) {
-        performRequestAsyncAndParseEntity(clearScrollRequest, Request::clearScroll, ClearScrollResponse::fromXContent,
+        performRequestAsyncAndParseEntity(clearScrollRequest, converters.clearScroll(), ClearScrollResponse::fromXContent,
                 listener, emptySet(), headers);
     }
 
+    //--------------------------返回 CompletableFuture 的异步接口-----------------------------------
+    // 不占用调用线程；响应在 http client 的 IO 线程解析并完成 future，后续的 thenApply 等也在该线程执行，
+    // 其中不能阻塞，耗时的处理使用 thenApplyAsync 等指定线程池
+
+    public CompletableFuture<SearchResponse> searchAsync(SearchRequest searchRequest, Header... headers) {
+        return toFuture(listener -> searchAsync(searchRequest, listener, headers));
+    }
+
+    /**
+     * 开启合并时与 {@link #batchSearch(SearchRequest)} 相同地合并为 _msearch，否则与
+     * {@link #searchAsync(SearchRequest, Header...)} 相同
+     */
+    public CompletableFuture<SearchResponse> batchSearchAsync(SearchRequest searchRequest) {
+        SearchBatcher batcher = this.searchBatcher;
+        if (batcher == null || searchRequest.scroll() != null) {
+            return searchAsync(searchRequest);
+        }
+        ActionRequestValidationException validationException = searchRequest.validate();
+        if (validationException != null) {
+            CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(validationException);
+            return future;
+        }
+        return batcher.submit(searchRequest);
+    }
+
+    public CompletableFuture<SearchResponse> searchScrollAsync(SearchScrollRequest searchScrollRequest,
+        Header... headers) {
+        return toFuture(listener -> searchScrollAsync(searchScrollRequest, listener, headers));
+    }
+
+    public CompletableFuture<ClearScrollResponse> clearScrollAsync(ClearScrollRequest clearScrollRequest,
+        Header... headers) {
+        return toFuture(listener -> clearScrollAsync(clearScrollRequest, listener, headers));
+    }
+
+    public CompletableFuture<MultiSearchResponse> msearchAsync(MultiSearchRequest multiSearchRequest,
+        Header... headers) {
+        return toFuture(listener -> msearchAsync(multiSearchRequest, listener, headers));
+    }
+
+    public CompletableFuture<MultiGetResponse> mgetAsync(MultiGetRequest multiGetRequest, Header... headers) {
+        return toFuture(listener -> mgetAsync(multiGetRequest, listener, headers));
+    }
+
+    public CompletableFuture<GetResponse> getAsync(GetRequest getRequest, Header... headers) {
+        return toFuture(listener -> getAsync(getRequest, listener, headers));
+    }
+
+    public CompletableFuture<Boolean> pingAsync(Header... headers) {
+        return toFuture(listener -> performRequestAsync(new MainRequest(), (request) -> Request.ping(),
+            RestClientProxy::convertExistsResponse, listener, emptySet(), headers));
+    }
+
+    public CompletableFuture<MainResponse> infoAsync(Header... headers) {
+        return toFuture(listener -> performRequestAsyncAndParseEntity(new MainRequest(), (request) -> Request.info(),
+            MainResponse::fromXContent, listener, emptySet(), headers));
+    }
+
+    private static <T> CompletableFuture<T> toFuture(Consumer<ActionListener<T>> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        call.accept(ActionListener.wrap(future::complete, future::completeExceptionally));
+        return future;
+    }
+
     protected <Req extends ActionRequest, Resp> Resp performRequestAndParseEntity(Req request,
                                                                                   CheckedFunction<Req, Request, IOException> requestConverter,
                                                                                   CheckedFunction<XContentParser, Resp, IOException> entityParser,
@@ -398,6 +802,126 @@ public class RestClientProxy {
         return performRequest(request, requestConverter, (response) -> parseEntity(response.getEntity(), entityParser), ignores, headers);
     }
 
+    /**
+     * 与 {@link #performRequestAndParseEntity} 相同，2xx 响应边接收边解析，body 经过有界的 buffer，不完整缓存在堆内。
+     * 未开启流式读取时退回 {@link #performRequestAndParseEntity}
+     */
+    protected <Req extends ActionRequest, Resp> Resp performStreamingRequestAndParseEntity(Req request,
+                                                                                           CheckedFunction<Req, Request, IOException> requestConverter,
+                                                                                           CheckedFunction<XContentParser, Resp, IOException> entityParser,
+                                                                                           Header... headers) throws IOException {
+        return performStreamingRequest(request, requestConverter, entity -> parseEntity(entity, entityParser), headers);
+    }
+
+    /**
+     * 流式读取 2xx 响应，由 entityReader 直接读取 entity。未开启流式读取时退回 {@link #performRequest}
+     */
+    protected <Req extends ActionRequest, Resp> Resp performStreamingRequest(Req request,
+                                                                             CheckedFunction<Req, Request, IOException> requestConverter,
+                                                                             CheckedFunction<HttpEntity, Resp, IOException> entityReader,
+                                                                             Header... headers) throws IOException {
+        BufferPool pool = this.responseBufferPool;
+        if (pool == null) {
+            return performRequest(request, requestConverter,
+                response -> entityReader.apply(decode(response.getEntity())), emptySet(), headers);
+        }
+
+        RequestTiming timing = startTiming();
+        Request req = prepare(request, requestConverter, timing);
+        ResponseBudget.Reservation reservation = acquireBudget(timing, null);
+        try {
+            CircuitBreaker.Call call;
+            try {
+                call = acquireCall();
+            } catch (CircuitBreakerOpenException e) {
+                timing.failed();
+                throw e;
+            }
+            StreamingExchange exchange = new StreamingExchange(pool, timing::responded, reservation);
+            client.performRequestAsync(req.getMethod(), req.getEndpoint(), req.getParameters(), req.getEntity(),
+                exchange, call == null ? exchange : call.wrap(exchange), requestHeaders(headers));
+
+            HttpEntity entity;
+            try {
+                entity = exchange.awaitEntity(maxRetryTimeoutMillis);
+                timing.received(exchange.getStatusCode());
+                if (call != null) {
+                    //流式读取时 listener 在 body 读完后才调用，这里先按状态码记录
+                    call.onStatus(exchange.getStatusCode());
+                }
+            } catch (ResponseException e) {
+                timing.received(e.getResponse().getStatusLine().getStatusCode());
+                timing.failed();
+                throw parseResponseException(e);
+            } catch (IOException | RuntimeException e) {
+                timing.failed();
+                throw e;
+            }
+
+            return read(req, entity, entityReader, timing);
+        } finally {
+            release(reservation);
+        }
+    }
+
+    private <Resp> Resp read(Request req, HttpEntity entity, CheckedFunction<HttpEntity, Resp, IOException> entityReader,
+                             RequestTiming timing) throws IOException {
+        Resp resp;
+        try {
+            resp = entityReader.apply(decode(entity));
+        } catch (Exception e) {
+            timing.failed();
+            throw new IOException("Unable to parse response body for " + req.getMethod() + " " + req.getEndpoint(), e);
+        }
+        timing.succeeded();
+        return resp;
+    }
+
+    /**
+     * 只读请求：开启合并时，与进行中的相同请求（endpoint、参数、header、body 都相同）共享一次响应，每个调用方各自解析；
+     * 开启对冲时，慢请求会再发送一个副本。都未开启时与 {@link #performStreamingRequest} 相同。
+     * 有副作用的请求（scroll、写操作）不能走这里
+     */
+    protected <Req extends ActionRequest, Resp> Resp performReadRequest(Req request,
+                                                                        CheckedFunction<Req, Request, IOException> requestConverter,
+                                                                        CheckedFunction<HttpEntity, Resp, IOException> entityReader,
+                                                                        Header... headers) throws IOException {
+        RequestCoalescer coalescer = this.requestCoalescer;
+        Hedger hedger = this.hedger;
+        if (coalescer == null && hedger == null) {
+            return performStreamingRequest(request, requestConverter, entityReader, headers);
+        }
+
+        RequestTiming timing = startTiming();
+        Request req = prepare(request, requestConverter, timing);
+        Header[] sendHeaders = requestHeaders(headers);
+        ResponseBudget.Reservation reservation = acquireBudget(timing, hedger);
+        CheckedSupplier<HttpEntity, IOException> call = () -> {
+            try {
+                Response response = send(req, sendHeaders, hedger, reservation);
+                timing.received(response);
+                return coalescer == null ? response.getEntity() : RequestCoalescer.buffer(response.getEntity());
+            } catch (ResponseException e) {
+                timing.received(e.getResponse());
+                throw parseResponseException(e);
+            }
+        };
+        try {
+            HttpEntity entity;
+            try {
+                entity = coalescer == null ? call.get() : coalescer.execute(req, sendHeaders, call);
+                timing.received();
+            } catch (IOException | RuntimeException e) {
+                timing.failed();
+                throw e;
+            }
+
+            return read(req, entity, entityReader, timing);
+        } finally {
+            release(reservation);
+        }
+    }
+
     /**
      * 获取查询的真实语句
      *
@@ -410,6 +934,24 @@ public class RestClientProxy {
 
     }
 
+    /**
+     * 转换、filter、编码，并记录耗时
+     */
+    private <Req extends ActionRequest> Request prepare(Req request,
+                                                        CheckedFunction<Req, Request, IOException> requestConverter,
+                                                        RequestTiming timing) throws IOException {
+        Request converted = requestConverter.apply(request);
+        timing.converted();
+        Request req = encode(addFilters(request, converted));
+        timing.filtered(req);
+        return req;
+    }
+
+    private RequestTiming startTiming() {
+        RequestMetricsRecorder metrics = this.requestMetrics;
+        return metrics == null ? RequestTiming.NOOP : metrics.start();
+    }
+
     /** 去掉一些多余的查询属性 */
     protected <Req extends ActionRequest> Request addFilters(Req request, Request apply) throws IOException {
         ActionRequestValidationException validationException = request.validate();
@@ -417,43 +959,179 @@ public class RestClientProxy {
             throw validationException;
         }
 
-        Request req = apply;
-        for (AbstractRequestFilter filter : filters) {
-            req = filter.filter(req, this.esVersion);
+        return filterChain.filter(apply, this.esVersion);
+    }
+
+    /**
+     * 按需转为 SMILE/CBOR、gzip 压缩请求体，需要在 filter 之后调用
+     */
+    private Request encode(Request req) throws IOException {
+        ContentNegotiation negotiation = this.contentNegotiation;
+        if (negotiation != null) {
+            req = negotiation.apply(req, esVersion);
         }
-        return req;
+        GzipCodec codec = this.gzipCodec;
+        return codec == null ? req : codec.encode(req);
+    }
+
+    /**
+     * 加上 Accept、Accept-Encoding
+     */
+    private Header[] requestHeaders(Header[] headers) {
+        ContentNegotiation negotiation = this.contentNegotiation;
+        if (negotiation != null) {
+            headers = negotiation.headers(headers, esVersion);
+        }
+        GzipCodec codec = this.gzipCodec;
+        return codec == null ? headers : codec.headers(headers);
+    }
+
+    /**
+     * gzip 响应返回边读边解压的 entity，已解压或未压缩的原样返回
+     */
+    private HttpEntity decode(HttpEntity entity) {
+        GzipCodec codec = this.gzipCodec;
+        return GzipCodec.decode(entity, codec == null ? null : codec.getStats());
     }
 
     protected <Req extends ActionRequest, Resp> Resp performRequest(Req request,
                                                                     CheckedFunction<Req, Request, IOException> requestConverter,
                                                                     CheckedFunction<Response, Resp, IOException> responseConverter,
                                                                     Set<Integer> ignores, Header... headers) throws IOException {
-        Request req = addFilters(request, requestConverter.apply(request));
+        RequestTiming timing = startTiming();
+        return execute(prepare(request, requestConverter, timing), responseConverter, ignores, null, timing, headers);
+    }
 
+    /**
+     * 与 {@link #performRequest} 相同，开启对冲时慢请求会再发送一个副本；只能用于幂等的读请求（如 get）
+     */
+    protected <Req extends ActionRequest, Resp> Resp performIdempotentRequest(Req request,
+                                                                              CheckedFunction<Req, Request, IOException> requestConverter,
+                                                                              CheckedFunction<Response, Resp, IOException> responseConverter,
+                                                                              Set<Integer> ignores, Header... headers) throws IOException {
+        RequestTiming timing = startTiming();
+        return execute(prepare(request, requestConverter, timing), responseConverter, ignores, this.hedger, timing,
+            headers);
+    }
+
+    /**
+     * hedger 不为null时对冲发送；开启熔断时先经过熔断，对冲的多个副本只记录一次结果
+     */
+    private Response send(Request req, Header[] headers, Hedger hedger, ResponseBudget.Reservation reservation)
+        throws IOException {
+        CircuitBreaker.Call call = acquireCall();
+        if (call == null) {
+            return doSend(req, headers, hedger, reservation);
+        }
         Response response;
         try {
-            response = client.performRequest(req.getMethod(), req.getEndpoint(), req.getParameters(), req.getEntity(), headers);
+            response = doSend(req, headers, hedger, reservation);
+        } catch (Exception e) {
+            call.onFailure(e);
+            throw e;
+        }
+        call.onResponse(response);
+        return response;
+    }
+
+    /**
+     * reservation 不为null时收到的响应字节计入额度
+     */
+    private Response doSend(Request req, Header[] headers, Hedger hedger, ResponseBudget.Reservation reservation)
+        throws IOException {
+        if (hedger != null) {
+            return hedger.execute(req, reservation, headers);
+        }
+        if (reservation != null) {
+            return client.performRequest(req.getMethod(), req.getEndpoint(), req.getParameters(), req.getEntity(),
+                reservation, headers);
+        }
+        return client.performRequest(req.getMethod(), req.getEndpoint(), req.getParameters(), req.getEntity(), headers);
+    }
+
+    /**
+     * 同步请求占用响应额度，额度不足时排队等待；对冲时每个副本各预留一份
+     *
+     * @return 未开启时为null
+     */
+    private ResponseBudget.Reservation acquireBudget(RequestTiming timing, Hedger hedger) throws IOException {
+        ResponseBudget budget = this.responseBudget;
+        if (budget == null) {
+            return null;
+        }
+        try {
+            return budget.acquire(hedger == null ? 1 : 1 + hedger.getPolicy().getMaxHedgesPerRequest());
+        } catch (IOException e) {
+            timing.failed();
+            throw e;
+        }
+    }
+
+    private static void release(ResponseBudget.Reservation reservation) {
+        if (reservation != null) {
+            reservation.close();
+        }
+    }
+
+    /**
+     * @return 未开启熔断时为null
+     * @throws CircuitBreakerOpenException 熔断打开，请求不能发送
+     */
+    private CircuitBreaker.Call acquireCall() throws CircuitBreakerOpenException {
+        CircuitBreaker breaker = this.circuitBreaker;
+        return breaker == null ? null : breaker.acquire();
+    }
+
+    private <Resp> Resp execute(Request req, CheckedFunction<Response, Resp, IOException> responseConverter,
+                                Set<Integer> ignores, Hedger hedger, RequestTiming timing,
+                                Header... headers) throws IOException {
+        ResponseBudget.Reservation reservation = acquireBudget(timing, hedger);
+        try {
+            return execute(req, responseConverter, ignores, hedger, timing, reservation, headers);
+        } finally {
+            release(reservation);
+        }
+    }
 
+    private <Resp> Resp execute(Request req, CheckedFunction<Response, Resp, IOException> responseConverter,
+                                Set<Integer> ignores, Hedger hedger, RequestTiming timing,
+                                ResponseBudget.Reservation reservation, Header... headers) throws IOException {
+        Response response;
+        try {
+            response = send(req, requestHeaders(headers), hedger, reservation);
+            timing.received(response);
         } catch (ResponseException e) {
+            timing.received(e.getResponse());
             if (ignores.contains(e.getResponse().getStatusLine().getStatusCode())) {
                 try {
-                    return responseConverter.apply(e.getResponse());
+                    Resp resp = responseConverter.apply(e.getResponse());
+                    timing.succeeded();
+                    return resp;
                 } catch (Exception innerException) {
                     //the exception is ignored as we now try to parse the response as an error.
                     //this covers cases like get where 404 can either be a valid document not found response,
                     //or an error for which parsing is completely different. We try to consider the 404 response as a valid one
                     //first. If parsing of the response breaks, we fall back to parsing it as an error.
+                    timing.failed();
                     throw parseResponseException(e);
                 }
             }
+            timing.failed();
             throw parseResponseException(e);
+        } catch (IOException | RuntimeException e) {
+            timing.failed();
+            throw e;
         }
 
+        Resp resp;
         try {
-            return responseConverter.apply(response);
+            resp = responseConverter.apply(response);
         } catch (Exception e) {
+            timing.failed();
             throw new IOException("Unable to parse response body for " + response, e);
         }
+        timing.succeeded();
+        return resp;
     }
 
     protected <Req extends ActionRequest, Resp> void performRequestAsyncAndParseEntity(Req request,
@@ -480,25 +1158,67 @@ public class RestClientProxy {
             }
         }
 
+        RequestTiming timing = startTiming();
         Request req;
         try {
-            req = requestConverter.apply(request);
+            Request converted = requestConverter.apply(request);
+            timing.converted();
+            //与同步请求相同经过 filter，校验已在上面按版本处理
+            req = encode(filterChain.filter(converted, esVersion));
+            timing.filtered(req);
         } catch (Exception e) {
             listener.onFailure(e);
             return;
         }
 
-        ResponseListener responseListener = wrapResponseListener(responseConverter, listener, ignores);
-        client.performRequestAsync(req.getMethod(), req.getEndpoint(), req.getParameters(), req.getEntity(), responseListener, headers);
+        ResponseListener responseListener = wrapResponseListener(responseConverter, listener, ignores, timing);
+        ResponseBudget budget = this.responseBudget;
+        ResponseBudget.Reservation reservation = null;
+        if (budget != null) {
+            try {
+                //异步请求不阻塞调用线程，额度不足直接拒绝
+                reservation = budget.tryAcquire();
+            } catch (ResponseBudgetExceededException e) {
+                responseListener.onFailure(e);
+                return;
+            }
+            responseListener = reservation.wrap(responseListener);
+        }
+        CircuitBreaker.Call call;
+        try {
+            call = acquireCall();
+        } catch (CircuitBreakerOpenException e) {
+            responseListener.onFailure(e);
+            return;
+        }
+        if (call != null) {
+            responseListener = call.wrap(responseListener);
+        }
+        if (reservation != null) {
+            client.performRequestAsync(req.getMethod(), req.getEndpoint(), req.getParameters(), req.getEntity(),
+                reservation, responseListener, requestHeaders(headers));
+        } else {
+            client.performRequestAsync(req.getMethod(), req.getEndpoint(), req.getParameters(), req.getEntity(),
+                responseListener, requestHeaders(headers));
+        }
     }
 
     <Resp> ResponseListener wrapResponseListener(CheckedFunction<Response, Resp, IOException> responseConverter,
                                                  ActionListener<Resp> actionListener, Set<Integer> ignores) {
+        return wrapResponseListener(responseConverter, actionListener, ignores, RequestTiming.NOOP);
+    }
+
+    private <Resp> ResponseListener wrapResponseListener(CheckedFunction<Response, Resp, IOException> responseConverter,
+                                                         ActionListener<Resp> actionListener, Set<Integer> ignores,
+                                                         RequestTiming timing) {
         return new ResponseListener() {
             @Override
             public void onSuccess(Response response) {
+                timing.received(response);
                 try {
-                    actionListener.onResponse(responseConverter.apply(response));
+                    Resp resp = responseConverter.apply(response);
+                    timing.succeeded();
+                    actionListener.onResponse(resp);
                 } catch (Exception e) {
                     IOException ioe = new IOException("Unable to parse response body for " + response, e);
                     onFailure(ioe);
@@ -510,20 +1230,26 @@ public class RestClientProxy {
                 if (exception instanceof ResponseException) {
                     ResponseException responseException = (ResponseException) exception;
                     Response response = responseException.getResponse();
+                    timing.received(response);
                     if (ignores.contains(response.getStatusLine().getStatusCode())) {
                         try {
-                            actionListener.onResponse(responseConverter.apply(response));
+                            Resp resp = responseConverter.apply(response);
+                            timing.succeeded();
+                            actionListener.onResponse(resp);
                         } catch (Exception innerException) {
                             //the exception is ignored as we now try to parse the response as an error.
                             //this covers cases like get where 404 can either be a valid document not found response,
                             //or an error for which parsing is completely different. We try to consider the 404 response as a valid one
                             //first. If parsing of the response breaks, we fall back to parsing it as an error.
+                            timing.failed();
                             actionListener.onFailure(parseResponseException(responseException));
                         }
                     } else {
+                        timing.failed();
                         actionListener.onFailure(parseResponseException(responseException));
                     }
                 } else {
+                    timing.failed();
                     actionListener.onFailure(exception);
                 }
             }
@@ -569,7 +1295,7 @@ public class RestClientProxy {
         if (xContentType == null) {
             throw new IllegalStateException("Unsupported Content-Type: " + entity.getContentType().getValue());
         }
-        try (XContentParser parser = xContentType.xContent().createParser(registry, entity.getContent())) {
+        try (XContentParser parser = xContentType.xContent().createParser(registry, decode(entity).getContent())) {
             return entityParser.apply(parser);
         }
     }
@@ -646,22 +1372,331 @@ public class RestClientProxy {
         return entries;
     }
 
+    /**
+     * 没有额外 entry 时使用的 registry，只构建一次（包括 ServiceLoader 扫描），所有 proxy 共享；registry 不可变
+     */
+    private static final class DefaultRegistry {
+        private static final NamedXContentRegistry INSTANCE = new NamedXContentRegistry(
+                Stream.concat(getDefaultNamedXContents().stream(), getProvidedNamedXContents().stream()).collect(toList()));
+    }
+
+    public RestClient getLowLevelClient() {
+        return client;
+    }
+
     public List<AbstractRequestFilter> getFilters() {
         return filters;
     }
 
     public void addFilters(List<AbstractRequestFilter> otherFilters) {
-        if (otherFilters != null && !otherFilters.isEmpty())
+        if (otherFilters != null && !otherFilters.isEmpty()) {
             this.filters.addAll(otherFilters);
+            this.filterChain.invalidate();
+        }
     }
 
     public void addFilter(AbstractRequestFilter filter) {
-        if (filter != null)
+        if (filter != null) {
             this.filters.add(filter);
+            this.filterChain.invalidate();
+        }
+    }
+
+    /**
+     * 开启filter改写结果缓存，相同的请求不再重复执行filter链；自定义filter的改写结果须只取决于版本、endpoint、参数和body。
+     * 需要引入 caffeine 依赖
+     *
+     * @param maxBytes 缓存的body总字节数上限
+     */
+    public synchronized void enableRewriteCache(long maxBytes) {
+        this.filterChain.setRewriteCache(new RewriteCache(maxBytes));
+    }
+
+    /**
+     * @return 改写结果缓存，未开启时为null
+     */
+    public RewriteCache getRewriteCache() {
+        return filterChain.getRewriteCache();
+    }
+
+    /**
+     * 开启filter执行统计，按filter名和endpoint在内存中累计
+     *
+     * @return 统计结果，可通过 {@link FilterMetricsRecorder#snapshot()} 读取
+     */
+    public synchronized FilterMetricsRecorder enableFilterMetrics() {
+        FilterMetricsRecorder recorder = new FilterMetricsRecorder();
+        this.filterChain.setMetrics(recorder);
+        return recorder;
+    }
+
+    /**
+     * @param metrics 自定义的统计实现，用于接入监控系统；null 表示关闭统计
+     */
+    public synchronized void setFilterMetrics(FilterMetrics metrics) {
+        this.filterChain.setMetrics(metrics);
+    }
+
+    /**
+     * @return 当前的filter执行统计，未开启或使用自定义实现时为空
+     */
+    public List<FilterStats> getFilterStats() {
+        FilterMetrics metrics = filterChain.getMetrics();
+        return metrics instanceof FilterMetricsRecorder
+            ? ((FilterMetricsRecorder) metrics).snapshot() : Collections.emptyList();
+    }
+
+    /**
+     * search、scroll 响应流式读取，每个请求占用一个 bufferSize 大小的 buffer，池中最多保留 maxPooled 个
+     */
+    public synchronized void enableStreamingResponses(int bufferSize, int maxPooled) {
+        this.responseBufferPool = new BufferPool(bufferSize, maxPooled);
+    }
+
+    /**
+     * 关闭流式读取，响应完整缓存后再解析
+     */
+    public synchronized void disableStreamingResponses() {
+        this.responseBufferPool = null;
+    }
+
+    /**
+     * @return 流式读取使用的buffer池，未开启时为null
+     */
+    public BufferPool getResponseBufferPool() {
+        return responseBufferPool;
+    }
+
+    /**
+     * 开启 {@link #batchSearch(SearchRequest)} 的合并：第一个请求到达后最多等待 windowMillis，或攒够 maxBatchSize 个时立即发送
+     */
+    public synchronized void enableSearchBatching(long windowMillis, int maxBatchSize) {
+        SearchBatcher previous = this.searchBatcher;
+        this.searchBatcher = new SearchBatcher(this, windowMillis, maxBatchSize);
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * 关闭合并，已收集的请求立即发送
+     */
+    public synchronized void disableSearchBatching() {
+        SearchBatcher previous = this.searchBatcher;
+        this.searchBatcher = null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * @return 搜索合并，未开启时为null
+     */
+    public SearchBatcher getSearchBatcher() {
+        return searchBatcher;
+    }
+
+    /**
+     * 开启 gzip：超过 minRequestBytes 的请求体压缩后发送（<=0 不压缩请求），acceptGzip 时请求 es 压缩响应，
+     * 响应边读边解压。节省的字节数见 {@link GzipCodec#getStats()}
+     */
+    public synchronized GzipCodec enableGzip(int minRequestBytes, boolean acceptGzip) {
+        GzipCodec codec = new GzipCodec(minRequestBytes, acceptGzip);
+        this.gzipCodec = codec;
+        return codec;
+    }
+
+    public synchronized void disableGzip() {
+        this.gzipCodec = null;
+    }
+
+    /**
+     * @return gzip 压缩，未开启时为null
+     */
+    public GzipCodec getGzipCodec() {
+        return gzipCodec;
+    }
+
+    /**
+     * 请求 es 返回 SMILE 或 CBOR 格式的响应，解析大量命中和聚合时比 json 更快；encodeRequests 时 search、msearch、bulk 的 body
+     * 也转为该格式发送。es 需要支持该格式
+     */
+    public synchronized void useResponseFormat(XContentType responseType, boolean encodeRequests) {
+        this.contentNegotiation = new ContentNegotiation(responseType, encodeRequests);
+    }
+
+    /**
+     * 恢复 json 响应
+     */
+    public synchronized void useJsonResponses() {
+        this.contentNegotiation = null;
+    }
+
+    /**
+     * @return 响应格式设置，使用 json 时为null
+     */
+    public ContentNegotiation getContentNegotiation() {
+        return contentNegotiation;
+    }
+
+    /**
+     * 开启对冲：search（不带 scroll）、msearch、get、mget 在 delay 内没有响应时再发送一个副本，先返回的生效。
+     * 开启后这些请求的响应完整读入内存后再解析，不再使用流式读取
+     */
+    public synchronized Hedger enableHedging(HedgePolicy policy) {
+        Hedger previous = this.hedger;
+        Hedger current = new Hedger(client, policy, maxRetryTimeoutMillis);
+        this.hedger = current;
+        if (previous != null) {
+            previous.close();
+        }
+        return current;
+    }
+
+    public synchronized void disableHedging() {
+        Hedger previous = this.hedger;
+        this.hedger = null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * @return 对冲，未开启时为null
+     */
+    public Hedger getHedger() {
+        return hedger;
+    }
+
+    /**
+     * 开启集群级熔断：429、502、503、504、连接失败、超时或慢请求比例过高时打开，打开期间所有请求直接抛出
+     * {@link CircuitBreakerOpenException}，一段时间后放行少量试探请求，成功后恢复。已开启时替换为新的
+     *
+     * @return 熔断状态和统计，可注册为 MBean
+     */
+    public synchronized CircuitBreaker enableCircuitBreaker(CircuitBreakerPolicy policy) {
+        CircuitBreaker breaker = new CircuitBreaker(policy);
+        this.circuitBreaker = breaker;
+        return breaker;
+    }
+
+    public synchronized void disableCircuitBreaker() {
+        this.circuitBreaker = null;
+    }
+
+    /**
+     * @return 未开启时为null
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 开启响应内存额度，每个请求预留的字节数与 RestClient 默认的 buffer 上限相同（不超过 maxBytes），
+     * 见 {@link #enableResponseBudget(long, long, long)}
+     */
+    public synchronized ResponseBudget enableResponseBudget(long maxBytes, long maxWaitMillis) {
+        return enableResponseBudget(maxBytes, Math.min(maxBytes, StreamingExchange.DEFAULT_HEAP_BUFFER_LIMIT),
+            maxWaitMillis);
+    }
+
+    /**
+     * 开启响应内存额度：每个请求发送前预留 maxResponseBytes，预留之和达到 maxBytes 后，同步请求排队最多 maxWaitMillis，
+     * 异步请求直接拒绝，抛出 {@link ResponseBudgetExceededException}；超过预留的响应以 ContentTooLongException 失败。
+     * 已开启时替换为新的，已占用旧额度的请求仍释放到旧额度
+     *
+     * @return 额度的使用情况，可注册为 MBean
+     */
+    public synchronized ResponseBudget enableResponseBudget(long maxBytes, long maxResponseBytes, long maxWaitMillis) {
+        ResponseBudget budget = new ResponseBudget(maxBytes, maxResponseBytes, maxWaitMillis);
+        this.responseBudget = budget;
+        return budget;
+    }
+
+    public synchronized void disableResponseBudget() {
+        this.responseBudget = null;
+    }
+
+    /**
+     * @return 未开启时为null
+     */
+    public ResponseBudget getResponseBudget() {
+        return responseBudget;
+    }
+
+    /**
+     * 开启请求耗时统计：按 endpoint、节点累计转换、filter、网络、解析各阶段的耗时直方图和状态码
+     *
+     * @return 统计结果，可通过 {@link RequestMetricsRecorder#endpointStats()} 读取或注册为 MBean
+     */
+    public synchronized RequestMetricsRecorder enableRequestMetrics() {
+        RequestMetricsRecorder recorder = new RequestMetricsRecorder();
+        this.requestMetrics = recorder;
+        return recorder;
+    }
+
+    public synchronized void disableRequestMetrics() {
+        this.requestMetrics = null;
+    }
+
+    /**
+     * @return 未开启时为null
+     */
+    public RequestMetricsRecorder getRequestMetrics() {
+        return requestMetrics;
+    }
+
+    /**
+     * 开启相同只读请求的合并：search（不带 scroll）、msearch、mget 与进行中的相同请求共享一次响应。
+     * 开启后这些请求的响应完整读入内存后再解析，不再使用流式读取
+     */
+    public synchronized RequestCoalescer enableRequestCoalescing() {
+        RequestCoalescer coalescer = new RequestCoalescer(maxRetryTimeoutMillis);
+        this.requestCoalescer = coalescer;
+        return coalescer;
+    }
+
+    public synchronized void disableRequestCoalescing() {
+        this.requestCoalescer = null;
+    }
+
+    /**
+     * @return 请求合并，未开启时为null
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * 开启 {@link #mget(MultiGetRequest, int)} 的按id缓存，最多缓存 maxEntries 条，写入 ttlMillis 后过期；需要引入 caffeine 依赖
+     */
+    public synchronized DocCache enableDocCache(long maxEntries, long ttlMillis) {
+        DocCache cache = new DocCache(maxEntries, ttlMillis);
+        this.docCache = cache;
+        return cache;
+    }
+
+    public synchronized void disableDocCache() {
+        this.docCache = null;
+    }
+
+    /**
+     * @return 按id缓存，未开启时为null
+     */
+    public DocCache getDocCache() {
+        return docCache;
+    }
+
+    /**
+     * @param sourceMapper _source 绑定为 POJO 时使用的 mapper，默认忽略未知字段
+     */
+    public void setSourceMapper(ObjectMapper sourceMapper) {
+        this.sourceMapper = sourceMapper == null ? TypedHitsParser.DEFAULT_MAPPER : sourceMapper;
     }
 
     public void useVersion(EsVersion esVersion) {
         this.esVersion = esVersion;
+        this.converters = VersionedRequestConverters.of(esVersion);
     }
 
     public EsVersion getEsVersion() {
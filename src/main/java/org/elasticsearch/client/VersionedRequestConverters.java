@@ -0,0 +1,400 @@
+package org.elasticsearch.client;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.serializer.SearchSourceSerializer;
+import org.elasticsearch.client.serializer.VersionedEntity;
+import org.elasticsearch.common.CheckedFunction;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 按目标版本直接构造 request，代替 {@link Request} 中的转换方法再由filter改写。
+ * <p>
+ * 生成的 entity 均为 {@link VersionedEntity}，内置filter不会再解析：
+ * <ul>
+ * <li>search：body 由 {@link SearchSourceSerializer} 按版本序列化</li>
+ * <li>searchScroll：v1.7 的 body 为裸的 scroll_id，scroll 放到url参数中；其他版本与 5.6 相同</li>
+ * <li>clearScroll：v1.7 的 body 为逗号分隔的 scroll_id；其他版本与 5.6 相同</li>
+ * <li>bulk：v7.9 的 action 行使用 routing、version、version_type、retry_on_conflict（去掉下划线前缀）</li>
+ * <li>multiSearch：每个 search 的 body 行与 search 相同，按版本序列化；v1.7 的 header 行不写 request_cache</li>
+ * <li>multiGet：v1.7、v2.3 使用 fields、_source.include/exclude；v7.9 使用 routing、version、version_type，没有 _parent</li>
+ * </ul>
+ *
+ * @author brezp
+ */
+public final class VersionedRequestConverters {
+
+    private static final Map<EsVersion, VersionedRequestConverters> CONVERTERS = new EnumMap<>(EsVersion.class);
+
+    static {
+        for (EsVersion version : EsVersion.values()) {
+            CONVERTERS.put(version, new VersionedRequestConverters(version));
+        }
+    }
+
+    private static final ContentType JSON_CONTENT_TYPE = Request.createContentType(Request.REQUEST_BODY_CONTENT_TYPE);
+    private static final ContentType TEXT_CONTENT_TYPE = ContentType.create("text/plain", StandardCharsets.UTF_8);
+    private static final String SCROLL_ENDPOINT = "/_search/scroll";
+    private static final String BULK_ENDPOINT = "/_bulk";
+    private static final String MULTI_SEARCH_ENDPOINT = "/_msearch";
+    private static final String MULTI_GET_ENDPOINT = "/_mget";
+    private static final byte[] EMPTY_OBJECT = "{}".getBytes(StandardCharsets.UTF_8);
+    private static final ContentType NDJSON_CONTENT_TYPE = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+
+    private final CheckedFunction<SearchRequest, Request, IOException> search;
+    private final CheckedFunction<SearchScrollRequest, Request, IOException> searchScroll;
+    private final CheckedFunction<ClearScrollRequest, Request, IOException> clearScroll;
+    private final CheckedFunction<BulkRequest, Request, IOException> bulk;
+    private final CheckedFunction<MultiSearchRequest, Request, IOException> multiSearch;
+    private final CheckedFunction<MultiGetRequest, Request, IOException> multiGet;
+
+    private VersionedRequestConverters(EsVersion version) {
+        this.search = request -> search(request, version);
+        this.multiSearch = request -> multiSearch(request, version);
+        this.multiGet = request -> multiGet(request, version);
+        this.bulk = request -> bulk(request, version);
+        if (version == EsVersion.V1_7) {
+            this.searchScroll = VersionedRequestConverters::searchScrollV17;
+            this.clearScroll = VersionedRequestConverters::clearScrollV17;
+        } else {
+            this.searchScroll = request -> new Request(HttpPost.METHOD_NAME, SCROLL_ENDPOINT, Collections.emptyMap(),
+                SearchSourceSerializer.toEntity(request, version, JSON_CONTENT_TYPE));
+            this.clearScroll = request -> new Request(HttpDelete.METHOD_NAME, SCROLL_ENDPOINT, Collections.emptyMap(),
+                SearchSourceSerializer.toEntity(request, version, JSON_CONTENT_TYPE));
+        }
+    }
+
+    public static VersionedRequestConverters of(EsVersion version) {
+        return CONVERTERS.get(version);
+    }
+
+    public CheckedFunction<SearchRequest, Request, IOException> search() {
+        return search;
+    }
+
+    public CheckedFunction<SearchScrollRequest, Request, IOException> searchScroll() {
+        return searchScroll;
+    }
+
+    public CheckedFunction<ClearScrollRequest, Request, IOException> clearScroll() {
+        return clearScroll;
+    }
+
+    public CheckedFunction<BulkRequest, Request, IOException> bulk() {
+        return bulk;
+    }
+
+    public CheckedFunction<MultiSearchRequest, Request, IOException> multiSearch() {
+        return multiSearch;
+    }
+
+    public CheckedFunction<MultiGetRequest, Request, IOException> multiGet() {
+        return multiGet;
+    }
+
+    /**
+     * 与 {@link Request#search(SearchRequest)} 相同，body 按目标版本直接序列化
+     */
+    static Request search(SearchRequest searchRequest, EsVersion version) throws IOException {
+        String endpoint = Request.endpoint(searchRequest.indices(), searchRequest.types(), "_search");
+        Request.Params params = Request.Params.builder();
+        params.putParam("typed_keys", "true");
+        params.withRouting(searchRequest.routing());
+        params.withPreference(searchRequest.preference());
+        params.withIndicesOptions(searchRequest.indicesOptions());
+        params.putParam("search_type", searchRequest.searchType().name().toLowerCase(Locale.ROOT));
+        if (searchRequest.requestCache() != null) {
+            params.putParam("request_cache", Boolean.toString(searchRequest.requestCache()));
+        }
+        params.putParam("batched_reduce_size", Integer.toString(searchRequest.getBatchedReduceSize()));
+        if (searchRequest.scroll() != null) {
+            params.putParam("scroll", searchRequest.scroll().keepAlive());
+        }
+        HttpEntity entity = null;
+        if (searchRequest.source() != null) {
+            entity = SearchSourceSerializer.toEntity(searchRequest.source(), version, JSON_CONTENT_TYPE);
+        }
+        return new Request(HttpPost.METHOD_NAME, endpoint, params.getParams(), entity);
+    }
+
+    /**
+     * POST /_msearch，每个 search 一行 header、一行 body，所有行直接写入同一个buffer
+     */
+    static Request multiSearch(MultiSearchRequest multiSearchRequest, EsVersion version) throws IOException {
+        Request.Params params = Request.Params.builder();
+        params.putParam("typed_keys", "true");
+        //v1.7、v2.3 没有 max_concurrent_searches
+        if (multiSearchRequest.maxConcurrentSearchRequests() > 0
+            && version != EsVersion.V1_7 && version != EsVersion.V2_3) {
+            params.putParam("max_concurrent_searches", Integer.toString(multiSearchRequest.maxConcurrentSearchRequests()));
+        }
+
+        byte separator = XContentType.JSON.xContent().streamSeparator();
+        BytesStreamOutput content = new BytesStreamOutput();
+        for (SearchRequest request : multiSearchRequest.requests()) {
+            multiSearchHeader(request, version).writeTo(content);
+            content.writeByte(separator);
+            if (request.source() != null) {
+                SearchSourceSerializer.toXContent(request.source(), version).writeTo(content);
+            } else {
+                content.writeBytes(EMPTY_OBJECT);
+            }
+            content.writeByte(separator);
+        }
+
+        BytesRef bytes = content.bytes().toBytesRef();
+        return new Request(HttpPost.METHOD_NAME, MULTI_SEARCH_ENDPOINT, params.getParams(),
+            new VersionedEntity(bytes.bytes, bytes.offset, bytes.length, NDJSON_CONTENT_TYPE, version));
+    }
+
+    private static BytesReference multiSearchHeader(SearchRequest request, EsVersion version) throws IOException {
+        try (XContentBuilder header = XContentBuilder.builder(XContentType.JSON.xContent())) {
+            header.startObject();
+            if (request.indices() != null && request.indices().length > 0) {
+                header.field("index", String.join(",", request.indices()));
+            }
+            if (request.types() != null && request.types().length > 0) {
+                header.field("type", String.join(",", request.types()));
+            }
+            header.field("search_type", request.searchType().name().toLowerCase(Locale.ROOT));
+            if (request.requestCache() != null && version != EsVersion.V1_7) {
+                header.field("request_cache", request.requestCache());
+            }
+            if (Strings.hasLength(request.routing())) {
+                header.field("routing", request.routing());
+            }
+            if (Strings.hasLength(request.preference())) {
+                header.field("preference", request.preference());
+            }
+            Map<String, String> indicesOptions = Request.Params.builder()
+                .withIndicesOptions(request.indicesOptions()).getParams();
+            for (Map.Entry<String, String> option : indicesOptions.entrySet()) {
+                header.field(option.getKey(), option.getValue());
+            }
+            header.endObject();
+            return header.bytes();
+        }
+    }
+
+    /**
+     * POST /_mget，body 为 {"docs": [...]}，每个 doc 单独指定 _index、_type
+     */
+    static Request multiGet(MultiGetRequest multiGetRequest, EsVersion version) throws IOException {
+        Request.Params params = Request.Params.builder();
+        params.withPreference(multiGetRequest.preference());
+        params.withRealtime(multiGetRequest.realtime());
+        params.withRefresh(multiGetRequest.refresh());
+
+        boolean v7 = version == EsVersion.V7_9;
+        boolean legacy = version == EsVersion.V1_7 || version == EsVersion.V2_3;
+        try (XContentBuilder body = XContentBuilder.builder(XContentType.JSON.xContent())) {
+            body.startObject();
+            body.startArray("docs");
+            for (MultiGetRequest.Item item : multiGetRequest.getItems()) {
+                body.startObject();
+                body.field("_index", item.index());
+                if (Strings.hasLength(item.type())) {
+                    body.field("_type", item.type());
+                }
+                body.field("_id", item.id());
+                if (Strings.hasLength(item.routing())) {
+                    body.field(v7 ? "routing" : "_routing", item.routing());
+                }
+                if (Strings.hasLength(item.parent())) {
+                    if (!v7) {
+                        body.field("_parent", item.parent());
+                    } else if (!Strings.hasLength(item.routing())) {
+                        body.field("routing", item.parent());
+                    }
+                }
+                if (item.storedFields() != null) {
+                    body.array(legacy ? "fields" : "stored_fields", item.storedFields());
+                }
+                if (item.version() != Versions.MATCH_ANY) {
+                    body.field(v7 ? "version" : "_version", item.version());
+                }
+                if (item.versionType() != VersionType.INTERNAL) {
+                    body.field(v7 ? "version_type" : "_version_type", item.versionType().name().toLowerCase(Locale.ROOT));
+                }
+                FetchSourceContext fetchSource = item.fetchSourceContext();
+                if (fetchSource != null) {
+                    if (!fetchSource.fetchSource()) {
+                        body.field("_source", false);
+                    } else {
+                        body.startObject("_source");
+                        body.array(legacy ? "include" : "includes", (Object[]) fetchSource.includes());
+                        body.array(legacy ? "exclude" : "excludes", (Object[]) fetchSource.excludes());
+                        body.endObject();
+                    }
+                }
+                body.endObject();
+            }
+            body.endArray();
+            body.endObject();
+
+            BytesRef bytes = body.bytes().toBytesRef();
+            return new Request(HttpPost.METHOD_NAME, MULTI_GET_ENDPOINT, params.getParams(),
+                new VersionedEntity(bytes.bytes, bytes.offset, bytes.length, JSON_CONTENT_TYPE, version));
+        }
+    }
+
+    /**
+     * v1.7：POST /_search/scroll?scroll=1m，body 为裸的 scroll_id
+     */
+    static Request searchScrollV17(SearchScrollRequest searchScrollRequest) {
+        Request.Params params = Request.Params.builder();
+        if (searchScrollRequest.scroll() != null) {
+            params.putParam("scroll", searchScrollRequest.scroll().keepAlive());
+        }
+        return new Request(HttpPost.METHOD_NAME, SCROLL_ENDPOINT, params.getParams(),
+            text(searchScrollRequest.scrollId(), EsVersion.V1_7));
+    }
+
+    /**
+     * v1.7：DELETE /_search/scroll，body 为逗号分隔的 scroll_id
+     */
+    static Request clearScrollV17(ClearScrollRequest clearScrollRequest) {
+        String scrollIds = String.join(",", clearScrollRequest.getScrollIds());
+        return new Request(HttpDelete.METHOD_NAME, SCROLL_ENDPOINT, Collections.emptyMap(),
+            text(scrollIds, EsVersion.V1_7));
+    }
+
+    private static VersionedEntity text(String content, EsVersion version) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new VersionedEntity(bytes, 0, bytes.length, TEXT_CONTENT_TYPE, version);
+    }
+
+    /**
+     * 与 {@link Request#bulk(BulkRequest)} 相同，action 行按目标版本写出，所有行直接写入同一个buffer
+     */
+    static Request bulk(BulkRequest bulkRequest, EsVersion version) throws IOException {
+        Request.Params params = Request.Params.builder();
+        params.withTimeout(bulkRequest.timeout());
+        params.withRefreshPolicy(bulkRequest.getRefreshPolicy());
+
+        byte separator = XContentType.JSON.xContent().streamSeparator();
+        BytesStreamOutput content = new BytesStreamOutput();
+        for (DocWriteRequest<?> request : bulkRequest.requests()) {
+            bulkAction(request, version).writeTo(content);
+            content.writeByte(separator);
+
+            BytesReference source = null;
+            switch (request.opType()) {
+                case INDEX:
+                case CREATE:
+                    IndexRequest indexRequest = (IndexRequest) request;
+                    source = compactJson(indexRequest.source(), indexRequest.getContentType());
+                    break;
+                case UPDATE:
+                    //doc、upsert 以 rawField 原样写出，同样需要重新序列化
+                    source = compactJson(XContentHelper.toXContent((UpdateRequest) request, XContentType.JSON, false),
+                        XContentType.JSON);
+                    break;
+                default:
+                    break;
+            }
+            if (source != null) {
+                source.writeTo(content);
+                content.writeByte(separator);
+            }
+        }
+
+        BytesRef bytes = content.bytes().toBytesRef();
+        return new Request(HttpPost.METHOD_NAME, BULK_ENDPOINT, params.getParams(),
+            new VersionedEntity(bytes.bytes, bytes.offset, bytes.length, JSON_CONTENT_TYPE, version));
+    }
+
+    /**
+     * 与 es 5.6 的 Request#bulk 相同，source 经 parser 重新序列化为紧凑的 json：
+     * 多行（如格式化过）的 source 直接写入会在 NDJSON 中间断行，破坏整个 _bulk body
+     */
+    private static BytesReference compactJson(BytesReference source, XContentType contentType) throws IOException {
+        try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY, source, contentType);
+             XContentBuilder builder = XContentBuilder.builder(XContentType.JSON.xContent())) {
+            builder.copyCurrentStructure(parser);
+            return builder.bytes();
+        }
+    }
+
+    private static BytesReference bulkAction(DocWriteRequest<?> request, EsVersion version) throws IOException {
+        boolean v7 = version == EsVersion.V7_9;
+        try (XContentBuilder metadata = XContentBuilder.builder(XContentType.JSON.xContent())) {
+            metadata.startObject();
+            metadata.startObject(request.opType().getLowercase());
+            if (Strings.hasLength(request.index())) {
+                metadata.field("_index", request.index());
+            }
+            if (Strings.hasLength(request.type())) {
+                metadata.field("_type", request.type());
+            }
+            if (Strings.hasLength(request.id())) {
+                metadata.field("_id", request.id());
+            }
+            if (Strings.hasLength(request.routing())) {
+                metadata.field(v7 ? "routing" : "_routing", request.routing());
+            }
+            if (Strings.hasLength(request.parent())) {
+                //7.x 没有 _parent，父文档id只用于路由
+                if (!v7) {
+                    metadata.field("_parent", request.parent());
+                } else if (!Strings.hasLength(request.routing())) {
+                    metadata.field("routing", request.parent());
+                }
+            }
+            if (request.version() != Versions.MATCH_ANY) {
+                metadata.field(v7 ? "version" : "_version", request.version());
+            }
+            if (request.versionType() != VersionType.INTERNAL) {
+                metadata.field(v7 ? "version_type" : "_version_type",
+                    request.versionType().name().toLowerCase(Locale.ROOT));
+            }
+            if (request.opType() == DocWriteRequest.OpType.INDEX || request.opType() == DocWriteRequest.OpType.CREATE) {
+                IndexRequest indexRequest = (IndexRequest) request;
+                if (Strings.hasLength(indexRequest.getPipeline())) {
+                    metadata.field("pipeline", indexRequest.getPipeline());
+                }
+            } else if (request.opType() == DocWriteRequest.OpType.UPDATE) {
+                UpdateRequest updateRequest = (UpdateRequest) request;
+                if (updateRequest.retryOnConflict() > 0) {
+                    metadata.field(v7 ? "retry_on_conflict" : "_retry_on_conflict", updateRequest.retryOnConflict());
+                }
+                if (updateRequest.fetchSource() != null) {
+                    metadata.field("_source", updateRequest.fetchSource());
+                }
+            }
+            metadata.endObject();
+            metadata.endObject();
+            return metadata.bytes();
+        }
+    }
+}
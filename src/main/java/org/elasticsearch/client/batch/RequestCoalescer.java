@@ -0,0 +1,187 @@
+package org.elasticsearch.client.batch;
+
+import com.github.brezp.es.client.util.EntityBytes;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.common.CheckedSupplier;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合并相同的进行中读请求（single-flight）：method、endpoint、参数、header、body 都相同时，后到的请求不再发送，
+ * 等待第一个请求的响应。
+ * <p>
+ * 响应 body 完整读入 {@link ByteArrayEntity}，所有等待方共享同一份只读字节，各自解析出独立的响应对象；
+ * 请求失败时所有等待方抛出同一个异常。请求完成后立即移除，不做缓存。
+ * <p>
+ * 等待方最多等待 maxRetryTimeout，超时后与同步请求相同地抛出 listener timeout，不影响第一个请求及其它等待方。
+ *
+ * @author brezp
+ */
+public class RequestCoalescer {
+
+    /**
+     * 等待方最多等待多久，与 RestClient 同步请求的 maxRetryTimeout 相同
+     */
+    private final long maxRetryTimeoutMillis;
+    private final Map<Key, CompletableFuture<HttpEntity>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param maxRetryTimeoutMillis 等待方最多等待多久，应与 client 的 maxRetryTimeout 相同
+     */
+    public RequestCoalescer(long maxRetryTimeoutMillis) {
+        this.maxRetryTimeoutMillis = maxRetryTimeoutMillis;
+    }
+
+    /**
+     * @param call 实际发送请求，返回的 entity 必须可重复读取
+     */
+    public HttpEntity execute(Request request, Header[] headers, CheckedSupplier<HttpEntity, IOException> call)
+        throws IOException {
+        HttpEntity body = request.getEntity();
+        if (body != null && !body.isRepeatable()) {
+            executed.increment();
+            return call.get();
+        }
+
+        Key key = new Key(request, headers);
+        CompletableFuture<HttpEntity> flight = new CompletableFuture<>();
+        CompletableFuture<HttpEntity> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        executed.increment();
+        try {
+            HttpEntity entity = call.get();
+            flight.complete(entity);
+            return entity;
+        } catch (IOException | RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * 把响应 body 完整读入内存，供多个等待方重复读取
+     */
+    public static HttpEntity buffer(HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return null;
+        }
+        ByteArrayEntity buffered = new ByteArrayEntity(EntityUtils.toByteArray(entity));
+        buffered.setContentType(entity.getContentType());
+        buffered.setContentEncoding(entity.getContentEncoding());
+        return buffered;
+    }
+
+    private HttpEntity await(CompletableFuture<HttpEntity> flight) throws IOException {
+        try {
+            return flight.get(maxRetryTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IOException("listener timeout after waiting for [" + maxRetryTimeoutMillis + "] ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for coalesced request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return 实际发送的请求数
+     */
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * @return 被合并、没有发送的请求数
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * body 按字节比较，hash 只用于定位，不会因为冲突合并不同的请求。
+     * body 经 {@link EntityBytes#read} 读取，ByteArrayEntity 等直接引用其内部数组，不拷贝
+     */
+    private static final class Key {
+        private final String method;
+        private final String endpoint;
+        private final Map<String, String> params;
+        private final List<String> headers;
+        private final ByteBuffer body;
+        private final int hash;
+
+        private Key(Request request, Header[] headers) throws IOException {
+            this.method = request.getMethod();
+            this.endpoint = request.getEndpoint();
+            this.params = request.getParameters() == null
+                ? Collections.emptyMap() : new HashMap<>(request.getParameters());
+            this.headers = new ArrayList<>(headers == null ? 0 : headers.length);
+            if (headers != null) {
+                for (Header header : headers) {
+                    this.headers.add(header.getName() + ':' + header.getValue());
+                }
+            }
+            this.body = request.getEntity() == null ? null : EntityBytes.read(request.getEntity());
+            this.hash = Objects.hash(method, endpoint, params, this.headers) * 31 + Objects.hashCode(body);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash
+                && method.equals(other.method)
+                && endpoint.equals(other.endpoint)
+                && params.equals(other.params)
+                && headers.equals(other.headers)
+                && Objects.equals(body, other.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
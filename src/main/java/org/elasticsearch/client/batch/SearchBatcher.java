@@ -0,0 +1,168 @@
+package org.elasticsearch.client.batch;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestClientProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把并发的 search 请求合并为一个 _msearch：第一个请求到达后等待 windowMillis，或攒够 maxBatchSize 个时立即发送，
+ * 响应按顺序分发给各自的 future。
+ * <p>
+ * 一批只有一个请求时直接发送 search；发送为异步，不阻塞计时线程。
+ *
+ * @author brezp
+ */
+public class SearchBatcher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchBatcher.class);
+
+    private final RestClientProxy client;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+    private List<Pending> pending = new ArrayList<>();
+    /**
+     * 每发出一批加一，防止上一批的定时任务提前发送下一批
+     */
+    private long batchId;
+    private boolean closed;
+
+    public SearchBatcher(RestClientProxy client, long windowMillis, int maxBatchSize) {
+        if (windowMillis <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("windowMillis and maxBatchSize must be positive");
+        }
+        this.client = client;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "es-search-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<SearchResponse> submit(SearchRequest request) {
+        Pending p = new Pending(request);
+        List<Pending> ready = null;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("search batcher is closed");
+            }
+            pending.add(p);
+            if (pending.size() >= maxBatchSize) {
+                ready = takePending();
+            } else if (pending.size() == 1) {
+                long id = batchId;
+                timer.schedule(() -> flush(id), windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (ready != null) {
+            send(ready);
+        }
+        return p.future;
+    }
+
+    private void flush(long id) {
+        List<Pending> ready;
+        synchronized (lock) {
+            if (id != batchId || pending.isEmpty()) {
+                return;
+            }
+            ready = takePending();
+        }
+        send(ready);
+    }
+
+    private List<Pending> takePending() {
+        List<Pending> ready = pending;
+        pending = new ArrayList<>();
+        batchId++;
+        return ready;
+    }
+
+    private void send(List<Pending> batch) {
+        if (batch.size() == 1) {
+            Pending p = batch.get(0);
+            client.searchAsync(p.request, ActionListener.wrap(p.future::complete, p.future::completeExceptionally));
+            return;
+        }
+
+        MultiSearchRequest request = new MultiSearchRequest();
+        for (Pending p : batch) {
+            request.add(p.request);
+        }
+        LOG.debug("send {} searches in one msearch", batch.size());
+        client.msearchAsync(request, new ActionListener<MultiSearchResponse>() {
+            @Override
+            public void onResponse(MultiSearchResponse response) {
+                MultiSearchResponse.Item[] items = response.getResponses();
+                for (int i = 0; i < batch.size(); i++) {
+                    CompletableFuture<SearchResponse> future = batch.get(i).future;
+                    if (i >= items.length) {
+                        future.completeExceptionally(new IllegalStateException(
+                            "msearch returned " + items.length + " responses for " + batch.size() + " requests"));
+                    } else if (items[i].isFailure()) {
+                        future.completeExceptionally(items[i].getFailure());
+                    } else {
+                        future.complete(items[i].getResponse());
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                for (Pending p : batch) {
+                    p.future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 立即发送已收集的请求，之后不再接收新请求
+     */
+    @Override
+    public void close() {
+        List<Pending> ready;
+        synchronized (lock) {
+            closed = true;
+            ready = pending.isEmpty() ? null : takePending();
+        }
+        if (ready != null) {
+            send(ready);
+        }
+        timer.shutdown();
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    private static final class Pending {
+        private final SearchRequest request;
+        private final CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+
+        private Pending(SearchRequest request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package org.elasticsearch.client.breaker;
+
+import com.github.brezp.es.client.metrics.MBeans;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 集群级熔断：按滑动窗口内的失败率、慢请求率在 CLOSED、OPEN、HALF_OPEN 之间切换。
+ * <p>
+ * 429（es_rejected_execution_exception）、502、503、504、连接失败和超时计为失败；其他响应（包括 4xx、500）说明集群能正常
+ * 处理请求，计为成功。耗时达到 slowCallMillis 的请求计为慢请求。窗口内请求数达到 minimumCalls，且失败率或慢请求率达到阈值时打开，
+ * 打开期间请求不发送，直接抛出 {@link CircuitBreakerOpenException}，不会等待 maxRetryTimeout。
+ * <p>
+ * 打开 openMillis 后进入半开，只放行 halfOpenCalls 个试探请求，其余仍直接失败；试探请求有一个失败或慢时重新打开，全部成功后关闭。
+ * 状态变化前发出、之后才返回的请求不参与统计。
+ *
+ * @author brezp
+ */
+public class CircuitBreaker implements CircuitBreakerMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final CircuitBreakerPolicy policy;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    /**
+     * 每秒一个桶，按 nanoTime / 1s 取模定位，桶的秒数不一致时说明已过期
+     */
+    private final long[] bucketSeconds;
+    private final int[] bucketCalls;
+    private final int[] bucketFailures;
+    private final int[] bucketSlowCalls;
+
+    private volatile State state = State.CLOSED;
+    /**
+     * 每次状态变化加一，用于丢弃变化前发出的请求的结果
+     */
+    private volatile long generation;
+    private volatile long lastTransitionTime = System.currentTimeMillis();
+    private long openedAt;
+    private int trialPermits;
+    private int trialSuccesses;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder halfOpened = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+
+    public CircuitBreaker(CircuitBreakerPolicy policy) {
+        this.policy = policy;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(policy.getSlowCallMillis());
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(policy.getOpenMillis());
+        int buckets = (int) Math.max(1, policy.getWindowMillis() / 1000);
+        this.bucketSeconds = new long[buckets];
+        this.bucketCalls = new int[buckets];
+        this.bucketFailures = new int[buckets];
+        this.bucketSlowCalls = new int[buckets];
+        resetWindow();
+    }
+
+    /**
+     * 发送前调用，请求结束后必须调用返回的 {@link Call} 的 onResponse、onFailure 或 cancel 之一
+     *
+     * @throws CircuitBreakerOpenException 打开，或半开且试探名额已用完
+     */
+    public Call acquire() throws CircuitBreakerOpenException {
+        if (state == State.CLOSED) {
+            return new Call(false, generation);
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                long remaining = openedAt + openNanos - System.nanoTime();
+                if (remaining > 0) {
+                    rejected.increment();
+                    throw new CircuitBreakerOpenException(State.OPEN,
+                        Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                }
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialPermits == 0) {
+                    rejected.increment();
+                    throw new CircuitBreakerOpenException(State.HALF_OPEN, 0);
+                }
+                trialPermits--;
+                return new Call(true, generation);
+            }
+            return new Call(false, generation);
+        }
+    }
+
+    /**
+     * 429、502、503、504 计为失败
+     */
+    static boolean isFailureStatus(int statusCode) {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    private synchronized void onResult(Call call, boolean failure, long latencyNanos) {
+        if (call.generation != generation) {
+            return;
+        }
+        boolean slow = latencyNanos >= slowCallNanos;
+        if (call.trial) {
+            if (failure || slow) {
+                LOG.warn("trial request {} in half open state, reopen", failure ? "failed" : "was slow");
+                transition(State.OPEN);
+            } else if (++trialSuccesses >= policy.getHalfOpenCalls()) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            return;
+        }
+
+        int index = bucket(System.nanoTime());
+        bucketCalls[index]++;
+        if (failure) {
+            bucketFailures[index]++;
+        }
+        if (slow) {
+            bucketSlowCalls[index]++;
+        }
+        if (!failure && !slow) {
+            return;
+        }
+        double failureRate = getFailureRate();
+        double slowCallRate = getSlowCallRate();
+        if (failureRate >= policy.getFailureRateThreshold() || slowCallRate >= policy.getSlowCallRateThreshold()) {
+            LOG.warn("failure rate {}%, slow call rate {}% in {} calls, open circuit breaker", failureRate,
+                slowCallRate, getWindowCalls());
+            transition(State.OPEN);
+        }
+    }
+
+    private synchronized void onCancel(Call call) {
+        if (call.trial && call.generation == generation) {
+            trialPermits++;
+        }
+    }
+
+    private void transition(State to) {
+        State from = state;
+        generation++;
+        lastTransitionTime = System.currentTimeMillis();
+        switch (to) {
+            case OPEN:
+                openedAt = System.nanoTime();
+                opened.increment();
+                break;
+            case HALF_OPEN:
+                trialPermits = policy.getHalfOpenCalls();
+                trialSuccesses = 0;
+                halfOpened.increment();
+                break;
+            default:
+                resetWindow();
+                closed.increment();
+                break;
+        }
+        state = to;
+        LOG.warn("circuit breaker {} -> {}", from, to);
+    }
+
+    /**
+     * @return 当前秒的桶，过期的先清零
+     */
+    private int bucket(long now) {
+        long second = Math.floorDiv(now, BUCKET_NANOS);
+        int index = (int) Math.floorMod(second, (long) bucketSeconds.length);
+        if (bucketSeconds[index] != second) {
+            bucketSeconds[index] = second;
+            bucketCalls[index] = 0;
+            bucketFailures[index] = 0;
+            bucketSlowCalls[index] = 0;
+        }
+        return index;
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < bucketSeconds.length; i++) {
+            bucketSeconds[i] = Long.MIN_VALUE;
+            bucketCalls[i] = 0;
+            bucketFailures[i] = 0;
+            bucketSlowCalls[i] = 0;
+        }
+    }
+
+    /**
+     * @param counts bucketCalls、bucketFailures 或 bucketSlowCalls
+     */
+    private long sum(int[] counts) {
+        long current = Math.floorDiv(System.nanoTime(), BUCKET_NANOS);
+        long sum = 0;
+        for (int i = 0; i < bucketSeconds.length; i++) {
+            if (bucketSeconds[i] > current - bucketSeconds.length) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+
+    private double rate(int[] counts) {
+        long calls = sum(bucketCalls);
+        if (calls < policy.getMinimumCalls() || calls == 0) {
+            return -1;
+        }
+        return sum(counts) * 100.0 / calls;
+    }
+
+    public CircuitBreakerPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public State getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized double getFailureRate() {
+        return rate(bucketFailures);
+    }
+
+    @Override
+    public synchronized double getSlowCallRate() {
+        return rate(bucketSlowCalls);
+    }
+
+    @Override
+    public synchronized long getWindowCalls() {
+        return sum(bucketCalls);
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getOpenedCount() {
+        return opened.sum();
+    }
+
+    @Override
+    public long getHalfOpenedCount() {
+        return halfOpened.sum();
+    }
+
+    @Override
+    public long getClosedCount() {
+        return closed.sum();
+    }
+
+    @Override
+    public long getLastTransitionTime() {
+        return lastTransitionTime;
+    }
+
+    /**
+     * 注册到 platform MBeanServer，ObjectName 为 com.github.brezp.es.client:type=CircuitBreaker,name=name
+     *
+     * @return 注册使用的 ObjectName，用于 {@link MBeans#unregister(ObjectName)}
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        return MBeans.register(this, "CircuitBreaker", name);
+    }
+
+    /**
+     * 一次放行的请求，结果只记录一次
+     */
+    public final class Call {
+        private final boolean trial;
+        private final long generation;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Call(boolean trial, long generation) {
+            this.trial = trial;
+            this.generation = generation;
+        }
+
+        public void onResponse(Response response) {
+            onStatus(response.getStatusLine().getStatusCode());
+        }
+
+        /**
+         * 收到响应头时即可记录，不需要等 body 读完
+         */
+        public void onStatus(int statusCode) {
+            if (done.compareAndSet(false, true)) {
+                onResult(this, isFailureStatus(statusCode), System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * 非 2xx 响应按状态码记录，连接失败、超时计为失败；调用线程被中断等非集群原因的异常不记录
+         */
+        public void onFailure(Exception exception) {
+            if (exception instanceof ResponseException) {
+                onResponse(((ResponseException) exception).getResponse());
+            } else if (exception instanceof IOException && !isInterrupt(exception)) {
+                if (done.compareAndSet(false, true)) {
+                    onResult(this, true, System.nanoTime() - start);
+                }
+            } else {
+                cancel();
+            }
+        }
+
+        /**
+         * 不记录结果，半开时归还试探名额
+         */
+        public void cancel() {
+            if (done.compareAndSet(false, true)) {
+                onCancel(this);
+            }
+        }
+
+        /**
+         * @return 先记录结果再交给 listener
+         */
+        public ResponseListener wrap(ResponseListener listener) {
+            return new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    onResponse(response);
+                    listener.onSuccess(response);
+                }
+
+                @Override
+                public void onFailure(Exception exception) {
+                    Call.this.onFailure(exception);
+                    listener.onFailure(exception);
+                }
+            };
+        }
+
+        private boolean isInterrupt(Exception exception) {
+            return exception instanceof InterruptedIOException && !(exception instanceof SocketTimeoutException)
+                && Thread.currentThread().isInterrupted();
+        }
+    }
+}
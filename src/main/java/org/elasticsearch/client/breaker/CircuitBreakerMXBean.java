@@ -0,0 +1,51 @@
+package org.elasticsearch.client.breaker;
+
+/**
+ * {@link CircuitBreaker} 的 JMX 接口
+ *
+ * @author brezp
+ */
+public interface CircuitBreakerMXBean {
+
+    CircuitBreaker.State getState();
+
+    /**
+     * @return 窗口内的失败率（百分比），请求数不足 minimumCalls 时为 -1
+     */
+    double getFailureRate();
+
+    /**
+     * @return 窗口内的慢请求率（百分比），请求数不足 minimumCalls 时为 -1
+     */
+    double getSlowCallRate();
+
+    /**
+     * @return 窗口内的请求数
+     */
+    long getWindowCalls();
+
+    /**
+     * @return 因熔断没有发送的请求数
+     */
+    long getRejectedCount();
+
+    /**
+     * @return 进入 OPEN 的次数
+     */
+    long getOpenedCount();
+
+    /**
+     * @return 进入 HALF_OPEN 的次数
+     */
+    long getHalfOpenedCount();
+
+    /**
+     * @return 从 HALF_OPEN 恢复为 CLOSED 的次数
+     */
+    long getClosedCount();
+
+    /**
+     * @return 最近一次状态变化的时间戳
+     */
+    long getLastTransitionTime();
+}
@@ -0,0 +1,34 @@
+package org.elasticsearch.client.breaker;
+
+import java.io.IOException;
+
+/**
+ * 熔断打开（或半开且试探名额已用完）时请求没有发送，直接抛出
+ *
+ * @author brezp
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final CircuitBreaker.State state;
+    private final long retryAfterMillis;
+
+    public CircuitBreakerOpenException(CircuitBreaker.State state, long retryAfterMillis) {
+        super("circuit breaker is " + state + ", request rejected"
+            + (retryAfterMillis > 0 ? ", retry after " + retryAfterMillis + "ms" : ""));
+        this.state = state;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public CircuitBreaker.State getState() {
+        return state;
+    }
+
+    /**
+     * @return 距离进入半开的时间，半开时为0
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,149 @@
+package org.elasticsearch.client.breaker;
+
+import java.util.Objects;
+
+/**
+ * 熔断的参数
+ *
+ * @author brezp
+ */
+public class CircuitBreakerPolicy {
+
+    /**
+     * 失败率阈值（百分比），达到后打开
+     */
+    private double failureRateThreshold = 50;
+
+    /**
+     * 慢请求率阈值（百分比），达到后打开
+     */
+    private double slowCallRateThreshold = 80;
+
+    /**
+     * 耗时达到该值的请求计为慢请求
+     */
+    private long slowCallMillis = 10_000;
+
+    /**
+     * 窗口内至少需要的请求数，不足时不计算比例，请求量很小时不会因为个别失败打开
+     */
+    private int minimumCalls = 20;
+
+    /**
+     * 统计窗口长度，按秒分桶
+     */
+    private long windowMillis = 10_000;
+
+    /**
+     * 打开后等待多久进入半开
+     */
+    private long openMillis = 10_000;
+
+    /**
+     * 半开时放行的试探请求数，全部成功后关闭
+     */
+    private int halfOpenCalls = 3;
+
+    public CircuitBreakerPolicy setFailureRateThreshold(double failureRateThreshold) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 100) {
+            throw new IllegalArgumentException("failure rate threshold must be in (0, 100], got " + failureRateThreshold);
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    public CircuitBreakerPolicy setSlowCallRateThreshold(double slowCallRateThreshold) {
+        if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 100) {
+            throw new IllegalArgumentException("slow call rate threshold must be in (0, 100], got "
+                + slowCallRateThreshold);
+        }
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        return this;
+    }
+
+    public CircuitBreakerPolicy setSlowCallMillis(long slowCallMillis) {
+        this.slowCallMillis = slowCallMillis;
+        return this;
+    }
+
+    public CircuitBreakerPolicy setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    public CircuitBreakerPolicy setWindowMillis(long windowMillis) {
+        if (windowMillis < 1000) {
+            throw new IllegalArgumentException("window must be at least 1000ms, got " + windowMillis);
+        }
+        this.windowMillis = windowMillis;
+        return this;
+    }
+
+    public CircuitBreakerPolicy setOpenMillis(long openMillis) {
+        this.openMillis = openMillis;
+        return this;
+    }
+
+    public CircuitBreakerPolicy setHalfOpenCalls(int halfOpenCalls) {
+        if (halfOpenCalls < 1) {
+            throw new IllegalArgumentException("half open calls must be at least 1, got " + halfOpenCalls);
+        }
+        this.halfOpenCalls = halfOpenCalls;
+        return this;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    /**
+     * 参数相同即相同，EsClient 复用 proxy 时按此比较；传入 Builder 后不应再修改
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CircuitBreakerPolicy other = (CircuitBreakerPolicy) o;
+        return Double.compare(failureRateThreshold, other.failureRateThreshold) == 0
+            && Double.compare(slowCallRateThreshold, other.slowCallRateThreshold) == 0
+            && slowCallMillis == other.slowCallMillis
+            && minimumCalls == other.minimumCalls
+            && windowMillis == other.windowMillis
+            && openMillis == other.openMillis
+            && halfOpenCalls == other.halfOpenCalls;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(failureRateThreshold, slowCallRateThreshold, slowCallMillis, minimumCalls, windowMillis,
+            openMillis, halfOpenCalls);
+    }
+}
@@ -0,0 +1,14 @@
+package org.elasticsearch.client.budget;
+
+import java.io.IOException;
+
+/**
+ * io 线程收到响应 body 时以字节数调用；抛出异常时该响应失败，不再接收
+ *
+ * @author brezp
+ */
+@FunctionalInterface
+public interface ContentCounter {
+
+    void add(long bytes) throws IOException;
+}
@@ -0,0 +1,36 @@
+package org.elasticsearch.client.budget;
+
+import org.apache.http.nio.ContentDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 把读到的字节数交给 counter 的 {@link ContentDecoder}
+ *
+ * @author brezp
+ */
+public final class CountingDecoder implements ContentDecoder {
+
+    private final ContentDecoder decoder;
+    private final ContentCounter counter;
+
+    public CountingDecoder(ContentDecoder decoder, ContentCounter counter) {
+        this.decoder = decoder;
+        this.counter = counter;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int n = decoder.read(dst);
+        if (n > 0) {
+            counter.add(n);
+        }
+        return n;
+    }
+
+    @Override
+    public boolean isCompleted() {
+        return decoder.isCompleted();
+    }
+}
@@ -0,0 +1,337 @@
+package org.elasticsearch.client.budget;
+
+import com.github.brezp.es.client.metrics.MBeans;
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpResponse;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.elasticsearch.client.HeapBufferedAsyncResponseConsumer;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.streaming.StreamingExchange;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全局的响应内存额度：每个请求发送前预留 maxResponseBytes（对冲时按副本数翻倍），从发送到解析完成占用一个
+ * {@link Reservation}，解析完成后释放。收到的响应 body 字节（包括重试、对冲副本、流式读取经过的字节）计入使用量，
+ * 超过预留的部分不再接收，该响应以 {@link ContentTooLongException} 失败，与 RestClient 的 buffer 上限相同。
+ * 预留之和不超过 maxBytes，所以并发时使用量也不会超过 maxBytes。
+ * <p>
+ * 剩余额度不够预留时，同步请求排队等待最多 maxWaitMillis，异步请求不阻塞，直接拒绝；超时或拒绝时抛出
+ * {@link ResponseBudgetExceededException}，请求不发送。
+ * <p>
+ * 计入的是网络上收到的字节，gzip 压缩的响应解压、解析后占用的内存更大，maxBytes 需要相应留出余量。
+ *
+ * @author brezp
+ */
+public class ResponseBudget implements ResponseBudgetMXBean {
+
+    private final long maxBytes;
+    private final long maxResponseBytes;
+    private final long maxWaitNanos;
+
+    private final AtomicLong reserved = new AtomicLong();
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong peak = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Object lock = new Object();
+
+    /**
+     * 每个请求预留的字节数与 RestClient 默认的 buffer 上限相同（不超过 maxBytes）
+     *
+     * @param maxWaitMillis 同步请求排队等待的最长时间，0 表示不排队直接拒绝
+     */
+    public ResponseBudget(long maxBytes, long maxWaitMillis) {
+        this(maxBytes, Math.min(maxBytes, StreamingExchange.DEFAULT_HEAP_BUFFER_LIMIT), maxWaitMillis);
+    }
+
+    /**
+     * @param maxResponseBytes 每个请求预留的字节数，即单个响应的上限；越小可同时进行的请求越多
+     * @param maxWaitMillis    同步请求排队等待的最长时间，0 表示不排队直接拒绝
+     */
+    public ResponseBudget(long maxBytes, long maxResponseBytes, long maxWaitMillis) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive, got " + maxBytes);
+        }
+        if (maxResponseBytes <= 0 || maxResponseBytes > maxBytes) {
+            throw new IllegalArgumentException("maxResponseBytes must be in (0, " + maxBytes + "], got "
+                + maxResponseBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.maxResponseBytes = maxResponseBytes;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+    }
+
+    public Reservation acquire() throws IOException {
+        return acquire(1);
+    }
+
+    /**
+     * 同步请求发送前调用，额度不足时排队等待；返回的 {@link Reservation} 在解析完成后必须关闭
+     *
+     * @param copies 同时接收的响应数，对冲时为 1 + 副本数
+     * @throws ResponseBudgetExceededException 等待超时
+     */
+    public Reservation acquire(int copies) throws IOException {
+        long limit = limit(copies);
+        if (tryReserve(limit)) {
+            return new Reservation(limit);
+        }
+        if (maxWaitNanos == 0) {
+            throw reject();
+        }
+        waited.increment();
+        waiting.incrementAndGet();
+        try {
+            long deadline = System.nanoTime() + maxWaitNanos;
+            synchronized (lock) {
+                while (!tryReserve(limit)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw reject();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for response budget");
+        } finally {
+            waiting.decrementAndGet();
+        }
+        return new Reservation(limit);
+    }
+
+    public Reservation tryAcquire() throws ResponseBudgetExceededException {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 异步请求发送前调用，额度不足时直接拒绝
+     *
+     * @param copies 同时接收的响应数，对冲时为 1 + 副本数
+     * @throws ResponseBudgetExceededException 额度不足
+     */
+    public Reservation tryAcquire(int copies) throws ResponseBudgetExceededException {
+        long limit = limit(copies);
+        if (!tryReserve(limit)) {
+            throw reject();
+        }
+        return new Reservation(limit);
+    }
+
+    private long limit(int copies) {
+        return Math.min(maxBytes, maxResponseBytes * Math.max(1, copies));
+    }
+
+    private boolean tryReserve(long limit) {
+        long current;
+        do {
+            current = reserved.get();
+            if (current + limit > maxBytes) {
+                return false;
+            }
+        } while (!reserved.compareAndSet(current, current + limit));
+        return true;
+    }
+
+    private void unreserve(long limit) {
+        reserved.addAndGet(-limit);
+        if (waiting.get() > 0) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private ResponseBudgetExceededException reject() {
+        rejected.increment();
+        return new ResponseBudgetExceededException(reserved.get(), maxBytes);
+    }
+
+    private void use(long bytes) {
+        long current = used.addAndGet(bytes);
+        long max;
+        do {
+            max = peak.get();
+        } while (current > max && !peak.compareAndSet(max, current));
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public long getMaxResponseBytes() {
+        return maxResponseBytes;
+    }
+
+    @Override
+    public long getReservedBytes() {
+        return reserved.get();
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return used.get();
+    }
+
+    @Override
+    public long getPeakBytes() {
+        return peak.get();
+    }
+
+    @Override
+    public int getActiveRequests() {
+        return active.get();
+    }
+
+    @Override
+    public int getWaitingRequests() {
+        return waiting.get();
+    }
+
+    @Override
+    public long getWaitedCount() {
+        return waited.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void resetPeak() {
+        peak.set(used.get());
+    }
+
+    /**
+     * 注册到 platform MBeanServer，ObjectName 为 com.github.brezp.es.client:type=ResponseBudget,name=name
+     *
+     * @return 注册使用的 ObjectName，用于 {@link MBeans#unregister(ObjectName)}
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        return MBeans.register(this, "ResponseBudget", name);
+    }
+
+    /**
+     * 一个请求占用的额度。作为 consumer factory 传给 RestClient 时，响应完整缓存在堆内（与默认相同），收到的字节计入额度；
+     * 关闭后再收到的字节（如已放弃的对冲副本）不再计入
+     */
+    public final class Reservation implements HttpAsyncResponseConsumerFactory, ContentCounter, Closeable {
+        private final long limit;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Reservation(long limit) {
+            this.limit = limit;
+            active.incrementAndGet();
+        }
+
+        /**
+         * @throws ContentTooLongException 超过预留的字节数，响应不再接收
+         */
+        @Override
+        public void add(long n) throws ContentTooLongException {
+            if (n <= 0 || closed.get()) {
+                return;
+            }
+            long current;
+            do {
+                current = bytes.get();
+                if (current + n > limit) {
+                    throw new ContentTooLongException("response content is too long [" + (current + n)
+                        + "] for the reserved response budget [" + limit + "]");
+                }
+            } while (!bytes.compareAndSet(current, current + n));
+            use(n);
+            if (closed.get()) {
+                //与 close 并发时由后执行的一方释放
+                releaseAll();
+            }
+        }
+
+        /**
+         * @return 已计入的字节数
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * @return 预留的字节数，即本请求收到的字节数上限
+         */
+        public long getLimit() {
+            return limit;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                active.decrementAndGet();
+                releaseAll();
+                unreserve(limit);
+            }
+        }
+
+        private void releaseAll() {
+            long n = bytes.getAndSet(0);
+            if (n > 0) {
+                used.addAndGet(-n);
+            }
+        }
+
+        @Override
+        public HttpAsyncResponseConsumer<HttpResponse> createHttpAsyncResponseConsumer() {
+            //Content-Length 已超过预留时直接失败，不必等到收完
+            return new HeapBufferedAsyncResponseConsumer((int) Math.min(limit, Integer.MAX_VALUE)) {
+                @Override
+                protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+                    super.onContentReceived(new CountingDecoder(decoder, Reservation.this), ioctrl);
+                }
+            };
+        }
+
+        /**
+         * @return listener 处理完（包括解析）后关闭
+         */
+        public ResponseListener wrap(ResponseListener listener) {
+            return new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    try {
+                        listener.onSuccess(response);
+                    } finally {
+                        close();
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception exception) {
+                    try {
+                        listener.onFailure(exception);
+                    } finally {
+                        close();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.elasticsearch.client.budget;
+
+import java.io.IOException;
+
+/**
+ * 剩余的响应额度不够预留，请求没有发送
+ *
+ * @author brezp
+ */
+public class ResponseBudgetExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long usedBytes;
+    private final long maxBytes;
+
+    public ResponseBudgetExceededException(long usedBytes, long maxBytes) {
+        super("response budget exhausted, reserved [" + usedBytes + "] of [" + maxBytes + "] bytes, request rejected");
+        this.usedBytes = usedBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,53 @@
+package org.elasticsearch.client.budget;
+
+/**
+ * {@link ResponseBudget} 的 JMX 接口
+ *
+ * @author brezp
+ */
+public interface ResponseBudgetMXBean {
+
+    long getMaxBytes();
+
+    /**
+     * @return 每个请求预留的字节数
+     */
+    long getMaxResponseBytes();
+
+    /**
+     * @return 进行中的请求预留的字节数，不超过 maxBytes
+     */
+    long getReservedBytes();
+
+    /**
+     * @return 当前缓存、解析中的响应字节数，不超过预留的字节数
+     */
+    long getUsedBytes();
+
+    /**
+     * @return 创建或上次 resetPeak 以来的最大值
+     */
+    long getPeakBytes();
+
+    /**
+     * @return 占用额度的请求数
+     */
+    int getActiveRequests();
+
+    /**
+     * @return 正在排队等待额度的请求数
+     */
+    int getWaitingRequests();
+
+    /**
+     * @return 排队过的请求数
+     */
+    long getWaitedCount();
+
+    /**
+     * @return 因额度不足被拒绝的请求数
+     */
+    long getRejectedCount();
+
+    void resetPeak();
+}
@@ -0,0 +1,114 @@
+package org.elasticsearch.client.compress;
+
+import com.github.brezp.es.client.metrics.CompressionStats;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 请求、响应体的 gzip 压缩。
+ * <p>
+ * 请求体在 filter 执行之后压缩，超过 minRequestBytes 且压缩后更小时才发送压缩后的 body，并带上 Content-Encoding: gzip；
+ * acceptGzip 时请求带上 Accept-Encoding: gzip，es 需要开启 http.compression 才会压缩响应。
+ * gzip 响应由 {@link #decode(HttpEntity, CompressionStats)} 边读边解压，不会完整缓存压缩后的 body。
+ *
+ * @author brezp
+ */
+public class GzipCodec {
+
+    public static final String GZIP = "gzip";
+
+    private static final Header ACCEPT_GZIP = new BasicHeader("Accept-Encoding", GZIP);
+
+    private final int minRequestBytes;
+    private final boolean acceptGzip;
+    private final CompressionStats stats = new CompressionStats();
+
+    /**
+     * @param minRequestBytes 请求体超过该字节数时压缩，<=0 表示不压缩请求
+     * @param acceptGzip      是否请求 gzip 响应
+     */
+    public GzipCodec(int minRequestBytes, boolean acceptGzip) {
+        this.minRequestBytes = minRequestBytes;
+        this.acceptGzip = acceptGzip;
+    }
+
+    /**
+     * @return 压缩后的请求，不需要压缩时返回原请求
+     */
+    public Request encode(Request request) throws IOException {
+        HttpEntity entity = request.getEntity();
+        if (minRequestBytes <= 0 || entity == null || entity.getContentEncoding() != null || !entity.isRepeatable()) {
+            return request;
+        }
+        long length = entity.getContentLength();
+        if (length < minRequestBytes) {
+            return request;
+        }
+
+        byte[] raw = EntityUtils.toByteArray(entity);
+        BytesStreamOutput out = new BytesStreamOutput(raw.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        }
+        if (out.size() >= raw.length) {
+            return request;
+        }
+        BytesRef bytes = out.bytes().toBytesRef();
+        ByteArrayEntity compressed = new ByteArrayEntity(bytes.bytes, bytes.offset, bytes.length);
+        compressed.setContentType(entity.getContentType());
+        compressed.setContentEncoding(GZIP);
+        stats.onRequestCompressed(raw.length, out.size());
+        return new Request(request.getMethod(), request.getEndpoint(), request.getParameters(), compressed);
+    }
+
+    /**
+     * @return 加上 Accept-Encoding 后的 header
+     */
+    public Header[] headers(Header[] headers) {
+        if (!acceptGzip) {
+            return headers;
+        }
+        Header[] result = Arrays.copyOf(headers, headers.length + 1);
+        result[headers.length] = ACCEPT_GZIP;
+        return result;
+    }
+
+    /**
+     * Content-Encoding 为 gzip 时返回边读边解压的 entity，否则返回原 entity
+     *
+     * @param stats 记录解压前后的字节数，可以为null
+     */
+    public static HttpEntity decode(HttpEntity entity, CompressionStats stats) {
+        if (entity == null || entity.getContentEncoding() == null) {
+            return entity;
+        }
+        String encoding = entity.getContentEncoding().getValue();
+        if (encoding == null || !encoding.toLowerCase(Locale.ROOT).contains(GZIP)) {
+            return entity;
+        }
+        return new GzipDecodedEntity(entity, stats);
+    }
+
+    public int getMinRequestBytes() {
+        return minRequestBytes;
+    }
+
+    public boolean isAcceptGzip() {
+        return acceptGzip;
+    }
+
+    public CompressionStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,115 @@
+package org.elasticsearch.client.compress;
+
+import com.github.brezp.es.client.metrics.CompressionStats;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 读取时解压的 gzip 响应体，Content-Encoding、Content-Length 不再对外暴露；流读完或关闭时记录解压前后的字节数
+ *
+ * @author brezp
+ */
+class GzipDecodedEntity extends HttpEntityWrapper {
+
+    private final CompressionStats stats;
+
+    GzipDecodedEntity(HttpEntity wrapped, CompressionStats stats) {
+        super(wrapped);
+        this.stats = stats;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        CountingInputStream received = new CountingInputStream(wrappedEntity.getContent());
+        return new CountingInputStream(new GZIPInputStream(received)) {
+            private boolean recorded;
+
+            @Override
+            protected void onEnd() {
+                if (!recorded && stats != null) {
+                    recorded = true;
+                    stats.onResponseDecompressed(received.count, count);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try (InputStream in = getContent()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                onEnd();
+            } else {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                onEnd();
+            } else {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            onEnd();
+            super.close();
+        }
+
+        protected void onEnd() {
+        }
+    }
+}
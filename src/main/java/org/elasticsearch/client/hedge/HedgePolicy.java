@@ -0,0 +1,136 @@
+package org.elasticsearch.client.hedge;
+
+import java.util.Objects;
+
+/**
+ * 对冲请求的参数
+ *
+ * @author brezp
+ */
+public class HedgePolicy {
+
+    /**
+     * 固定的对冲延迟，<=0 时按最近请求耗时的 {@link #percentile} 计算
+     */
+    private long delayMillis = 0;
+
+    private double percentile = 95;
+
+    /**
+     * 按分位数计算时的下限，避免延迟过小时几乎每个请求都对冲
+     */
+    private long minDelayMillis = 5;
+
+    /**
+     * 按分位数计算前至少需要的样本数，样本不足时不对冲
+     */
+    private int minSamples = 32;
+
+    /**
+     * 每个请求最多额外发送的副本数
+     */
+    private int maxHedgesPerRequest = 1;
+
+    /**
+     * 副本数占请求数的比例上限，例如 0.05 表示最多额外增加 5% 的请求
+     */
+    private double maxHedgeRatio = 0.05;
+
+    /**
+     * 空闲后允许连续发送的副本数
+     */
+    private int burst = 10;
+
+    public HedgePolicy setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+        return this;
+    }
+
+    public HedgePolicy setPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100], got " + percentile);
+        }
+        this.percentile = percentile;
+        return this;
+    }
+
+    public HedgePolicy setMinDelayMillis(long minDelayMillis) {
+        this.minDelayMillis = minDelayMillis;
+        return this;
+    }
+
+    public HedgePolicy setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+        return this;
+    }
+
+    public HedgePolicy setMaxHedgesPerRequest(int maxHedgesPerRequest) {
+        this.maxHedgesPerRequest = maxHedgesPerRequest;
+        return this;
+    }
+
+    public HedgePolicy setMaxHedgeRatio(double maxHedgeRatio) {
+        this.maxHedgeRatio = maxHedgeRatio;
+        return this;
+    }
+
+    public HedgePolicy setBurst(int burst) {
+        this.burst = burst;
+        return this;
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    public int getMaxHedgesPerRequest() {
+        return maxHedgesPerRequest;
+    }
+
+    public double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * 参数相同即相同，EsClient 复用 proxy 时按此比较；传入 Builder 后不应再修改
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        HedgePolicy other = (HedgePolicy) o;
+        return delayMillis == other.delayMillis
+            && Double.compare(percentile, other.percentile) == 0
+            && minDelayMillis == other.minDelayMillis
+            && minSamples == other.minSamples
+            && maxHedgesPerRequest == other.maxHedgesPerRequest
+            && Double.compare(maxHedgeRatio, other.maxHedgeRatio) == 0
+            && burst == other.burst;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(delayMillis, percentile, minDelayMillis, minSamples, maxHedgesPerRequest, maxHedgeRatio,
+            burst);
+    }
+}
@@ -0,0 +1,350 @@
+package org.elasticsearch.client.hedge;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.elasticsearch.client.HeapBufferedAsyncResponseConsumer;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.budget.ContentCounter;
+import org.elasticsearch.client.budget.CountingDecoder;
+import org.elasticsearch.client.streaming.StreamingExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对冲请求：只读请求发出后 delay 内没有响应时再发送一个副本，先返回的响应生效，其余副本取消。
+ * <p>
+ * delay 固定，或取最近请求耗时的分位数；副本数受每个请求的上限和全局比例（令牌桶）限制，额外负载有界。
+ * <p>
+ * 副本经 RestClient 轮询发往下一个节点，节点数大于 1 时通常与原请求不同。es 5.6 的 RestClient 无法中止单个请求
+ * （中止会被记为节点失败并重试其他节点），取消的副本只丢弃收到的 body，不缓存也不解析。
+ * <p>
+ * 有响应（包括非 2xx）即生效；连接失败等异常只在所有副本都失败后抛出。
+ *
+ * @author brezp
+ */
+public class Hedger implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Hedger.class);
+
+    private static final int TRACKER_CAPACITY = 1024;
+    private static final int TRACKER_REFRESH_INTERVAL = 64;
+    private static final long TOKEN = 1000;
+
+    private final RestClient client;
+    private final HedgePolicy policy;
+    /**
+     * 等待响应的上限，与 RestClient 同步请求的 maxRetryTimeout 相同
+     */
+    private final long maxRetryTimeoutMillis;
+    private final LatencyTracker latencies = new LatencyTracker(TRACKER_CAPACITY, TRACKER_REFRESH_INTERVAL);
+    private final ScheduledExecutorService timer;
+
+    /**
+     * 令牌桶，单位为 1/TOKEN 个副本；每个请求加 maxHedgeRatio 个，每个副本消耗一个
+     */
+    private final AtomicLong tokens;
+    private final long maxTokens;
+    private final long tokensPerRequest;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    public Hedger(RestClient client, HedgePolicy policy) {
+        this(client, policy, RestClientBuilder.DEFAULT_MAX_RETRY_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param maxRetryTimeoutMillis 最多等待多久，应与 client 的 maxRetryTimeout 相同
+     */
+    public Hedger(RestClient client, HedgePolicy policy, long maxRetryTimeoutMillis) {
+        this.client = client;
+        this.policy = policy;
+        this.maxRetryTimeoutMillis = maxRetryTimeoutMillis;
+        this.maxTokens = Math.max(1, policy.getBurst()) * TOKEN;
+        this.tokensPerRequest = (long) (policy.getMaxHedgeRatio() * TOKEN);
+        this.tokens = new AtomicLong(maxTokens);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "es-hedger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 与 {@link RestClient#performRequest} 相同，非 2xx 响应以 {@link ResponseException} 抛出
+     */
+    public Response execute(Request request, Header... headers) throws IOException {
+        return execute(request, null, headers);
+    }
+
+    /**
+     * @param onContent 每个副本收到 body 时以字节数调用（包括被取消后丢弃的部分），抛出异常时该副本失败，可以为null
+     */
+    public Response execute(Request request, ContentCounter onContent, Header... headers) throws IOException {
+        requests.increment();
+        addTokens();
+        Exchange exchange = new Exchange(request, onContent, headers);
+        exchange.send();
+        long delay = delayMillis();
+        if (delay >= 0 && policy.getMaxHedgesPerRequest() > 0) {
+            timer.schedule(() -> exchange.hedge(delay), delay, TimeUnit.MILLISECONDS);
+        }
+        return exchange.await();
+    }
+
+    /**
+     * @return 本次的对冲延迟，-1 表示不对冲
+     */
+    long delayMillis() {
+        if (policy.getDelayMillis() > 0) {
+            return policy.getDelayMillis();
+        }
+        if (latencies.count() < policy.getMinSamples()) {
+            return -1;
+        }
+        return Math.max(policy.getMinDelayMillis(), latencies.percentile(policy.getPercentile()));
+    }
+
+    private void addTokens() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + tokensPerRequest)));
+    }
+
+    private boolean tryAcquireToken() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    public HedgePolicy getPolicy() {
+        return policy;
+    }
+
+    public LatencyTracker getLatencies() {
+        return latencies;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return 发出的副本数
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return 副本先于原请求返回的次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * @return 因比例上限没有发出的副本数
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    /**
+     * 一个请求及其副本
+     */
+    private final class Exchange {
+        private final Request request;
+        private final ContentCounter onContent;
+        private final Header[] headers;
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+        private final List<Attempt> attempts = new CopyOnWriteArrayList<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        /**
+         * 先确定胜出的副本并计数，再唤醒调用方，调用方返回后读到的统计已包含本次请求
+         */
+        private final AtomicBoolean decided = new AtomicBoolean();
+
+        private Exchange(Request request, ContentCounter onContent, Header[] headers) {
+            this.request = request;
+            this.onContent = onContent;
+            this.headers = headers;
+        }
+
+        private void send() {
+            Attempt attempt = new Attempt(this, attempts.size());
+            attempts.add(attempt);
+            outstanding.incrementAndGet();
+            client.performRequestAsync(request.getMethod(), request.getEndpoint(), request.getParameters(),
+                request.getEntity(), attempt, attempt, headers);
+        }
+
+        private void hedge(long delay) {
+            if (result.isDone()) {
+                return;
+            }
+            if (!tryAcquireToken()) {
+                throttled.increment();
+                return;
+            }
+            hedges.increment();
+            LOG.debug("no response in {}ms, hedge {} {}", delay, request.getMethod(), request.getEndpoint());
+            send();
+            if (attempts.size() <= policy.getMaxHedgesPerRequest()) {
+                timer.schedule(() -> hedge(delay), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void onResponse(Attempt attempt, Response response) {
+            if (decided.compareAndSet(false, true)) {
+                win(attempt);
+                result.complete(response);
+            }
+        }
+
+        private void onFailure(Attempt attempt, Exception e) {
+            if (e instanceof ResponseException) {
+                if (decided.compareAndSet(false, true)) {
+                    win(attempt);
+                    result.completeExceptionally(e);
+                }
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void win(Attempt winner) {
+            if (winner.index > 0) {
+                hedgeWins.increment();
+            }
+            cancelOthers(winner);
+        }
+
+        private void cancelOthers(Attempt winner) {
+            for (Attempt attempt : attempts) {
+                if (attempt != winner) {
+                    attempt.cancelled = true;
+                }
+            }
+        }
+
+        private Response await() throws IOException {
+            try {
+                return result.get(maxRetryTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                cancelOthers(null);
+                throw new IOException("listener timeout after waiting for [" + maxRetryTimeoutMillis + "] ms");
+            } catch (InterruptedException e) {
+                cancelOthers(null);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for response");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * 一次发送：作为 consumer factory 和 listener 传给 RestClient，取消后 consumer 丢弃剩余的 body
+     */
+    private final class Attempt implements HttpAsyncResponseConsumerFactory, ResponseListener {
+        private final Exchange exchange;
+        private final int index;
+        private final long start = System.nanoTime();
+        private volatile boolean cancelled;
+
+        private Attempt(Exchange exchange, int index) {
+            this.exchange = exchange;
+            this.index = index;
+        }
+
+        @Override
+        public HttpAsyncResponseConsumer<HttpResponse> createHttpAsyncResponseConsumer() {
+            return new HeapBufferedAsyncResponseConsumer(StreamingExchange.DEFAULT_HEAP_BUFFER_LIMIT) {
+                private ByteBuffer discard;
+
+                @Override
+                protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+                    if (exchange.onContent != null) {
+                        decoder = new CountingDecoder(decoder, exchange.onContent);
+                    }
+                    if (!cancelled) {
+                        super.onContentReceived(decoder, ioctrl);
+                        return;
+                    }
+                    if (discard == null) {
+                        discard = ByteBuffer.allocate(8192);
+                    }
+                    int n;
+                    do {
+                        discard.clear();
+                        n = decoder.read(discard);
+                    } while (n > 0);
+                }
+            };
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            exchange.onResponse(this, response);
+        }
+
+        @Override
+        public void onFailure(Exception exception) {
+            if (exception instanceof ResponseException) {
+                latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            exchange.onFailure(this, exception);
+        }
+    }
+}
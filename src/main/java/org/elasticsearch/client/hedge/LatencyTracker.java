@@ -0,0 +1,70 @@
+package org.elasticsearch.client.hedge;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最近 capacity 个请求的耗时，计算分位数。
+ * <p>
+ * 样本写入环形数组，不加锁；分位数每写入 refreshInterval 个样本才重新排序计算，其余时候返回上次的结果。
+ *
+ * @author brezp
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private final int refreshInterval;
+    private final AtomicLong recorded = new AtomicLong();
+
+    private volatile Cached cached;
+
+    public LatencyTracker(int capacity, int refreshInterval) {
+        this.samples = new long[capacity];
+        this.refreshInterval = Math.max(1, refreshInterval);
+    }
+
+    public void record(long millis) {
+        long i = recorded.getAndIncrement();
+        samples[(int) (i % samples.length)] = millis;
+    }
+
+    /**
+     * @return 已记录的样本数，超过容量时为容量
+     */
+    public int count() {
+        return (int) Math.min(recorded.get(), samples.length);
+    }
+
+    /**
+     * @param percentile (0, 100]
+     * @return 没有样本时为 -1
+     */
+    public long percentile(double percentile) {
+        long total = recorded.get();
+        if (total == 0) {
+            return -1;
+        }
+        Cached c = this.cached;
+        if (c != null && c.percentile == percentile && total - c.recordedAt < refreshInterval) {
+            return c.value;
+        }
+        long[] sorted = Arrays.copyOf(samples, count());
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        long value = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        this.cached = new Cached(percentile, total, value);
+        return value;
+    }
+
+    private static final class Cached {
+        private final double percentile;
+        private final long recordedAt;
+        private final long value;
+
+        private Cached(double percentile, long recordedAt, long value) {
+            this.percentile = percentile;
+            this.recordedAt = recordedAt;
+            this.value = value;
+        }
+    }
+}
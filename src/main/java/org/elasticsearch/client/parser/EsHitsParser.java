@@ -0,0 +1,229 @@
+package org.elasticsearch.client.parser;
+
+import com.github.brezp.es.client.entity.EsHit;
+import com.github.brezp.es.client.entity.EsHits;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentParserUtils.ensureExpectedToken;
+
+/**
+ * 把 search、scroll 响应解析为 {@link EsHits}，不创建 SearchHit，也不把 _source 解析成 Map。
+ * <p>
+ * 一页中所有 hit 的 _source 原样拷贝到同一个 buffer 中，每个 {@link EsHit} 持有其中的一段；
+ * total 兼容 v7.9 的 {"value": n, "relation": "eq"} 格式，aggregations、suggest 等直接跳过。
+ *
+ * @author brezp
+ */
+public class EsHitsParser {
+
+    public static EsHits fromXContent(XContentParser parser) throws IOException {
+        ensureExpectedToken(XContentParser.Token.START_OBJECT, parser.nextToken(), parser::getTokenLocation);
+        String scrollId = null;
+        long tookInMillis = -1;
+        boolean timedOut = false;
+        int totalShards = -1;
+        int failedShards = 0;
+        HitsBuilder hits = new HitsBuilder(parser.contentType());
+
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if ("_scroll_id".equals(currentFieldName)) {
+                    scrollId = parser.text();
+                } else if ("took".equals(currentFieldName)) {
+                    tookInMillis = parser.longValue();
+                } else if ("timed_out".equals(currentFieldName)) {
+                    timedOut = parser.booleanValue();
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if ("hits".equals(currentFieldName)) {
+                    hits.parse(parser);
+                } else if ("_shards".equals(currentFieldName)) {
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                        if (token == XContentParser.Token.FIELD_NAME) {
+                            currentFieldName = parser.currentName();
+                        } else if (token.isValue()) {
+                            if ("total".equals(currentFieldName)) {
+                                totalShards = parser.intValue();
+                            } else if ("failed".equals(currentFieldName)) {
+                                failedShards = parser.intValue();
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new EsHits(scrollId, tookInMillis, timedOut, totalShards, failedShards, hits.totalHits, hits.relation,
+            hits.maxScore, hits.build());
+    }
+
+    /**
+     * 先记录每个 _source 在共享 buffer 中的位置，整页解析完后再切分
+     */
+    private static final class HitsBuilder {
+        private final XContentType contentType;
+        private final BytesStreamOutput sources = new BytesStreamOutput();
+        private final List<PendingHit> pending = new ArrayList<>();
+
+        private long totalHits;
+        private String relation;
+        private float maxScore = Float.NaN;
+
+        private HitsBuilder(XContentType contentType) {
+            this.contentType = contentType;
+        }
+
+        private void parse(XContentParser parser) throws IOException {
+            XContentParser.Token token;
+            String currentFieldName = null;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    currentFieldName = parser.currentName();
+                } else if ("total".equals(currentFieldName) && token == XContentParser.Token.START_OBJECT) {
+                    parseTotal(parser);
+                } else if (token.isValue()) {
+                    if ("total".equals(currentFieldName)) {
+                        totalHits = parser.longValue();
+                    } else if ("max_score".equals(currentFieldName)) {
+                        maxScore = parser.floatValue();
+                    }
+                } else if ("hits".equals(currentFieldName) && token == XContentParser.Token.START_ARRAY) {
+                    while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                        parseHit(parser);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        private void parseTotal(XContentParser parser) throws IOException {
+            XContentParser.Token token;
+            String currentFieldName = null;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    currentFieldName = parser.currentName();
+                } else if ("value".equals(currentFieldName)) {
+                    totalHits = parser.longValue();
+                } else if ("relation".equals(currentFieldName)) {
+                    relation = parser.text();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        private void parseHit(XContentParser parser) throws IOException {
+            ensureExpectedToken(XContentParser.Token.START_OBJECT, parser.currentToken(), parser::getTokenLocation);
+            String index = null;
+            String type = null;
+            String id = null;
+            float score = Float.NaN;
+            Object[] sortValues = null;
+            Map<String, Object> fields = null;
+            int sourceOffset = -1;
+            int sourceLength = 0;
+
+            XContentParser.Token token;
+            String currentFieldName = null;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    currentFieldName = parser.currentName();
+                } else if ("_source".equals(currentFieldName) && token == XContentParser.Token.START_OBJECT) {
+                    sourceOffset = (int) sources.position();
+                    //每个 _source 单独一个 generator，避免多个根对象之间写入分隔符
+                    XContentBuilder builder = new XContentBuilder(contentType.xContent(), sources);
+                    builder.copyCurrentStructure(parser);
+                    builder.flush();
+                    sourceLength = (int) sources.position() - sourceOffset;
+                } else if (token.isValue()) {
+                    if ("_index".equals(currentFieldName)) {
+                        index = parser.text();
+                    } else if ("_type".equals(currentFieldName)) {
+                        type = parser.text();
+                    } else if ("_id".equals(currentFieldName)) {
+                        id = parser.text();
+                    } else if ("_score".equals(currentFieldName)) {
+                        score = parser.floatValue();
+                    }
+                } else if ("sort".equals(currentFieldName) && token == XContentParser.Token.START_ARRAY) {
+                    sortValues = parser.list().toArray();
+                } else if ("fields".equals(currentFieldName) && token == XContentParser.Token.START_OBJECT) {
+                    fields = parseFields(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            pending.add(new PendingHit(index, type, id, score, sortValues, fields, sourceOffset, sourceLength));
+        }
+
+        private Map<String, Object> parseFields(XContentParser parser) throws IOException {
+            Map<String, Object> fields = new HashMap<>();
+            XContentParser.Token token;
+            String currentFieldName = null;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    currentFieldName = parser.currentName();
+                } else if (token == XContentParser.Token.START_ARRAY) {
+                    List<Object> values = parser.list();
+                    fields.put(currentFieldName, values.isEmpty() ? null : values.get(0));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return fields;
+        }
+
+        private List<EsHit> build() {
+            BytesReference all = sources.bytes();
+            List<EsHit> hits = new ArrayList<>(pending.size());
+            for (PendingHit p : pending) {
+                BytesReference source = p.sourceOffset < 0 ? null : all.slice(p.sourceOffset, p.sourceLength);
+                hits.add(new EsHit(p.index, p.type, p.id, p.score, p.sortValues, p.fields, source, contentType));
+            }
+            return hits;
+        }
+    }
+
+    private static final class PendingHit {
+        private final String index;
+        private final String type;
+        private final String id;
+        private final float score;
+        private final Object[] sortValues;
+        private final Map<String, Object> fields;
+        private final int sourceOffset;
+        private final int sourceLength;
+
+        private PendingHit(String index, String type, String id, float score, Object[] sortValues,
+            Map<String, Object> fields, int sourceOffset, int sourceLength) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.score = score;
+            this.sortValues = sortValues;
+            this.fields = fields;
+            this.sourceOffset = sourceOffset;
+            this.sourceLength = sourceLength;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.elasticsearch.client.parser;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.get.GetField;
+import org.elasticsearch.index.get.GetResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentParserUtils.ensureExpectedToken;
+
+/**
+ * 解析 _mget 响应，es 5.6 的 MultiGetResponse 没有 fromXContent。
+ * <p>
+ * 每个 doc 可能是 get 结果，也可能是 {"_index", "_type", "_id", "error": {...}}；_source 保留为原始字节，
+ * {@link GetResponse#getSourceAsMap()} 时才解析。v7.9 的 _seq_no、_primary_term 等字段直接跳过。
+ *
+ * @author brezp
+ */
+public class MultiGetResponseParser {
+
+    public static MultiGetResponse fromXContent(XContentParser parser) throws IOException {
+        ensureExpectedToken(XContentParser.Token.START_OBJECT, parser.nextToken(), parser::getTokenLocation);
+        List<MultiGetItemResponse> items = new ArrayList<>();
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if ("docs".equals(currentFieldName) && token == XContentParser.Token.START_ARRAY) {
+                while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                    items.add(parseItem(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new MultiGetResponse(items.toArray(new MultiGetItemResponse[0]));
+    }
+
+    private static MultiGetItemResponse parseItem(XContentParser parser) throws IOException {
+        ensureExpectedToken(XContentParser.Token.START_OBJECT, parser.currentToken(), parser::getTokenLocation);
+        String index = null;
+        String type = null;
+        String id = null;
+        long version = Versions.NOT_FOUND;
+        boolean found = false;
+        BytesReference source = null;
+        Map<String, GetField> fields = null;
+        ElasticsearchException failure = null;
+
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+                if ("error".equals(currentFieldName)) {
+                    //读完后 parser 停在 error 的最后一个token上
+                    failure = ElasticsearchException.failureFromXContent(parser);
+                }
+            } else if ("_source".equals(currentFieldName) && token == XContentParser.Token.START_OBJECT) {
+                XContentBuilder builder = XContentBuilder.builder(parser.contentType().xContent());
+                builder.copyCurrentStructure(parser);
+                source = builder.bytes();
+            } else if ("fields".equals(currentFieldName) && token == XContentParser.Token.START_OBJECT) {
+                fields = parseFields(parser);
+            } else if (token.isValue()) {
+                if (GetResult._INDEX.equals(currentFieldName)) {
+                    index = parser.text();
+                } else if (GetResult._TYPE.equals(currentFieldName)) {
+                    type = parser.text();
+                } else if (GetResult._ID.equals(currentFieldName)) {
+                    id = parser.text();
+                } else if ("_version".equals(currentFieldName)) {
+                    version = parser.longValue();
+                } else if ("found".equals(currentFieldName) || "exists".equals(currentFieldName)) {
+                    found = parser.booleanValue();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (failure != null) {
+            return new MultiGetItemResponse(null, new MultiGetResponse.Failure(index, type, id, failure));
+        }
+        GetResult result = new GetResult(index, type, id, found ? version : Versions.NOT_FOUND, found, source, fields);
+        return new MultiGetItemResponse(new GetResponse(result), null);
+    }
+
+    private static Map<String, GetField> parseFields(XContentParser parser) throws IOException {
+        Map<String, GetField> fields = new HashMap<>();
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                fields.put(currentFieldName, new GetField(currentFieldName, parser.list()));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return fields;
+    }
+}
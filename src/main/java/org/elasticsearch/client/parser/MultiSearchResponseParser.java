@@ -0,0 +1,75 @@
+package org.elasticsearch.client.parser;
+
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.CheckedFunction;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.BytesRestResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.common.xcontent.XContentParserUtils.ensureExpectedToken;
+
+/**
+ * 解析 _msearch 响应，es 5.6 的 MultiSearchResponse 没有 fromXContent。
+ * <p>
+ * responses 中每一项可能是 search 响应，也可能是 {"error": {...}, "status": 404}；search 响应的解析器要求从对象开始前读取，
+ * 所以每一项先拷贝到buffer，再按首个字段交给 searchParser 或解析为异常。
+ *
+ * @author brezp
+ */
+public class MultiSearchResponseParser {
+
+    public static MultiSearchResponse fromXContent(XContentParser parser,
+        CheckedFunction<XContentParser, SearchResponse, IOException> searchParser) throws IOException {
+        ensureExpectedToken(XContentParser.Token.START_OBJECT, parser.nextToken(), parser::getTokenLocation);
+        List<MultiSearchResponse.Item> items = new ArrayList<>();
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if ("responses".equals(currentFieldName) && token == XContentParser.Token.START_ARRAY) {
+                while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                    items.add(parseItem(parser, searchParser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new MultiSearchResponse(items.toArray(new MultiSearchResponse.Item[0]));
+    }
+
+    private static MultiSearchResponse.Item parseItem(XContentParser parser,
+        CheckedFunction<XContentParser, SearchResponse, IOException> searchParser) throws IOException {
+        ensureExpectedToken(XContentParser.Token.START_OBJECT, parser.currentToken(), parser::getTokenLocation);
+        XContentType contentType = parser.contentType();
+        //解析结果可能引用buffer中的字节，每一项使用单独的buffer
+        BytesStreamOutput buffer = new BytesStreamOutput();
+        XContentBuilder builder = new XContentBuilder(contentType.xContent(), buffer);
+        builder.copyCurrentStructure(parser);
+        builder.flush();
+
+        boolean failure;
+        try (XContentParser peek = createParser(parser, contentType, buffer)) {
+            peek.nextToken();
+            failure = peek.nextToken() == XContentParser.Token.FIELD_NAME && "error".equals(peek.currentName());
+        }
+        try (XContentParser itemParser = createParser(parser, contentType, buffer)) {
+            if (failure) {
+                return new MultiSearchResponse.Item(null, BytesRestResponse.errorFromXContent(itemParser));
+            }
+            return new MultiSearchResponse.Item(searchParser.apply(itemParser), null);
+        }
+    }
+
+    private static XContentParser createParser(XContentParser parser, XContentType contentType, BytesStreamOutput buffer)
+        throws IOException {
+        return contentType.xContent().createParser(parser.getXContentRegistry(), buffer.bytes());
+    }
+}
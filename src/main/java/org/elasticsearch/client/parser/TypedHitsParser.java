@@ -0,0 +1,170 @@
+package org.elasticsearch.client.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.brezp.es.client.entity.EsTypedHits;
+import org.apache.http.HttpEntity;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把 search、scroll 响应直接解析为 {@link EsTypedHits}：在 Jackson 流上逐个 token 读取，读到 _source 时
+ * 用 {@link ObjectReader} 直接绑定为目标类型，不创建 SearchHit、Map 或 EsDoc。
+ * <p>
+ * 只读取 _scroll_id、took、timed_out、_shards.failed、hits.total、_id、_source，其余部分直接跳过。
+ *
+ * @author brezp
+ */
+public class TypedHitsParser {
+
+    /**
+     * 默认的 mapper，_source 中多出的字段忽略
+     */
+    public static final ObjectMapper DEFAULT_MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+
+    /**
+     * 按响应的 content type 创建 Jackson parser 并解析
+     */
+    public static <T> EsTypedHits<T> fromEntity(HttpEntity entity, ObjectReader reader) throws IOException {
+        if (entity == null) {
+            throw new IllegalStateException("Response body expected but not returned");
+        }
+        if (entity.getContentType() == null) {
+            throw new IllegalStateException("Elasticsearch didn't return the [Content-Type] header, unable to parse response body");
+        }
+        XContentType xContentType = XContentType.fromMediaTypeOrFormat(entity.getContentType().getValue());
+        if (xContentType == null) {
+            throw new IllegalStateException("Unsupported Content-Type: " + entity.getContentType().getValue());
+        }
+        try (InputStream in = entity.getContent(); JsonParser parser = factory(xContentType, reader).createParser(in)) {
+            return parse(parser, reader);
+        }
+    }
+
+    private static JsonFactory factory(XContentType xContentType, ObjectReader reader) {
+        switch (xContentType) {
+            case JSON:
+                return reader.getFactory();
+            case SMILE:
+                return SMILE_FACTORY;
+            case CBOR:
+                return CBOR_FACTORY;
+            default:
+                throw new IllegalStateException("Unsupported Content-Type: " + xContentType.mediaType());
+        }
+    }
+
+    public static <T> EsTypedHits<T> parse(JsonParser parser, ObjectReader reader) throws IOException {
+        expect(JsonToken.START_OBJECT, parser.nextToken(), parser);
+        String scrollId = null;
+        long tookInMillis = -1;
+        boolean timedOut = false;
+        int failedShards = 0;
+        Hits<T> hits = new Hits<>();
+
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            token = parser.nextToken();
+            if ("_scroll_id".equals(name) && token == JsonToken.VALUE_STRING) {
+                scrollId = parser.getText();
+            } else if ("took".equals(name) && token.isNumeric()) {
+                tookInMillis = parser.getLongValue();
+            } else if ("timed_out".equals(name) && token.isBoolean()) {
+                timedOut = parser.getBooleanValue();
+            } else if ("_shards".equals(name) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String shardsField = parser.getCurrentName();
+                    if (parser.nextToken().isNumeric() && "failed".equals(shardsField)) {
+                        failedShards = parser.getIntValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("hits".equals(name) && token == JsonToken.START_OBJECT) {
+                hits.parse(parser, reader);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        expect(JsonToken.END_OBJECT, token, parser);
+        return new EsTypedHits<>(scrollId, tookInMillis, timedOut, failedShards, hits.totalHits, hits.relation,
+            hits.ids, hits.sources);
+    }
+
+    private static void expect(JsonToken expected, JsonToken actual, JsonParser parser) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Failed to parse search response: expected [" + expected + "] but found [" + actual
+                + "] at " + parser.getCurrentLocation());
+        }
+    }
+
+    private static final class Hits<T> {
+        private final List<String> ids = new ArrayList<>();
+        private final List<T> sources = new ArrayList<>();
+        private long totalHits;
+        private String relation;
+
+        private void parse(JsonParser parser, ObjectReader reader) throws IOException {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("total".equals(name) && token.isNumeric()) {
+                    totalHits = parser.getLongValue();
+                } else if ("total".equals(name) && token == JsonToken.START_OBJECT) {
+                    //v7.9: {"value": n, "relation": "eq"}
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String totalField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("value".equals(totalField)) {
+                            totalHits = parser.getLongValue();
+                        } else if ("relation".equals(totalField)) {
+                            relation = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if ("hits".equals(name) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        parseHit(parser, reader);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        private void parseHit(JsonParser parser, ObjectReader reader) throws IOException {
+            String id = null;
+            T source = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("_id".equals(name) && token == JsonToken.VALUE_STRING) {
+                    id = parser.getText();
+                } else if ("_source".equals(name) && token == JsonToken.START_OBJECT) {
+                    //读完后 parser 停在 _source 的 END_OBJECT 上
+                    source = reader.readValue(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            ids.add(id);
+            sources.add(source);
+        }
+    }
+}
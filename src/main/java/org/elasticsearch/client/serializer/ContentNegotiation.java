@@ -0,0 +1,156 @@
+package org.elasticsearch.client.serializer;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.util.EntityBytes;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 请求 es 返回 SMILE 或 CBOR 格式的响应，可选把 search、msearch、bulk 的 body 也转为该格式发送。
+ * <p>
+ * v5.6、v7.9 通过 Accept header 指定响应格式，v1.7、v2.3 通过 format 参数；响应按 Content-Type 解析，不需要额外处理。
+ * <p>
+ * body 在 filter 执行之后转换，filter 仍然处理 json。msearch、bulk 每行之间需要分隔符，CBOR 不支持，仍以 json 发送。
+ *
+ * @author brezp
+ */
+public class ContentNegotiation {
+
+    private static final String FORMAT_PARAM = "format";
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final XContentType responseType;
+    private final boolean encodeRequests;
+    private final Header accept;
+    private final ContentType bodyContentType;
+
+    /**
+     * @param responseType   SMILE 或 CBOR
+     * @param encodeRequests search、msearch、bulk 的 body 是否也转为 responseType
+     */
+    public ContentNegotiation(XContentType responseType, boolean encodeRequests) {
+        if (responseType != XContentType.SMILE && responseType != XContentType.CBOR) {
+            throw new IllegalArgumentException("response type must be SMILE or CBOR, got " + responseType);
+        }
+        this.responseType = responseType;
+        this.encodeRequests = encodeRequests;
+        this.accept = new BasicHeader("Accept", responseType.mediaType());
+        this.bodyContentType = ContentType.create(responseType.mediaType());
+    }
+
+    /**
+     * 需要在 filter 之后调用
+     */
+    public Request apply(Request request, EsVersion version) throws IOException {
+        HttpEntity entity = request.getEntity();
+        if (encodeRequests && entity != null && entity.getContentEncoding() == null) {
+            entity = encode(request.getEndpoint(), entity);
+        }
+        Map<String, String> params = request.getParameters();
+        if (version == EsVersion.V1_7 || version == EsVersion.V2_3) {
+            params = new HashMap<>(params);
+            params.put(FORMAT_PARAM, responseType.shortName());
+        }
+        if (entity == request.getEntity() && params == request.getParameters()) {
+            return request;
+        }
+        return new Request(request.getMethod(), request.getEndpoint(), params, entity);
+    }
+
+    /**
+     * @return v5.6、v7.9 加上 Accept 后的 header
+     */
+    public Header[] headers(Header[] headers, EsVersion version) {
+        if (version == EsVersion.V1_7 || version == EsVersion.V2_3) {
+            return headers;
+        }
+        Header[] result = Arrays.copyOf(headers, headers.length + 1);
+        result[headers.length] = accept;
+        return result;
+    }
+
+    private HttpEntity encode(String endpoint, HttpEntity entity) throws IOException {
+        ContentType contentType = EntityBytes.contentType(entity);
+        if (contentType == null) {
+            return entity;
+        }
+        String mimeType = contentType.getMimeType();
+        if (endpoint.endsWith("/_msearch") || endpoint.endsWith("/_bulk")) {
+            if (!NDJSON.equals(mimeType) && !XContentType.JSON.mediaTypeWithoutParameters().equals(mimeType)
+                || responseType != XContentType.SMILE) {
+                return entity;
+            }
+            return toEntity(encodeLines(EntityBytes.read(entity)));
+        }
+        if (endpoint.endsWith("/_search") && XContentType.JSON.mediaTypeWithoutParameters().equals(mimeType)) {
+            ByteBuffer body = EntityBytes.read(entity);
+            BytesStreamOutput out = new BytesStreamOutput(body.remaining());
+            transcode(body.array(), body.arrayOffset() + body.position(), body.remaining(), out);
+            return toEntity(out);
+        }
+        return entity;
+    }
+
+    /**
+     * 每行一个 json 对象，转为 SMILE 对象加分隔符
+     */
+    private BytesStreamOutput encodeLines(ByteBuffer body) throws IOException {
+        byte[] bytes = body.array();
+        int from = body.arrayOffset() + body.position();
+        int end = from + body.remaining();
+        BytesStreamOutput out = new BytesStreamOutput(body.remaining());
+        byte separator = responseType.xContent().streamSeparator();
+        while (from < end) {
+            int lineEnd = from;
+            while (lineEnd < end && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd > from) {
+                transcode(bytes, from, lineEnd - from, out);
+                out.writeByte(separator);
+            }
+            from = lineEnd + 1;
+        }
+        return out;
+    }
+
+    private void transcode(byte[] json, int offset, int length, BytesStreamOutput out) throws IOException {
+        try (XContentParser parser = XContentType.JSON.xContent()
+            .createParser(NamedXContentRegistry.EMPTY, new BytesArray(json, offset, length));
+             XContentBuilder builder = new XContentBuilder(responseType.xContent(), out)) {
+            parser.nextToken();
+            builder.copyCurrentStructure(parser);
+            builder.flush();
+        }
+    }
+
+    private HttpEntity toEntity(BytesStreamOutput out) {
+        BytesRef bytes = out.bytes().toBytesRef();
+        return new ByteArrayEntity(bytes.bytes, bytes.offset, bytes.length, bodyContentType);
+    }
+
+    public XContentType getResponseType() {
+        return responseType;
+    }
+
+    public boolean isEncodeRequests() {
+        return encodeRequests;
+    }
+}
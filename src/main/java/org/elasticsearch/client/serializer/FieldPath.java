@@ -0,0 +1,82 @@
+package org.elasticsearch.client.serializer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 序列化过程中当前字段所在的位置：从根开始依次经过的对象字段名，数组和数组元素不计入。
+ * <p>
+ * 例如 {"query":{"bool":{"must":[{"term":{...}}]}}} 中 term 内的字段，路径为 query/bool/must/term
+ *
+ * @author brezp
+ */
+public final class FieldPath {
+
+    /**
+     * 每一层已打开的对象/数组对应的字段名，根对象和数组元素为 null
+     */
+    private final List<String> frames = new ArrayList<>();
+
+    void push(String name) {
+        frames.add(name);
+    }
+
+    void pop() {
+        frames.remove(frames.size() - 1);
+    }
+
+    /**
+     * @return 最外层的字段名，如 query、aggregations、sort
+     */
+    public String root() {
+        for (String name : frames) {
+            if (name != null) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 最近一层的字段名
+     */
+    public String parent() {
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            if (frames.get(i) != null) {
+                return frames.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 路径中是否经过指定字段
+     */
+    public boolean contains(String name) {
+        return frames.contains(name);
+    }
+
+    /**
+     * @return 路径中的字段数
+     */
+    public int depth() {
+        int depth = 0;
+        for (String name : frames) {
+            if (name != null) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("$");
+        for (String name : frames) {
+            if (name != null) {
+                sb.append('.').append(name);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package org.elasticsearch.client.serializer;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 按目标版本直接序列化 SearchSourceBuilder / QueryBuilder，代替先生成 5.6 的json再由filter解析改写。
+ * <p>
+ * 示例：
+ * <pre>
+ * BytesReference body = SearchSourceSerializer.toXContent(searchSourceBuilder, EsVersion.V1_7);
+ * </pre>
+ *
+ * @author brezp
+ */
+public class SearchSourceSerializer {
+
+    private static final Map<EsVersion, VersionedXContent> X_CONTENTS = new EnumMap<>(EsVersion.class);
+
+    static {
+        for (EsVersion version : EsVersion.values()) {
+            X_CONTENTS.put(version, new VersionedXContent(SerializeRules.of(version)));
+        }
+    }
+
+    /**
+     * @param content SearchSourceBuilder、QueryBuilder 等；规则按 search body 中的位置编写
+     * @return 目标版本的json
+     */
+    public static BytesReference toXContent(ToXContent content, EsVersion version) throws IOException {
+        XContentBuilder builder = XContentBuilder.builder(X_CONTENTS.get(version));
+        if (content.isFragment()) {
+            builder.startObject();
+        }
+        content.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        if (content.isFragment()) {
+            builder.endObject();
+        }
+        return builder.bytes();
+    }
+
+    public static String toJson(ToXContent content, EsVersion version) throws IOException {
+        return toXContent(content, version).utf8ToString();
+    }
+
+    /**
+     * @return 目标版本的request entity
+     */
+    public static VersionedEntity toEntity(ToXContent content, EsVersion version, ContentType contentType)
+        throws IOException {
+        BytesRef source = toXContent(content, version).toBytesRef();
+        return new VersionedEntity(source.bytes, source.offset, source.length, contentType, version);
+    }
+}
@@ -0,0 +1,142 @@
+package org.elasticsearch.client.serializer;
+
+import com.github.brezp.es.client.entity.EsVersion;
+
+/**
+ * 各版本的字段改写规则，在序列化时逐个字段生效，与内置filter（AggFilter、ScriptFilter）的改写结果一致：
+ * <ul>
+ * <li>v1.7：去掉 date_histogram.offset、bool 下的 boost/disable_coord/adjust_pure_negative、ignore_unmapped、
+ * has_parent.score；function_score.query 改为 filter；script_fields 的 script 只保留 source 字符串</li>
+ * <li>v2.3：去掉 date_histogram.offset、query 下的 ignore_unmapped、exists.boost；script_fields 同 v1.7</li>
+ * <li>v7.9：去掉 bool.disable_coord；sort 中的 _uid 改为 _id</li>
+ * </ul>
+ * 规则按 5.6 的字段名和位置编写，适用于完整的 search body。
+ *
+ * @author brezp
+ */
+public abstract class SerializeRules {
+
+    /**
+     * 不做任何改写，即 5.6 的原始输出
+     */
+    public static final SerializeRules NONE = new SerializeRules() {
+    };
+
+    public static final SerializeRules V1_7 = new SerializeRules() {
+        @Override
+        public String fieldName(FieldPath path, String name) {
+            if (isScriptFieldOption(path, name)) {
+                return null;
+            }
+            switch (name) {
+                case "offset":
+                    return isDateHistogramOffset(path) ? null : name;
+                case "boost":
+                case "disable_coord":
+                case "adjust_pure_negative":
+                    return path.contains("bool") ? null : name;
+                case "ignore_unmapped":
+                    return null;
+                case "score":
+                    return "has_parent".equals(path.parent()) ? null : name;
+                case "query":
+                    return "function_score".equals(path.parent()) ? "filter" : name;
+                default:
+                    return name;
+            }
+        }
+
+        @Override
+        public boolean collapseScript(FieldPath path, String name) {
+            return isScriptField(path, name);
+        }
+    };
+
+    public static final SerializeRules V2_3 = new SerializeRules() {
+        @Override
+        public String fieldName(FieldPath path, String name) {
+            if (isScriptFieldOption(path, name)) {
+                return null;
+            }
+            switch (name) {
+                case "offset":
+                    return isDateHistogramOffset(path) ? null : name;
+                case "ignore_unmapped":
+                    return "query".equals(path.root()) ? null : name;
+                case "boost":
+                    return "exists".equals(path.parent()) ? null : name;
+                default:
+                    return name;
+            }
+        }
+
+        @Override
+        public boolean collapseScript(FieldPath path, String name) {
+            return isScriptField(path, name);
+        }
+    };
+
+    public static final SerializeRules V7_9 = new SerializeRules() {
+        @Override
+        public String fieldName(FieldPath path, String name) {
+            switch (name) {
+                case "disable_coord":
+                    return "bool".equals(path.parent()) ? null : name;
+                case "_uid":
+                    return path.depth() == 1 && "sort".equals(path.root()) ? "_id" : name;
+                default:
+                    return name;
+            }
+        }
+    };
+
+    /**
+     * @return 指定版本的规则，不需要改写的版本返回 {@link #NONE}
+     */
+    public static SerializeRules of(EsVersion version) {
+        switch (version) {
+            case V1_7:
+                return V1_7;
+            case V2_3:
+                return V2_3;
+            case V7_9:
+                return V7_9;
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * @param path 字段所在位置
+     * @param name 5.6 输出的字段名
+     * @return 实际输出的字段名，null 表示丢弃该字段及其值
+     */
+    public String fieldName(FieldPath path, String name) {
+        return name;
+    }
+
+    /**
+     * @return true 表示该字段的对象值需折叠为其中 source（或 inline）的字符串，其余内容丢弃
+     */
+    public boolean collapseScript(FieldPath path, String name) {
+        return false;
+    }
+
+    private static boolean isDateHistogramOffset(FieldPath path) {
+        return "aggregations".equals(path.root()) && "date_histogram".equals(path.parent());
+    }
+
+    /**
+     * script_fields.xxx.script
+     */
+    private static boolean isScriptField(FieldPath path, String name) {
+        return "script".equals(name) && path.depth() == 2 && "script_fields".equals(path.root());
+    }
+
+    /**
+     * script_fields.xxx 下除 script 以外的字段，如 ignore_failure
+     */
+    private static boolean isScriptFieldOption(FieldPath path, String name) {
+        return !"script".equals(name) && path.depth() == 2 && "script_fields".equals(path.root());
+    }
+}
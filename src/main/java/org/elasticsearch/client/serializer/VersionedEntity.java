@@ -0,0 +1,24 @@
+package org.elasticsearch.client.serializer;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * 已按目标版本直接序列化的 body，filter链据此跳过已被序列化规则覆盖的内置filter
+ *
+ * @author brezp
+ */
+public class VersionedEntity extends ByteArrayEntity {
+
+    private final EsVersion version;
+
+    public VersionedEntity(byte[] b, int off, int len, ContentType contentType, EsVersion version) {
+        super(b, off, len, contentType);
+        this.version = version;
+    }
+
+    public EsVersion getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,77 @@
+package org.elasticsearch.client.serializer;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContent;
+import org.elasticsearch.common.xcontent.XContentGenerator;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Set;
+
+/**
+ * 生成的 generator 按指定版本的规则写json，解析部分与 {@link JsonXContent} 相同
+ *
+ * @author brezp
+ */
+public class VersionedXContent implements XContent {
+
+    private final XContent delegate = JsonXContent.jsonXContent;
+    private final SerializeRules rules;
+
+    public VersionedXContent(SerializeRules rules) {
+        this.rules = rules;
+    }
+
+    @Override
+    public XContentType type() {
+        return delegate.type();
+    }
+
+    @Override
+    public byte streamSeparator() {
+        return delegate.streamSeparator();
+    }
+
+    @Override
+    public XContentGenerator createGenerator(OutputStream os, Set<String> includes, Set<String> excludes)
+        throws IOException {
+        return new VersionedXContentGenerator(delegate.createGenerator(os, includes, excludes), rules);
+    }
+
+    @Override
+    public XContentParser createParser(NamedXContentRegistry xContentRegistry, String content) throws IOException {
+        return delegate.createParser(xContentRegistry, content);
+    }
+
+    @Override
+    public XContentParser createParser(NamedXContentRegistry xContentRegistry, InputStream is) throws IOException {
+        return delegate.createParser(xContentRegistry, is);
+    }
+
+    @Override
+    public XContentParser createParser(NamedXContentRegistry xContentRegistry, byte[] data) throws IOException {
+        return delegate.createParser(xContentRegistry, data);
+    }
+
+    @Override
+    public XContentParser createParser(NamedXContentRegistry xContentRegistry, byte[] data, int offset, int length)
+        throws IOException {
+        return delegate.createParser(xContentRegistry, data, offset, length);
+    }
+
+    @Override
+    public XContentParser createParser(NamedXContentRegistry xContentRegistry, BytesReference bytes) throws IOException {
+        return delegate.createParser(xContentRegistry, bytes);
+    }
+
+    @Override
+    public XContentParser createParser(NamedXContentRegistry xContentRegistry, Reader reader) throws IOException {
+        return delegate.createParser(xContentRegistry, reader);
+    }
+}
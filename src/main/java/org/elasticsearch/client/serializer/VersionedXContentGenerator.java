@@ -0,0 +1,435 @@
+package org.elasticsearch.client.serializer;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentGenerator;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 包装 json generator，在写出的同时按 {@link SerializeRules} 丢弃、改名或折叠字段，
+ * 不需要先生成 5.6 的json再解析改写。
+ *
+ * @author brezp
+ */
+public class VersionedXContentGenerator implements XContentGenerator {
+
+    private final XContentGenerator delegate;
+    private final SerializeRules rules;
+    private final FieldPath path = new FieldPath();
+
+    /**
+     * 已写出、尚未写值的字段名，作为下一个对象/数组在路径中的名字
+     */
+    private String pendingName;
+
+    /**
+     * 下一个值需要丢弃
+     */
+    private boolean skipNext;
+    /**
+     * 正在丢弃的对象/数组的层数
+     */
+    private int skipDepth;
+
+    /**
+     * 下一个值需要折叠为script字符串，值为输出的字段名
+     */
+    private String collapseNext;
+    /**
+     * 正在折叠的script对象的层数，及其中当前的字段名
+     */
+    private int collapseDepth;
+    private String collapseName;
+    private String collapseField;
+
+    public VersionedXContentGenerator(XContentGenerator delegate, SerializeRules rules) {
+        this.delegate = delegate;
+        this.rules = rules;
+    }
+
+    /**
+     * @return 实际写出的字段名，null 表示该字段及其值不输出
+     */
+    private String fieldName(String name) {
+        if (skipDepth > 0) {
+            return null;
+        }
+        if (collapseDepth > 0) {
+            if (collapseDepth == 1) {
+                collapseField = name;
+            }
+            return null;
+        }
+        return rules.fieldName(path, name);
+    }
+
+    /**
+     * @return true 表示当前标量值不输出
+     */
+    private boolean skipValue() {
+        if (skipDepth > 0 || collapseDepth > 0) {
+            return true;
+        }
+        pendingName = null;
+        if (skipNext) {
+            skipNext = false;
+            return true;
+        }
+        if (collapseNext != null) {
+            collapseNext = null;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean startContainer() {
+        if (skipDepth > 0) {
+            skipDepth++;
+            return true;
+        }
+        if (collapseDepth > 0) {
+            collapseDepth++;
+            return true;
+        }
+        if (skipNext) {
+            skipNext = false;
+            skipDepth = 1;
+            return true;
+        }
+        if (collapseNext != null) {
+            collapseName = collapseNext;
+            collapseNext = null;
+            collapseDepth = 1;
+            return true;
+        }
+        path.push(pendingName);
+        pendingName = null;
+        return false;
+    }
+
+    private boolean endContainer() {
+        if (skipDepth > 0) {
+            skipDepth--;
+            return true;
+        }
+        if (collapseDepth > 0) {
+            if (--collapseDepth == 0) {
+                collapseName = null;
+                collapseField = null;
+            }
+            return true;
+        }
+        path.pop();
+        return false;
+    }
+
+    /**
+     * 字符串值：折叠中的 source/inline 以及直接写成字符串的script 输出为 "script":"..."
+     */
+    private void string(String value) throws IOException {
+        if (collapseDepth == 1 && skipDepth == 0 && ("source".equals(collapseField) || "inline".equals(collapseField))) {
+            delegate.writeStringField(collapseName, value);
+            return;
+        }
+        if (collapseNext != null && skipDepth == 0 && collapseDepth == 0) {
+            delegate.writeStringField(collapseNext, value);
+            collapseNext = null;
+            pendingName = null;
+            return;
+        }
+        if (!skipValue()) {
+            delegate.writeString(value);
+        }
+    }
+
+    @Override
+    public XContentType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public void usePrettyPrint() {
+        delegate.usePrettyPrint();
+    }
+
+    @Override
+    public boolean isPrettyPrint() {
+        return delegate.isPrettyPrint();
+    }
+
+    @Override
+    public void usePrintLineFeedAtEnd() {
+        delegate.usePrintLineFeedAtEnd();
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        if (!startContainer()) {
+            delegate.writeStartObject();
+        }
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        if (!endContainer()) {
+            delegate.writeEndObject();
+        }
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        if (!startContainer()) {
+            delegate.writeStartArray();
+        }
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        if (!endContainer()) {
+            delegate.writeEndArray();
+        }
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        String out = fieldName(name);
+        if (out == null) {
+            if (skipDepth == 0 && collapseDepth == 0) {
+                skipNext = true;
+            }
+            return;
+        }
+        if (rules.collapseScript(path, name)) {
+            collapseNext = out;
+            return;
+        }
+        pendingName = name;
+        delegate.writeFieldName(out);
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        if (!skipValue()) {
+            delegate.writeNull();
+        }
+    }
+
+    @Override
+    public void writeNullField(String name) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeNullField(out);
+        }
+    }
+
+    @Override
+    public void writeBooleanField(String name, boolean value) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeBooleanField(out, value);
+        }
+    }
+
+    @Override
+    public void writeBoolean(boolean value) throws IOException {
+        if (!skipValue()) {
+            delegate.writeBoolean(value);
+        }
+    }
+
+    @Override
+    public void writeNumberField(String name, double value) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeNumberField(out, value);
+        }
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumberField(String name, float value) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeNumberField(out, value);
+        }
+    }
+
+    @Override
+    public void writeNumber(float value) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumberField(String name, int value) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeNumberField(out, value);
+        }
+    }
+
+    @Override
+    public void writeNumber(int value) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumberField(String name, long value) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeNumberField(out, value);
+        }
+    }
+
+    @Override
+    public void writeNumber(long value) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(short value) throws IOException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeStringField(String name, String value) throws IOException {
+        if (collapseDepth == 1 && skipDepth == 0 && ("source".equals(name) || "inline".equals(name))) {
+            delegate.writeStringField(collapseName, value);
+            return;
+        }
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeStringField(out, value);
+        }
+    }
+
+    @Override
+    public void writeString(String value) throws IOException {
+        string(value);
+    }
+
+    @Override
+    public void writeString(char[] text, int offset, int len) throws IOException {
+        string(new String(text, offset, len));
+    }
+
+    @Override
+    public void writeUTF8String(byte[] value, int offset, int length) throws IOException {
+        string(new String(value, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeBinaryField(String name, byte[] value) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeBinaryField(out, value);
+        }
+    }
+
+    @Override
+    public void writeBinary(byte[] value) throws IOException {
+        if (!skipValue()) {
+            delegate.writeBinary(value);
+        }
+    }
+
+    @Override
+    public void writeBinary(byte[] value, int offset, int length) throws IOException {
+        if (!skipValue()) {
+            delegate.writeBinary(value, offset, length);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void writeRawField(String name, InputStream value) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeRawField(out, value);
+        }
+    }
+
+    @Override
+    public void writeRawField(String name, InputStream value, XContentType xContentType) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeRawField(out, value, xContentType);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void writeRawField(String name, BytesReference value) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeRawField(out, value);
+        }
+    }
+
+    @Override
+    public void writeRawField(String name, BytesReference value, XContentType xContentType) throws IOException {
+        String out = fieldName(name);
+        if (out != null) {
+            delegate.writeRawField(out, value, xContentType);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void writeRawValue(BytesReference value) throws IOException {
+        if (!skipValue()) {
+            delegate.writeRawValue(value);
+        }
+    }
+
+    @Override
+    public void writeRawValue(BytesReference value, XContentType xContentType) throws IOException {
+        if (!skipValue()) {
+            delegate.writeRawValue(value, xContentType);
+        }
+    }
+
+    /**
+     * 原样拷贝的结构不再逐字段应用规则
+     */
+    @Override
+    public void copyCurrentStructure(XContentParser parser) throws IOException {
+        if (skipValue()) {
+            parser.skipChildren();
+        } else {
+            delegate.copyCurrentStructure(parser);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
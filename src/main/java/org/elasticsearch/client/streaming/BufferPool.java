@@ -0,0 +1,51 @@
+package org.elasticsearch.client.streaming;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 固定大小的堆内 buffer 池，流式读取响应时每个请求占用一个 buffer，用完归还。
+ * 池中最多保留 maxPooled 个，池空时临时分配，归还时池满则丢弃。
+ *
+ * @author brezp
+ */
+public final class BufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> pool;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0 || maxPooled <= 0) {
+            throw new IllegalArgumentException("bufferSize and maxPooled must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.pool = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return 当前池中空闲的 buffer 数
+     */
+    public int available() {
+        return pool.size();
+    }
+
+    ByteBuffer allocate(int size) {
+        if (size != bufferSize) {
+            return ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = pool.poll();
+        return buffer == null ? ByteBuffer.allocate(bufferSize) : buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.capacity() == bufferSize) {
+            buffer.clear();
+            pool.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.elasticsearch.client.streaming;
+
+import org.apache.http.nio.util.SharedInputBuffer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 从 {@link BufferPool} 借用 buffer 的 {@link SharedInputBuffer}：io线程写入、调用线程读取，写满时暂停读取socket。
+ * io线程和调用线程都用完后才归还 buffer。
+ *
+ * @author brezp
+ */
+final class PooledInputBuffer extends SharedInputBuffer {
+
+    private final BufferPool pool;
+    private final AtomicInteger refs = new AtomicInteger(2);
+
+    PooledInputBuffer(BufferPool pool) {
+        super(pool.getBufferSize(), pool::allocate);
+        this.pool = pool;
+    }
+
+    /**
+     * io线程、调用线程各调用一次
+     */
+    void release() {
+        if (refs.decrementAndGet() == 0) {
+            pool.release(buffer);
+        }
+    }
+}
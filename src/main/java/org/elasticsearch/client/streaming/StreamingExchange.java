@@ -0,0 +1,171 @@
+package org.elasticsearch.client.streaming;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.budget.ContentCounter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 一次流式读取响应的请求：作为 consumer factory 和 listener 传给 RestClient#performRequestAsync，
+ * 调用线程通过 {@link #awaitEntity(long)} 在收到 2xx 响应头时即拿到 entity，一边接收一边解析，不必等整个响应缓存完。
+ * <p>
+ * 失败重试时 RestClient 会为每个节点新建 consumer，只有 2xx 响应才开始流式读取，因此不会读到被重试的响应。
+ * 非 2xx 响应仍完整缓存，以 {@link org.elasticsearch.client.ResponseException} 抛出。
+ * <p>
+ * 读取 entity 的流必须关闭，关闭时会读完剩余数据并归还 buffer。
+ *
+ * @author brezp
+ */
+public final class StreamingExchange implements HttpAsyncResponseConsumerFactory, ResponseListener {
+
+    /**
+     * 非 2xx 响应的缓存上限，与 RestClient 默认的 HeapBufferedResponseConsumerFactory 相同
+     */
+    public static final int DEFAULT_HEAP_BUFFER_LIMIT = 100 * 1024 * 1024;
+
+    private final BufferPool pool;
+    private final CompletableFuture<HttpEntity> result = new CompletableFuture<>();
+    private final Consumer<Response> onResponse;
+    private final ContentCounter onContent;
+    private boolean abandoned;
+    private int statusCode;
+
+    public StreamingExchange(BufferPool pool) {
+        this(pool, null);
+    }
+
+    /**
+     * @param onResponse RestClient 收完响应（包括非 2xx）时在 io 线程上调用，可以为null
+     */
+    public StreamingExchange(BufferPool pool, Consumer<Response> onResponse) {
+        this(pool, onResponse, null);
+    }
+
+    /**
+     * @param onContent io 线程每次收到 body 时以字节数调用，抛出异常时响应失败，可以为null
+     */
+    public StreamingExchange(BufferPool pool, Consumer<Response> onResponse, ContentCounter onContent) {
+        this.pool = pool;
+        this.onResponse = onResponse;
+        this.onContent = onContent;
+    }
+
+    @Override
+    public HttpAsyncResponseConsumer<HttpResponse> createHttpAsyncResponseConsumer() {
+        return new StreamingResponseConsumer(this, pool, DEFAULT_HEAP_BUFFER_LIMIT);
+    }
+
+    /**
+     * io线程每次收到 body 时以字节数调用，转给构造时传入的 onContent，用于把 body 计入响应额度
+     *
+     * @throws IOException onContent 抛出时原样抛出，该响应失败
+     */
+    void received(int bytes) throws IOException {
+        if (onContent != null && bytes > 0) {
+            onContent.add(bytes);
+        }
+    }
+
+    synchronized boolean offer(HttpEntity streamed, int statusCode) {
+        if (abandoned || result.isDone()) {
+            return false;
+        }
+        this.statusCode = statusCode;
+        return result.complete(streamed);
+    }
+
+    @Override
+    public void onSuccess(Response response) {
+        if (onResponse != null) {
+            onResponse.accept(response);
+        }
+        //已经开始流式读取时忽略
+        synchronized (this) {
+            if (!result.isDone()) {
+                statusCode = response.getStatusLine().getStatusCode();
+                result.complete(response.getEntity());
+            }
+        }
+    }
+
+    @Override
+    public void onFailure(Exception exception) {
+        if (onResponse != null && exception instanceof ResponseException) {
+            onResponse.accept(((ResponseException) exception).getResponse());
+        }
+        result.completeExceptionally(exception);
+    }
+
+    /**
+     * @return {@link #awaitEntity(long)} 返回的响应的状态码
+     */
+    public synchronized int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 阻塞直到收到 2xx 响应头或请求结束，最多等待 timeoutMillis，与 RestClient 同步请求的 maxRetryTimeout 相同
+     *
+     * @return 响应的 entity，2xx 时为边接收边读取的流；没有 body 时为null
+     */
+    public HttpEntity awaitEntity(long timeoutMillis) throws IOException {
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            try {
+                abandon();
+            } catch (IOException ignored) {
+                //连接已失败，不需要再读取
+            }
+            throw new IOException("listener timeout after waiting for [" + timeoutMillis + "] ms");
+        } catch (InterruptedException e) {
+            try {
+                abandon();
+            } catch (IOException ignored) {
+                //连接已失败，不需要再读取
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 不再等待：尚未开始流式读取的不再流式读取；已开始的读完丢弃，避免连接一直暂停
+     */
+    private void abandon() throws IOException {
+        HttpEntity entity;
+        synchronized (this) {
+            abandoned = true;
+            if (!result.isDone() || result.isCompletedExceptionally()) {
+                return;
+            }
+            entity = result.getNow(null);
+        }
+        if (entity != null) {
+            InputStream content = entity.getContent();
+            content.close();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.elasticsearch.client.streaming;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 2xx 响应的 body 经 {@link PooledInputBuffer} 流式交给调用线程，收到响应头即通知 {@link StreamingExchange}；
+ * 其他状态码与 HeapBufferedAsyncResponseConsumer 相同，完整缓存在堆内，走原有的异常处理。
+ *
+ * @author brezp
+ */
+final class StreamingResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+    private final StreamingExchange exchange;
+    private final BufferPool pool;
+    private final int heapBufferLimit;
+
+    private volatile HttpResponse response;
+    private volatile PooledInputBuffer streamBuffer;
+    private volatile SimpleInputBuffer heapBuffer;
+    private volatile boolean completed;
+    private volatile Exception failure;
+
+    StreamingResponseConsumer(StreamingExchange exchange, BufferPool pool, int heapBufferLimit) {
+        this.exchange = exchange;
+        this.pool = pool;
+        this.heapBufferLimit = heapBufferLimit;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status >= 200 && status < 300) {
+            PooledInputBuffer buffer = new PooledInputBuffer(pool);
+            BasicHttpEntity streamed = new BasicHttpEntity();
+            streamed.setContent(new StreamInput(buffer));
+            streamed.setContentLength(entity.getContentLength());
+            streamed.setContentType(entity.getContentType());
+            streamed.setContentEncoding(entity.getContentEncoding());
+            if (exchange.offer(streamed, status)) {
+                response.setEntity(streamed);
+                this.streamBuffer = buffer;
+                return;
+            }
+            //调用方已放弃等待，没有线程读取，改为完整缓存
+            buffer.release();
+            buffer.release();
+        }
+
+        long len = entity.getContentLength();
+        if (len > heapBufferLimit) {
+            throw new ContentTooLongException("entity content is too long [" + len +
+                "] for the configured buffer limit [" + heapBufferLimit + "]");
+        }
+        if (len < 0) {
+            len = 4096;
+        }
+        this.heapBuffer = new SimpleInputBuffer((int) len, HeapByteBufferAllocator.INSTANCE);
+        response.setEntity(new ContentBufferEntity(entity, heapBuffer));
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+        int n;
+        if (streamBuffer != null) {
+            n = streamBuffer.consumeContent(decoder, ioctrl);
+        } else {
+            n = heapBuffer.consumeContent(decoder);
+        }
+        exchange.received(n);
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        completed = true;
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        PooledInputBuffer buffer = this.streamBuffer;
+        if (buffer != null) {
+            if (!completed) {
+                Exception ex = getException();
+                failure = ex != null ? ex : new ConnectionClosedException("response consumption cancelled");
+                //唤醒等待数据的调用线程
+                buffer.shutdown();
+            }
+            buffer.release();
+        }
+        this.response = null;
+        this.heapBuffer = null;
+    }
+
+    /**
+     * 调用线程读取的流：连接中断时抛出原异常而不是提前结束；提前关闭时读完剩余数据，保证连接可以复用
+     */
+    private final class StreamInput extends InputStream {
+        private final PooledInputBuffer buffer;
+        private boolean eof;
+        private boolean closed;
+
+        private StreamInput(PooledInputBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (closed || eof) {
+                return -1;
+            }
+            try {
+                return check(buffer.read());
+            } catch (IOException e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed || eof) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                return check(buffer.read(b, off, len));
+            } catch (IOException e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public int available() {
+            return closed ? 0 : buffer.available();
+        }
+
+        private int check(int n) throws IOException {
+            if (n == -1) {
+                if (failure != null) {
+                    throw failure(null);
+                }
+                eof = true;
+            }
+            return n;
+        }
+
+        /**
+         * 等待数据时被中断（shutdown）会抛出 InterruptedIOException，换成连接上的原始异常
+         */
+        private IOException failure(IOException e) {
+            Exception ex = failure;
+            if (ex == null) {
+                return e;
+            }
+            IOException wrapped = new IOException("response stream failed", ex);
+            if (e != null) {
+                wrapped.addSuppressed(e);
+            }
+            return wrapped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            try {
+                byte[] skip = new byte[1024];
+                while (!eof && read(skip, 0, skip.length) != -1) {
+                    //丢弃剩余数据
+                }
+            } finally {
+                closed = true;
+                buffer.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package api;
+
+import com.github.brezp.es.client.api.ReaderApi;
+import com.github.brezp.es.client.base.EsClient;
+import com.github.brezp.es.client.entity.EsReaderResult;
+import com.github.brezp.es.client.entity.EsVersion;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步查询不阻塞调用线程，响应到达后完成
+ *
+ * @author brezp
+ */
+public class ReaderApiAsyncTest {
+
+    @Rule
+    public final StubServer server = new StubServer();
+    private EsClient esClient;
+    private ReaderApi readerApi;
+
+    @Before
+    public void setUp() throws Exception {
+        server.handle("/_search/scroll", exchange -> StubServer.respond(exchange, 200,
+            "{\"_scroll_id\":\"s2\",\"took\":1,\"timed_out\":false,"
+                + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+                + "\"hits\":{\"total\":3,\"max_score\":null,\"hits\":[]}}"));
+        server.handle("/", exchange -> {
+            server.awaitRelease();
+            StubServer.respond(exchange, 200, "{\"took\":1,\"timed_out\":false,"
+                + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+                + "\"hits\":{\"total\":42,\"max_score\":null,\"hits\":[]}}");
+        });
+
+        esClient = new EsClient.Builder()
+            .setEsHosts(new String[]{server.address()})
+            .setEsVersion(EsVersion.V5_6)
+            .setReuseClient(false)
+            .build();
+        readerApi = new ReaderApi(esClient, "idx", "doc");
+    }
+
+    @After
+    public void tearDown() {
+        readerApi.close();
+    }
+
+    @Test
+    public void testSearchAsync() throws Exception {
+        //请求数多于连接数和服务端线程数，调用线程不等待任何一个
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(readerApi.countAsync(QueryBuilders.termQuery("f", i)));
+        }
+        for (CompletableFuture<Long> future : futures) {
+            Assert.assertFalse(future.isDone());
+        }
+
+        server.release();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<Long> future : futures) {
+            Assert.assertEquals(42L, (long) future.get());
+        }
+    }
+
+    @Test
+    public void testScrollAsync() throws Exception {
+        EsReaderResult page = readerApi.scrollAsync("s1").get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(page.isEnd());
+        Assert.assertEquals("s1", page.getScrollId());
+        Assert.assertEquals(3, page.getTotalHit());
+    }
+}
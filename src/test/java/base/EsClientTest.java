@@ -0,0 +1,126 @@
+package base;
+
+import com.github.brezp.es.client.base.EsClient;
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.filter.AggFilter;
+import org.elasticsearch.client.breaker.CircuitBreakerPolicy;
+import org.elasticsearch.client.hedge.HedgePolicy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * 相同配置复用 RestClientProxy，缓存的 proxy 数有上限
+ *
+ * @author brezp
+ */
+public class EsClientTest {
+
+    private static EsClient.Builder builder() {
+        return new EsClient.Builder()
+            .setEsHosts(new String[]{"127.0.0.1:19200"})
+            .setEsVersion(EsVersion.V5_6);
+    }
+
+    @Test
+    public void testReuseProxy() throws Exception {
+        EsClient first = builder().build();
+        EsClient second = builder().build();
+        Assert.assertSame(first.getClient(), second.getClient());
+
+        EsClient coalescing = builder().setRequestCoalescing(true).build();
+        Assert.assertNotSame(first.getClient(), coalescing.getClient());
+        Assert.assertSame(first.getClient().getLowLevelClient(), coalescing.getClient().getLowLevelClient());
+        Assert.assertNotNull(coalescing.getClient().getRequestCoalescer());
+
+        EsClient notReused = builder().setReuseClient(false).build();
+        Assert.assertNotSame(first.getClient(), notReused.getClient());
+        notReused.close();
+    }
+
+    @Test
+    public void testReuseProxyByPolicyValue() throws Exception {
+        EsClient first = builder().setHedging(new HedgePolicy()).setCircuitBreaker(new CircuitBreakerPolicy(), null)
+            .build();
+        EsClient second = builder().setHedging(new HedgePolicy()).setCircuitBreaker(new CircuitBreakerPolicy(), null)
+            .build();
+        Assert.assertSame(first.getClient(), second.getClient());
+
+        EsClient otherPolicy = builder().setHedging(new HedgePolicy().setBurst(3))
+            .setCircuitBreaker(new CircuitBreakerPolicy(), null).build();
+        Assert.assertNotSame(first.getClient(), otherPolicy.getClient());
+
+        AggFilter aggFilter = new AggFilter();
+        EsClient.Builder filtered = builder();
+        filtered.setFilters(Collections.singletonList(aggFilter));
+        EsClient.Builder filtered2 = builder();
+        filtered2.setFilters(Collections.singletonList(aggFilter));
+        Assert.assertSame(filtered.build().getClient(), filtered2.build().getClient());
+
+        //同类但不同实例的 filter 可能带不同状态，不复用
+        EsClient.Builder otherFilter = builder();
+        otherFilter.setFilters(Collections.singletonList(new AggFilter()));
+        Assert.assertNotSame(filtered.build().getClient(), otherFilter.build().getClient());
+    }
+
+    @Test
+    public void testCachedProxiesBounded() throws Exception {
+        EsClient oldest = builder().setSearchBatching(5, 10).build();
+        Assert.assertNotNull(oldest.getClient().getSearchBatcher());
+        for (int i = 1; i <= EsClient.Builder.MAX_CACHED_PROXIES; i++) {
+            builder().setRewriteCacheMaxBytes(i).build();
+        }
+        //最久未使用的被淘汰，不再分配给新的 EsClient，但仍在使用，后台线程保留到关闭
+        Assert.assertNotNull(oldest.getClient().getSearchBatcher());
+        EsClient rebuilt = builder().setSearchBatching(5, 10).build();
+        Assert.assertNotSame(oldest.getClient(), rebuilt.getClient());
+        Assert.assertNotNull(rebuilt.getClient().getSearchBatcher());
+        oldest.close();
+        Assert.assertNull(oldest.getClient().getSearchBatcher());
+        Assert.assertNotNull(rebuilt.getClient().getSearchBatcher());
+        rebuilt.close();
+    }
+
+    @Test
+    public void testSharedProxyReleasedByLastClose() throws Exception {
+        EsClient first = builder().setSearchBatching(7, 10).build();
+        EsClient second = builder().setSearchBatching(7, 10).build();
+        Assert.assertSame(first.getClient(), second.getClient());
+
+        first.close();
+        first.close();
+        Assert.assertNotNull(second.getClient().getSearchBatcher());
+        second.close();
+        Assert.assertNull(second.getClient().getSearchBatcher());
+
+        //释放后移出缓存，相同配置重建
+        EsClient third = builder().setSearchBatching(7, 10).build();
+        Assert.assertNotSame(second.getClient(), third.getClient());
+        Assert.assertNotNull(third.getClient().getSearchBatcher());
+        third.close();
+    }
+
+    @Test
+    public void testCloseStopsThreads() throws Exception {
+        long before = backgroundThreads();
+        for (int i = 0; i < 3; i++) {
+            EsClient client = builder().setReuseClient(false)
+                .setSearchBatching(5, 10)
+                .setHedging(new HedgePolicy())
+                .build();
+            Assert.assertNotNull(client.getClient().getSearchBatcher());
+            client.close();
+            Assert.assertNull(client.getClient().getSearchBatcher());
+            Assert.assertNull(client.getClient().getHedger());
+        }
+        Thread.sleep(100);
+        Assert.assertTrue(backgroundThreads() <= before);
+    }
+
+    private static long backgroundThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(t -> t.getName().equals("es-search-batcher") || t.getName().equals("es-hedger"))
+            .count();
+    }
+}
@@ -0,0 +1,134 @@
+package batch;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.StringEntity;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClientProxy;
+import org.elasticsearch.client.batch.RequestCoalescer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 相同的 search 同时在途时只发送一次
+ *
+ * @author brezp
+ */
+public class RequestCoalescerTest {
+
+    private final AtomicInteger searchCount = new AtomicInteger();
+    private volatile int awaitCoalesced;
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClientProxy proxy;
+
+    @Before
+    public void setUp() {
+        //返回的 total 为 index 名中的数字
+        server.handle("/", exchange -> {
+            searchCount.incrementAndGet();
+            //等到其余相同请求都已合并后再响应
+            RequestCoalescer coalescer = proxy.getRequestCoalescer();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (coalescer != null && coalescer.getCoalescedCount() < awaitCoalesced
+                && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = searchResponse(Long.parseLong(path.substring(2, path.indexOf('/', 1))))
+                .getBytes(StandardCharsets.UTF_8);
+            StubServer.respond(exchange, 200, body);
+        });
+
+        proxy = new RestClientProxy(server.restClient(), EsVersion.V5_6);
+    }
+
+    private static String searchResponse(long total) {
+        return "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+            + "\"hits\":{\"total\":" + total + ",\"max_score\":null,\"hits\":[]}}";
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        RequestCoalescer coalescer = proxy.enableRequestCoalescing();
+        awaitCoalesced = 3;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SearchResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> proxy.search(new SearchRequest("i5"))));
+            }
+            SearchResponse first = futures.get(0).get();
+            for (Future<SearchResponse> future : futures) {
+                SearchResponse response = future.get();
+                Assert.assertEquals(5, response.getHits().getTotalHits());
+                //每个调用方各自解析，不共享响应对象
+                Assert.assertTrue(future == futures.get(0) || response != first);
+            }
+            Assert.assertEquals(1, searchCount.get());
+            Assert.assertEquals(1, coalescer.getExecutedCount());
+            Assert.assertEquals(0, coalescer.getInFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFollowerTimeout() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(200);
+        Request request = new Request("GET", "/i1/_search", Collections.emptyMap(), null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        HttpEntity entity = new StringEntity("{}", StandardCharsets.UTF_8);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<HttpEntity> leader = executor.submit(() -> coalescer.execute(request, null, () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return entity;
+            }));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            long start = System.currentTimeMillis();
+            try {
+                coalescer.execute(request, null, () -> {
+                    throw new AssertionError("coalesced request should not be sent");
+                });
+                Assert.fail();
+            } catch (IOException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("listener timeout"));
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+            //等待方超时不影响第一个请求
+            release.countDown();
+            Assert.assertSame(entity, leader.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, coalescer.getExecutedCount());
+            Assert.assertEquals(1, coalescer.getCoalescedCount());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
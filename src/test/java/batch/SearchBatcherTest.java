@@ -0,0 +1,150 @@
+package batch;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestClientProxy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 并发 search 合并为 _msearch
+ *
+ * @author brezp
+ */
+public class SearchBatcherTest {
+
+    private static final Pattern INDEX = Pattern.compile("\"index\":\"([^\"]+)\"");
+
+    private final AtomicInteger msearchCount = new AtomicInteger();
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClientProxy proxy;
+
+    @Before
+    public void setUp() {
+        //每个查询返回的 total 为 index 名中的数字，index 为 missing 时返回错误
+        server.handle("/_msearch", exchange -> {
+            msearchCount.incrementAndGet();
+            String[] lines = read(exchange.getRequestBody()).split("\n");
+            StringBuilder sb = new StringBuilder("{\"responses\":[");
+            for (int i = 0; i < lines.length; i += 2) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                Matcher matcher = INDEX.matcher(lines[i]);
+                String index = matcher.find() ? matcher.group(1) : "";
+                if ("missing".equals(index)) {
+                    sb.append("{\"error\":{\"type\":\"index_not_found_exception\",\"reason\":\"no such index\"},")
+                        .append("\"status\":404}");
+                } else {
+                    sb.append(searchResponse(Long.parseLong(index.substring(1))));
+                }
+            }
+            byte[] body = sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+            StubServer.respond(exchange, 200, body);
+        });
+        server.handle("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/slow/")) {
+                server.awaitRelease();
+                exchange.close();
+                return;
+            }
+            byte[] body = searchResponse(Long.parseLong(path.substring(2, path.indexOf('/', 1))))
+                .getBytes(StandardCharsets.UTF_8);
+            StubServer.respond(exchange, 200, body);
+        });
+
+        proxy = new RestClientProxy(server.restClient(500), EsVersion.V5_6);
+    }
+
+    @After
+    public void tearDown() {
+        server.release();
+        proxy.disableSearchBatching();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String searchResponse(long total) {
+        return "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+            + "\"hits\":{\"total\":" + total + ",\"max_score\":null,\"hits\":[]}}";
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        proxy.enableSearchBatching(1000, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SearchResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                SearchRequest request = new SearchRequest("i" + i);
+                futures.add(executor.submit(() -> proxy.batchSearch(request)));
+            }
+            Future<SearchResponse> missing = executor.submit(() -> proxy.batchSearch(new SearchRequest("missing")));
+
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(i, futures.get(i).get().getHits().getTotalHits());
+            }
+            try {
+                missing.get();
+                Assert.fail();
+            } catch (Exception e) {
+                Assert.assertTrue(e.getCause() instanceof ElasticsearchException);
+            }
+            //攒够 4 个立即发送，不等待窗口
+            Assert.assertEquals(1, msearchCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        proxy.enableSearchBatching(20, 100);
+        //窗口内只有一个请求时直接发送 search
+        Assert.assertEquals(7, proxy.batchSearch(new SearchRequest("i7")).getHits().getTotalHits());
+        Assert.assertEquals(0, msearchCount.get());
+    }
+
+    @Test
+    public void testMaxRetryTimeout() throws Exception {
+        proxy.enableSearchBatching(20, 100);
+        long start = System.currentTimeMillis();
+        try {
+            proxy.batchSearch(new SearchRequest("slow"));
+            Assert.fail();
+        } catch (IOException e) {
+            //与同步请求相同，最多等待 maxRetryTimeout
+            Assert.assertTrue(e.getMessage().contains("listener timeout"));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+}
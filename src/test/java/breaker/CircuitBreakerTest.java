@@ -0,0 +1,120 @@
+package breaker;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RestClientProxy;
+import org.elasticsearch.client.breaker.CircuitBreaker;
+import org.elasticsearch.client.breaker.CircuitBreakerOpenException;
+import org.elasticsearch.client.breaker.CircuitBreakerPolicy;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 429 比例过高时打开，打开期间不发送请求，试探成功后关闭
+ *
+ * @author brezp
+ */
+public class CircuitBreakerTest {
+
+    private static final String REJECTED = "{\"error\":{\"type\":\"es_rejected_execution_exception\","
+        + "\"reason\":\"rejected execution\"},\"status\":429}";
+    private static final String HITS = "{\"took\":1,\"timed_out\":false,"
+        + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+        + "\"hits\":{\"total\":1,\"max_score\":null,\"hits\":[]}}";
+
+    private final AtomicInteger received = new AtomicInteger();
+    private volatile boolean rejecting = true;
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClientProxy proxy;
+
+    @Before
+    public void setUp() {
+        server.handle("/", exchange -> {
+            received.incrementAndGet();
+            byte[] body = (rejecting ? REJECTED : HITS).getBytes(StandardCharsets.UTF_8);
+            StubServer.respond(exchange, rejecting ? 429 : 200, body);
+        });
+
+        proxy = new RestClientProxy(server.restClient(), EsVersion.V5_6);
+    }
+
+    @Test
+    public void testOpenAndRecover() throws Exception {
+        CircuitBreaker breaker = proxy.enableCircuitBreaker(new CircuitBreakerPolicy()
+            .setMinimumCalls(4)
+            .setOpenMillis(200)
+            .setHalfOpenCalls(2));
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                proxy.search(new SearchRequest("idx"));
+                Assert.fail();
+            } catch (ElasticsearchStatusException e) {
+                Assert.assertEquals(429, e.status().getStatus());
+            }
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        //打开期间同步、异步请求都不发送
+        try {
+            proxy.search(new SearchRequest("idx"));
+            Assert.fail();
+        } catch (CircuitBreakerOpenException e) {
+            Assert.assertTrue(e.getRetryAfterMillis() > 0);
+        }
+        try {
+            proxy.searchAsync(new SearchRequest("idx")).get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof CircuitBreakerOpenException);
+        }
+        Assert.assertEquals(4, received.get());
+        Assert.assertEquals(2, breaker.getRejectedCount());
+
+        rejecting = false;
+        Thread.sleep(250);
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(1, proxy.search(new SearchRequest("idx")).getHits().getTotalHits());
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertEquals(1, breaker.getOpenedCount());
+        Assert.assertEquals(1, breaker.getHalfOpenedCount());
+        Assert.assertEquals(1, breaker.getClosedCount());
+    }
+
+    @Test
+    public void testReopenOnFailedTrial() throws Exception {
+        CircuitBreaker breaker = proxy.enableCircuitBreaker(new CircuitBreakerPolicy()
+            .setMinimumCalls(2)
+            .setOpenMillis(100)
+            .setHalfOpenCalls(1));
+        for (int i = 0; i < 2; i++) {
+            try {
+                proxy.search(new SearchRequest("idx"));
+                Assert.fail();
+            } catch (ElasticsearchStatusException e) {
+                //429
+            }
+        }
+        Thread.sleep(150);
+        try {
+            proxy.search(new SearchRequest("idx"));
+            Assert.fail();
+        } catch (ElasticsearchStatusException e) {
+            //试探请求仍然被拒绝
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertEquals(2, breaker.getOpenedCount());
+        Assert.assertEquals(3, received.get());
+    }
+}
@@ -0,0 +1,177 @@
+package budget;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import org.apache.http.ContentTooLongException;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestClientProxy;
+import org.elasticsearch.client.budget.ResponseBudget;
+import org.elasticsearch.client.budget.ResponseBudgetExceededException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个请求预留额度，解析完成后释放；额度用完时同步请求排队，异步请求直接拒绝，并发的大响应不超过上限
+ *
+ * @author brezp
+ */
+public class ResponseBudgetTest {
+
+    private static final String HITS = "{\"took\":1,\"timed_out\":false,"
+        + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+        + "\"hits\":{\"total\":1,\"max_score\":null,\"hits\":[]}}";
+
+    /**
+     * index 为 big 时返回约 200KB 的响应
+     */
+    private static final String BIG_HITS = bigHits(200 * 1024);
+
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClientProxy proxy;
+
+    @Before
+    public void setUp() {
+        server.handle("/", exchange -> {
+            boolean big = exchange.getRequestURI().getPath().startsWith("/big/");
+            if (big) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            byte[] body = (big ? BIG_HITS : HITS).getBytes(StandardCharsets.UTF_8);
+            StubServer.respond(exchange, 200, body);
+        });
+
+        proxy = new RestClientProxy(server.restClient(), EsVersion.V5_6);
+    }
+
+    private static String bigHits(int size) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        sb.append("{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},")
+            .append("\"hits\":{\"total\":1,\"max_score\":1.0,\"hits\":[{\"_index\":\"big\",\"_type\":\"doc\",")
+            .append("\"_id\":\"1\",\"_score\":1.0,\"_source\":{\"pad\":\"");
+        while (sb.length() < size) {
+            sb.append("abcdefghij");
+        }
+        return sb.append("\"}}]}}").toString();
+    }
+
+    @Test
+    public void testReleasedAfterParse() throws Exception {
+        //异步请求在 listener 返回后才释放，随后的同步请求可能需要短暂排队
+        ResponseBudget budget = proxy.enableResponseBudget(1024 * 1024, 1000);
+
+        proxy.search(new SearchRequest("idx"));
+        proxy.searchAsync(new SearchRequest("idx")).get(5, TimeUnit.SECONDS);
+        proxy.disableStreamingResponses();
+        proxy.search(new SearchRequest("idx"));
+
+        Assert.assertEquals(0, budget.getUsedBytes());
+        Assert.assertEquals(0, budget.getActiveRequests());
+        Assert.assertTrue(budget.getPeakBytes() >= HITS.length());
+    }
+
+    @Test
+    public void testExhausted() throws Exception {
+        ResponseBudget budget = proxy.enableResponseBudget(1024, 2000);
+        ResponseBudget.Reservation held = budget.tryAcquire();
+        held.add(1024);
+
+        try {
+            proxy.searchAsync(new SearchRequest("idx")).get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ResponseBudgetExceededException);
+        }
+        Assert.assertEquals(1, budget.getRejectedCount());
+
+        //同步请求排队，释放后继续
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            held.close();
+        });
+        releaser.start();
+        proxy.search(new SearchRequest("idx"));
+        releaser.join();
+
+        Assert.assertEquals(1, budget.getWaitedCount());
+        Assert.assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void testConcurrentLargeResponses() throws Exception {
+        long maxBytes = 1024 * 1024;
+        ResponseBudget budget = proxy.enableResponseBudget(maxBytes, 300 * 1024, 10_000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<SearchResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                boolean streaming = i % 2 == 0;
+                futures.add(executor.submit(() -> streaming
+                    ? proxy.search(new SearchRequest("big"))
+                    : proxy.searchAsync(new SearchRequest("big")).get(10, TimeUnit.SECONDS)));
+            }
+            for (Future<SearchResponse> future : futures) {
+                try {
+                    Assert.assertEquals(1, future.get().getHits().getTotalHits());
+                } catch (ExecutionException e) {
+                    //异步请求额度不足时直接拒绝
+                    Assert.assertTrue(causedBy(e, ResponseBudgetExceededException.class));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertTrue(budget.getPeakBytes() >= BIG_HITS.length());
+        Assert.assertTrue(budget.getPeakBytes() <= maxBytes);
+        Assert.assertTrue(budget.getWaitedCount() > 0);
+        Assert.assertEquals(0, budget.getReservedBytes());
+        Assert.assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void testResponseLargerThanReservation() throws Exception {
+        ResponseBudget budget = proxy.enableResponseBudget(1024 * 1024, 100 * 1024, 0);
+        for (int i = 0; i < 2; i++) {
+            try {
+                proxy.search(new SearchRequest("big"));
+                Assert.fail();
+            } catch (IOException e) {
+                Assert.assertTrue(causedBy(e, ContentTooLongException.class));
+            }
+            //第二次走完整缓存的 consumer
+            proxy.disableStreamingResponses();
+        }
+        Assert.assertTrue(budget.getPeakBytes() <= 100 * 1024);
+        Assert.assertEquals(0, budget.getReservedBytes());
+        Assert.assertEquals(0, budget.getUsedBytes());
+    }
+
+    private static boolean causedBy(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (type.isInstance(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,185 @@
+package cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.brezp.es.client.entity.EsVersion;
+import org.apache.http.message.BasicHeader;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.client.RestClientProxy;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * mget 分批并行发送，按id缓存
+ *
+ * @author brezp
+ */
+public class DocCacheTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final AtomicInteger mgetCount = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final List<String> headers = new CopyOnWriteArrayList<>();
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClientProxy proxy;
+
+    @Before
+    public void setUp() {
+        //id 为 missing 时返回未找到，index 为 closed 时返回错误，其余 _source 为 {"id": id}
+        server.handle("/_mget", exchange -> {
+            mgetCount.incrementAndGet();
+            headers.add(String.valueOf(exchange.getRequestHeaders().getFirst("X-Opaque-Id")));
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            JsonNode docs = MAPPER.readTree(exchange.getRequestBody()).path("docs");
+            if ("hang".equals(docs.path(0).path("_id").textValue())) {
+                server.awaitRelease();
+                exchange.close();
+                return;
+            }
+            StringBuilder sb = new StringBuilder("{\"docs\":[");
+            for (int i = 0; i < docs.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                String index = docs.get(i).path("_index").textValue();
+                String id = docs.get(i).path("_id").textValue();
+                sb.append("{\"_index\":\"").append(index).append("\",\"_type\":\"doc\",\"_id\":\"").append(id).append("\",");
+                if ("closed".equals(index)) {
+                    sb.append("\"error\":{\"type\":\"index_closed_exception\",\"reason\":\"closed\"}}");
+                } else if ("missing".equals(id)) {
+                    sb.append("\"found\":false}");
+                } else {
+                    sb.append("\"_version\":1,\"found\":true,\"_source\":{\"id\":\"").append(id).append("\"}}");
+                }
+            }
+            byte[] body = sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        proxy = new RestClientProxy(server.restClient(500), EsVersion.V5_6);
+    }
+
+    private static MultiGetRequest request(String... ids) {
+        MultiGetRequest request = new MultiGetRequest();
+        for (String id : ids) {
+            request.add(new MultiGetRequest.Item("index", "doc", id));
+        }
+        request.add(new MultiGetRequest.Item("closed", "doc", "1"));
+        return request;
+    }
+
+    @Test
+    public void testChunkAndCache() throws Exception {
+        proxy.enableDocCache(100, 60000);
+
+        MultiGetResponse response = proxy.mget(request("1", "2", "missing", "3"), 2);
+        MultiGetItemResponse[] items = response.getResponses();
+        Assert.assertEquals(5, items.length);
+        Assert.assertEquals(3, mgetCount.get());
+        Assert.assertEquals("1", items[0].getResponse().getSourceAsMap().get("id"));
+        Assert.assertEquals("3", items[3].getResponse().getId());
+        Assert.assertFalse(items[2].getResponse().isExists());
+        Assert.assertTrue(items[4].isFailed());
+
+        //只有失败的项需要重新请求
+        response = proxy.mget(request("3", "missing", "2", "1"), 2);
+        items = response.getResponses();
+        Assert.assertEquals(4, mgetCount.get());
+        Assert.assertEquals("2", items[2].getResponse().getSourceAsMap().get("id"));
+        Assert.assertFalse(items[1].getResponse().isExists());
+        Assert.assertTrue(items[4].isFailed());
+        Assert.assertEquals(4, proxy.getDocCache().size());
+    }
+
+    @Test
+    public void testBoundedConcurrency() throws Exception {
+        String[] ids = new String[20];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = String.valueOf(i);
+        }
+        MultiGetResponse response = proxy.mget(request(ids), 1, 3);
+        Assert.assertEquals(21, mgetCount.get());
+        Assert.assertTrue(maxInFlight.get() <= 3);
+        Assert.assertEquals("19", response.getResponses()[19].getResponse().getSourceAsMap().get("id"));
+
+        try {
+            proxy.mget(request(ids), 0);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testCachedSourceNotShared() throws Exception {
+        proxy.enableDocCache(100, 60000);
+
+        proxy.mget(request("1"), 10).getResponses()[0].getResponse().getSourceAsMap().put("dirty", true);
+        MultiGetItemResponse cached = proxy.mget(request("1"), 10).getResponses()[0];
+        cached.getResponse().getSourceAsMap().put("dirty", true);
+
+        Map<String, Object> source = proxy.mget(request("1"), 10).getResponses()[0].getResponse().getSourceAsMap();
+        Assert.assertEquals("1", source.get("id"));
+        Assert.assertFalse(source.containsKey("dirty"));
+        Assert.assertEquals(3, mgetCount.get());
+    }
+
+    @Test
+    public void testChunkHeaders() throws Exception {
+        proxy.mget(request("1", "2", "3"), 1, 2, new BasicHeader("X-Opaque-Id", "trace-1"));
+        Assert.assertEquals(4, headers.size());
+        for (String header : headers) {
+            Assert.assertEquals("trace-1", header);
+        }
+    }
+
+    @Test
+    public void testCacheKeyIsCopied() throws Exception {
+        proxy.enableDocCache(100, 60000);
+
+        MultiGetRequest request = request("1");
+        proxy.mget(request, 10);
+        //调用后修改 item 不影响已缓存的条目
+        request.getItems().get(0).routing("r1");
+        MultiGetItemResponse cached = proxy.mget(request("1"), 10).getResponses()[0];
+        Assert.assertEquals("1", cached.getResponse().getId());
+        Assert.assertEquals(1, proxy.getDocCache().stats().hitCount());
+    }
+
+    @Test
+    public void testMaxRetryTimeout() {
+        long start = System.currentTimeMillis();
+        try {
+            proxy.mget(request("1", "hang", "2"), 1);
+            Assert.fail();
+        } catch (IOException e) {
+            //一批没有响应时，最多等待 maxRetryTimeout
+            Assert.assertTrue(e.getMessage().contains("listener timeout"));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+}
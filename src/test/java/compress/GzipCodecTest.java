@@ -0,0 +1,114 @@
+package compress;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.metrics.CompressionStats;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestClientProxy;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 请求体 gzip 压缩、gzip 响应解压
+ *
+ * @author brezp
+ */
+public class GzipCodecTest {
+
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClientProxy proxy;
+    private volatile String receivedBody;
+
+    @Before
+    public void setUp() {
+        server.handle("/", exchange -> {
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            receivedBody = read(in);
+
+            StringBuilder hits = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                hits.append(i == 0 ? "" : ",").append("{\"_index\":\"i\",\"_type\":\"t\",\"_id\":\"").append(i)
+                    .append("\",\"_score\":1.0,\"_source\":{\"title\":\"the same title\"}}");
+            }
+            byte[] body = ("{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+                + "\"hits\":{\"total\":100,\"max_score\":1.0,\"hits\":[" + hits + "]}}").getBytes(StandardCharsets.UTF_8);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(body);
+                }
+                body = out.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            StubServer.respond(exchange, 200, body);
+        });
+
+        proxy = new RestClientProxy(server.restClient(), EsVersion.V5_6);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static SearchRequest request() {
+        List<String> sites = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            sites.add("site" + i + ".com");
+        }
+        return new SearchRequest("i").source(new SearchSourceBuilder().query(QueryBuilders.termsQuery("site", sites)));
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        CompressionStats stats = proxy.enableGzip(256, true).getStats();
+
+        SearchResponse response = proxy.search(request());
+        Assert.assertEquals(100, response.getHits().getHits().length);
+        Assert.assertTrue(receivedBody.contains("site99.com"));
+        Assert.assertEquals(1, stats.getCompressedRequests());
+        Assert.assertEquals(1, stats.getDecompressedResponses());
+
+        //非流式读取
+        proxy.disableStreamingResponses();
+        response = proxy.search(request());
+        Assert.assertEquals("the same title", response.getHits().getAt(99).getSourceAsMap().get("title"));
+        Assert.assertEquals(2, stats.getCompressedRequests());
+        Assert.assertEquals(2, stats.getDecompressedResponses());
+        Assert.assertTrue(stats.getRequestSentBytes() < stats.getRequestRawBytes());
+        Assert.assertTrue(stats.getResponseReceivedBytes() < stats.getResponseRawBytes());
+        Assert.assertTrue(stats.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void testSmallRequest() throws Exception {
+        CompressionStats stats = proxy.enableGzip(1 << 20, false).getStats();
+        Assert.assertEquals(100, proxy.search(request()).getHits().getTotalHits());
+        Assert.assertEquals(0, stats.getCompressedRequests());
+        Assert.assertEquals(0, stats.getDecompressedResponses());
+    }
+}
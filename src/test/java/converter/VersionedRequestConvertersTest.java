@@ -0,0 +1,184 @@
+package converter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.filter.AggFilter;
+import com.github.brezp.es.client.filter.RequestFilterChain;
+import com.github.brezp.es.client.filter.ScriptFilter;
+import com.github.brezp.es.client.filter.ScrollFilter;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.VersionedRequestConverters;
+import org.elasticsearch.client.serializer.SearchSourceSerializer;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * 按版本构造 scroll、clearScroll、bulk、msearch、mget 请求
+ *
+ * @author brezp
+ */
+public class VersionedRequestConvertersTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final RequestFilterChain chain = new RequestFilterChain(
+        Arrays.asList(new AggFilter(), new ScrollFilter(), new ScriptFilter()));
+
+    private static SearchScrollRequest scrollRequest() {
+        return new SearchScrollRequest("c2Nhbjs1").scroll("2m");
+    }
+
+    private static ClearScrollRequest clearScrollRequest() {
+        ClearScrollRequest request = new ClearScrollRequest();
+        request.addScrollId("c2Nhbjs1");
+        request.addScrollId("c2Nhbjs2");
+        return request;
+    }
+
+    private static BulkRequest bulkRequest() {
+        return new BulkRequest()
+            .add(new IndexRequest("index", "type", "1").source("{\"title\":\"a\"}", XContentType.JSON)
+                .routing("r1").version(3).versionType(VersionType.EXTERNAL))
+            .add(new UpdateRequest("index", "type", "2").doc("{\"title\":\"b\"}", XContentType.JSON)
+                .retryOnConflict(2))
+            .add(new DeleteRequest("index", "type", "3"));
+    }
+
+    @Test
+    public void testV17Scroll() throws Exception {
+        Request scroll = VersionedRequestConverters.of(EsVersion.V1_7).searchScroll().apply(scrollRequest());
+        Assert.assertEquals("POST", scroll.getMethod());
+        Assert.assertEquals("c2Nhbjs1", EntityUtils.toString(scroll.getEntity()));
+        Assert.assertEquals("2m", scroll.getParameters().get("scroll"));
+        Assert.assertSame(scroll, chain.filter(scroll, EsVersion.V1_7));
+
+        Request clear = VersionedRequestConverters.of(EsVersion.V1_7).clearScroll().apply(clearScrollRequest());
+        Assert.assertEquals("DELETE", clear.getMethod());
+        Assert.assertEquals("c2Nhbjs1,c2Nhbjs2", EntityUtils.toString(clear.getEntity()));
+        Assert.assertSame(clear, chain.filter(clear, EsVersion.V1_7));
+    }
+
+    @Test
+    public void testScroll() throws Exception {
+        for (EsVersion version : new EsVersion[]{EsVersion.V2_3, EsVersion.V5_6, EsVersion.V7_9}) {
+            Request scroll = VersionedRequestConverters.of(version).searchScroll().apply(scrollRequest());
+            JsonNode body = MAPPER.readTree(EntityUtils.toString(scroll.getEntity()));
+            Assert.assertEquals("c2Nhbjs1", body.path("scroll_id").textValue());
+            Assert.assertEquals("2m", body.path("scroll").textValue());
+            Assert.assertSame(scroll, chain.filter(scroll, version));
+
+            Request clear = VersionedRequestConverters.of(version).clearScroll().apply(clearScrollRequest());
+            Assert.assertEquals("DELETE", clear.getMethod());
+            Assert.assertEquals(2, MAPPER.readTree(EntityUtils.toString(clear.getEntity())).path("scroll_id").size());
+        }
+    }
+
+    @Test
+    public void testBulk() throws Exception {
+        Request v56 = VersionedRequestConverters.of(EsVersion.V5_6).bulk().apply(bulkRequest());
+        String[] lines = EntityUtils.toString(v56.getEntity()).split("\n");
+        Assert.assertEquals(5, lines.length);
+        JsonNode index = MAPPER.readTree(lines[0]).path("index");
+        Assert.assertEquals("r1", index.path("_routing").textValue());
+        Assert.assertEquals(3, index.path("_version").intValue());
+        Assert.assertEquals("external", index.path("_version_type").textValue());
+        Assert.assertEquals("{\"title\":\"a\"}", lines[1]);
+        Assert.assertEquals(2, MAPPER.readTree(lines[2]).path("update").path("_retry_on_conflict").intValue());
+        Assert.assertEquals("b", MAPPER.readTree(lines[3]).path("doc").path("title").textValue());
+        Assert.assertEquals("3", MAPPER.readTree(lines[4]).path("delete").path("_id").textValue());
+
+        Request v79 = VersionedRequestConverters.of(EsVersion.V7_9).bulk().apply(bulkRequest());
+        lines = EntityUtils.toString(v79.getEntity()).split("\n");
+        index = MAPPER.readTree(lines[0]).path("index");
+        Assert.assertEquals("r1", index.path("routing").textValue());
+        Assert.assertEquals(3, index.path("version").intValue());
+        Assert.assertEquals("external", index.path("version_type").textValue());
+        Assert.assertFalse(index.has("_routing"));
+        Assert.assertEquals(2, MAPPER.readTree(lines[2]).path("update").path("retry_on_conflict").intValue());
+        Assert.assertSame(v79, chain.filter(v79, EsVersion.V7_9));
+    }
+
+    @Test
+    public void testBulkMultiLineSource() throws Exception {
+        BulkRequest bulkRequest = new BulkRequest()
+            .add(new IndexRequest("index", "type", "1").source("{\n  \"title\" : \"a\",\n  \"n\" : 1\n}",
+                XContentType.JSON))
+            .add(new UpdateRequest("index", "type", "2").doc("{\n  \"title\" : \"b\"\n}", XContentType.JSON))
+            .add(new IndexRequest("index", "type", "3").source("{\"title\":\"c\"}", XContentType.JSON));
+
+        Request request = VersionedRequestConverters.of(EsVersion.V5_6).bulk().apply(bulkRequest);
+        String[] lines = EntityUtils.toString(request.getEntity()).split("\n");
+        //格式化的 source 重新序列化为一行，不会在 NDJSON 中间断行
+        Assert.assertEquals(6, lines.length);
+        Assert.assertEquals("{\"title\":\"a\",\"n\":1}", lines[1]);
+        Assert.assertEquals("b", MAPPER.readTree(lines[3]).path("doc").path("title").textValue());
+        Assert.assertEquals("3", MAPPER.readTree(lines[4]).path("index").path("_id").textValue());
+    }
+
+    @Test
+    public void testMultiSearch() throws Exception {
+        SearchSourceBuilder source = new SearchSourceBuilder().query(QueryBuilders.termQuery("site", "a.com"))
+            .aggregation(AggregationBuilders.terms("by_site").field("site"));
+        MultiSearchRequest request = new MultiSearchRequest()
+            .add(new SearchRequest("index").types("type").source(source).requestCache(true).routing("r1"))
+            .add(new SearchRequest("other"));
+
+        for (EsVersion version : EsVersion.values()) {
+            Request msearch = VersionedRequestConverters.of(version).multiSearch().apply(request);
+            Assert.assertEquals("/_msearch", msearch.getEndpoint());
+            String[] lines = EntityUtils.toString(msearch.getEntity()).split("\n");
+            Assert.assertEquals(4, lines.length);
+            JsonNode header = MAPPER.readTree(lines[0]);
+            Assert.assertEquals("index", header.path("index").textValue());
+            Assert.assertEquals("type", header.path("type").textValue());
+            Assert.assertEquals("r1", header.path("routing").textValue());
+            Assert.assertEquals(version != EsVersion.V1_7, header.has("request_cache"));
+            Assert.assertEquals(SearchSourceSerializer.toJson(source, version), lines[1]);
+            Assert.assertEquals("other", MAPPER.readTree(lines[2]).path("index").textValue());
+            Assert.assertEquals("{}", lines[3]);
+            Assert.assertSame(msearch, chain.filter(msearch, version));
+        }
+    }
+
+    @Test
+    public void testMultiGet() throws Exception {
+        MultiGetRequest request = new MultiGetRequest().realtime(false)
+            .add(new MultiGetRequest.Item("index", "type", "1").routing("r1")
+                .fetchSourceContext(new FetchSourceContext(true, new String[]{"title"}, new String[0])))
+            .add(new MultiGetRequest.Item("other", null, "2"));
+
+        for (EsVersion version : EsVersion.values()) {
+            Request mget = VersionedRequestConverters.of(version).multiGet().apply(request);
+            Assert.assertEquals("/_mget", mget.getEndpoint());
+            Assert.assertEquals("false", mget.getParameters().get("realtime"));
+            JsonNode docs = MAPPER.readTree(EntityUtils.toString(mget.getEntity())).path("docs");
+            Assert.assertEquals(2, docs.size());
+            JsonNode first = docs.get(0);
+            Assert.assertEquals("type", first.path("_type").textValue());
+            Assert.assertEquals("r1", first.path(version == EsVersion.V7_9 ? "routing" : "_routing").textValue());
+            boolean legacy = version == EsVersion.V1_7 || version == EsVersion.V2_3;
+            Assert.assertEquals("title", first.path("_source").path(legacy ? "include" : "includes").get(0).textValue());
+            Assert.assertFalse(docs.get(1).has("_type"));
+            Assert.assertSame(mget, chain.filter(mget, version));
+        }
+    }
+}
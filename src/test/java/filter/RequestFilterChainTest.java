@@ -0,0 +1,239 @@
+package filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.filter.AbstractRequestFilter;
+import com.github.brezp.es.client.filter.AggFilter;
+import com.github.brezp.es.client.filter.KeyProbe;
+import com.github.brezp.es.client.filter.RequestFilterChain;
+import com.github.brezp.es.client.filter.RewriteCache;
+import com.github.brezp.es.client.filter.ScriptFilter;
+import com.github.brezp.es.client.filter.ScrollFilter;
+import com.github.brezp.es.client.metrics.FilterMetrics;
+import com.github.brezp.es.client.metrics.FilterMetricsRecorder;
+import com.github.brezp.es.client.metrics.FilterStats;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 融合filter链的改写结果与改造前逐个执行filter的结果对比
+ *
+ * @author brezp
+ */
+public class RequestFilterChainTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<AbstractRequestFilter> filters = Arrays.asList(
+        new AggFilter(), new ScrollFilter(), new ScriptFilter());
+
+    private static String searchBody() throws Exception {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+            .query(QueryBuilders.boolQuery()
+                .must(QueryBuilders.termQuery("is_robot", "0"))
+                .filter(QueryBuilders.existsQuery("title")))
+            .aggregation(AggregationBuilders.dateHistogram("by_day").field("post_time")
+                .dateHistogramInterval(DateHistogramInterval.DAY).offset("+8h"))
+            .scriptField("score2", new Script("doc['score'].value * 2"))
+            .sort("_uid", SortOrder.ASC)
+            .size(10);
+        return XContentHelper.toXContent(source, XContentType.JSON, false).utf8ToString();
+    }
+
+    private static Request request(String endpoint, String body) {
+        return new Request("GET", endpoint, Collections.emptyMap(),
+            new StringEntity(body, ContentType.APPLICATION_JSON));
+    }
+
+    private static JsonNode json(Request request) throws Exception {
+        return MAPPER.readTree(EntityUtils.toString(request.getEntity()));
+    }
+
+    /**
+     * golden.json 中的期望结果由改造前逐个执行的字符串filter（compatibleForXX）生成，融合链的 body 和参数需逐字节相同。
+     * 例外：v1.7 的 function_score 原先整体把 query 替换为 filter，期望结果已改为只改 function_score.query
+     */
+    @Test
+    public void testMatchesBaselineGolden() throws Exception {
+        JsonNode corpus;
+        try (InputStream in = RequestFilterChainTest.class.getResourceAsStream("/filter/golden.json")) {
+            corpus = MAPPER.readTree(in);
+        }
+        RequestFilterChain chain = new RequestFilterChain(filters);
+        for (JsonNode item : corpus) {
+            String endpoint = item.path("endpoint").textValue();
+            String body = item.path("body").textValue();
+            for (EsVersion version : EsVersion.values()) {
+                String message = item.path("name").textValue() + " " + version.name();
+                JsonNode expected = item.path("expected").path(version.name());
+                Assert.assertFalse(message, expected.isMissingNode());
+
+                Request filtered = chain.filter(request(endpoint, body), version);
+                Assert.assertEquals(message, expected.path("body").textValue(),
+                    EntityUtils.toString(filtered.getEntity(), StandardCharsets.UTF_8));
+                Map<String, String> parameters = new HashMap<>();
+                expected.path("parameters").fields().forEachRemaining(e -> parameters.put(e.getKey(), e.getValue().textValue()));
+                Assert.assertEquals(message, parameters, filtered.getParameters());
+            }
+        }
+    }
+
+    @Test
+    public void testVersionRules() throws Exception {
+        RequestFilterChain chain = new RequestFilterChain(filters);
+
+        JsonNode v79 = json(chain.filter(request("/index/_search", searchBody()), EsVersion.V7_9));
+        Assert.assertFalse(v79.path("query").path("bool").has("disable_coord"));
+        Assert.assertTrue(v79.path("sort").get(0).has("_id"));
+        Assert.assertEquals(10, v79.path("size").intValue());
+
+        JsonNode v17 = json(chain.filter(request("/index/type/_search", searchBody()), EsVersion.V1_7));
+        Assert.assertEquals("doc['score'].value * 2", v17.path("script_fields").path("score2").path("script").textValue());
+        Assert.assertFalse(v17.path("aggregations").path("by_day").path("date_histogram").has("offset"));
+    }
+
+    @Test
+    public void testV17Scroll() throws Exception {
+        Request scroll = request("/_search/scroll", "{\"scroll\":\"2m\",\"scroll_id\":\"c2Nhbjs1\"}");
+        Request filtered = new RequestFilterChain(filters).filter(scroll, EsVersion.V1_7);
+
+        Assert.assertEquals("c2Nhbjs1", EntityUtils.toString(filtered.getEntity()));
+        Assert.assertEquals("2m", filtered.getParameters().get("scroll"));
+    }
+
+    @Test
+    public void testPassThroughWhenNoFilterApplies() throws Exception {
+        RequestFilterChain chain = new RequestFilterChain(filters);
+
+        Request search = request("/index/type/_search", searchBody());
+        Assert.assertSame(search, chain.filter(search, EsVersion.V5_6));
+        Assert.assertSame(search, chain.filter(search, EsVersion.V6_8));
+
+        Request bulk = request("/_bulk", "{\"index\":{\"_index\":\"i\",\"_type\":\"t\",\"_id\":\"1\"}}\n{\"ignore_unmapped\":1}\n");
+        Assert.assertSame(bulk, chain.filter(bulk, EsVersion.V1_7));
+        Assert.assertSame(bulk, chain.filter(bulk, EsVersion.V2_3));
+    }
+
+    @Test
+    public void testRewriteCache() throws Exception {
+        RequestFilterChain chain = new RequestFilterChain(filters);
+        RewriteCache cache = new RewriteCache(1024 * 1024);
+        chain.setRewriteCache(cache);
+
+        String body = searchBody();
+        Request expected = new RequestFilterChain(filters).filter(request("/index/_search", body), EsVersion.V7_9);
+        Request first = chain.filter(request("/index/_search", body), EsVersion.V7_9);
+        Request second = chain.filter(request("/index/_search", body), EsVersion.V7_9);
+
+        Assert.assertEquals(json(expected), json(first));
+        Assert.assertEquals(json(expected), json(second));
+        Assert.assertEquals(1, cache.stats().hitCount());
+
+        chain.filter(request("/index/_search", body), EsVersion.V1_7);
+        Assert.assertEquals(2, cache.stats().missCount());
+
+        Request scroll = chain.filter(request("/_search/scroll", "{\"scroll\":\"2m\",\"scroll_id\":\"c2Nhbjs1\"}"), EsVersion.V1_7);
+        scroll = chain.filter(request("/_search/scroll", "{\"scroll\":\"2m\",\"scroll_id\":\"c2Nhbjs1\"}"), EsVersion.V1_7);
+        Assert.assertEquals("c2Nhbjs1", EntityUtils.toString(scroll.getEntity()));
+        Assert.assertEquals("2m", scroll.getParameters().get("scroll"));
+
+        //命中key但filter没有修改，原样返回，不重建为POST
+        Request unchanged = new Request("GET", "/index/_search", Collections.emptyMap(),
+            new StringEntity("{\"query\":{\"exists\":{\"field\":\"title\"}}}", ContentType.APPLICATION_JSON));
+        Assert.assertSame(unchanged, chain.filter(unchanged, EsVersion.V2_3));
+        Assert.assertSame(unchanged, chain.filter(unchanged, EsVersion.V2_3));
+        Assert.assertEquals(3, cache.stats().hitCount());
+
+        chain.invalidate();
+        Assert.assertEquals(0, cache.estimatedSize());
+    }
+
+    @Test
+    public void testProbeSkipsParse() throws Exception {
+        RequestFilterChain chain = new RequestFilterChain(filters);
+
+        Request plain = request("/index/_search", "{\"query\":{\"term\":{\"title\":\"disable_coord\"}},\"size\":10}");
+        Assert.assertSame(plain, chain.filter(plain, EsVersion.V7_9));
+        Assert.assertSame(plain, chain.filter(plain, EsVersion.V2_3));
+
+        Request uid = request("/index/_search", "{\"sort\":[{\"_uid\":{\"order\":\"asc\"}}]}");
+        Assert.assertTrue(json(chain.filter(uid, EsVersion.V7_9)).path("sort").get(0).has("_id"));
+    }
+
+    @Test
+    public void testCharsetPreserved() throws Exception {
+        Charset gbk = Charset.forName("GBK");
+        ContentType contentType = ContentType.create("application/json", gbk);
+        Request request = new Request("POST", "/index/_search", Collections.emptyMap(), new StringEntity(
+            "{\"query\":{\"term\":{\"title\":\"中文\"}},\"sort\":[{\"_uid\":{\"order\":\"asc\"}}]}", contentType));
+
+        Request filtered = new RequestFilterChain(filters).filter(request, EsVersion.V7_9);
+        Assert.assertEquals(contentType.toString(), filtered.getEntity().getContentType().getValue());
+        JsonNode body = MAPPER.readTree(EntityUtils.toString(filtered.getEntity(), gbk));
+        Assert.assertEquals("中文", body.path("query").path("term").path("title").textValue());
+        Assert.assertTrue(body.path("sort").get(0).has("_id"));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        RequestFilterChain chain = new RequestFilterChain(filters);
+        FilterMetricsRecorder recorder = new FilterMetricsRecorder();
+        chain.setMetrics(recorder);
+
+        chain.filter(request("/index-1/_search", searchBody()), EsVersion.V7_9);
+        chain.filter(request("/index-2/_search", "{\"size\":10}"), EsVersion.V7_9);
+
+        //按去掉索引名的endpoint统计
+        Map<String, FilterStats> stats = new HashMap<>();
+        for (FilterStats s : recorder.snapshot()) {
+            Assert.assertEquals("/{}/_search", s.getEndpoint());
+            stats.put(s.getFilter(), s);
+        }
+        Assert.assertEquals(2, stats.get(FilterMetrics.CHAIN).getInvocations());
+        Assert.assertEquals(1, stats.get("AggFilter").getInvocations());
+        Assert.assertEquals(1, stats.get("AggFilter").getSkips());
+        //body 大小只按链统计，不把链的大小记到单个filter上
+        Assert.assertEquals(searchBody().getBytes(StandardCharsets.UTF_8).length + "{\"size\":10}".length(),
+            stats.get(FilterMetrics.CHAIN).getInputBytes());
+        Assert.assertEquals(0, stats.get("AggFilter").getInputBytes());
+        Assert.assertEquals(0, stats.get("AggFilter").getOutputBytes());
+        Assert.assertTrue(stats.get("AggFilter").getTotalNanos() > 0);
+        Assert.assertEquals(2, stats.get("ScrollFilter").getInvocations() + stats.get("ScrollFilter").getSkips());
+    }
+
+    @Test
+    public void testKeyProbe() {
+        KeyProbe probe = new KeyProbe(Arrays.asList("bool", "sort", "script_fields"));
+        String body = "{\"query\" : {\"term\":{\"f\":\"bool\\\":\"}}, \"sort\"\n: [\"_score\"], \"a\":\"中文\"}";
+
+        long found = probe.scan(body.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(0L, found & probe.bit("bool"));
+        Assert.assertNotEquals(0L, found & probe.bit("sort"));
+        Assert.assertEquals(0L, found & probe.bit("script_fields"));
+
+        long all = probe.scan("{\"b\\u006fol\":{}}".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(7L, all);
+    }
+}
@@ -0,0 +1,115 @@
+package hedge;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientProxy;
+import org.elasticsearch.client.hedge.HedgePolicy;
+import org.elasticsearch.client.hedge.Hedger;
+import org.elasticsearch.client.hedge.LatencyTracker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 慢请求发送副本，副本数受比例上限限制
+ *
+ * @author brezp
+ */
+public class HedgerTest {
+
+    private static final byte[] SEARCH_RESPONSE = ("{\"took\":1,\"timed_out\":false,"
+        + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"hits\":{\"total\":3,\"max_score\":null,\"hits\":[]}}")
+        .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 接下来需要慢响应的请求数
+     */
+    private final AtomicInteger slowRemaining = new AtomicInteger();
+    private final AtomicInteger received = new AtomicInteger();
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClient restClient;
+    private RestClientProxy proxy;
+
+    @Before
+    public void setUp() {
+        server.handle("/", exchange -> {
+            received.incrementAndGet();
+            if (slowRemaining.getAndDecrement() > 0) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            StubServer.respond(exchange, 200, SEARCH_RESPONSE);
+        });
+
+        restClient = server.restClient();
+        proxy = new RestClientProxy(restClient, EsVersion.V5_6);
+    }
+
+    @After
+    public void tearDown() {
+        proxy.disableHedging();
+    }
+
+    @Test
+    public void testHedge() throws Exception {
+        Hedger hedger = proxy.enableHedging(new HedgePolicy().setDelayMillis(50).setBurst(1).setMaxHedgeRatio(0));
+
+        slowRemaining.set(1);
+        long start = System.currentTimeMillis();
+        Assert.assertEquals(3, proxy.search(new SearchRequest("i")).getHits().getTotalHits());
+        Assert.assertTrue(System.currentTimeMillis() - start < 800);
+        Assert.assertEquals(2, received.get());
+        Assert.assertEquals(1, hedger.getHedgeCount());
+        Assert.assertEquals(1, hedger.getHedgeWinCount());
+
+        //令牌已用完，不再发送副本
+        slowRemaining.set(1);
+        start = System.currentTimeMillis();
+        Assert.assertEquals(3, proxy.search(new SearchRequest("i")).getHits().getTotalHits());
+        Assert.assertTrue(System.currentTimeMillis() - start >= 1000);
+        Assert.assertEquals(3, received.get());
+        Assert.assertEquals(1, hedger.getThrottledCount());
+    }
+
+    @Test
+    public void testMaxRetryTimeout() throws Exception {
+        try (Hedger hedger = new Hedger(restClient, new HedgePolicy().setDelayMillis(50).setMaxHedgesPerRequest(0), 300)) {
+            slowRemaining.set(1);
+            long start = System.currentTimeMillis();
+            try {
+                hedger.execute(new Request("GET", "/i/_search", Collections.emptyMap(), null));
+                Assert.fail();
+            } catch (IOException e) {
+                //与同步请求相同，最多等待 maxRetryTimeout
+                Assert.assertTrue(e.getMessage().contains("listener timeout"));
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        }
+    }
+
+    @Test
+    public void testPercentileDelay() {
+        LatencyTracker tracker = new LatencyTracker(100, 1);
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i);
+        }
+        Assert.assertEquals(95, tracker.percentile(95));
+        Assert.assertEquals(50, tracker.percentile(50));
+        tracker.record(1000);
+        Assert.assertEquals(1000, tracker.percentile(100));
+    }
+}
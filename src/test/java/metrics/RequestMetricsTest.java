@@ -0,0 +1,106 @@
+package metrics;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.metrics.HistogramSnapshot;
+import com.github.brezp.es.client.metrics.LatencyHistogram;
+import com.github.brezp.es.client.metrics.RequestMetricsRecorder;
+import com.github.brezp.es.client.metrics.RequestPhase;
+import com.github.brezp.es.client.metrics.RequestStats;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.RestClientProxy;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javax.management.ObjectName;
+
+/**
+ * 按 endpoint、节点统计耗时和状态码
+ *
+ * @author brezp
+ */
+public class RequestMetricsTest {
+
+    private static final byte[] SEARCH_RESPONSE = ("{\"took\":1,\"timed_out\":false,"
+        + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"hits\":{\"total\":0,\"max_score\":null,\"hits\":[]}}")
+        .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ERROR_RESPONSE = ("{\"error\":{\"type\":\"index_not_found_exception\","
+        + "\"reason\":\"no such index\"},\"status\":404}").getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClientProxy proxy;
+
+    @Before
+    public void setUp() {
+        server.handle("/", exchange -> {
+            boolean ok = exchange.getRequestURI().getPath().startsWith("/ok");
+            byte[] body = ok ? SEARCH_RESPONSE : ERROR_RESPONSE;
+            StubServer.respond(exchange, ok ? 200 : 404, body);
+        });
+        proxy = new RestClientProxy(server.restClient(), EsVersion.V5_6);
+    }
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(10000, snapshot.getCount());
+        Assert.assertEquals(10000, snapshot.getMaxMicros());
+        Assert.assertEquals(5000.5, snapshot.getMeanMicros(), 0.01);
+        Assert.assertEquals(5000, snapshot.getP50Micros(), 5000 / 16.0);
+        Assert.assertEquals(9900, snapshot.getP99Micros(), 9900 / 16.0);
+        Assert.assertEquals(0, new LatencyHistogram().snapshot().getP99Micros());
+    }
+
+    @Test
+    public void testRecordRequests() throws Exception {
+        RequestMetricsRecorder recorder = proxy.enableRequestMetrics();
+        for (int i = 0; i < 3; i++) {
+            proxy.search(new SearchRequest("ok1", "ok2"));
+        }
+        try {
+            proxy.search(new SearchRequest("missing"));
+            Assert.fail();
+        } catch (ElasticsearchStatusException e) {
+            Assert.assertEquals(404, e.status().getStatus());
+        }
+        Assert.assertEquals(4, recorder.getRequestCount());
+        Assert.assertEquals(1, recorder.getErrorCount());
+
+        //索引名不出现在 endpoint 中
+        List<RequestStats> endpoints = recorder.endpointStats();
+        Assert.assertEquals(endpoints.toString(), 1, endpoints.size());
+        RequestStats search = endpoints.get(0);
+        Assert.assertTrue(search.getName(), search.getName().endsWith(" /{}/_search"));
+        Assert.assertEquals(4, search.getRequests());
+        Assert.assertEquals(1, search.getErrors());
+        Assert.assertEquals(Long.valueOf(3), search.getStatusCounts().get(200));
+        Assert.assertEquals(Long.valueOf(1), search.getStatusCounts().get(404));
+        for (RequestPhase phase : RequestPhase.values()) {
+            Assert.assertEquals(phase.name(), 4, search.getLatency(phase).getCount());
+        }
+
+        List<RequestStats> hosts = recorder.hostStats();
+        Assert.assertEquals(1, hosts.size());
+        Assert.assertEquals("127.0.0.1:" + server.port(), hosts.get(0).getName());
+        Assert.assertEquals(0, hosts.get(0).getErrors());
+
+        ObjectName name = recorder.registerMBean("test");
+        try {
+            Assert.assertEquals(4L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RequestCount"));
+            Assert.assertNotNull(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EndpointStats"));
+        } finally {
+            RequestMetricsRecorder.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package parser;
+
+import com.github.brezp.es.client.entity.EsDoc;
+import com.github.brezp.es.client.entity.EsHit;
+import com.github.brezp.es.client.entity.EsHits;
+import com.github.brezp.es.client.entity.EsRelation;
+import org.elasticsearch.client.parser.EsHitsParser;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * 惰性 hit 解析
+ *
+ * @author brezp
+ */
+public class EsHitsParserTest {
+
+    private static final String RESPONSE = "{\"_scroll_id\":\"abc\",\"took\":3,\"timed_out\":false,"
+        + "\"_shards\":{\"total\":5,\"successful\":5,\"skipped\":0,\"failed\":0},"
+        + "\"hits\":{\"total\":{\"value\":10000,\"relation\":\"gte\"},\"max_score\":null,\"hits\":["
+        + "{\"_index\":\"i\",\"_type\":\"_doc\",\"_id\":\"1\",\"_score\":null,"
+        + "\"_source\":{\"title\":\"a\",\"tags\":[\"x\",\"y\"],\"nested\":{\"n\":1}},"
+        + "\"fields\":{\"score2\":[4]},\"sort\":[1546272000000,\"1\"],\"highlight\":{\"title\":[\"<em>a</em>\"]}},"
+        + "{\"_index\":\"i\",\"_type\":\"_doc\",\"_id\":\"2\",\"_score\":1.5}"
+        + "]},\"aggregations\":{\"by_site\":{\"buckets\":[]}}}";
+
+    @Test
+    public void testParse() throws IOException {
+        EsHits hits = parse(RESPONSE);
+        Assert.assertEquals("abc", hits.getScrollId());
+        Assert.assertEquals(3, hits.getTookInMillis());
+        Assert.assertEquals(5, hits.getTotalShards());
+        Assert.assertEquals(10000, hits.getTotalHits());
+        Assert.assertEquals(EsRelation.GREATER_THAN_OR_EQUAL_TO, hits.getRelation());
+        Assert.assertTrue(Float.isNaN(hits.getMaxScore()));
+        Assert.assertEquals(2, hits.getHits().size());
+
+        EsHit first = hits.getHits().get(0);
+        Assert.assertEquals("1", first.getId());
+        Assert.assertEquals(2, first.getSortValues().length);
+        Assert.assertEquals(4, first.getFields().get("score2"));
+        Assert.assertEquals("{\"title\":\"a\",\"tags\":[\"x\",\"y\"],\"nested\":{\"n\":1}}", first.getSourceAsString());
+        Assert.assertFalse(first.isSourceParsed());
+
+        EsHit second = hits.getHits().get(1);
+        Assert.assertEquals(1.5f, second.getScore(), 0);
+        Assert.assertFalse(second.hasSource());
+    }
+
+    @Test
+    public void testLazyDoc() throws IOException {
+        EsHit hit = parse(RESPONSE).getHits().get(0);
+        EsDoc doc = new EsDoc(hit);
+        Assert.assertEquals("1", doc.getId());
+        Assert.assertNotNull(doc.getRawSource());
+        Assert.assertFalse(doc.isMaterialized());
+        Assert.assertFalse(hit.isSourceParsed());
+
+        Assert.assertEquals("a", doc.get("title"));
+        Assert.assertEquals(4, doc.get("score2"));
+        Assert.assertEquals("1", doc.get("id"));
+        Assert.assertTrue(doc.isMaterialized());
+        Assert.assertNull(doc.getRawSource());
+
+        //EsDoc 写入的 fields、id 不出现在 hit 的 _source 中
+        Assert.assertFalse(hit.getSourceAsMap().containsKey("id"));
+        Assert.assertFalse(hit.getSourceAsMap().containsKey("score2"));
+        EsDoc another = new EsDoc(hit);
+        another.put("title", "b");
+        Assert.assertEquals("a", hit.getSourceAsMap().get("title"));
+        Assert.assertEquals("a", doc.get("title"));
+        Assert.assertNotSame(hit.getSourceAsMap(), another.getDataMap());
+
+        EsDoc empty = new EsDoc(parse(RESPONSE).getHits().get(1));
+        Assert.assertEquals(1, empty.size());
+    }
+
+    private static EsHits parse(String json) throws IOException {
+        try (XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, json)) {
+            return EsHitsParser.fromXContent(parser);
+        }
+    }
+}
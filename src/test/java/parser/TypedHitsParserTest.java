@@ -0,0 +1,106 @@
+package parser;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.brezp.es.client.entity.EsRelation;
+import com.github.brezp.es.client.entity.EsTypedHits;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.elasticsearch.client.parser.TypedHitsParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * search 响应直接绑定为目标类型
+ *
+ * @author brezp
+ */
+public class TypedHitsParserTest {
+
+    private static final ObjectReader READER = TypedHitsParser.DEFAULT_MAPPER.readerFor(Doc.class);
+
+    public static class Doc {
+        public String title;
+        public int count;
+        public List<String> tags;
+    }
+
+    private static String response(String... hits) {
+        return "{\"_scroll_id\":\"abc\",\"took\":3,\"timed_out\":false,"
+            + "\"_shards\":{\"total\":5,\"successful\":4,\"failed\":1,\"failures\":[{\"shard\":0}]},"
+            + "\"hits\":{\"total\":{\"value\":10000,\"relation\":\"gte\"},\"max_score\":1.0,\"hits\":["
+            + String.join(",", hits) + "]},\"aggregations\":{\"by_site\":{\"buckets\":[]}}}";
+    }
+
+    private static String hit(String id, String source) {
+        return "{\"_index\":\"i\",\"_type\":\"_doc\",\"_id\":\"" + id + "\",\"_score\":1.0"
+            + (source == null ? "" : ",\"_source\":" + source) + ",\"sort\":[1,\"a\"]}";
+    }
+
+    private static EsTypedHits<Doc> parse(String json) throws IOException {
+        return TypedHitsParser.fromEntity(new StringEntity(json, ContentType.APPLICATION_JSON), READER);
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        EsTypedHits<Doc> hits = parse(response(
+            hit("1", "{\"title\":\"a\",\"count\":2,\"tags\":[\"x\",\"y\"],\"nested\":{\"n\":1}}")));
+        Assert.assertEquals("abc", hits.getScrollId());
+        Assert.assertEquals(3, hits.getTookInMillis());
+        Assert.assertFalse(hits.isTimedOut());
+        Assert.assertEquals(1, hits.getFailedShards());
+        Assert.assertEquals(10000, hits.getTotalHits());
+        Assert.assertEquals(EsRelation.GREATER_THAN_OR_EQUAL_TO, hits.getRelation());
+        Assert.assertEquals(Arrays.asList("1"), hits.getIds());
+
+        //_source 中多出的字段忽略
+        Doc doc = hits.getSources().get(0);
+        Assert.assertEquals("a", doc.title);
+        Assert.assertEquals(2, doc.count);
+        Assert.assertEquals(Arrays.asList("x", "y"), doc.tags);
+    }
+
+    @Test
+    public void testNullSource() throws IOException {
+        EsTypedHits<Doc> hits = parse(response(hit("1", "null"), hit("2", null), hit("3", "{\"title\":\"c\"}")));
+        Assert.assertEquals(3, hits.size());
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), hits.getIds());
+        //_source 为 null 或未返回时，id 与 source 仍按位置对应
+        Assert.assertNull(hits.getSources().get(0));
+        Assert.assertNull(hits.getSources().get(1));
+        Assert.assertEquals("c", hits.getSources().get(2).title);
+    }
+
+    @Test
+    public void testMissingFields() throws IOException {
+        EsTypedHits<Doc> hits = parse("{\"hits\":{\"hits\":[" + hit("1", "{}") + "]}}");
+        Assert.assertNull(hits.getScrollId());
+        Assert.assertEquals(-1, hits.getTookInMillis());
+        Assert.assertEquals(0, hits.getFailedShards());
+        Assert.assertEquals(0, hits.getTotalHits());
+
+        Doc doc = hits.getSources().get(0);
+        Assert.assertNull(doc.title);
+        Assert.assertEquals(0, doc.count);
+        Assert.assertNull(doc.tags);
+    }
+
+    @Test
+    public void testTypeMismatch() throws IOException {
+        try {
+            parse(response(hit("1", "{\"title\":\"a\",\"count\":\"many\"}")));
+            Assert.fail();
+        } catch (JsonMappingException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("count"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformed() throws IOException {
+        parse("[]");
+    }
+}
@@ -0,0 +1,89 @@
+package routing;
+
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.LatencyAwareRestClient;
+import org.elasticsearch.client.Response;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 慢节点分到更少的请求，连接失败时换节点重试
+ *
+ * @author brezp
+ */
+public class LatencyAwareRestClientTest {
+
+    private static final byte[] BODY = "{\"acknowledged\":true}".getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicInteger fastReceived = new AtomicInteger();
+    private final AtomicInteger slowReceived = new AtomicInteger();
+    @Rule
+    public final StubServer fast = new StubServer();
+    @Rule
+    public final StubServer slow = new StubServer();
+    private LatencyAwareRestClient client;
+
+    @Before
+    public void setUp() {
+        fast.handle("/", handler(fastReceived, 0));
+        slow.handle("/", handler(slowReceived, 50));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testPreferFastNode() throws IOException {
+        client = LatencyAwareRestClient.build(new HttpHost[]{fast.host(), slow.host()}, 10_000, null, null);
+        for (int i = 0; i < 40; i++) {
+            Response response = client.performRequest("GET", "/");
+            Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+        }
+        Assert.assertEquals(40, fastReceived.get() + slowReceived.get());
+        Assert.assertTrue(client.getNodeStats().toString(), fastReceived.get() >= 30);
+    }
+
+    @Test
+    public void testRetryOnOtherNode() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        client = LatencyAwareRestClient.build(new HttpHost[]{new HttpHost("127.0.0.1", closedPort), fast.host()},
+            10_000, null, null);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(200, client.performRequest("GET", "/").getStatusLine().getStatusCode());
+        }
+        Assert.assertEquals(10, fastReceived.get());
+        //失败后进入退避，之后不再选择
+        Assert.assertEquals(1, client.getNodeStats().get(0).getFailures());
+    }
+
+    private static HttpHandler handler(AtomicInteger received, long delayMillis) {
+        return exchange -> {
+            received.incrementAndGet();
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            StubServer.respond(exchange, 200, BODY);
+        };
+    }
+}
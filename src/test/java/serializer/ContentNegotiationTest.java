@@ -0,0 +1,146 @@
+package serializer;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClientProxy;
+import org.elasticsearch.client.VersionedRequestConverters;
+import org.elasticsearch.client.serializer.ContentNegotiation;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * SMILE、CBOR 响应协商和请求体转换
+ *
+ * @author brezp
+ */
+public class ContentNegotiationTest {
+
+    private static final String SEARCH_RESPONSE = "{\"took\":1,\"timed_out\":false,"
+        + "\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"hits\":{\"total\":1,\"max_score\":1.0,\"hits\":["
+        + "{\"_index\":\"i\",\"_type\":\"t\",\"_id\":\"1\",\"_score\":1.0,\"_source\":{\"title\":\"a\"}}]}}";
+
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClientProxy proxy;
+    private volatile String requestContentType;
+    private volatile Map<String, Object> requestBody;
+
+    @Before
+    public void setUp() {
+        //按 Accept 或 format 参数返回对应格式
+        server.handle("/", exchange -> {
+            requestContentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            requestBody = XContentHelper.convertToMap(new BytesArray(read(exchange.getRequestBody())), false).v2();
+
+            String query = exchange.getRequestURI().getQuery();
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            XContentType type = query != null && query.contains("format=")
+                ? XContentType.fromMediaTypeOrFormat(query.substring(query.indexOf("format=") + 7))
+                : accept == null ? XContentType.JSON : XContentType.fromMediaTypeOrFormat(accept);
+            if (type == null) {
+                type = XContentType.JSON;
+            }
+            byte[] body = encode(SEARCH_RESPONSE, type);
+            exchange.getResponseHeaders().add("Content-Type", type.mediaType());
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+
+        proxy = new RestClientProxy(server.restClient(), EsVersion.V5_6);
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encode(String json, XContentType type) throws IOException {
+        try (XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, json);
+             XContentBuilder builder = XContentBuilder.builder(type.xContent())) {
+            parser.nextToken();
+            builder.copyCurrentStructure(parser);
+            return BytesReference.toBytes(builder.bytes());
+        }
+    }
+
+    private static SearchRequest request() {
+        return new SearchRequest("i").source(new SearchSourceBuilder().query(QueryBuilders.termQuery("site", "a.com")));
+    }
+
+    @Test
+    public void testSmile() throws Exception {
+        proxy.useResponseFormat(XContentType.SMILE, true);
+        SearchResponse response = proxy.search(request());
+        Assert.assertEquals("a", response.getHits().getAt(0).getSourceAsMap().get("title"));
+        Assert.assertEquals(XContentType.SMILE.mediaType(), requestContentType);
+        Assert.assertTrue(requestBody.containsKey("query"));
+    }
+
+    @Test
+    public void testCborWithFormatParam() throws Exception {
+        proxy.useVersion(EsVersion.V2_3);
+        proxy.useResponseFormat(XContentType.CBOR, false);
+        SearchResponse response = proxy.search(request());
+        Assert.assertEquals(1, response.getHits().getTotalHits());
+        Assert.assertTrue(requestContentType.startsWith("application/json"));
+    }
+
+    @Test
+    public void testBulkLines() throws Exception {
+        BulkRequest bulk = new BulkRequest()
+            .add(new IndexRequest("i", "t", "1").source("{\"title\":\"a\"}", XContentType.JSON))
+            .add(new IndexRequest("i", "t", "2").source("{\"title\":\"b\"}", XContentType.JSON));
+        Request request = VersionedRequestConverters.of(EsVersion.V5_6).bulk().apply(bulk);
+
+        Request smile = new ContentNegotiation(XContentType.SMILE, true).apply(request, EsVersion.V5_6);
+        Assert.assertEquals(XContentType.SMILE.mediaType(), smile.getEntity().getContentType().getValue());
+        byte[] body = EntityUtils.toByteArray(smile.getEntity());
+        byte separator = XContentType.SMILE.xContent().streamSeparator();
+        int lines = 0;
+        int from = 0;
+        for (int i = 0; i < body.length; i++) {
+            if (body[i] == separator) {
+                Map<String, Object> line = XContentHelper.convertToMap(new BytesArray(body, from, i - from), false,
+                    XContentType.SMILE).v2();
+                Assert.assertTrue(lines % 2 == 1 ? line.containsKey("title") : line.containsKey("index"));
+                lines++;
+                from = i + 1;
+            }
+        }
+        Assert.assertEquals(4, lines);
+
+        //CBOR 不支持分隔符，bulk 仍为 json
+        Request cbor = new ContentNegotiation(XContentType.CBOR, true).apply(request, EsVersion.V5_6);
+        Assert.assertSame(request.getEntity(), cbor.getEntity());
+    }
+}
@@ -0,0 +1,130 @@
+package serializer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.filter.AbstractRequestFilter;
+import com.github.brezp.es.client.filter.AggFilter;
+import com.github.brezp.es.client.filter.RequestFilterChain;
+import com.github.brezp.es.client.filter.ScriptFilter;
+import com.github.brezp.es.client.filter.ScrollFilter;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.serializer.SearchSourceSerializer;
+import org.elasticsearch.client.serializer.VersionedEntity;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.join.query.JoinQueryBuilders;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按版本直接序列化与 5.6 json 经过内置filter改写的结果对比
+ *
+ * @author brezp
+ */
+public class SearchSourceSerializerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<AbstractRequestFilter> filters = Arrays.asList(
+        new AggFilter(), new ScrollFilter(), new ScriptFilter());
+
+    private static List<SearchSourceBuilder> sources() {
+        SearchSourceBuilder aggs = new SearchSourceBuilder()
+            .query(QueryBuilders.boolQuery()
+                .must(QueryBuilders.termQuery("is_robot", "0"))
+                .mustNot(QueryBuilders.boolQuery().should(QueryBuilders.rangeQuery("score").gte(3)))
+                .filter(QueryBuilders.existsQuery("title")))
+            .aggregation(AggregationBuilders.dateHistogram("by_day").field("post_time")
+                .dateHistogramInterval(DateHistogramInterval.DAY).offset("+8h")
+                .subAggregation(AggregationBuilders.dateHistogram("by_hour").field("post_time")
+                    .dateHistogramInterval(DateHistogramInterval.HOUR).offset("+8h")))
+            .scriptField("score2", new Script("doc['score'].value * 2"))
+            .scriptField("score3", new Script(ScriptType.INLINE, "painless", "doc['score'].value * params.n",
+                Collections.singletonMap("n", 3)))
+            .sort("_uid", SortOrder.ASC)
+            .sort("post_time", SortOrder.DESC)
+            .size(10);
+
+        SearchSourceBuilder functionScore = new SearchSourceBuilder()
+            .query(QueryBuilders.functionScoreQuery(QueryBuilders.termQuery("tag", "news"),
+                ScoreFunctionBuilders.fieldValueFactorFunction("likes")));
+
+        //function_score 内层查询中的 query 字段不能被改名
+        SearchSourceBuilder nestedFunctionScore = new SearchSourceBuilder()
+            .query(QueryBuilders.functionScoreQuery(QueryBuilders.boolQuery()
+                .must(QueryBuilders.queryStringQuery("news"))));
+
+        SearchSourceBuilder join = new SearchSourceBuilder()
+            .query(QueryBuilders.boolQuery()
+                .should(JoinQueryBuilders.hasParentQuery("blog", QueryBuilders.matchAllQuery(), true))
+                .should(QueryBuilders.nestedQuery("comments", QueryBuilders.termQuery("comments.user", "a"),
+                    ScoreMode.Avg).ignoreUnmapped(true)))
+            .postFilter(QueryBuilders.existsQuery("author"));
+
+        return Arrays.asList(aggs, functionScore, nestedFunctionScore, join, new SearchSourceBuilder());
+    }
+
+    private static JsonNode json(Request request) throws Exception {
+        return MAPPER.readTree(EntityUtils.toString(request.getEntity()));
+    }
+
+    @Test
+    public void testSerializerMatchesFilters() throws Exception {
+        for (SearchSourceBuilder source : sources()) {
+            String body = XContentHelper.toXContent(source, XContentType.JSON, false).utf8ToString();
+            for (EsVersion version : EsVersion.values()) {
+                Request filtered = new RequestFilterChain(filters).filter(new Request("POST", "/index/type/_search",
+                    Collections.emptyMap(), new StringEntity(body, ContentType.APPLICATION_JSON)), version);
+
+                String serialized = SearchSourceSerializer.toJson(source, version);
+                Assert.assertEquals(version + " " + body, json(filtered), MAPPER.readTree(serialized));
+            }
+        }
+    }
+
+    @Test
+    public void testSerializedBodySkipsBuiltInFilters() throws Exception {
+        SearchSourceBuilder source = sources().get(0);
+        RequestFilterChain chain = new RequestFilterChain(filters);
+
+        VersionedEntity entity = SearchSourceSerializer.toEntity(source, EsVersion.V1_7, ContentType.APPLICATION_JSON);
+        Request request = new Request("POST", "/index/type/_search", Collections.emptyMap(), entity);
+        Assert.assertSame(request, chain.filter(request, EsVersion.V1_7));
+        Assert.assertTrue(chain.applicableFilters(EsVersion.V1_7, "/index/type/_search", true).isEmpty());
+
+        //为其他版本序列化的body仍需改写
+        Request other = new Request("POST", "/index/type/_search", Collections.emptyMap(),
+            SearchSourceSerializer.toEntity(source, EsVersion.V5_6, ContentType.APPLICATION_JSON));
+        Assert.assertNotSame(other, chain.filter(other, EsVersion.V1_7));
+    }
+
+    @Test
+    public void testV17FunctionScore() throws Exception {
+        JsonNode v17 = MAPPER.readTree(SearchSourceSerializer.toJson(sources().get(1), EsVersion.V1_7));
+        JsonNode functionScore = v17.path("query").path("function_score");
+        Assert.assertTrue(functionScore.has("filter"));
+        Assert.assertFalse(functionScore.has("query"));
+        Assert.assertEquals("news", functionScore.path("filter").path("term").path("tag").path("value").textValue());
+
+        JsonNode nested = MAPPER.readTree(SearchSourceSerializer.toJson(sources().get(2), EsVersion.V1_7))
+            .path("query").path("function_score").path("filter").path("bool").path("must").get(0);
+        Assert.assertEquals("news", nested.path("query_string").path("query").textValue());
+    }
+}
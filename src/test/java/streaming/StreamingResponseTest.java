@@ -0,0 +1,143 @@
+package streaming;
+
+import com.github.brezp.es.client.entity.EsTypedHits;
+import com.github.brezp.es.client.entity.EsVersion;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestClientProxy;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import support.StubServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * search 响应流式读取
+ *
+ * @author brezp
+ */
+public class StreamingResponseTest {
+
+    @Rule
+    public final StubServer server = new StubServer();
+    private RestClientProxy proxy;
+
+    @Before
+    public void setUp() {
+        server.handle("/ok/_search", exchange -> {
+            byte[] body = searchResponse(2000).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+            //分块发送
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < body.length; i += 4096) {
+                    out.write(body, i, Math.min(4096, body.length - i));
+                    out.flush();
+                }
+            }
+        });
+        server.handle("/error/_search", exchange -> StubServer.respond(exchange, 404,
+            "{\"error\":{\"type\":\"index_not_found_exception\",\"reason\":\"no such index\"},\"status\":404}"));
+        server.handle("/truncated/_search", exchange -> {
+            byte[] body = searchResponse(2000).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body, 0, body.length / 2);
+            out.flush();
+            exchange.getHttpContext().getServer().stop(0);
+        });
+        server.handle("/slow/_search", exchange -> {
+            server.awaitRelease();
+            exchange.close();
+        });
+
+        proxy = new RestClientProxy(server.restClient(500), EsVersion.V5_6);
+        proxy.enableStreamingResponses(1024, 1);
+    }
+
+    private static String searchResponse(int hits) {
+        StringBuilder sb = new StringBuilder("{\"took\":3,\"timed_out\":false,")
+            .append("\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},")
+            .append("\"hits\":{\"total\":").append(hits).append(",\"max_score\":1.0,\"hits\":[");
+        for (int i = 0; i < hits; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"_index\":\"ok\",\"_type\":\"doc\",\"_id\":\"").append(i)
+                .append("\",\"_score\":1.0,\"_source\":{\"title\":\"title ").append(i).append("\"}}");
+        }
+        return sb.append("]}}").toString();
+    }
+
+    @Test
+    public void testStreamingSearch() throws Exception {
+        SearchResponse response = proxy.search(new SearchRequest("ok"));
+        Assert.assertEquals(2000, response.getHits().getHits().length);
+        Assert.assertEquals("title 1999", response.getHits().getAt(1999).getSourceAsMap().get("title"));
+
+        //io线程归还buffer可能稍晚于解析完成
+        long deadline = System.currentTimeMillis() + 5000;
+        while (proxy.getResponseBufferPool().available() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, proxy.getResponseBufferPool().available());
+    }
+
+    @Test
+    public void testTypedSearch() throws Exception {
+        EsTypedHits<Title> hits = proxy.search(new SearchRequest("ok"), Title.class);
+        Assert.assertEquals(2000, hits.getTotalHits());
+        Assert.assertEquals(2000, hits.size());
+        Assert.assertEquals("1999", hits.getIds().get(1999));
+        Assert.assertEquals("title 1999", hits.getSources().get(1999).title);
+
+        //未开启流式读取时结果相同
+        proxy.disableStreamingResponses();
+        hits = proxy.search(new SearchRequest("ok"), Title.class);
+        Assert.assertEquals("title 0", hits.getSources().get(0).title);
+    }
+
+    public static class Title {
+        public String title;
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        try {
+            proxy.search(new SearchRequest("error"));
+            Assert.fail();
+        } catch (ElasticsearchStatusException e) {
+            Assert.assertEquals(404, e.status().getStatus());
+            Assert.assertTrue(e.getMessage().contains("no such index"));
+        }
+    }
+
+    @Test
+    public void testTruncatedResponse() {
+        try {
+            proxy.search(new SearchRequest("truncated"));
+            Assert.fail();
+        } catch (IOException e) {
+            //连接中断时抛出异常，而不是解析出不完整的结果
+        }
+    }
+
+    @Test
+    public void testMaxRetryTimeout() {
+        long start = System.currentTimeMillis();
+        try {
+            proxy.search(new SearchRequest("slow"));
+            Assert.fail();
+        } catch (IOException e) {
+            //与同步请求相同，最多等待 maxRetryTimeout
+            Assert.assertTrue(e.getMessage().contains("listener timeout"));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+}
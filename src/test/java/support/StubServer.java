@@ -0,0 +1,123 @@
+package support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试用的本地 ES 桩服务，作为 {@code @Rule} 使用：每个测试前在随机端口启动，测试后停止，
+ * 并关闭经 {@link #restClient()} 创建的 RestClient。
+ * <p>
+ * 请求在线程池中处理，handler 可以阻塞；模拟无响应的 handler 调用 {@link #awaitRelease()}，测试结束时统一放行。
+ *
+ * @author brezp
+ */
+public class StubServer extends ExternalResource {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<RestClient> clients = new CopyOnWriteArrayList<>();
+    private ExecutorService executor;
+    private HttpServer server;
+
+    @Override
+    protected void before() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @Override
+    protected void after() {
+        release.countDown();
+        for (RestClient client : clients) {
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * 注册 path 前缀的 handler，可在 {@code @Before} 或测试中调用
+     */
+    public StubServer handle(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+        return this;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public HttpHost host() {
+        return new HttpHost("127.0.0.1", port());
+    }
+
+    /**
+     * @return host:port，用于 EsClient.Builder#setEsHosts
+     */
+    public String address() {
+        return "127.0.0.1:" + port();
+    }
+
+    /**
+     * @return 指向本服务的 RestClient，maxRetryTimeout 为默认值
+     */
+    public RestClient restClient() {
+        return restClient(RestClientBuilder.DEFAULT_MAX_RETRY_TIMEOUT_MILLIS);
+    }
+
+    public RestClient restClient(int maxRetryTimeoutMillis) {
+        RestClient client = RestClient.builder(host()).setMaxRetryTimeoutMillis(maxRetryTimeoutMillis).build();
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * 在 handler 中挂起，直到 {@link #release()} 或测试结束
+     */
+    public void awaitRelease() {
+        try {
+            release.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void release() {
+        release.countDown();
+    }
+
+    /**
+     * 以 json 返回完整的响应
+     */
+    public static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        respond(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
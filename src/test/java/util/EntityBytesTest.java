@@ -0,0 +1,115 @@
+package util;
+
+import com.github.brezp.es.client.entity.EsVersion;
+import com.github.brezp.es.client.filter.AbstractRequestFilter;
+import com.github.brezp.es.client.filter.AggFilter;
+import com.github.brezp.es.client.filter.RequestFilterChain;
+import com.github.brezp.es.client.filter.RewriteCache;
+import com.github.brezp.es.client.util.EntityBytes;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分块写出、复用同一个数组的entity读取后内容不被覆盖
+ *
+ * @author brezp
+ */
+public class EntityBytesTest {
+
+    private static String body(int length) {
+        StringBuilder sb = new StringBuilder("{\"query\":{\"bool\":{\"disable_coord\":false}},\"a\":\"");
+        for (int i = 0; sb.length() < length - 2; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.append("\"}").toString();
+    }
+
+    @Test
+    public void testFileEntity() throws Exception {
+        String body = body(10000);
+        File file = File.createTempFile("entity-bytes", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), body.getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer read = EntityBytes.read(new FileEntity(file, ContentType.APPLICATION_JSON));
+        Assert.assertEquals(body, EntityBytes.toString(read, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testChunkedEntityThroughRewriteCache() throws Exception {
+        String body = body(1000);
+        List<AbstractRequestFilter> filters = Collections.singletonList(new AggFilter());
+        RequestFilterChain chain = new RequestFilterChain(filters);
+        chain.setRewriteCache(new RewriteCache(1024 * 1024));
+        String expected = EntityUtils.toString(new RequestFilterChain(filters).filter(
+            new Request("POST", "/index/_search", Collections.emptyMap(), new ChunkedEntity(body)), EsVersion.V7_9)
+            .getEntity());
+
+        for (int i = 0; i < 2; i++) {
+            Request filtered = chain.filter(
+                new Request("POST", "/index/_search", Collections.emptyMap(), new ChunkedEntity(body)), EsVersion.V7_9);
+            Assert.assertEquals(expected, EntityUtils.toString(filtered.getEntity()));
+        }
+        Assert.assertFalse(expected.contains("disable_coord"));
+        Assert.assertTrue(expected.endsWith(body.substring(body.length() - 20)));
+    }
+
+    /**
+     * 与 FileEntity 相同，通过同一个小数组分块写出
+     */
+    private static final class ChunkedEntity extends AbstractHttpEntity {
+        private final byte[] content;
+
+        private ChunkedEntity(String body) {
+            this.content = body.getBytes(StandardCharsets.UTF_8);
+            setContentType(ContentType.APPLICATION_JSON.toString());
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return content.length;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            byte[] tmp = new byte[64];
+            try (InputStream in = getContent()) {
+                int n;
+                while ((n = in.read(tmp)) != -1) {
+                    out.write(tmp, 0, n);
+                }
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
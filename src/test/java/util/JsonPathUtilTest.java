@@ -0,0 +1,57 @@
+package util;
+
+import com.github.brezp.es.client.util.JsonPathUtil;
+import com.jayway.jsonpath.DocumentContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 测试JsonPathUtil
+ *
+ * @author brezp
+ */
+public class JsonPathUtilTest {
+
+    private static final String JSON = "{\"query\":{\"bool\":{\"must\":[{\"term\":{\"a\":\"x\"}}],"
+        + "\"disable_coord\":false,\"boost\":1.0}},\"aggregations\":{\"h\":{\"date_histogram\":"
+        + "{\"field\":\"t\",\"offset\":0}}}}";
+
+    @Test
+    public void testCompiledPathIsCached() {
+        Assert.assertSame(JsonPathUtil.compile("$..bool.disable_coord"),
+            JsonPathUtil.compile("$..bool.disable_coord"));
+        Assert.assertSame(JsonPathUtil.getParser(), JsonPathUtil.getParser());
+    }
+
+    @Test
+    public void testCompiledPathCacheEvicts() {
+        for (int i = 0; i < 10000; i++) {
+            JsonPathUtil.compile("$.script_fields.f" + i + ".script.source");
+        }
+        //缓存满后新的path仍会被缓存
+        Assert.assertSame(JsonPathUtil.compile("$.after.full"), JsonPathUtil.compile("$.after.full"));
+    }
+
+    @Test
+    public void testSessionOnSingleParse() {
+        DocumentContext doc = JsonPathUtil.parseDoc(JSON);
+        JsonPathUtil.del(doc, new String[]{"$..bool.disable_coord", "$.aggregations..date_histogram.offset", "$.not.exists"});
+        JsonPathUtil.update(doc, "$.aggregations.h.date_histogram.field", "post_time");
+        JsonPathUtil.add(doc, "$.query.bool", "minimum_should_match", 1);
+
+        Assert.assertEquals("post_time", JsonPathUtil.read(doc, "$.aggregations.h.date_histogram.field"));
+        Assert.assertEquals("{\"query\":{\"bool\":{\"must\":[{\"term\":{\"a\":\"x\"}}],\"boost\":1.0,"
+            + "\"minimum_should_match\":1}},\"aggregations\":{\"h\":{\"date_histogram\":{\"field\":\"post_time\"}}}}",
+            doc.jsonString());
+    }
+
+    @Test
+    public void testStringApiMatchesSession() {
+        String[] paths = {"$..bool.disable_coord", "$.aggregations..date_histogram.offset"};
+        DocumentContext doc = JsonPathUtil.parseDoc(JSON);
+        JsonPathUtil.del(doc, paths);
+
+        Assert.assertEquals(doc.jsonString(), JsonPathUtil.del(JSON, paths));
+        Assert.assertEquals("x", JsonPathUtil.read(JSON, "$.query.bool.must[0].term.a"));
+    }
+}